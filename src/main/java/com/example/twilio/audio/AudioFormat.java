@@ -0,0 +1,23 @@
+package com.example.twilio.audio;
+
+/**
+ * Sample encodings audio is exchanged in between the media stream and speech engines. All
+ * audio on this path is 8 kHz mono; the encoding is the only thing that differs.
+ */
+public enum AudioFormat {
+
+    // G.711 mu-law, one byte per sample - what Twilio Media Streams carry
+    MULAW(1),
+    // 16-bit signed little-endian PCM
+    LINEAR16(2);
+
+    private final int bytesPerSample;
+
+    AudioFormat(int bytesPerSample) {
+        this.bytesPerSample = bytesPerSample;
+    }
+
+    public int getBytesPerSample() {
+        return bytesPerSample;
+    }
+}
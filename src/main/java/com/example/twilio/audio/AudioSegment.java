@@ -0,0 +1,65 @@
+package com.example.twilio.audio;
+
+/**
+ * Read-only view of one utterance inside a pooled slab, handed to speech-to-text without copying.
+ *
+ * The segment owns the slab until {@link #release()} returns it to the pool; the audio must not
+ * be read after that. Release is idempotent.
+ */
+public final class AudioSegment {
+
+    private final SlabPool pool;
+    private byte[] slab;
+    private final int offset;
+    private final int length;
+
+    public AudioSegment(SlabPool pool, byte[] slab, int offset, int length) {
+        this.pool = pool;
+        this.slab = slab;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * Backing array - only the region [offset, offset + length) belongs to this segment
+     */
+    public byte[] array() {
+        byte[] current = slab;
+        if (current == null) {
+            throw new IllegalStateException("Audio segment already released");
+        }
+        return current;
+    }
+
+    public int offset() {
+        return offset;
+    }
+
+    /**
+     * Length in bytes (one byte per 8 kHz mu-law sample)
+     */
+    public int length() {
+        return length;
+    }
+
+    public long durationMs() {
+        return length * 1000L / G711Codec.SAMPLE_RATE;
+    }
+
+    /**
+     * Copy of the audio, for callers that keep it beyond the segment's lifetime
+     */
+    public byte[] toByteArray() {
+        byte[] copy = new byte[length];
+        System.arraycopy(array(), offset, copy, 0, length);
+        return copy;
+    }
+
+    public void release() {
+        byte[] current = slab;
+        slab = null;
+        if (current != null && pool != null) {
+            pool.release(current);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.twilio.audio;
+
+/**
+ * Frame-by-frame automatic gain control that brings the caller's speech to a target level.
+ *
+ * The speech level is tracked only on frames the caller marks as speech (fast attack, slower
+ * release), so pauses and line noise never pull the gain up; between words the gain is held.
+ * The gain is the distance from that level to the target, limited to {@code maxGainDb} of
+ * boost and {@code maxCutDb} of cut, and never so high that the frame's peak would clip. It is
+ * ramped linearly across each frame so gain changes do not click, except that a frame whose
+ * peak would clip is cut from its first sample.
+ *
+ * Works in place on float samples with no allocation. Not thread-safe - one instance per call.
+ */
+public final class AutomaticGainControl {
+
+    // Level tracking per speech frame
+    private static final double ATTACK = 0.4;
+    private static final double RELEASE = 0.1;
+    // Highest peak the gain may produce
+    private static final float PEAK_LIMIT = 32000f;
+
+    private final double targetDb;
+    private final double maxGainDb;
+    private final double maxCutDb;
+
+    private double levelDb = Double.NaN;
+    private float gain = 1.0f;
+
+    /**
+     * @param targetDbfs Target speech RMS in dB relative to full scale (e.g. -20)
+     * @param maxGainDb  Largest boost (e.g. 20, the old 10x)
+     * @param maxCutDb   Largest reduction for loud callers
+     */
+    public AutomaticGainControl(double targetDbfs, double maxGainDb, double maxCutDb) {
+        this.targetDb = targetDbfs + toDb(Short.MAX_VALUE + 1);
+        this.maxGainDb = Math.max(0.0, maxGainDb);
+        this.maxCutDb = Math.max(0.0, maxCutDb);
+    }
+
+    /**
+     * Applies the gain to {@code count} samples in place
+     *
+     * @param speech Whether the frame was classified as speech
+     */
+    public void process(float[] samples, int offset, int count, boolean speech) {
+        if (count <= 0) {
+            return;
+        }
+        float peak = 0;
+        double sum = 0;
+        for (int i = offset; i < offset + count; i++) {
+            float s = samples[i];
+            sum += s * s;
+            peak = Math.max(peak, Math.abs(s));
+        }
+
+        float target = gain;
+        if (speech && sum > 0) {
+            double frameDb = toDb(Math.sqrt(sum / count));
+            if (Double.isNaN(levelDb)) {
+                levelDb = frameDb;
+            } else {
+                levelDb += (frameDb > levelDb ? ATTACK : RELEASE) * (frameDb - levelDb);
+            }
+            double gainDb = Math.max(-maxCutDb, Math.min(maxGainDb, targetDb - levelDb));
+            target = (float) Math.pow(10.0, gainDb / 20.0);
+        }
+        if (peak * target > PEAK_LIMIT) {
+            target = PEAK_LIMIT / peak;
+        }
+        // A peak the current gain would clip is cut at once rather than ramped
+        float start = peak * gain > PEAK_LIMIT ? target : gain;
+
+        float step = (target - start) / count;
+        float g = start;
+        for (int i = offset; i < offset + count; i++) {
+            g += step;
+            samples[i] *= g;
+        }
+        gain = target;
+    }
+
+    /**
+     * Gain applied at the end of the last frame
+     */
+    public float getGain() {
+        return gain;
+    }
+
+    public void reset() {
+        levelDb = Double.NaN;
+        gain = 1.0f;
+    }
+
+    private static double toDb(double rms) {
+        return 20.0 * Math.log10(Math.max(rms, 1.0));
+    }
+}
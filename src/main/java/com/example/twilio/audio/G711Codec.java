@@ -0,0 +1,176 @@
+package com.example.twilio.audio;
+
+import java.nio.ByteBuffer;
+
+/**
+ * ITU-T G.711 mu-law codec for Twilio Media Streams audio (8 kHz, one byte per sample).
+ *
+ * Every frame of every call is decoded on the way in and encoded on the way out, so both
+ * directions are table lookups: 256 entries for decoding, and 16k entries (one per 14-bit
+ * linear value, the resolution G.711 actually encodes) for encoding. The bulk methods write
+ * into caller-supplied arrays or buffers and allocate nothing.
+ *
+ * Linear samples are 16-bit signed PCM (LINEAR16), the format Google Speech-to-Text,
+ * Text-to-Speech and Vosk use.
+ */
+public final class G711Codec {
+
+    // Sample rate of Twilio Media Streams audio
+    public static final int SAMPLE_RATE = 8000;
+
+    // Mu-law code for a zero sample
+    public static final byte SILENCE = (byte) 0xFF;
+
+    private static final int BIAS = 0x84;
+    private static final int CLIP = 8159;
+
+    private static final short[] DECODE = new short[256];
+    // Indexed by (sample >> 2) + 8192
+    private static final byte[] ENCODE = new byte[1 << 14];
+
+    static {
+        for (int code = 0; code < 256; code++) {
+            int inverted = ~code;
+            int magnitude = ((((inverted & 0x0F) << 3) + BIAS) << ((inverted & 0x70) >> 4)) - BIAS;
+            DECODE[code] = (short) ((inverted & 0x80) != 0 ? -magnitude : magnitude);
+        }
+        for (int index = 0; index < ENCODE.length; index++) {
+            ENCODE[index] = encode14(index - 8192);
+        }
+    }
+
+    private G711Codec() {
+    }
+
+    /**
+     * Reference encoder for one 14-bit linear sample (only used to build the table)
+     */
+    private static byte encode14(int sample) {
+        int mask;
+        if (sample < 0) {
+            sample = -sample;
+            mask = 0x7F;
+        } else {
+            mask = 0xFF;
+        }
+        if (sample > CLIP) {
+            sample = CLIP;
+        }
+        sample += BIAS >> 2;
+
+        // Segment upper bounds are 0x3F, 0x7F, ... 0x1FFF
+        int segment = 0;
+        while (segment < 8 && sample > (0x40 << segment) - 1) {
+            segment++;
+        }
+        if (segment == 8) {
+            return (byte) (0x7F ^ mask);
+        }
+        int code = (segment << 4) | ((sample >> (segment + 1)) & 0x0F);
+        return (byte) (code ^ mask);
+    }
+
+    /**
+     * Decodes one mu-law byte to a 16-bit linear sample
+     */
+    public static short decode(byte muLaw) {
+        return DECODE[muLaw & 0xFF];
+    }
+
+    /**
+     * Encodes one 16-bit linear sample to mu-law
+     */
+    public static byte encode(int sample) {
+        if (sample > Short.MAX_VALUE) {
+            sample = Short.MAX_VALUE;
+        } else if (sample < Short.MIN_VALUE) {
+            sample = Short.MIN_VALUE;
+        }
+        return ENCODE[(sample >> 2) + 8192];
+    }
+
+    /**
+     * Decodes {@code length} mu-law bytes into 16-bit samples
+     */
+    public static void decode(byte[] src, int srcOffset, short[] dst, int dstOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            dst[dstOffset + i] = DECODE[src[srcOffset + i] & 0xFF];
+        }
+    }
+
+    /**
+     * Decodes {@code length} mu-law bytes into little-endian LINEAR16 bytes
+     * ({@code 2 * length} bytes written at {@code dstOffset})
+     */
+    public static void decodeToLinear16(byte[] src, int srcOffset, byte[] dst, int dstOffset, int length) {
+        int out = dstOffset;
+        for (int i = 0; i < length; i++) {
+            short sample = DECODE[src[srcOffset + i] & 0xFF];
+            dst[out++] = (byte) sample;
+            dst[out++] = (byte) (sample >> 8);
+        }
+    }
+
+    /**
+     * Decodes {@code length} mu-law bytes into {@code dst} at its position, in the buffer's byte order
+     */
+    public static void decode(byte[] src, int srcOffset, int length, ByteBuffer dst) {
+        for (int i = 0; i < length; i++) {
+            dst.putShort(DECODE[src[srcOffset + i] & 0xFF]);
+        }
+    }
+
+    /**
+     * Decodes a whole mu-law buffer to little-endian LINEAR16
+     */
+    public static byte[] decodeToLinear16(byte[] muLaw) {
+        byte[] pcm = new byte[muLaw.length * 2];
+        decodeToLinear16(muLaw, 0, pcm, 0, muLaw.length);
+        return pcm;
+    }
+
+    /**
+     * Encodes {@code length} 16-bit samples to mu-law
+     */
+    public static void encode(short[] src, int srcOffset, byte[] dst, int dstOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            dst[dstOffset + i] = ENCODE[(src[srcOffset + i] >> 2) + 8192];
+        }
+    }
+
+    /**
+     * Encodes {@code sampleCount} little-endian LINEAR16 samples ({@code 2 * sampleCount} bytes) to mu-law
+     */
+    public static void encodeLinear16(byte[] src, int srcOffset, byte[] dst, int dstOffset, int sampleCount) {
+        int in = srcOffset;
+        for (int i = 0; i < sampleCount; i++) {
+            short sample = (short) ((src[in] & 0xFF) | (src[in + 1] << 8));
+            in += 2;
+            dst[dstOffset + i] = ENCODE[(sample >> 2) + 8192];
+        }
+    }
+
+    /**
+     * Encodes the remaining samples of {@code src} (in the buffer's byte order) to mu-law
+     *
+     * @return number of mu-law bytes written
+     */
+    public static int encode(ByteBuffer src, byte[] dst, int dstOffset) {
+        int count = src.remaining() / 2;
+        for (int i = 0; i < count; i++) {
+            dst[dstOffset + i] = ENCODE[(src.getShort() >> 2) + 8192];
+        }
+        return count;
+    }
+
+    /**
+     * Largest absolute linear sample of a mu-law region (without converting the buffer)
+     */
+    public static int peak(byte[] src, int offset, int length) {
+        int peak = 0;
+        for (int i = offset; i < offset + length; i++) {
+            peak = Math.max(peak, Math.abs(DECODE[src[i] & 0xFF]));
+        }
+        return peak;
+    }
+}
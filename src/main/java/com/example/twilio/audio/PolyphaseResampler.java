@@ -0,0 +1,216 @@
+package com.example.twilio.audio;
+
+import java.util.Arrays;
+
+/**
+ * Streaming rational-rate resampler (polyphase FIR), e.g. 8 kHz call audio to the 16 kHz Vosk
+ * models expect, or 16 kHz synthesized speech down to 8 kHz for playback.
+ *
+ * Conceptually the input is upsampled by L (zeros inserted), low-pass filtered and decimated by
+ * M; the polyphase form only evaluates the filter taps that hit real input samples at the
+ * output instants, so each output sample costs {@link #getTapsPerPhase()} multiply-adds. The
+ * prototype is a Kaiser-windowed sinc with its cutoff just below the lower Nyquist frequency,
+ * so upsampling does not produce images and downsampling does not fold the upper band back.
+ *
+ * The instance is stateful: the last input samples and the output phase carry over between
+ * calls, so audio can be fed frame by frame and the result is the same as resampling the
+ * whole stream at once. Output is written into caller buffers; after construction nothing is
+ * allocated. Not thread-safe - one instance per stream.
+ */
+public final class PolyphaseResampler {
+
+    // Input is processed in blocks of this many samples (bounds the work buffer)
+    private static final int BLOCK = 320;
+    private static final int BASE_TAPS_PER_PHASE = 24;
+    private static final double KAISER_BETA = 7.0;
+    // Cutoff relative to the lower of the two Nyquist frequencies
+    private static final double CUTOFF = 0.9;
+
+    private final int inputRate;
+    private final int outputRate;
+    private final int up;
+    private final int down;
+    private final int taps;
+    // Phase-major: coefficients of phase p are [p * taps, (p + 1) * taps), newest sample first
+    private final float[] coefficients;
+    // taps - 1 samples of history followed by the current block
+    private final float[] buffer;
+    // Position of the next output in upsampled samples, relative to the current block
+    private long position;
+
+    public PolyphaseResampler(int inputRate, int outputRate) {
+        this(inputRate, outputRate, 0);
+    }
+
+    /**
+     * @param inputRate     Input sample rate in Hz
+     * @param outputRate    Output sample rate in Hz
+     * @param tapsPerPhase  Filter taps per output sample, or 0 for the default (longer when downsampling)
+     */
+    public PolyphaseResampler(int inputRate, int outputRate, int tapsPerPhase) {
+        if (inputRate <= 0 || outputRate <= 0) {
+            throw new IllegalArgumentException("Sample rates must be positive: " + inputRate + " -> " + outputRate);
+        }
+        int gcd = gcd(inputRate, outputRate);
+        this.inputRate = inputRate;
+        this.outputRate = outputRate;
+        this.up = outputRate / gcd;
+        this.down = inputRate / gcd;
+        this.taps = tapsPerPhase > 0
+                ? tapsPerPhase
+                : BASE_TAPS_PER_PHASE * Math.max(1, (down + up - 1) / up);
+        this.coefficients = design(up, down, taps);
+        this.buffer = new float[taps - 1 + BLOCK];
+    }
+
+    private static float[] design(int up, int down, int taps) {
+        int length = up * taps;
+        double cutoff = CUTOFF * 0.5 / Math.max(up, down);
+        double center = (length - 1) / 2.0;
+        double[] prototype = new double[length];
+        double sum = 0;
+        for (int n = 0; n < length; n++) {
+            double t = n - center;
+            double sinc = t == 0 ? 2 * cutoff : Math.sin(2 * Math.PI * cutoff * t) / (Math.PI * t);
+            double ratio = t / (center + 1);
+            double window = besselI0(KAISER_BETA * Math.sqrt(Math.max(0, 1 - ratio * ratio))) / besselI0(KAISER_BETA);
+            prototype[n] = sinc * window;
+            sum += prototype[n];
+        }
+        // Unity DC gain after upsampling by 'up'
+        float[] polyphase = new float[length];
+        for (int phase = 0; phase < up; phase++) {
+            for (int k = 0; k < taps; k++) {
+                polyphase[phase * taps + k] = (float) (prototype[phase + k * up] * up / sum);
+            }
+        }
+        return polyphase;
+    }
+
+    private static double besselI0(double x) {
+        double sum = 1;
+        double term = 1;
+        for (int k = 1; k < 50; k++) {
+            term *= (x / (2 * k)) * (x / (2 * k));
+            sum += term;
+            if (term < 1e-12 * sum) {
+                break;
+            }
+        }
+        return sum;
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    public int getInputRate() {
+        return inputRate;
+    }
+
+    public int getOutputRate() {
+        return outputRate;
+    }
+
+    public int getTapsPerPhase() {
+        return taps;
+    }
+
+    /**
+     * Upper bound of the samples produced from {@code inputSamples} input samples
+     */
+    public int maxOutputSamples(int inputSamples) {
+        return (int) (((long) inputSamples * up + down - 1) / down) + 1;
+    }
+
+    /**
+     * Resamples 16-bit samples
+     *
+     * @return samples written to {@code out}
+     */
+    public int process(short[] in, int inOffset, int count, short[] out, int outOffset) {
+        int written = 0;
+        for (int done = 0; done < count; ) {
+            int n = Math.min(BLOCK, count - done);
+            for (int i = 0; i < n; i++) {
+                buffer[taps - 1 + i] = in[inOffset + done + i];
+            }
+            written += filterBlock(n, out, null, outOffset + written);
+            done += n;
+        }
+        return written;
+    }
+
+    /**
+     * Resamples little-endian LINEAR16 bytes. The input is consumed block by block before the
+     * output is written, so downsampling may be done in place ({@code out == in}, {@code outOffset <= inOffset}).
+     *
+     * @param inOffset    Byte offset of the input
+     * @param sampleCount Input samples ({@code 2 * sampleCount} bytes)
+     * @param outOffset   Byte offset of the output
+     * @return samples written to {@code out} ({@code 2 *} that many bytes)
+     */
+    public int processLinear16(byte[] in, int inOffset, int sampleCount, byte[] out, int outOffset) {
+        int written = 0;
+        for (int done = 0; done < sampleCount; ) {
+            int n = Math.min(BLOCK, sampleCount - done);
+            int at = inOffset + 2 * done;
+            for (int i = 0; i < n; i++) {
+                buffer[taps - 1 + i] = (short) ((in[at] & 0xFF) | (in[at + 1] << 8));
+                at += 2;
+            }
+            written += filterBlock(n, null, out, outOffset + 2 * written);
+            done += n;
+        }
+        return written;
+    }
+
+    /**
+     * Filters the block in {@code buffer} and keeps its tail as history
+     *
+     * @return samples written (to whichever output array is not null)
+     */
+    private int filterBlock(int n, short[] outShorts, byte[] outBytes, int outOffset) {
+        long end = (long) n * up;
+        int written = 0;
+        int out = outOffset;
+        while (position < end) {
+            int newest = (int) (position / up) + taps - 1;
+            int base = (int) (position % up) * taps;
+            float acc = 0;
+            for (int k = 0; k < taps; k++) {
+                acc += coefficients[base + k] * buffer[newest - k];
+            }
+            int sample = Math.round(acc);
+            if (sample > Short.MAX_VALUE) {
+                sample = Short.MAX_VALUE;
+            } else if (sample < Short.MIN_VALUE) {
+                sample = Short.MIN_VALUE;
+            }
+            if (outShorts != null) {
+                outShorts[out++] = (short) sample;
+            } else {
+                outBytes[out++] = (byte) sample;
+                outBytes[out++] = (byte) (sample >> 8);
+            }
+            written++;
+            position += down;
+        }
+        position -= end;
+        System.arraycopy(buffer, n, buffer, 0, taps - 1);
+        return written;
+    }
+
+    /**
+     * Forgets the filter history (start of a new stream)
+     */
+    public void reset() {
+        Arrays.fill(buffer, 0f);
+        position = 0;
+    }
+}
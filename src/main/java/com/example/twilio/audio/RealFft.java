@@ -0,0 +1,170 @@
+package com.example.twilio.audio;
+
+/**
+ * Radix-2 FFT of a real signal, sized for telephony frames (a 20 ms frame at 8 kHz is 160
+ * samples, zero-padded to 256).
+ *
+ * The real input of length N is packed into N/2 complex values, transformed with an in-place
+ * iterative complex FFT and split into the N/2 + 1 non-negative frequency bins; the inverse
+ * runs the same steps backwards. Twiddle factors and the bit-reversal permutation are computed
+ * once in the constructor, and all work arrays belong to the instance, so a transform
+ * allocates nothing.
+ *
+ * Not thread-safe: keep one instance per call (or per thread).
+ */
+public final class RealFft {
+
+    private final int size;
+    private final int half;
+    // Twiddles of the N/2-point complex FFT
+    private final float[] cos;
+    private final float[] sin;
+    // Twiddles of the final real split, k = 0..N/2
+    private final float[] splitCos;
+    private final float[] splitSin;
+    private final int[] bitReverse;
+    private final float[] workRe;
+    private final float[] workIm;
+
+    /**
+     * @param size Transform length - a power of two, at least 4
+     */
+    public RealFft(int size) {
+        if (size < 4 || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("FFT size must be a power of two >= 4: " + size);
+        }
+        this.size = size;
+        this.half = size / 2;
+        this.cos = new float[half / 2];
+        this.sin = new float[half / 2];
+        for (int i = 0; i < half / 2; i++) {
+            double angle = 2 * Math.PI * i / half;
+            cos[i] = (float) Math.cos(angle);
+            sin[i] = (float) Math.sin(angle);
+        }
+        this.splitCos = new float[half + 1];
+        this.splitSin = new float[half + 1];
+        for (int k = 0; k <= half; k++) {
+            double angle = 2 * Math.PI * k / size;
+            splitCos[k] = (float) Math.cos(angle);
+            splitSin[k] = (float) Math.sin(angle);
+        }
+        this.bitReverse = new int[half];
+        int bits = Integer.numberOfTrailingZeros(half);
+        for (int i = 0; i < half; i++) {
+            bitReverse[i] = bits == 0 ? 0 : Integer.reverse(i) >>> (32 - bits);
+        }
+        this.workRe = new float[half];
+        this.workIm = new float[half];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Number of output bins (N/2 + 1: DC to Nyquist)
+     */
+    public int bins() {
+        return half + 1;
+    }
+
+    /**
+     * Transforms {@code size} real samples (not modified)
+     *
+     * @param input Samples
+     * @param re    Real part of bins 0..N/2 ({@link #bins()} values written)
+     * @param im    Imaginary part of bins 0..N/2
+     */
+    public void forward(float[] input, float[] re, float[] im) {
+        float[] zr = workRe;
+        float[] zi = workIm;
+        // Pack even samples as real and odd samples as imaginary parts, in bit-reversed order
+        for (int i = 0; i < half; i++) {
+            int j = bitReverse[i];
+            zr[j] = input[2 * i];
+            zi[j] = input[2 * i + 1];
+        }
+        transform(zr, zi);
+
+        for (int k = 0; k <= half; k++) {
+            int a = k == half ? 0 : k;
+            int b = k == 0 ? 0 : half - k;
+            float evenRe = 0.5f * (zr[a] + zr[b]);
+            float evenIm = 0.5f * (zi[a] - zi[b]);
+            float oddRe = 0.5f * (zi[a] + zi[b]);
+            float oddIm = -0.5f * (zr[a] - zr[b]);
+            float c = splitCos[k];
+            float s = splitSin[k];
+            re[k] = evenRe + c * oddRe + s * oddIm;
+            im[k] = evenIm + c * oddIm - s * oddRe;
+        }
+    }
+
+    /**
+     * Squared magnitude of bins 0..N/2 ({@link #bins()} values written to {@code power}).
+     * {@code re} and {@code im} are scratch arrays of at least {@link #bins()} values.
+     */
+    public void powerSpectrum(float[] input, float[] re, float[] im, float[] power) {
+        forward(input, re, im);
+        for (int k = 0; k <= half; k++) {
+            power[k] = re[k] * re[k] + im[k] * im[k];
+        }
+    }
+
+    /**
+     * Inverse of {@link #forward(float[], float[], float[])}: rebuilds {@code size} real samples
+     * from bins 0..N/2 (the inputs are not modified)
+     */
+    public void inverse(float[] re, float[] im, float[] output) {
+        float[] zr = workRe;
+        float[] zi = workIm;
+        // Undo the split: Z[k] = E[k] + i O[k], stored conjugated and bit-reversed so the
+        // forward transform computes the inverse
+        for (int k = 0; k < half; k++) {
+            int m = half - k;
+            float evenRe = 0.5f * (re[k] + re[m]);
+            float evenIm = 0.5f * (im[k] - im[m]);
+            float diffRe = 0.5f * (re[k] - re[m]);
+            float diffIm = 0.5f * (im[k] + im[m]);
+            // O[k] = diff * e^(+2 pi i k / N)
+            float c = splitCos[k];
+            float s = splitSin[k];
+            float oddRe = diffRe * c - diffIm * s;
+            float oddIm = diffRe * s + diffIm * c;
+            int j = bitReverse[k];
+            zr[j] = evenRe - oddIm;
+            zi[j] = -(evenIm + oddRe);
+        }
+        transform(zr, zi);
+        float scale = 1.0f / half;
+        for (int n = 0; n < half; n++) {
+            output[2 * n] = zr[n] * scale;
+            output[2 * n + 1] = -zi[n] * scale;
+        }
+    }
+
+    /**
+     * In-place iterative radix-2 FFT of bit-reversed input
+     */
+    private void transform(float[] re, float[] im) {
+        for (int length = 2; length <= half; length <<= 1) {
+            int halfLength = length >> 1;
+            int stride = half / length;
+            for (int start = 0; start < half; start += length) {
+                for (int j = 0; j < halfLength; j++) {
+                    float wr = cos[j * stride];
+                    float wi = -sin[j * stride];
+                    int top = start + j;
+                    int bottom = top + halfLength;
+                    float tr = wr * re[bottom] - wi * im[bottom];
+                    float ti = wr * im[bottom] + wi * re[bottom];
+                    re[bottom] = re[top] - tr;
+                    im[bottom] = im[top] - ti;
+                    re[top] += tr;
+                    im[top] += ti;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.twilio.audio;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of byte[] slabs for utterance audio, shared by all calls.
+ *
+ * Slabs come in power-of-two size classes between {@code minSlabBytes} and {@code maxSlabBytes},
+ * so an utterance buffer can grow by doubling and a released slab can be reused by any call.
+ * At most {@code maxPooledPerClass} free slabs are kept per class; beyond that released slabs
+ * are left to the garbage collector.
+ */
+public final class SlabPool {
+
+    private final int minSlabBytes;
+    private final int maxSlabBytes;
+    private final int maxPooledPerClass;
+    private final List<Queue<byte[]>> free;
+    private final AtomicInteger[] freeCounts;
+    private final AtomicLong allocations = new AtomicLong();
+
+    /**
+     * @param minSlabBytes      smallest slab, rounded up to a power of two
+     * @param maxSlabBytes      largest slab, rounded up to a power of two
+     * @param maxPooledPerClass free slabs kept per size class
+     */
+    public SlabPool(int minSlabBytes, int maxSlabBytes, int maxPooledPerClass) {
+        this.minSlabBytes = roundUpToPowerOfTwo(Math.max(64, minSlabBytes));
+        this.maxSlabBytes = Math.max(this.minSlabBytes, roundUpToPowerOfTwo(maxSlabBytes));
+        this.maxPooledPerClass = maxPooledPerClass;
+        int classes = sizeClass(this.maxSlabBytes) + 1;
+        this.free = new ArrayList<>(classes);
+        this.freeCounts = new AtomicInteger[classes];
+        for (int i = 0; i < classes; i++) {
+            free.add(new ConcurrentLinkedQueue<>());
+            freeCounts[i] = new AtomicInteger();
+        }
+    }
+
+    /**
+     * @return a slab of at least {@code minBytes} (capped at the largest size class); contents are undefined
+     */
+    public byte[] acquire(int minBytes) {
+        int size = Math.min(maxSlabBytes, roundUpToPowerOfTwo(Math.max(minSlabBytes, minBytes)));
+        int sizeClass = sizeClass(size);
+        byte[] slab = free.get(sizeClass).poll();
+        if (slab != null) {
+            freeCounts[sizeClass].decrementAndGet();
+            return slab;
+        }
+        allocations.incrementAndGet();
+        return new byte[size];
+    }
+
+    /**
+     * Returns a slab obtained from {@link #acquire(int)}. The caller must not use it afterwards.
+     */
+    public void release(byte[] slab) {
+        if (slab == null || slab.length < minSlabBytes || slab.length > maxSlabBytes
+                || Integer.bitCount(slab.length) != 1) {
+            return;
+        }
+        int sizeClass = sizeClass(slab.length);
+        if (freeCounts[sizeClass].incrementAndGet() > maxPooledPerClass) {
+            freeCounts[sizeClass].decrementAndGet();
+            return;
+        }
+        free.get(sizeClass).offer(slab);
+    }
+
+    public int getMaxSlabBytes() {
+        return maxSlabBytes;
+    }
+
+    /**
+     * Slabs allocated because none of the right size was free (for diagnostics)
+     */
+    public long getAllocations() {
+        return allocations.get();
+    }
+
+    private int sizeClass(int size) {
+        return Integer.numberOfTrailingZeros(size) - Integer.numberOfTrailingZeros(minSlabBytes);
+    }
+
+    private static int roundUpToPowerOfTwo(int value) {
+        return value <= 1 ? 1 : Integer.highestOneBit(value - 1) << 1;
+    }
+}
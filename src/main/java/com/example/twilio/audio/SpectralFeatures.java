@@ -0,0 +1,181 @@
+package com.example.twilio.audio;
+
+import java.util.Arrays;
+
+/**
+ * Per-frame spectral features of mu-law telephony audio: power spectrum, band energies,
+ * spectral flatness and spectral centroid.
+ *
+ * A frame is decoded, multiplied by a Hann window, zero-padded to the FFT size and
+ * transformed with {@link RealFft}. The window, band-to-bin mapping and every work array are
+ * allocated in the constructor, so {@link #analyze(byte[], int, int)} allocates nothing and
+ * the results stay readable until the next call.
+ *
+ * Not thread-safe: one instance per call.
+ */
+public final class SpectralFeatures {
+
+    // 20 ms of Twilio Media Streams audio
+    private static final int MEDIA_FRAME_SAMPLES = G711Codec.SAMPLE_RATE / 50;
+
+    // Default bands for 8 kHz telephony (Hz)
+    public static final double[] TELEPHONY_BAND_EDGES = {80, 250, 500, 1000, 2000, 3000, 3800};
+
+    // Flatness is measured over the telephone passband only
+    private static final double FLATNESS_LOW_HZ = 100;
+    private static final double FLATNESS_HIGH_HZ = 3800;
+    // Keeps log() finite for empty bins
+    private static final float POWER_EPSILON = 1e-3f;
+
+    private final int frameLength;
+    private final RealFft fft;
+    private final float[] window;
+    private final float[] input;
+    private final float[] re;
+    private final float[] im;
+    private final float[] power;
+    private final double binHz;
+    private final int[] bandFirstBin;
+    private final int[] bandLastBin;
+    private final double[] bandEnergy;
+    private final int flatnessFirstBin;
+    private final int flatnessLastBin;
+
+    private double totalEnergy;
+    private double flatness;
+    private double centroidHz;
+
+    /**
+     * Features of 20 ms frames (160 samples, 256-point FFT) in the telephony bands
+     */
+    public static SpectralFeatures forTelephony() {
+        return new SpectralFeatures(MEDIA_FRAME_SAMPLES, 256, TELEPHONY_BAND_EDGES);
+    }
+
+    /**
+     * @param frameLength Samples per frame (windowed, then zero-padded)
+     * @param fftSize     FFT length - a power of two, at least {@code frameLength}
+     * @param bandEdgesHz Ascending band edges; n edges give n - 1 bands
+     */
+    public SpectralFeatures(int frameLength, int fftSize, double[] bandEdgesHz) {
+        if (frameLength > fftSize) {
+            throw new IllegalArgumentException("Frame of " + frameLength + " samples does not fit a " + fftSize + "-point FFT");
+        }
+        if (bandEdgesHz.length < 2) {
+            throw new IllegalArgumentException("At least two band edges are required");
+        }
+        this.frameLength = frameLength;
+        this.fft = new RealFft(fftSize);
+        this.window = new float[frameLength];
+        for (int i = 0; i < frameLength; i++) {
+            window[i] = (float) (0.5 - 0.5 * Math.cos(2 * Math.PI * i / (frameLength - 1)));
+        }
+        this.input = new float[fftSize];
+        this.re = new float[fft.bins()];
+        this.im = new float[fft.bins()];
+        this.power = new float[fft.bins()];
+        this.binHz = (double) G711Codec.SAMPLE_RATE / fftSize;
+
+        int bands = bandEdgesHz.length - 1;
+        this.bandFirstBin = new int[bands];
+        this.bandLastBin = new int[bands];
+        this.bandEnergy = new double[bands];
+        for (int band = 0; band < bands; band++) {
+            // Bins whose center frequency lies in [low, high)
+            bandFirstBin[band] = toBin(bandEdgesHz[band], true);
+            bandLastBin[band] = Math.max(bandFirstBin[band], toBin(bandEdgesHz[band + 1], false));
+        }
+        this.flatnessFirstBin = toBin(FLATNESS_LOW_HZ, true);
+        this.flatnessLastBin = toBin(FLATNESS_HIGH_HZ, false);
+    }
+
+    private int toBin(double hz, boolean first) {
+        int bin = first ? (int) Math.ceil(hz / binHz) : (int) Math.ceil(hz / binHz) - 1;
+        return Math.max(0, Math.min(fft.bins() - 1, bin));
+    }
+
+    /**
+     * Analyzes one mu-law frame; shorter frames are zero-padded, longer ones truncated
+     */
+    public void analyze(byte[] muLawAudio, int offset, int length) {
+        int samples = Math.min(length, frameLength);
+        for (int i = 0; i < samples; i++) {
+            input[i] = G711Codec.decode(muLawAudio[offset + i]) * window[i];
+        }
+        Arrays.fill(input, samples, input.length, 0f);
+        fft.powerSpectrum(input, re, im, power);
+
+        for (int band = 0; band < bandEnergy.length; band++) {
+            double sum = 0;
+            for (int bin = bandFirstBin[band]; bin <= bandLastBin[band]; bin++) {
+                sum += power[bin];
+            }
+            bandEnergy[band] = sum;
+        }
+
+        double total = 0;
+        double weighted = 0;
+        double logSum = 0;
+        for (int bin = flatnessFirstBin; bin <= flatnessLastBin; bin++) {
+            float p = power[bin] + POWER_EPSILON;
+            total += p;
+            weighted += p * (bin * binHz);
+            logSum += Math.log(p);
+        }
+        int count = flatnessLastBin - flatnessFirstBin + 1;
+        totalEnergy = total;
+        // Geometric over arithmetic mean: ~1 for white noise, near 0 for tonal or voiced frames
+        flatness = total > 0 ? Math.exp(logSum / count) / (total / count) : 0.0;
+        centroidHz = total > 0 ? weighted / total : 0.0;
+    }
+
+    /**
+     * Power spectrum of the last frame, bins 0..{@link #getBins()} - 1
+     */
+    public float[] getPowerSpectrum() {
+        return power;
+    }
+
+    public int getBins() {
+        return fft.bins();
+    }
+
+    /**
+     * Frequency spacing of the bins
+     */
+    public double getBinHz() {
+        return binHz;
+    }
+
+    public int getBandCount() {
+        return bandEnergy.length;
+    }
+
+    /**
+     * Energy of a band in the last frame (sum of bin powers)
+     */
+    public double getBandEnergy(int band) {
+        return bandEnergy[band];
+    }
+
+    /**
+     * Energy of the last frame within the telephone passband
+     */
+    public double getTotalEnergy() {
+        return totalEnergy;
+    }
+
+    /**
+     * Spectral flatness (0..1) of the last frame: ~1 for noise, low for tones and voiced speech
+     */
+    public double getFlatness() {
+        return flatness;
+    }
+
+    /**
+     * Power-weighted mean frequency of the last frame in Hz
+     */
+    public double getCentroidHz() {
+        return centroidHz;
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.twilio.audio;
+
+import java.util.Arrays;
+
+/**
+ * Streaming spectral-subtraction noise suppressor for 8 kHz telephony audio.
+ *
+ * The signal is cut into 256-sample (32 ms) frames with 50% overlap, each multiplied by a
+ * square-root Hann window and transformed with {@link RealFft}. Every bin gets a gain from the
+ * estimated noise power in that bin (power subtraction with over-subtraction, floored so the
+ * residual noise stays smooth instead of "musical"), the frame is transformed back, windowed
+ * again and overlap-added. The two square-root Hann windows sum to one at this overlap, so
+ * with no noise the output equals the input.
+ *
+ * The noise power of each bin follows the smoothed power quickly when it drops and creeps up
+ * slowly otherwise (faster on frames the caller marks as non-speech), so it settles on the
+ * line noise between words without being dragged up by speech.
+ *
+ * Audio is delayed by one frame ({@link #getLatencySamples()}, 32 ms) - a sample is complete
+ * once both frames overlapping it have been transformed. The same number of samples come out
+ * of every {@link #process(float[], int, int, float[], int, boolean)} call as go in.
+ * Everything is allocated in the constructor. Not thread-safe - one instance per call.
+ */
+public final class SpectralNoiseSuppressor {
+
+    private static final int FFT_SIZE = 256;
+    private static final int HOP = FFT_SIZE / 2;
+    private static final int BINS = FFT_SIZE / 2 + 1;
+    // Output FIFO capacity (power of two); it never holds more than one hop plus one sample
+    private static final int FIFO_SIZE = 2 * HOP;
+
+    // Noise subtracted is this multiple of the estimate
+    private static final float OVER_SUBTRACTION = 2.0f;
+    // Per-hop smoothing of the bin power the gains are computed from
+    private static final float POWER_SMOOTHING = 0.3f;
+    // Noise estimate: drop towards lower power, creep up otherwise
+    private static final float NOISE_DECAY = 0.2f;
+    private static final float NOISE_RISE = 1.01f;
+    private static final float NOISE_RISE_QUIET = 0.05f;
+    // How much of the previous gain survives when the gain falls (reduces musical noise)
+    private static final float GAIN_RELEASE = 0.5f;
+    private static final float POWER_EPSILON = 1e-6f;
+
+    private final RealFft fft = new RealFft(FFT_SIZE);
+    private final float[] window = new float[FFT_SIZE];
+    private final float minGain;
+
+    // Last FFT_SIZE input samples; the newest HOP arrive at [HOP, FFT_SIZE)
+    private final float[] input = new float[FFT_SIZE];
+    private int pending;
+    private final float[] frame = new float[FFT_SIZE];
+    private final float[] re = new float[BINS];
+    private final float[] im = new float[BINS];
+    private final float[] smoothedPower = new float[BINS];
+    private final float[] noisePower = new float[BINS];
+    private final float[] gain = new float[BINS];
+    private boolean initialized;
+    // Overlap-add accumulator; [0, HOP) is complete after each hop
+    private final float[] overlap = new float[FFT_SIZE];
+    private final float[] fifo = new float[FIFO_SIZE];
+    private long fifoRead;
+    private long fifoWrite;
+
+    /**
+     * @param maxAttenuationDb Largest reduction of any bin (positive dB, e.g. 15)
+     */
+    public SpectralNoiseSuppressor(double maxAttenuationDb) {
+        this.minGain = (float) Math.pow(10.0, -Math.max(0.0, maxAttenuationDb) / 20.0);
+        for (int i = 0; i < FFT_SIZE; i++) {
+            // Periodic Hann, square-rooted for analysis and synthesis
+            window[i] = (float) Math.sqrt(0.5 - 0.5 * Math.cos(2 * Math.PI * i / FFT_SIZE));
+        }
+        reset();
+    }
+
+    public int getLatencySamples() {
+        return FFT_SIZE;
+    }
+
+    /**
+     * Suppresses noise in {@code count} samples. {@code out} may be the same array and range
+     * as {@code in}.
+     *
+     * @param speech Whether the samples were classified as speech (slows down noise tracking)
+     */
+    public void process(float[] in, int inOffset, int count, float[] out, int outOffset, boolean speech) {
+        for (int i = 0; i < count; i++) {
+            input[HOP + pending] = in[inOffset + i];
+            if (++pending == HOP) {
+                processHop(speech);
+                pending = 0;
+            }
+            out[outOffset + i] = fifo[(int) (fifoRead++ & (FIFO_SIZE - 1))];
+        }
+    }
+
+    private void processHop(boolean speech) {
+        for (int i = 0; i < FFT_SIZE; i++) {
+            frame[i] = input[i] * window[i];
+        }
+        fft.forward(frame, re, im);
+
+        for (int k = 0; k < BINS; k++) {
+            float power = re[k] * re[k] + im[k] * im[k];
+            float smoothed;
+            float noise;
+            if (!initialized) {
+                smoothed = power;
+                noise = power;
+            } else {
+                smoothed = smoothedPower[k] + POWER_SMOOTHING * (power - smoothedPower[k]);
+                noise = noisePower[k];
+                if (smoothed < noise) {
+                    noise += NOISE_DECAY * (smoothed - noise);
+                } else if (speech) {
+                    noise = Math.min(smoothed, noise * NOISE_RISE);
+                } else {
+                    noise += NOISE_RISE_QUIET * (smoothed - noise);
+                }
+            }
+            smoothedPower[k] = smoothed;
+            noisePower[k] = noise;
+
+            float powerGain = 1.0f - OVER_SUBTRACTION * noise / (power + POWER_EPSILON);
+            float g = powerGain > minGain * minGain ? (float) Math.sqrt(powerGain) : minGain;
+            // Open immediately for onsets, close gradually
+            g = Math.max(g, GAIN_RELEASE * gain[k]);
+            gain[k] = g;
+            re[k] *= g;
+            im[k] *= g;
+        }
+        initialized = true;
+
+        fft.inverse(re, im, frame);
+        for (int i = 0; i < FFT_SIZE; i++) {
+            overlap[i] += frame[i] * window[i];
+        }
+        for (int i = 0; i < HOP; i++) {
+            fifo[(int) (fifoWrite++ & (FIFO_SIZE - 1))] = overlap[i];
+        }
+        System.arraycopy(overlap, HOP, overlap, 0, HOP);
+        Arrays.fill(overlap, HOP, FFT_SIZE, 0f);
+        System.arraycopy(input, HOP, input, 0, HOP);
+    }
+
+    /**
+     * Drops the delayed audio (the last {@link #getLatencySamples()} samples passed in) and
+     * starts over on silence, keeping the noise estimate
+     */
+    public void flush() {
+        Arrays.fill(input, 0f);
+        Arrays.fill(overlap, 0f);
+        pending = 0;
+        // One hop of silence ahead of the first output keeps the FIFO from running dry
+        Arrays.fill(fifo, 0, HOP, 0f);
+        fifoRead = 0;
+        fifoWrite = HOP;
+    }
+
+    /**
+     * Forgets the signal and noise history
+     */
+    public void reset() {
+        flush();
+        Arrays.fill(gain, 1f);
+        initialized = false;
+    }
+}
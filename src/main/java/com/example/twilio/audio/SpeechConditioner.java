@@ -0,0 +1,77 @@
+package com.example.twilio.audio;
+
+/**
+ * Per-call conditioning of inbound mu-law audio before it is buffered for speech-to-text:
+ * optional noise suppression ({@link SpectralNoiseSuppressor}) followed by optional automatic
+ * gain control ({@link AutomaticGainControl}).
+ *
+ * Frames are conditioned in place as they arrive, so the utterance handed to speech-to-text at
+ * endpoint time is already clean and at a usable level; nothing has to wait for the whole
+ * utterance. With noise suppression on, the conditioned audio lags the input by
+ * {@link #getLatencySamples()} samples.
+ *
+ * Not thread-safe - frames of a call arrive on one thread.
+ */
+public final class SpeechConditioner {
+
+    private final SpectralNoiseSuppressor suppressor;
+    private final AutomaticGainControl agc;
+    private float[] samples = new float[G711Codec.SAMPLE_RATE / 50];
+
+    /**
+     * @param suppressor Noise suppressor, or null for none
+     * @param agc        Gain control, or null for none
+     */
+    public SpeechConditioner(SpectralNoiseSuppressor suppressor, AutomaticGainControl agc) {
+        this.suppressor = suppressor;
+        this.agc = agc;
+    }
+
+    /**
+     * Conditions one mu-law frame in place
+     *
+     * @param speech Whether the frame was classified as speech
+     */
+    public void process(byte[] muLawAudio, int offset, int length, boolean speech) {
+        if (length <= 0 || (suppressor == null && agc == null)) {
+            return;
+        }
+        if (samples.length < length) {
+            samples = new float[length];
+        }
+        float[] x = samples;
+        for (int i = 0; i < length; i++) {
+            x[i] = G711Codec.decode(muLawAudio[offset + i]);
+        }
+        if (suppressor != null) {
+            suppressor.process(x, 0, length, x, 0, speech);
+        }
+        if (agc != null) {
+            agc.process(x, 0, length, speech);
+        }
+        for (int i = 0; i < length; i++) {
+            muLawAudio[offset + i] = G711Codec.encode(Math.round(x[i]));
+        }
+    }
+
+    public int getLatencySamples() {
+        return suppressor != null ? suppressor.getLatencySamples() : 0;
+    }
+
+    /**
+     * Drops the audio still held back by the noise suppressor, so the end of one utterance
+     * does not come out at the start of the next. Gain and noise estimates are kept
+     */
+    public void flush() {
+        if (suppressor != null) {
+            suppressor.flush();
+        }
+    }
+
+    /**
+     * Current AGC gain (1.0 without AGC)
+     */
+    public float getGain() {
+        return agc != null ? agc.getGain() : 1.0f;
+    }
+}
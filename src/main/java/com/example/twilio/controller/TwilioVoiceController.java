@@ -7,6 +7,7 @@ import com.example.twilio.dto.OutboundCallResponse;
 import com.example.twilio.service.OutboundCallService;
 import com.example.twilio.service.TwilioVoiceService;
 import com.example.twilio.service.ConversationLogger;
+import com.example.twilio.websocket.TwilioMediaStreamHandler;
 import jakarta.validation.Valid;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -36,6 +37,9 @@ public class TwilioVoiceController {
     @Autowired(required = false)
     private ConversationLogger conversationLogger;
 
+    @Autowired
+    private TwilioMediaStreamHandler twilioMediaStreamHandler;
+
     // Track call → Salesforce context for creating Tasks on completion
     private final java.util.concurrent.ConcurrentMap<String, CallTaskContext> callContextBySid =
             new java.util.concurrent.ConcurrentHashMap<>();
@@ -182,6 +186,20 @@ public class TwilioVoiceController {
         }
     }
 
+    /**
+     * Live audio diagnostics of a call's media stream (noise floor, speech threshold)
+     * GET /twilio/call/{callSid}/diagnostics
+     */
+    @GetMapping("/call/{callSid}/diagnostics")
+    public ResponseEntity<?> getCallDiagnostics(@PathVariable String callSid) {
+        var diagnostics = twilioMediaStreamHandler.getCallDiagnostics(callSid);
+        if (diagnostics != null) {
+            return ResponseEntity.ok(diagnostics);
+        } else {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
     /**
      * WebSocket endpoint URL for Twilio Media Stream
      * This is called by Twilio to establish the WebSocket connection
@@ -211,6 +229,9 @@ public class TwilioVoiceController {
                 || normalizedStatus.equals("completed-remote");
 
         if (isTerminalStatus) {
+            // Free the media stream session even if its WebSocket was not closed cleanly
+            twilioMediaStreamHandler.closeCallSession(callSid);
+
             CallTaskContext ctx = callContextBySid.remove(callSid);
             if (ctx != null) {
                 String conversationLog = conversationLogger != null
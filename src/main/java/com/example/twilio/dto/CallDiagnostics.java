@@ -0,0 +1,177 @@
+package com.example.twilio.dto;
+
+import java.util.List;
+
+/**
+ * DTO for the live audio state of a call's media stream
+ */
+public class CallDiagnostics {
+
+    private String callSid;
+    private String sessionId;
+    private String vadEngine;
+    private double noiseFloorRms;
+    private double speechThresholdRms;
+    private double lastFrameRms;
+    private long speechFrames;
+    private long noiseFrames;
+    private long bufferedAudioMs;
+    private boolean processing;
+    // Cost of each audio pipeline stage, then the per-turn work; null when metrics are off
+    private List<StageTiming> pipeline;
+
+    public CallDiagnostics() {
+    }
+
+    public String getCallSid() {
+        return callSid;
+    }
+
+    public void setCallSid(String callSid) {
+        this.callSid = callSid;
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    public void setSessionId(String sessionId) {
+        this.sessionId = sessionId;
+    }
+
+    public String getVadEngine() {
+        return vadEngine;
+    }
+
+    public void setVadEngine(String vadEngine) {
+        this.vadEngine = vadEngine;
+    }
+
+    public double getNoiseFloorRms() {
+        return noiseFloorRms;
+    }
+
+    public void setNoiseFloorRms(double noiseFloorRms) {
+        this.noiseFloorRms = noiseFloorRms;
+    }
+
+    public double getSpeechThresholdRms() {
+        return speechThresholdRms;
+    }
+
+    public void setSpeechThresholdRms(double speechThresholdRms) {
+        this.speechThresholdRms = speechThresholdRms;
+    }
+
+    public double getLastFrameRms() {
+        return lastFrameRms;
+    }
+
+    public void setLastFrameRms(double lastFrameRms) {
+        this.lastFrameRms = lastFrameRms;
+    }
+
+    public long getSpeechFrames() {
+        return speechFrames;
+    }
+
+    public void setSpeechFrames(long speechFrames) {
+        this.speechFrames = speechFrames;
+    }
+
+    public long getNoiseFrames() {
+        return noiseFrames;
+    }
+
+    public void setNoiseFrames(long noiseFrames) {
+        this.noiseFrames = noiseFrames;
+    }
+
+    public long getBufferedAudioMs() {
+        return bufferedAudioMs;
+    }
+
+    public void setBufferedAudioMs(long bufferedAudioMs) {
+        this.bufferedAudioMs = bufferedAudioMs;
+    }
+
+    public boolean isProcessing() {
+        return processing;
+    }
+
+    public void setProcessing(boolean processing) {
+        this.processing = processing;
+    }
+
+    public List<StageTiming> getPipeline() {
+        return pipeline;
+    }
+
+    public void setPipeline(List<StageTiming> pipeline) {
+        this.pipeline = pipeline;
+    }
+
+    /**
+     * Cumulative cost of one pipeline stage for the call (count is frames, or turns for "turn")
+     */
+    public static class StageTiming {
+
+        private String stage;
+        private long count;
+        private long totalMicros;
+        private double meanMicros;
+        private long maxMicros;
+        private long allocatedBytes;
+
+        public StageTiming() {
+        }
+
+        public String getStage() {
+            return stage;
+        }
+
+        public void setStage(String stage) {
+            this.stage = stage;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public void setCount(long count) {
+            this.count = count;
+        }
+
+        public long getTotalMicros() {
+            return totalMicros;
+        }
+
+        public void setTotalMicros(long totalMicros) {
+            this.totalMicros = totalMicros;
+        }
+
+        public double getMeanMicros() {
+            return meanMicros;
+        }
+
+        public void setMeanMicros(double meanMicros) {
+            this.meanMicros = meanMicros;
+        }
+
+        public long getMaxMicros() {
+            return maxMicros;
+        }
+
+        public void setMaxMicros(long maxMicros) {
+            this.maxMicros = maxMicros;
+        }
+
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        public void setAllocatedBytes(long allocatedBytes) {
+            this.allocatedBytes = allocatedBytes;
+        }
+    }
+}
@@ -1,27 +1,26 @@
 package com.example.twilio.service;
 
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.io.FileInputStream;
-import java.io.IOException;
-
-import com.google.auth.oauth2.GoogleCredentials;
-import com.google.cloud.speech.v1.RecognitionAudio;
-import com.google.cloud.speech.v1.RecognitionConfig;
-import com.google.cloud.speech.v1.RecognizeRequest;
-import com.google.cloud.speech.v1.RecognizeResponse;
-import com.google.cloud.speech.v1.SpeechClient;
-import com.google.cloud.speech.v1.SpeechRecognitionResult;
-import com.google.cloud.speech.v1.SpeechSettings;
-import com.google.protobuf.ByteString;
+import jakarta.annotation.PostConstruct;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.example.twilio.audio.AudioFormat;
+import com.example.twilio.audio.G711Codec;
 import com.example.twilio.service.dto.AiAgentResult;
+import com.example.twilio.service.dto.ExpectedGrammars;
+import com.example.twilio.service.intent.Intent;
+import com.example.twilio.service.intent.IntentDetector;
+import com.example.twilio.service.intent.IntentMatch;
 
 /**
  * AI Agent Service for processing audio and generating responses
@@ -32,48 +31,93 @@ import com.example.twilio.service.dto.AiAgentResult;
 public class AiAgentService {
 
     private static final Logger logger = LoggerFactory.getLogger(AiAgentService.class);
+    
+    // Utterances peaking below this (16-bit PCM) are amplified before recognition
+    private static final int QUIET_AMPLITUDE = 4000;
+    
+    private static final String ANYTHING_ELSE_PROMPT = "Is there anything else I can help you with?";
+    
+    /**
+     * Questions a response can end with, so a short answer to it is read in context
+     */
+    private enum Question {
+        // ANYTHING_ELSE_PROMPT - open, "no" ends the call
+        ANYTHING_ELSE,
+        // Rescheduling: which day, what time, and confirming both
+        DAY,
+        TIME,
+        CONFIRM
+    }
 
+    /**
+     * A question the last response asked, with the appointment details collected so far
+     */
+    private static final class OpenQuestion {
+        private final Question question;
+        private final String day;
+        private final String time;
+
+        private OpenQuestion(Question question, String day, String time) {
+            this.question = question;
+            this.day = day;
+            this.time = time;
+        }
+
+        @Override
+        public String toString() {
+            return question + (day != null ? " " + day : "") + (time != null ? " " + time : "");
+        }
+    }
+
+    // When inbound frames already went through gain control (see TwilioMediaStreamHandler),
+    // the whole-utterance amplification (quietAmplification) is skipped
+    @Value("${audio.conditioning.enabled:true}")
+    private boolean audioConditioningEnabled;
+    
+    @Value("${audio.agc.enabled:true}")
+    private boolean agcEnabled;
+    
     @Value("${ai.agent.enabled:true}")
     private boolean aiAgentEnabled;
     
    // @Value("${ai.agent.test.mode:false}")
     private boolean testMode=true;
     
+    // Number a caller asking for a person is transferred to (empty = no transfer)
+    @Value("${conversation.transfer.number:}")
+    private String transferNumber;
+    
     @Autowired(required = false)
     private ConversationLogger conversationLogger;
     
     @Autowired(required = false)
-    private VoskSpeechToTextService voskService;
-    
-    // Google Cloud Speech-to-Text configuration
-    @Value("${google.cloud.speech.enabled:true}")
-    private boolean googleCloudSpeechEnabled;
-    
-    @Value("${google.cloud.speech.language.code:en-US}")
-    private String languageCode;
+    private IntentDetector intentDetector;
     
-    @Value("${google.cloud.speech.sample.rate.hertz:8000}")
-    private int sampleRateHertz;
-    
-    @Value("${google.cloud.speech.enable.automatic.punctuation:true}")
-    private boolean enableAutomaticPunctuation;
+    @Autowired(required = false)
+    private VoskSpeechToTextService voskService;
     
-    @Value("${google.cloud.speech.enable.speaker.diarization:false}")
-    private boolean enableSpeakerDiarization;
+    @Autowired(required = false)
+    private GoogleSpeechToTextService googleService;
     
-    @Value("${google.cloud.speech.max.alternatives:1}")
-    private int maxAlternatives;
+    // Speech-to-text engines in the order they are tried
+    private final List<SpeechToTextEngine> engines = new ArrayList<>();
     
-    @Value("${google.cloud.speech.enable.word.confidence:false}")
-    private boolean enableWordConfidence;
+    // Question the last response of each session asked (turns of a session never overlap)
+    private final Map<String, OpenQuestion> openQuestions = new ConcurrentHashMap<>();
     
-    @Value("${google.cloud.speech.use.enhanced.model:false}")
-    private boolean useEnhancedModel;
+    @PostConstruct
+    public void initEngines() {
+        // Vosk first (open source, offline), Google Cloud as fallback
+        if (voskService != null) {
+            engines.add(voskService);
+        } else {
+            logger.debug("VoskSpeechToTextService bean not available - skipping Vosk transcription");
+        }
+        if (googleService != null) {
+            engines.add(googleService);
+        }
+    }
     
-    // Optional: Path to Google Cloud service account JSON file
-    // If not set, will use Application Default Credentials (GOOGLE_APPLICATION_CREDENTIALS env var)
-    @Value("${google.cloud.speech.credentials.path:}")
-    private String credentialsPath;
     /**
      * Process incoming audio data from Twilio Media Stream
      *
@@ -83,75 +127,45 @@ public class AiAgentService {
      * @return Text response to be converted to speech
      */
     public AiAgentResult processAudio(byte[] audioData, String sessionId, String callSid) {
+        return processAudio(audioData, 0, audioData.length, sessionId, callSid);
+    }
+
+    /**
+     * Process one utterance held in part of a larger (pooled) buffer
+     *
+     * @param audioData Buffer holding the audio (mu-law encoded) - only read during the call
+     * @param offset    Start of the utterance
+     * @param length    Utterance length in bytes
+     * @param sessionId WebSocket session ID
+     * @param callSid   Twilio Call SID (for logging / Salesforce Task linkage)
+     * @return Text response to be converted to speech
+     */
+    public AiAgentResult processAudio(byte[] audioData, int offset, int length, String sessionId, String callSid) {
+        return processAudio(audioData, offset, length, sessionId, callSid, null, null);
+    }
+
+    /**
+     * Process one utterance with the call's speech model, possibly answering a prompt with an
+     * expected answer set
+     *
+     * @param speechModel     Model chosen for the call (see {@link #prepareSpeechModel}), or null
+     * @param expectedGrammar Phrases the utterance is expected to be one of (see
+     *                        {@link AiAgentResult#getExpectedGrammar()}), or null
+     */
+    public AiAgentResult processAudio(byte[] audioData, int offset, int length, String sessionId, String callSid,
+                                      String speechModel, List<String> expectedGrammar) {
         //if (!aiAgentEnabled) {
          //   return null;
        // }
 
         try {
-            // Convert mu-law audio to PCM (if needed)
-            // Twilio sends audio in mu-law format (8-bit, 8000 Hz)
-            byte[] pcmAudio = convertMuLawToPCM(audioData);
-
             // Transcribe audio to text using available STT service
-            String transcribedText = transcribeAudio(pcmAudio);
+            // Twilio sends audio in mu-law format (8-bit, 8000 Hz); it is converted only for
+            // engines that do not accept it
+            String transcribedText = transcribeAudio(audioData, offset, length, AudioFormat.MULAW, speechModel, expectedGrammar);
             
             if (transcribedText != null && !transcribedText.trim().isEmpty()) {
-                // Log user speech prominently with timestamp
-                String timestamp = java.time.LocalDateTime.now().format(
-                    java.time.format.DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
-                logger.info("=".repeat(80));
-                logger.info("[{}] USER SPEECH [Session: {}]: {}", timestamp, sessionId, transcribedText);
-                logger.info("=".repeat(80));
-                
-                // Log to conversation logger if available
-                if (conversationLogger != null) {
-                    conversationLogger.logConversation(sessionId,
-                            callSid != null ? callSid : sessionId,
-                            "USER",
-                            transcribedText);
-                }
-
-                // Check if user wants to end the call
-                if (shouldEndCall(transcribedText)) {
-                    String farewellResponse = "Thank you for calling. Goodbye!";
-                    
-                    String farewellTimestamp = java.time.LocalDateTime.now().format(
-                            java.time.format.DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
-                    logger.info("-".repeat(80));
-                    logger.info("[{}] AI RESPONSE [Session: {}]: {}", farewellTimestamp, sessionId, farewellResponse);
-                    logger.info("-".repeat(80));
-                    
-                    if (conversationLogger != null) {
-                        conversationLogger.logConversation(sessionId,
-                                callSid != null ? callSid : sessionId,
-                                "AI",
-                                farewellResponse);
-                    }
-                    
-                    return new AiAgentResult(farewellResponse, true);
-                }
-
-                // TODO: Integrate with AI service (e.g., OpenAI GPT, Anthropic Claude)
-                String aiResponse = generateAiResponse(transcribedText, sessionId);
-
-                // Log AI response prominently with timestamp
-                if (aiResponse != null && !aiResponse.trim().isEmpty()) {
-                    timestamp = java.time.LocalDateTime.now().format(
-                        java.time.format.DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
-                    logger.info("-".repeat(80));
-                    logger.info("[{}] AI RESPONSE [Session: {}]: {}", timestamp, sessionId, aiResponse);
-                    logger.info("-".repeat(80));
-                    
-                    // Log to conversation logger if available
-                    if (conversationLogger != null) {
-                        conversationLogger.logConversation(sessionId,
-                                callSid != null ? callSid : sessionId,
-                                "AI",
-                                aiResponse);
-                    }
-                    
-                    return new AiAgentResult(aiResponse, false);
-                }
+                return processTranscript(transcribedText, sessionId, callSid);
             } else if (testMode) {/*
                 // Test mode: Generate a response even without transcription
                 // This allows testing the response playback mechanism
@@ -197,33 +211,97 @@ public class AiAgentService {
     }
 
     /**
-     * Convert mu-law encoded audio to PCM format
-     * Also applies normalization/amplification if audio is too quiet
+     * Logs the caller's transcribed speech and generates the AI response to it. Used directly
+     * when a streaming recognizer already produced the transcript.
+     *
+     * @param transcribedText What the caller said
+     * @param sessionId       WebSocket session ID
+     * @param callSid         Twilio Call SID (for logging / Salesforce Task linkage)
+     * @return the response, or null if none was generated
      */
-    private byte[] convertMuLawToPCM(byte[] muLawData) {
-        if (muLawData == null || muLawData.length == 0) {
-            return new byte[0];
+    public AiAgentResult processTranscript(String transcribedText, String sessionId, String callSid) {
+        IntentMatch match = intentDetector != null ? intentDetector.classify(transcribedText) : null;
+        return processTranscript(transcribedText, match != null ? match.getIntent() : null, sessionId, callSid);
+    }
+
+    /**
+     * Responds to an intent recognized in a partial transcript, before the caller's utterance
+     * was endpointed and decoded in full
+     *
+     * @param match     Intent and the partial transcript it was found in
+     * @param sessionId WebSocket session ID
+     * @param callSid   Twilio Call SID (for logging / Salesforce Task linkage)
+     * @return the response, or null if none was generated
+     */
+    public AiAgentResult processIntent(IntentMatch match, String sessionId, String callSid) {
+        logger.info("Early intent {} for session {}", match, sessionId);
+        return processTranscript(match.getTranscript(), match.getIntent(), sessionId, callSid);
+    }
+
+    private AiAgentResult processTranscript(String transcribedText, Intent intent, String sessionId, String callSid) {
+        if (transcribedText == null || transcribedText.trim().isEmpty()) {
+            return null;
         }
-        
-        // Mu-law to PCM conversion
-        short[] pcmData = new short[muLawData.length];
-        for (int i = 0; i < muLawData.length; i++) {
-            pcmData[i] = muLawToLinear(muLawData[i] & 0xFF);
+        try {
+            // Log user speech prominently with timestamp
+            String timestamp = java.time.LocalDateTime.now().format(
+                java.time.format.DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+            logger.info("=".repeat(80));
+            logger.info("[{}] USER SPEECH [Session: {}]: {}", timestamp, sessionId, transcribedText);
+            logger.info("=".repeat(80));
+        
+            // Log to conversation logger if available
+            if (conversationLogger != null) {
+                conversationLogger.logConversation(sessionId,
+                        callSid != null ? callSid : sessionId,
+                        "USER",
+                        transcribedText);
+            }
+
+            AiAgentResult result = respond(transcribedText, intent, sessionId);
+            String aiResponse = result != null ? result.getAiResponse() : null;
+
+            // Log AI response prominently with timestamp
+            if (aiResponse != null && !aiResponse.trim().isEmpty()) {
+                timestamp = java.time.LocalDateTime.now().format(
+                    java.time.format.DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+                logger.info("-".repeat(80));
+                logger.info("[{}] AI RESPONSE [Session: {}]: {}", timestamp, sessionId, aiResponse);
+                logger.info("-".repeat(80));
+            
+                // Log to conversation logger if available
+                if (conversationLogger != null) {
+                    conversationLogger.logConversation(sessionId,
+                            callSid != null ? callSid : sessionId,
+                            "AI",
+                            aiResponse);
+                }
+            
+                return result;
+            }
+        } catch (Exception e) {
+            logger.error("Error processing transcript for session: " + sessionId, e);
+        }
+        return null;
+    }
+
+    /**
+     * Factor quiet audio is amplified by before recognition (at most 10x), or 1.0 when it is
+     * loud enough or was already gain-controlled on the way in
+     */
+    private double quietAmplification(byte[] muLawData, int offset, int length) {
+        // Frames that went through gain control as they arrived are already at speech level
+        if (audioConditioningEnabled && agcEnabled) {
+            return 1.0;
         }
         
         // Find maximum amplitude for normalization
-        int maxAmplitude = 0;
-        for (short sample : pcmData) {
-            int abs = Math.abs(sample);
-            if (abs > maxAmplitude) {
-                maxAmplitude = abs;
-            }
-        }
+        int maxAmplitude = G711Codec.peak(muLawData, offset, length);
         
-        // Normalize/amplify if audio is too quiet (max amplitude < 1000)
+        // Normalize/amplify if audio is too quiet (max amplitude < 4000 of 32767)
         // This helps Google Cloud Speech-to-Text recognize quiet audio
-        if (maxAmplitude > 0 && maxAmplitude < 1000) {
-            double amplificationFactor = 1000.0 / maxAmplitude;
+        if (maxAmplitude > 0 && maxAmplitude < QUIET_AMPLITUDE) {
+            double amplificationFactor = (double) QUIET_AMPLITUDE / maxAmplitude;
             // Limit amplification to avoid distortion (max 10x)
             if (amplificationFactor > 10.0) {
                 amplificationFactor = 10.0;
@@ -231,195 +309,223 @@ public class AiAgentService {
             
             logger.debug("Audio is quiet (max amplitude: {}), applying {}x amplification", 
                         maxAmplitude, String.format("%.2f", amplificationFactor));
-            
-            for (int i = 0; i < pcmData.length; i++) {
-                int amplified = (int) (pcmData[i] * amplificationFactor);
-                // Clamp to 16-bit range
-                if (amplified > 32767) amplified = 32767;
-                if (amplified < -32768) amplified = -32768;
-                pcmData[i] = (short) amplified;
-            }
+            return amplificationFactor;
         }
-        
-        // Convert to byte array (little-endian)
-        ByteBuffer buffer = ByteBuffer.allocate(pcmData.length * 2);
-        buffer.order(ByteOrder.LITTLE_ENDIAN);
-        for (short sample : pcmData) {
-            buffer.putShort(sample);
-        }
-        return buffer.array();
+        return 1.0;
     }
-
+    
     /**
-     * Convert mu-law sample to linear PCM
-     * Standard ITU-T G.711 mu-law algorithm
-     * Formula: linear = sign * (((mantissa << 1) + 33) << exponent - 33)
+     * Convert mu-law encoded audio to PCM format (LINEAR16, little-endian), amplified by
+     * {@code amplificationFactor}
      */
-    private short muLawToLinear(int muLawByte) {
-        // Complement all bits (invert)
-        muLawByte = ~muLawByte;
-        
-        // Extract sign bit (bit 7) - 0 for positive, 1 for negative
-        int sign = (muLawByte & 0x80) >> 7;
-        
-        // Extract exponent (bits 4-6)
-        int exponent = (muLawByte >> 4) & 0x07;
-        
-        // Extract mantissa (bits 0-3)
-        int mantissa = muLawByte & 0x0F;
+    private byte[] convertMuLawToPCM(byte[] muLawData, int offset, int length, double amplificationFactor) {
+        if (muLawData == null || length == 0) {
+            return new byte[0];
+        }
         
-        // Calculate linear value using ITU-T G.711 formula
-        // Bias = 33 (0x21)
-        int bias = 33;
-        int sample = ((mantissa << 1) + bias) << exponent;
-        sample = sample - bias;
+        // Mu-law to PCM conversion
+        byte[] pcmData = new byte[length * 2];
+        G711Codec.decodeToLinear16(muLawData, offset, pcmData, 0, length);
         
-        // Apply sign: if sign bit is 1, make negative
-        if (sign == 1) {
-            sample = -sample;
+        if (amplificationFactor != 1.0) {
+            for (int i = 0; i < pcmData.length; i += 2) {
+                int sample = (short) ((pcmData[i] & 0xFF) | (pcmData[i + 1] << 8));
+                int amplified = (int) (sample * amplificationFactor);
+                // Clamp to 16-bit range
+                if (amplified > 32767) amplified = 32767;
+                if (amplified < -32768) amplified = -32768;
+                pcmData[i] = (byte) amplified;
+                pcmData[i + 1] = (byte) (amplified >> 8);
+            }
         }
         
-        // Clamp to 16-bit signed range
-        if (sample > 32767) sample = 32767;
-        if (sample < -32768) sample = -32768;
-        
-        return (short) sample;
+        return pcmData;
     }
     
     /**
-     * Analyze audio content to check if it contains actual speech
+     * Transcribe 16-bit PCM audio to text using available speech-to-text services
      */
-    private void analyzeAudioContent(byte[] pcmAudio) {
-        if (pcmAudio == null || pcmAudio.length < 4) {
-            return;
-        }
-        
-        // Convert bytes to 16-bit samples (little-endian)
-        int sampleCount = pcmAudio.length / 2;
-        long sum = 0;
-        long sumSquares = 0;
-        int zeroCount = 0;
-        int maxSample = 0;
-        int minSample = 0;
-        
-        ByteBuffer buffer = ByteBuffer.wrap(pcmAudio);
-        buffer.order(ByteOrder.LITTLE_ENDIAN);
-        
-        for (int i = 0; i < sampleCount && i < 1000; i++) { // Analyze first 1000 samples
-            short sample = buffer.getShort();
-            int absSample = Math.abs(sample);
-            
-            sum += absSample;
-            sumSquares += (long) absSample * absSample;
-            
-            if (absSample == 0) {
-                zeroCount++;
-            }
-            
-            if (absSample > maxSample) {
-                maxSample = absSample;
-            }
-            if (absSample < minSample || i == 0) {
-                minSample = absSample;
-            }
-        }
-        
-        double avgAmplitude = (double) sum / Math.min(sampleCount, 1000);
-        double variance = ((double) sumSquares / Math.min(sampleCount, 1000)) - (avgAmplitude * avgAmplitude);
-        double stdDev = Math.sqrt(variance);
-        double zeroPercent = (double) zeroCount * 100.0 / Math.min(sampleCount, 1000);
-        
-        logger.info("Audio analysis: avg={}, stdDev={}, max={}, min={}, zeroPercent={}%, samples={}", 
-                   String.format("%.2f", avgAmplitude),
-                   String.format("%.2f", stdDev),
-                   maxSample,
-                   minSample,
-                   String.format("%.2f", zeroPercent),
-                   sampleCount);
-        
-        // Warn if audio looks like silence
-        if (avgAmplitude < 100 && stdDev < 50) {
-            logger.warn("Audio appears to be mostly silence (avg amplitude: {}, std dev: {})", 
-                       String.format("%.2f", avgAmplitude), String.format("%.2f", stdDev));
-        }
-        
-        // Warn if audio is all zeros
-        if (zeroPercent > 95.0) {
-            logger.warn("Audio appears to be all zeros ({}% zero samples) - conversion may have failed", 
-                       String.format("%.2f", zeroPercent));
+    public String transcribeAudio(byte[] pcmAudio) {
+        if (pcmAudio == null) {
+            logger.warn("No audio data provided for transcription");
+            return null;
         }
+        return transcribeAudio(pcmAudio, 0, pcmAudio.length, AudioFormat.LINEAR16);
     }
     
     /**
      * Transcribe audio to text using available speech-to-text services
-     * Tries Vosk first (open source), falls back to Google Cloud Speech-to-Text
+     * Tries Vosk first (open source), falls back to Google Cloud Speech-to-Text.
+     * Each engine gets the audio in the format it accepts: mu-law is passed through as is
+     * where possible and expanded to LINEAR16 (once) only for engines that need it.
      */
-    public String transcribeAudio(byte[] pcmAudio) {
-        if (pcmAudio == null || pcmAudio.length == 0) {
+    public String transcribeAudio(byte[] audio, int offset, int length, AudioFormat format) {
+        return transcribeAudio(audio, offset, length, format, null, null);
+    }
+    
+    /**
+     * @param model   Speech model chosen for the call, passed to engines with several models
+     *                (they fall back to their default), or null
+     * @param grammar Phrases the utterance is expected to be one of, passed to engines that
+     *                can constrain decoding to them, or null
+     */
+    public String transcribeAudio(byte[] audio, int offset, int length, AudioFormat format, String model,
+                                  List<String> grammar) {
+        if (audio == null || length == 0) {
             logger.warn("No audio data provided for transcription");
             return null;
         }
         
-        // Try Vosk first if available
-        if (voskService != null) {
-            if (voskService.isReady()) {
-                try {
-                    logger.debug("Attempting Vosk transcription for {} bytes of audio", pcmAudio.length);
-                    String transcription = voskService.transcribe(pcmAudio, sampleRateHertz);
-                    if (transcription != null && !transcription.trim().isEmpty()) {
-                        logger.info("Vosk transcription successful: {}", transcription);
-                        return transcription;
-                    } else {
-                        logger.warn("Vosk returned null or empty transcription");
-                    }
-                } catch (Exception e) {
-                    logger.error("Vosk transcription failed: {}", e.getMessage(), e);
-                }
-            } else {
-                logger.debug("Vosk service not ready. Library available: {}", voskService.isLibraryAvailable());
+        // Quiet audio that was not gain-controlled is amplified, which needs 16-bit samples
+        if (format == AudioFormat.MULAW) {
+            double amplification = quietAmplification(audio, offset, length);
+            if (amplification != 1.0) {
+                audio = convertMuLawToPCM(audio, offset, length, amplification);
+                offset = 0;
+                length = audio.length;
+                format = AudioFormat.LINEAR16;
             }
-        } else {
-            logger.debug("VoskSpeechToTextService bean not available - skipping Vosk transcription");
         }
         
-        // Fallback to Google Cloud Speech-to-Text (if enabled and credentials are configured)
-        if (googleCloudSpeechEnabled) {
-            logger.debug("Attempting Google Cloud Speech-to-Text transcription");
+        // Expanded at most once, for the first engine that needs it
+        byte[] linear16 = null;
+        for (SpeechToTextEngine engine : engines) {
+            if (!engine.isReady()) {
+                logger.debug("{} speech-to-text not ready - skipping", engine.getName());
+                continue;
+            }
+            AudioFormat target = engine.negotiate(format);
             try {
-                String transcription = transcribeWithGoogleCloud(pcmAudio);
-                if (transcription != null && !transcription.trim().isEmpty()) {
-                    logger.info("Google Cloud transcription successful: {}", transcription);
-                    return transcription;
+                String transcription;
+                if (target == format) {
+                    logger.debug("Attempting {} transcription for {} bytes of {} audio", engine.getName(), length, format);
+                    transcription = engine.transcribe(audio, offset, length, format, model, grammar);
+                } else if (format == AudioFormat.MULAW && target == AudioFormat.LINEAR16) {
+                    if (linear16 == null) {
+                        linear16 = convertMuLawToPCM(audio, offset, length, 1.0);
+                    }
+                    logger.debug("Attempting {} transcription for {} bytes of LINEAR16 audio", engine.getName(), linear16.length);
+                    transcription = engine.transcribe(linear16, 0, linear16.length, AudioFormat.LINEAR16, model, grammar);
                 } else {
-                    logger.warn("Google Cloud returned null or empty transcription");
+                    logger.warn("{} does not accept {} audio - skipping", engine.getName(), format);
+                    continue;
                 }
-            } catch (java.io.IOException e) {
-                if (e.getMessage() != null && e.getMessage().contains("default credentials were not found")) {
-                    logger.warn("Google Cloud credentials not configured. To use Google Cloud Speech-to-Text:");
-                    logger.warn("1. Set GOOGLE_APPLICATION_CREDENTIALS environment variable to your service account JSON file, OR");
-                    logger.warn("2. Run 'gcloud auth application-default login' to set up Application Default Credentials");
-                    logger.warn("3. Or set the credentials in application.properties using google.cloud.credentials.path");
-                    logger.warn("Skipping Google Cloud - using Vosk only or test mode");
+                if (transcription != null && !transcription.trim().isEmpty()) {
+                    logger.info("{} transcription successful: {}", engine.getName(), transcription);
+                    return transcription;
                 } else {
-                    logger.error("Google Cloud Speech-to-Text failed: {}", e.getMessage(), e);
+                    logger.warn("{} returned null or empty transcription", engine.getName());
                 }
             } catch (Exception e) {
-                logger.error("Google Cloud Speech-to-Text failed: {}", e.getMessage(), e);
+                logger.error("{} transcription failed: {}", engine.getName(), e.getMessage(), e);
             }
-        } else {
-            logger.debug("Google Cloud Speech-to-Text is disabled in configuration");
         }
         
         logger.warn("All speech-to-text services failed or returned empty result");
         return null;
     }
 
+    /**
+     * Starts loading the speech model a call asked for (e.g. its language), so the engines
+     * have it ready by the first utterance; until then they decode with their default model
+     *
+     * @param speechModel Engine-specific model key, e.g. a vosk.models key
+     */
+    public void prepareSpeechModel(String speechModel) {
+        if (speechModel == null || speechModel.trim().isEmpty()) {
+            return;
+        }
+        for (SpeechToTextEngine engine : engines) {
+            engine.prepareModel(speechModel);
+        }
+    }
+
+    /**
+     * Opens the recognition of the caller's next utterance on the first engine that can
+     * recognize while the caller speaks. The audio sent is the caller's mu-law as buffered.
+     *
+     * @param sessionId WebSocket session ID (for logging)
+     * @param listener  Receives partial transcripts and end-of-utterance events
+     * @return the recognition, or null if no streaming engine is available
+     */
+    public StreamingRecognitionSession openStreamingRecognition(String sessionId, StreamingRecognitionListener listener) {
+        return openStreamingRecognition(sessionId, null, null, listener);
+    }
+
+    /**
+     * @param speechModel     Model chosen for the call, or null
+     * @param expectedGrammar Phrases the utterance is expected to be one of, or null
+     */
+    public StreamingRecognitionSession openStreamingRecognition(String sessionId, String speechModel, List<String> expectedGrammar,
+                                                                StreamingRecognitionListener listener) {
+        for (SpeechToTextEngine engine : engines) {
+            if (!(engine instanceof StreamingSpeechToTextEngine)) {
+                continue;
+            }
+            StreamingSpeechToTextEngine streamingEngine = (StreamingSpeechToTextEngine) engine;
+            if (!streamingEngine.isStreamingReady()) {
+                continue;
+            }
+            try {
+                StreamingRecognitionSession recognition = streamingEngine.startStreaming(AudioFormat.MULAW, speechModel,
+                                                                                          expectedGrammar, listener);
+                logger.debug("{} streaming recognition opened for session {}", engine.getName(), sessionId);
+                return recognition;
+            } catch (Exception e) {
+                logger.warn("{} streaming recognition could not be opened for session {}: {}", engine.getName(), sessionId, e.getMessage());
+            }
+        }
+        return null;
+    }
+
+
+    /**
+     * Forgets the conversation state of a session that ended
+     */
+    public void endConversation(String sessionId) {
+        openQuestions.remove(sessionId);
+    }
+
+    /**
+     * The response to what the caller said: intents the call flow handles itself (goodbye,
+     * asking for a person, "no" to {@link #ANYTHING_ELSE_PROMPT}) get their own answer,
+     * anything else goes to the AI - yes and no with the intent as context
+     *
+     * @param intent Intent recognized in the utterance, or null
+     */
+    private AiAgentResult respond(String transcribedText, Intent intent, String sessionId) {
+        OpenQuestion asked = openQuestions.remove(sessionId);
+        if (intent == Intent.GOODBYE || shouldEndCall(transcribedText)) {
+            return new AiAgentResult("Thank you for calling. Goodbye!", true);
+        }
+        if (intent == Intent.NO && asked != null && asked.question == Question.ANYTHING_ELSE) {
+            return new AiAgentResult("Okay. Thank you for calling. Goodbye!", true);
+        }
+        if (intent == Intent.HUMAN_AGENT) {
+            if (transferNumber == null || transferNumber.trim().isEmpty()) {
+                logger.info("Session {} asked for a person, but no conversation.transfer.number is configured", sessionId);
+                return new AiAgentResult("I'm sorry, no one is available to take your call right now. "
+                        + "I can keep helping you, or you can say goodbye to end the call.", false);
+            }
+            return new AiAgentResult("Please hold while I connect you to a member of our team.", false, null, transferNumber);
+        }
+        // TODO: Integrate with AI service (e.g., OpenAI GPT, Anthropic Claude)
+        return generateAiResponse(transcribedText, intent, asked, sessionId);
+    }
 
     /**
      * Generate AI response based on transcribed text
      * TODO: Integrate with actual AI service
+     *
+     * A response that asks a closed question declares the answers it expects on the result, so
+     * the reply is decoded against them: the rescheduling questions below ask for a day
+     * ({@link ExpectedGrammars#WEEKDAYS}), a time ({@link ExpectedGrammars#TIME_SLOTS}) and a
+     * confirmation ({@link ExpectedGrammars#YES_NO}). Open questions declare nothing.
+     *
+     * @param intent Intent recognized in the input (a yes or no), or null
+     * @param asked  Question the previous response asked, or null
      */
-    private String generateAiResponse(String userInput, String sessionId) {
+    private AiAgentResult generateAiResponse(String userInput, Intent intent, OpenQuestion asked, String sessionId) {
         // Placeholder implementation
         // In production, integrate with:
         // - OpenAI GPT-4
@@ -427,13 +533,91 @@ public class AiAgentService {
         // - Google Gemini
         // - Custom LLM
         
-        logger.debug("Generating AI response for input: {}", userInput);
+        logger.debug("Generating AI response for input: {} (intent {}, answering {})", userInput, intent, asked);
+        
+        AiAgentResult rescheduling = reschedule(userInput, intent, asked, sessionId);
+        if (rescheduling != null) {
+            return rescheduling;
+        }
+        
+        if (intent == Intent.YES && asked != null && asked.question == Question.ANYTHING_ELSE) {
+            return new AiAgentResult("Sure, what else can I help you with?", false);
+        }
         
         // Simple echo response for demonstration
         // In production, replace this with actual AI service call
-        String response = "I heard you say: " + userInput + ". This is a placeholder response.";
+        String response = "I heard you say: " + userInput + ". This is a placeholder response. " + ANYTHING_ELSE_PROMPT;
         
-        return response;
+        // Open question: the caller may answer with anything, so no grammar
+        return ask(sessionId, new OpenQuestion(Question.ANYTHING_ELSE, null, null), response, null);
+    }
+
+    /**
+     * Moving an appointment: which day, what time, then a yes/no confirmation
+     *
+     * @return the next response, or null if the input is not part of rescheduling
+     */
+    private AiAgentResult reschedule(String userInput, Intent intent, OpenQuestion asked, String sessionId) {
+        String input = normalize(userInput);
+        Question question = asked != null ? asked.question : null;
+        if (question == Question.DAY) {
+            String day = findPhrase(input, ExpectedGrammars.WEEKDAYS);
+            if (day != null) {
+                return ask(sessionId, new OpenQuestion(Question.TIME, day, null),
+                        "What time on " + day + " works for you?", ExpectedGrammars.TIME_SLOTS);
+            }
+        } else if (question == Question.TIME) {
+            String time = findPhrase(input, ExpectedGrammars.TIME_SLOTS);
+            if (time != null) {
+                return ask(sessionId, new OpenQuestion(Question.CONFIRM, asked.day, time),
+                        "So that's " + asked.day + " at " + time + ". Shall I book it?", ExpectedGrammars.YES_NO);
+            }
+        } else if (question == Question.CONFIRM) {
+            if (intent == Intent.YES) {
+                return ask(sessionId, new OpenQuestion(Question.ANYTHING_ELSE, null, null),
+                        "Done, your appointment is now on " + asked.day + " at " + asked.time + ". " + ANYTHING_ELSE_PROMPT, null);
+            }
+            if (intent == Intent.NO) {
+                return ask(sessionId, new OpenQuestion(Question.DAY, null, null),
+                        "Okay. Which day would suit you instead?", ExpectedGrammars.WEEKDAYS);
+            }
+        }
+        if (input.contains("reschedule") || input.contains("change my appointment") || input.contains("move my appointment")) {
+            return ask(sessionId, new OpenQuestion(Question.DAY, null, null),
+                    "Sure. Which day would you like to move your appointment to?", ExpectedGrammars.WEEKDAYS);
+        }
+        return null;
+    }
+
+    /**
+     * A response ending with {@code question}, whose answer is decoded against {@code grammar}
+     */
+    private AiAgentResult ask(String sessionId, OpenQuestion question, String response, List<String> grammar) {
+        openQuestions.put(sessionId, question);
+        return new AiAgentResult(response, false, grammar);
+    }
+
+    /**
+     * Lower case, punctuation other than apostrophes removed, single spaces
+     */
+    private static String normalize(String text) {
+        return text.toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9' ]", " ").trim().replaceAll("\\s+", " ");
+    }
+
+    /**
+     * Longest phrase of {@code phrases} that appears as whole words in {@code input}
+     *
+     * @return the phrase, or null if none does
+     */
+    private static String findPhrase(String input, List<String> phrases) {
+        String padded = " " + input + " ";
+        String found = null;
+        for (String phrase : phrases) {
+            if ((found == null || phrase.length() > found.length()) && padded.contains(" " + phrase + " ")) {
+                found = phrase;
+            }
+        }
+        return found;
     }
 
     /**
@@ -455,155 +639,4 @@ public class AiAgentService {
                normalized.contains("nothing else") ||
                normalized.contains("end the call");
     }
-    /**
-     * Transcribe audio using Google Cloud Speech-to-Text API
-     * 
-     * @param audioData PCM audio data (16-bit linear)
-     * @return Transcribed text or null if transcription fails
-     * @throws Exception if API call fails
-     */
-    private String transcribeWithGoogleCloud(byte[] audioData) throws Exception {
-        if (audioData == null || audioData.length == 0) {
-            logger.warn("Empty audio data provided to Google Cloud Speech-to-Text");
-            return null;
-        }
-        
-        // Validate audio data size and format
-        // For 16-bit PCM at 8000 Hz: 2 bytes per sample, so 8000 samples/second = 16000 bytes/second
-        // Minimum recommended: ~500ms = 8000 bytes
-        int minRecommendedBytes = (sampleRateHertz * 2) / 2; // 0.5 seconds worth of audio
-        double audioDurationSeconds = (double) audioData.length / (sampleRateHertz * 2);
-        
-        logger.info("Google Cloud Speech-to-Text: {} bytes of audio ({} seconds at {} Hz, {} samples)", 
-                   audioData.length, 
-                   String.format("%.2f", audioDurationSeconds),
-                   sampleRateHertz,
-                   audioData.length / 2);
-        
-        if (audioData.length < minRecommendedBytes) {
-            logger.warn("Audio data is very short ({} bytes, {} seconds). Google Cloud may not return results for audio shorter than ~0.5 seconds.", 
-                       audioData.length, 
-                       String.format("%.2f", audioDurationSeconds));
-        }
-        
-        // Check if audio data looks valid (should be even number of bytes for 16-bit PCM)
-        if (audioData.length % 2 != 0) {
-            logger.warn("Audio data length is not even ({} bytes). PCM 16-bit audio should have even byte count.", audioData.length);
-        }
-        
-        // Analyze audio content to check if it contains actual audio (not just silence)
-        analyzeAudioContent(audioData);
-        
-        // Create SpeechClient with explicit credentials if provided, otherwise use default
-        SpeechClient speechClient;
-        if (credentialsPath != null && !credentialsPath.trim().isEmpty()) {
-            logger.debug("Using explicit credentials from: {}", credentialsPath);
-            try (FileInputStream credentialsStream = new FileInputStream(credentialsPath)) {
-                GoogleCredentials credentials = GoogleCredentials.fromStream(credentialsStream);
-                SpeechSettings speechSettings = SpeechSettings.newBuilder()
-                    .setCredentialsProvider(() -> credentials)
-                    .build();
-                speechClient = SpeechClient.create(speechSettings);
-            } catch (IOException e) {
-                logger.error("Failed to load credentials from {}: {}", credentialsPath, e.getMessage());
-                throw new IOException("Failed to load Google Cloud credentials from: " + credentialsPath, e);
-            }
-        } else {
-            logger.debug("Using Application Default Credentials (GOOGLE_APPLICATION_CREDENTIALS or gcloud auth)");
-            speechClient = SpeechClient.create();
-        }
-        
-        try {
-            ByteString audioBytes = ByteString.copyFrom(audioData);
-            
-            // Build recognition config with configured options
-            RecognitionConfig.Builder configBuilder = RecognitionConfig.newBuilder()
-                .setEncoding(RecognitionConfig.AudioEncoding.LINEAR16)
-                .setSampleRateHertz(sampleRateHertz)
-                .setLanguageCode(languageCode)
-                .setEnableAutomaticPunctuation(enableAutomaticPunctuation)
-                .setMaxAlternatives(maxAlternatives);
-            
-            // Enable word-level confidence if configured
-            if (enableWordConfidence) {
-                configBuilder.setEnableWordConfidence(true);
-            }
-            
-            // Use enhanced model if configured
-            if (useEnhancedModel) {
-                configBuilder.setModel("phone_call"); // Enhanced model for phone calls
-            }
-            
-            // Note: Speaker diarization requires streaming recognition or long-running operations
-            // and is not available in the synchronous recognize API
-            // If needed, implement using StreamingRecognizeRequest or LongRunningRecognizeRequest
-            if (enableSpeakerDiarization) {
-                logger.warn("Speaker diarization is not supported in synchronous recognition. " +
-                           "Use streaming recognition for speaker diarization support.");
-            }
-            
-            RecognitionConfig config = configBuilder.build();
-            
-            RecognitionAudio audio = RecognitionAudio.newBuilder()
-                .setContent(audioBytes)
-                .build();
-            
-            RecognizeRequest request = RecognizeRequest.newBuilder()
-                .setConfig(config)
-                .setAudio(audio)
-                .build();
-            
-            logger.info("Sending {} bytes of audio to Google Cloud Speech-to-Text (sample rate: {} Hz, language: {}, duration: {}s)", 
-                        audioData.length, 
-                        sampleRateHertz, 
-                        languageCode,
-                        String.format("%.2f", audioDurationSeconds));
-            
-            RecognizeResponse response = speechClient.recognize(request);
-            
-            // Process results
-            if (response.getResultsList().isEmpty()) {
-                logger.warn("Google Cloud Speech-to-Text returned no results. Possible reasons:");
-                logger.warn("  - Audio too short (current: {}s, recommended: >0.5s)", String.format("%.2f", audioDurationSeconds));
-                logger.warn("  - Audio contains only silence or noise");
-                logger.warn("  - Audio format mismatch (expected: LINEAR16, {} Hz)", sampleRateHertz);
-                logger.warn("  - Language code mismatch (current: {})", languageCode);
-                return null;
-            }
-            
-            // Get the best transcription result
-            SpeechRecognitionResult bestResult = response.getResults(0);
-            if (bestResult.getAlternativesList().isEmpty()) {
-                logger.warn("Google Cloud Speech-to-Text result has no alternatives");
-                return null;
-            }
-            
-            String transcript = bestResult.getAlternatives(0).getTranscript();
-            float confidence = bestResult.getAlternatives(0).getConfidence();
-            
-            logger.info("Google Cloud transcription successful: '{}' (confidence: {}%)", 
-                       transcript,
-                       String.format("%.2f", confidence * 100));
-            
-            // Log alternative transcriptions if available
-            if (bestResult.getAlternativesList().size() > 1) {
-                logger.debug("Alternative transcriptions available:");
-                for (int i = 1; i < bestResult.getAlternativesList().size(); i++) {
-                    float altConfidence = bestResult.getAlternatives(i).getConfidence();
-                    logger.debug("  Alternative {}: {} (confidence: {}%)", 
-                                i, 
-                                bestResult.getAlternatives(i).getTranscript(),
-                                String.format("%.2f", altConfidence * 100));
-                }
-            }
-            
-            return transcript;
-        } finally {
-            if (speechClient != null) {
-                speechClient.close();
-            }
-        }
-    }
 }
-
-
@@ -0,0 +1,585 @@
+package com.example.twilio.service;
+
+import com.example.twilio.audio.AudioFormat;
+import com.example.twilio.audio.G711Codec;
+import com.google.api.gax.core.FixedCredentialsProvider;
+import com.google.api.gax.grpc.ChannelPoolSettings;
+import com.google.auth.oauth2.GoogleCredentials;
+import com.google.cloud.speech.v1.RecognitionAudio;
+import com.google.cloud.speech.v1.RecognitionConfig;
+import com.google.cloud.speech.v1.RecognizeRequest;
+import com.google.cloud.speech.v1.RecognizeResponse;
+import com.google.cloud.speech.v1.SpeechClient;
+import com.google.cloud.speech.v1.SpeechRecognitionResult;
+import com.google.cloud.speech.v1.SpeechSettings;
+import com.google.cloud.speech.v1.StreamingRecognitionConfig;
+import com.google.protobuf.ByteString;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Google Cloud Speech-to-Text engine.
+ *
+ * Google decodes 8 kHz mu-law itself, so by default the caller's audio is uploaded as it came
+ * from Twilio - half the bytes of LINEAR16 and no conversion pass. LINEAR16 is still accepted
+ * (e.g. for audio another stage has already expanded) and can be forced with
+ * {@code google.cloud.speech.audio.format=LINEAR16}.
+ *
+ * One {@link SpeechClient} serves every call. Creating a client opens gRPC channels and does a
+ * TLS handshake, which used to be paid on every utterance; now the credentials are loaded once,
+ * the client keeps a pool of channels ({@code google.cloud.speech.channel.pool.size}) and is
+ * warmed up at startup, and the access token is refreshed on a background thread before it
+ * expires so no turn waits for the OAuth round trip either.
+ *
+ * The client is only ever created on the background thread: loading Application Default
+ * Credentials can block on the metadata server or the token endpoint, which must not stall the
+ * WebSocket message thread that opens streaming recognitions. Until it exists the engine reports
+ * itself not ready, so turns go to the other engines. If creation fails (e.g. missing
+ * credentials) it is tried again after {@code google.cloud.speech.client.retry.seconds}, not on
+ * every utterance.
+ *
+ * With {@code google.cloud.speech.streaming.enabled} each utterance is also recognized while it
+ * is spoken, over its own StreamingRecognize call on the same client (see
+ * {@link GoogleStreamingRecognitionSession}).
+ */
+@Service
+public class GoogleSpeechToTextService implements StreamingSpeechToTextEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(GoogleSpeechToTextService.class);
+
+    @Value("${google.cloud.speech.enabled:true}")
+    private boolean enabled;
+
+    // Preferred upload encoding: MULAW (native Twilio audio) or LINEAR16
+    @Value("${google.cloud.speech.audio.format:MULAW}")
+    private String audioFormat;
+
+    @Value("${google.cloud.speech.language.code:en-US}")
+    private String languageCode;
+
+    @Value("${google.cloud.speech.sample.rate.hertz:8000}")
+    private int sampleRateHertz;
+
+    @Value("${google.cloud.speech.enable.automatic.punctuation:true}")
+    private boolean enableAutomaticPunctuation;
+
+    @Value("${google.cloud.speech.enable.speaker.diarization:false}")
+    private boolean enableSpeakerDiarization;
+
+    @Value("${google.cloud.speech.max.alternatives:1}")
+    private int maxAlternatives;
+
+    @Value("${google.cloud.speech.enable.word.confidence:false}")
+    private boolean enableWordConfidence;
+
+    @Value("${google.cloud.speech.use.enhanced.model:false}")
+    private boolean useEnhancedModel;
+
+    // Optional: Path to Google Cloud service account JSON file
+    // If not set, will use Application Default Credentials (GOOGLE_APPLICATION_CREDENTIALS env var)
+    @Value("${google.cloud.speech.credentials.path:}")
+    private String credentialsPath;
+
+    // gRPC channels shared by all concurrent recognitions
+    @Value("${google.cloud.speech.channel.pool.size:2}")
+    private int channelPoolSize;
+
+    // Create the client and send one tiny request per channel at startup
+    @Value("${google.cloud.speech.warmup.enabled:true}")
+    private boolean warmupEnabled;
+
+    // How often the background thread checks whether the access token is about to expire
+    @Value("${google.cloud.speech.credentials.refresh.seconds:60}")
+    private long credentialsRefreshSeconds;
+
+    // Wait before creating the client again after a failed attempt
+    @Value("${google.cloud.speech.client.retry.seconds:30}")
+    private long clientRetrySeconds;
+
+    // Recognize utterances while they are spoken (StreamingRecognize)
+    @Value("${google.cloud.speech.streaming.enabled:true}")
+    private boolean streamingEnabled;
+
+    // Let Google decide when the caller has finished speaking
+    @Value("${google.cloud.speech.streaming.single.utterance:true}")
+    private boolean streamingSingleUtterance;
+
+    // Audio per streaming request
+    @Value("${google.cloud.speech.streaming.chunk.ms:100}")
+    private int streamingChunkMs;
+
+    // How long the end of a turn waits for the final streaming result
+    @Value("${google.cloud.speech.streaming.final.timeout.ms:1500}")
+    private long streamingFinalTimeoutMs;
+
+    private static final String CLOUD_PLATFORM_SCOPE = "https://www.googleapis.com/auth/cloud-platform";
+    // Warm-up request: 100 ms of mu-law silence
+    private static final int WARMUP_BYTES = G711Codec.SAMPLE_RATE / 10;
+
+    private List<AudioFormat> supportedFormats = List.of(AudioFormat.MULAW, AudioFormat.LINEAR16);
+
+    private volatile SpeechClient client;
+    private volatile GoogleCredentials credentials;
+    // Creation queued on the maintenance thread, and when a failed attempt may be repeated
+    private final AtomicBoolean clientRequested = new AtomicBoolean(false);
+    private volatile long clientRetryAtNanos;
+    private final ScheduledExecutorService maintenance = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "speech-client-maintenance");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    public void init() {
+        AudioFormat preferred;
+        try {
+            preferred = AudioFormat.valueOf(audioFormat.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            logger.warn("Unknown google.cloud.speech.audio.format '{}' - using MULAW", audioFormat);
+            preferred = AudioFormat.MULAW;
+        }
+        supportedFormats = preferred == AudioFormat.LINEAR16
+                ? List.of(AudioFormat.LINEAR16)
+                : List.of(AudioFormat.MULAW, AudioFormat.LINEAR16);
+        logger.info("Google Cloud Speech-to-Text {} (upload format: {})", enabled ? "enabled" : "disabled", preferred);
+        if (!enabled) {
+            return;
+        }
+        if (warmupEnabled) {
+            // Off the startup thread - a slow network must not delay the application
+            clientRequested.set(true);
+            maintenance.execute(this::warmUp);
+        } else {
+            requestClient();
+        }
+        long refreshSeconds = Math.max(10, credentialsRefreshSeconds);
+        maintenance.scheduleWithFixedDelay(this::refreshCredentials, refreshSeconds, refreshSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Creates the client and sends one short request per channel, so the first caller does
+     * not pay for channel setup, TLS and the first access token
+     */
+    private void warmUp() {
+        long start = System.currentTimeMillis();
+        try {
+            SpeechClient speechClient = createClient();
+            byte[] silence = new byte[WARMUP_BYTES];
+            Arrays.fill(silence, G711Codec.SILENCE);
+            RecognizeRequest request = RecognizeRequest.newBuilder()
+                .setConfig(RecognitionConfig.newBuilder()
+                    .setEncoding(RecognitionConfig.AudioEncoding.MULAW)
+                    .setSampleRateHertz(G711Codec.SAMPLE_RATE)
+                    .setLanguageCode(languageCode)
+                    .build())
+                .setAudio(RecognitionAudio.newBuilder().setContent(ByteString.copyFrom(silence)).build())
+                .build();
+            for (int i = 0; i < Math.max(1, channelPoolSize); i++) {
+                speechClient.recognize(request);
+            }
+            logger.info("Google Cloud Speech-to-Text client warmed up in {} ms ({} channels)",
+                       System.currentTimeMillis() - start, Math.max(1, channelPoolSize));
+        } catch (Exception e) {
+            logger.warn("Google Cloud Speech-to-Text warm-up failed: {}", e.getMessage());
+        } finally {
+            clientRequested.set(false);
+        }
+    }
+
+    /**
+     * Refreshes the access token ahead of expiry (a no-op while it is still fresh), so
+     * recognition requests never block on the token endpoint
+     */
+    private void refreshCredentials() {
+        GoogleCredentials current = credentials;
+        if (current == null) {
+            return;
+        }
+        try {
+            current.refreshIfExpired();
+        } catch (Exception e) {
+            logger.warn("Refreshing Google Cloud credentials failed (will retry): {}", e.getMessage());
+        }
+    }
+
+    /**
+     * The shared client if it has been created; otherwise queues its creation on the
+     * maintenance thread (unless an earlier attempt failed too recently) and returns null.
+     * Never blocks, so it is safe on the WebSocket message thread.
+     */
+    private SpeechClient liveClient() {
+        SpeechClient current = client;
+        if (current == null) {
+            requestClient();
+        }
+        return current;
+    }
+
+    private SpeechClient requireClient() throws IOException {
+        SpeechClient current = liveClient();
+        if (current == null) {
+            throw new IOException("Google Cloud Speech-to-Text client is not ready");
+        }
+        return current;
+    }
+
+    private void requestClient() {
+        if (!enabled || System.nanoTime() - clientRetryAtNanos < 0 || !clientRequested.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            maintenance.execute(() -> {
+                try {
+                    createClient();
+                } catch (IOException | RuntimeException e) {
+                    // Logged and backed off by createClient
+                } finally {
+                    clientRequested.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Shutting down
+            clientRequested.set(false);
+        }
+    }
+
+    /**
+     * Creates the shared client (maintenance thread only). A failure postpones the next
+     * attempt by {@code google.cloud.speech.client.retry.seconds}.
+     */
+    private SpeechClient createClient() throws IOException {
+        SpeechClient current = client;
+        if (current != null) {
+            return current;
+        }
+        GoogleCredentials loaded;
+        try {
+            loaded = loadCredentials();
+            current = SpeechClient.create(clientSettings(loaded));
+        } catch (IOException | RuntimeException e) {
+            clientRetryAtNanos = System.nanoTime() + TimeUnit.SECONDS.toNanos(Math.max(1, clientRetrySeconds));
+            logger.warn("Creating the Google Cloud Speech-to-Text client failed - retrying in {} s: {}",
+                       Math.max(1, clientRetrySeconds), e.getMessage());
+            if (e.getMessage() != null && e.getMessage().contains("default credentials were not found")) {
+                logger.warn("Google Cloud credentials not configured. To use Google Cloud Speech-to-Text:");
+                logger.warn("1. Set GOOGLE_APPLICATION_CREDENTIALS environment variable to your service account JSON file, OR");
+                logger.warn("2. Run 'gcloud auth application-default login' to set up Application Default Credentials");
+                logger.warn("3. Or set the credentials in application.properties using google.cloud.credentials.path");
+                logger.warn("Skipping Google Cloud - using Vosk only or test mode");
+            }
+            throw e;
+        }
+        credentials = loaded;
+        client = current;
+        logger.info("Google Cloud Speech-to-Text client created ({} channels)", Math.max(1, channelPoolSize));
+        return current;
+    }
+
+    /**
+     * Settings of the shared client: the loaded credentials and a fixed pool of gRPC channels
+     * to the Speech endpoint (tests point it at a stand-in server instead)
+     */
+    SpeechSettings clientSettings(GoogleCredentials loaded) throws IOException {
+        return SpeechSettings.newBuilder()
+            .setCredentialsProvider(FixedCredentialsProvider.create(loaded))
+            .setTransportChannelProvider(SpeechSettings.defaultGrpcTransportProviderBuilder()
+                .setChannelPoolSettings(ChannelPoolSettings.staticallySized(Math.max(1, channelPoolSize)))
+                .build())
+            .build();
+    }
+
+    /**
+     * Explicit service account file if configured, otherwise Application Default Credentials
+     */
+    GoogleCredentials loadCredentials() throws IOException {
+        if (credentialsPath != null && !credentialsPath.trim().isEmpty()) {
+            logger.debug("Using explicit credentials from: {}", credentialsPath);
+            try (FileInputStream credentialsStream = new FileInputStream(credentialsPath)) {
+                return GoogleCredentials.fromStream(credentialsStream).createScoped(CLOUD_PLATFORM_SCOPE);
+            } catch (IOException e) {
+                logger.error("Failed to load credentials from {}: {}", credentialsPath, e.getMessage());
+                throw new IOException("Failed to load Google Cloud credentials from: " + credentialsPath, e);
+            }
+        }
+        logger.debug("Using Application Default Credentials (GOOGLE_APPLICATION_CREDENTIALS or gcloud auth)");
+        return GoogleCredentials.getApplicationDefault().createScoped(CLOUD_PLATFORM_SCOPE);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        maintenance.shutdownNow();
+        SpeechClient current = client;
+        if (current != null) {
+            current.shutdown();
+            try {
+                current.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            current.close();
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "Google Cloud";
+    }
+
+    @Override
+    public List<AudioFormat> getSupportedFormats() {
+        return supportedFormats;
+    }
+
+    @Override
+    public boolean isReady() {
+        return enabled && liveClient() != null;
+    }
+
+    @Override
+    public boolean isStreamingReady() {
+        return streamingEnabled && isReady();
+    }
+
+    @Override
+    public StreamingRecognitionSession startStreaming(AudioFormat format, StreamingRecognitionListener listener) throws IOException {
+        SpeechClient speechClient = requireClient();
+        AudioFormat upload = negotiate(format);
+        StreamingRecognitionConfig config = StreamingRecognitionConfig.newBuilder()
+            .setConfig(buildRecognitionConfig(upload))
+            .setInterimResults(true)
+            .setSingleUtterance(streamingSingleUtterance)
+            .build();
+        int chunkBytes = Math.max(20, streamingChunkMs) * sampleRateHertz / 1000 * upload.getBytesPerSample();
+        return GoogleStreamingRecognitionSession.open(speechClient.streamingRecognizeCallable(), config,
+                format == AudioFormat.MULAW && upload == AudioFormat.LINEAR16,
+                chunkBytes, streamingFinalTimeoutMs, listener);
+    }
+
+    @Override
+    public String transcribe(byte[] audio, int offset, int length, AudioFormat format) throws Exception {
+        return transcribeWithGoogleCloud(audio, offset, length, format);
+    }
+
+    /**
+     * Transcribe audio using Google Cloud Speech-to-Text API
+     *
+     * @param audioData Buffer holding the audio (mu-law or 16-bit linear PCM)
+     * @return Transcribed text or null if transcription fails
+     * @throws Exception if API call fails
+     */
+    private String transcribeWithGoogleCloud(byte[] audioData, int offset, int length, AudioFormat format) throws Exception {
+        if (audioData == null || length == 0) {
+            logger.warn("Empty audio data provided to Google Cloud Speech-to-Text");
+            return null;
+        }
+
+        // Validate audio data size and format
+        // At 8000 Hz: 8000 bytes/second for mu-law, 16000 bytes/second for 16-bit PCM
+        // Minimum recommended: ~500ms
+        int bytesPerSample = format.getBytesPerSample();
+        int sampleCount = length / bytesPerSample;
+        int minRecommendedBytes = (sampleRateHertz * bytesPerSample) / 2; // 0.5 seconds worth of audio
+        double audioDurationSeconds = (double) sampleCount / sampleRateHertz;
+
+        logger.info("Google Cloud Speech-to-Text: {} bytes of {} audio ({} seconds at {} Hz, {} samples)",
+                   length,
+                   format,
+                   String.format("%.2f", audioDurationSeconds),
+                   sampleRateHertz,
+                   sampleCount);
+
+        if (length < minRecommendedBytes) {
+            logger.warn("Audio data is very short ({} bytes, {} seconds). Google Cloud may not return results for audio shorter than ~0.5 seconds.",
+                       length,
+                       String.format("%.2f", audioDurationSeconds));
+        }
+
+        // Check if audio data looks valid (should be even number of bytes for 16-bit PCM)
+        if (format == AudioFormat.LINEAR16 && length % 2 != 0) {
+            logger.warn("Audio data length is not even ({} bytes). PCM 16-bit audio should have even byte count.", length);
+        }
+
+        // Analyze audio content to check if it contains actual audio (not just silence)
+        analyzeAudioContent(audioData, offset, sampleCount, format);
+
+        // Shared client - channels, TLS session and access token are reused across utterances
+        SpeechClient speechClient = requireClient();
+
+        ByteString audioBytes = ByteString.copyFrom(audioData, offset, length);
+
+        // Note: Speaker diarization requires streaming recognition or long-running operations
+        // and is not available in the synchronous recognize API
+        // If needed, implement using StreamingRecognizeRequest or LongRunningRecognizeRequest
+        if (enableSpeakerDiarization) {
+            logger.warn("Speaker diarization is not supported in synchronous recognition. " +
+                       "Use streaming recognition for speaker diarization support.");
+        }
+
+        RecognitionConfig config = buildRecognitionConfig(format);
+
+        RecognitionAudio audio = RecognitionAudio.newBuilder()
+            .setContent(audioBytes)
+            .build();
+
+        RecognizeRequest request = RecognizeRequest.newBuilder()
+            .setConfig(config)
+            .setAudio(audio)
+            .build();
+
+        logger.info("Sending {} bytes of {} audio to Google Cloud Speech-to-Text (sample rate: {} Hz, language: {}, duration: {}s)",
+                    length,
+                    format,
+                    sampleRateHertz,
+                    languageCode,
+                    String.format("%.2f", audioDurationSeconds));
+
+        RecognizeResponse response = speechClient.recognize(request);
+
+        // Process results
+        if (response.getResultsList().isEmpty()) {
+            logger.warn("Google Cloud Speech-to-Text returned no results. Possible reasons:");
+            logger.warn("  - Audio too short (current: {}s, recommended: >0.5s)", String.format("%.2f", audioDurationSeconds));
+            logger.warn("  - Audio contains only silence or noise");
+            logger.warn("  - Audio format mismatch (expected: {}, {} Hz)", format, sampleRateHertz);
+            logger.warn("  - Language code mismatch (current: {})", languageCode);
+            return null;
+        }
+
+        // Get the best transcription result
+        SpeechRecognitionResult bestResult = response.getResults(0);
+        if (bestResult.getAlternativesList().isEmpty()) {
+            logger.warn("Google Cloud Speech-to-Text result has no alternatives");
+            return null;
+        }
+
+        String transcript = bestResult.getAlternatives(0).getTranscript();
+        float confidence = bestResult.getAlternatives(0).getConfidence();
+
+        logger.info("Google Cloud transcription successful: '{}' (confidence: {}%)",
+                   transcript,
+                   String.format("%.2f", confidence * 100));
+
+        // Log alternative transcriptions if available
+        if (bestResult.getAlternativesList().size() > 1) {
+            logger.debug("Alternative transcriptions available:");
+            for (int i = 1; i < bestResult.getAlternativesList().size(); i++) {
+                float altConfidence = bestResult.getAlternatives(i).getConfidence();
+                logger.debug("  Alternative {}: {} (confidence: {}%)",
+                            i,
+                            bestResult.getAlternatives(i).getTranscript(),
+                            String.format("%.2f", altConfidence * 100));
+            }
+        }
+
+        return transcript;
+    }
+
+    /**
+     * Recognition settings shared by single requests and streams
+     */
+    private RecognitionConfig buildRecognitionConfig(AudioFormat format) {
+        // Build recognition config with configured options
+        RecognitionConfig.Builder configBuilder = RecognitionConfig.newBuilder()
+            .setEncoding(format == AudioFormat.MULAW
+                    ? RecognitionConfig.AudioEncoding.MULAW
+                    : RecognitionConfig.AudioEncoding.LINEAR16)
+            .setSampleRateHertz(sampleRateHertz)
+            .setLanguageCode(languageCode)
+            .setEnableAutomaticPunctuation(enableAutomaticPunctuation)
+            .setMaxAlternatives(maxAlternatives);
+
+        // Enable word-level confidence if configured
+        if (enableWordConfidence) {
+            configBuilder.setEnableWordConfidence(true);
+        }
+
+        // Use enhanced model if configured
+        if (useEnhancedModel) {
+            configBuilder.setModel("phone_call"); // Enhanced model for phone calls
+        }
+
+        return configBuilder.build();
+    }
+
+    /**
+     * Analyze audio content to check if it contains actual speech
+     */
+    private void analyzeAudioContent(byte[] audio, int offset, int sampleCount, AudioFormat format) {
+        if (sampleCount < 2) {
+            return;
+        }
+
+        long sum = 0;
+        long sumSquares = 0;
+        int zeroCount = 0;
+        int maxSample = 0;
+        int minSample = 0;
+        int analyzed = Math.min(sampleCount, 1000); // Analyze first 1000 samples
+
+        for (int i = 0; i < analyzed; i++) {
+            short sample;
+            if (format == AudioFormat.MULAW) {
+                sample = G711Codec.decode(audio[offset + i]);
+            } else {
+                int at = offset + 2 * i;
+                sample = (short) ((audio[at] & 0xFF) | (audio[at + 1] << 8));
+            }
+            int absSample = Math.abs(sample);
+
+            sum += absSample;
+            sumSquares += (long) absSample * absSample;
+
+            if (absSample == 0) {
+                zeroCount++;
+            }
+
+            if (absSample > maxSample) {
+                maxSample = absSample;
+            }
+            if (absSample < minSample || i == 0) {
+                minSample = absSample;
+            }
+        }
+
+        double avgAmplitude = (double) sum / analyzed;
+        double variance = ((double) sumSquares / analyzed) - (avgAmplitude * avgAmplitude);
+        double stdDev = Math.sqrt(variance);
+        double zeroPercent = (double) zeroCount * 100.0 / analyzed;
+
+        logger.info("Audio analysis: avg={}, stdDev={}, max={}, min={}, zeroPercent={}%, samples={}",
+                   String.format("%.2f", avgAmplitude),
+                   String.format("%.2f", stdDev),
+                   maxSample,
+                   minSample,
+                   String.format("%.2f", zeroPercent),
+                   sampleCount);
+
+        // Warn if audio looks like silence
+        if (avgAmplitude < 100 && stdDev < 50) {
+            logger.warn("Audio appears to be mostly silence (avg amplitude: {}, std dev: {})",
+                       String.format("%.2f", avgAmplitude), String.format("%.2f", stdDev));
+        }
+
+        // Warn if audio is all zeros
+        if (zeroPercent > 95.0) {
+            logger.warn("Audio appears to be all zeros ({}% zero samples) - conversion may have failed",
+                       String.format("%.2f", zeroPercent));
+        }
+    }
+}
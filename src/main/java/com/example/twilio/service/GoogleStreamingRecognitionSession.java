@@ -0,0 +1,259 @@
+package com.example.twilio.service;
+
+import com.example.twilio.audio.G711Codec;
+import com.google.api.gax.rpc.BidiStreamingCallable;
+import com.google.api.gax.rpc.ClientStream;
+import com.google.api.gax.rpc.ResponseObserver;
+import com.google.api.gax.rpc.StreamController;
+import com.google.cloud.speech.v1.StreamingRecognitionConfig;
+import com.google.cloud.speech.v1.StreamingRecognitionResult;
+import com.google.cloud.speech.v1.StreamingRecognizeRequest;
+import com.google.cloud.speech.v1.StreamingRecognizeResponse;
+import com.google.protobuf.ByteString;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * One bidirectional StreamingRecognize call to Google Cloud Speech-to-Text.
+ *
+ * The first request carries the configuration, then the caller's audio follows in chunks of
+ * {@code chunkBytes} (Google recommends about 100 ms per request; a request per 20 ms frame
+ * would mostly be overhead). Final results are collected as they arrive, interim results are
+ * passed to the listener, and Google's end-of-single-utterance event (or a final result when
+ * single-utterance mode is off) tells the listener the caller has stopped speaking.
+ *
+ * Only needs a {@link BidiStreamingCallable}, so it runs as well against an in-process fake
+ * as against the real client.
+ */
+final class GoogleStreamingRecognitionSession implements StreamingRecognitionSession, ResponseObserver<StreamingRecognizeResponse> {
+
+    private static final Logger logger = LoggerFactory.getLogger(GoogleStreamingRecognitionSession.class);
+
+    private final StreamingRecognitionListener listener;
+    private final boolean singleUtterance;
+    // Mu-law in, LINEAR16 requested: expand while chunking
+    private final boolean expandToLinear16;
+    private final long finalTimeoutMs;
+    private final byte[] chunk;
+    private int chunkLength;
+
+    private ClientStream<StreamingRecognizeRequest> requests;
+    private StreamController controller;
+    private final StringBuilder finalTranscript = new StringBuilder();
+    private final CompletableFuture<String> result = new CompletableFuture<>();
+    // finish() or cancel() was called - no more audio, no more listener calls
+    private boolean finished;
+    // Google ended the stream
+    private boolean closed;
+
+    private GoogleStreamingRecognitionSession(StreamingRecognitionListener listener, boolean singleUtterance,
+                                              boolean expandToLinear16, int chunkBytes, long finalTimeoutMs) {
+        this.listener = listener;
+        this.singleUtterance = singleUtterance;
+        this.expandToLinear16 = expandToLinear16;
+        this.chunk = new byte[chunkBytes];
+        this.finalTimeoutMs = finalTimeoutMs;
+    }
+
+    /**
+     * Starts the call and sends the configuration
+     *
+     * @param expandToLinear16 Audio arrives as mu-law but the config asks for LINEAR16
+     * @param chunkBytes       Bytes per audio request, in the uploaded encoding
+     * @param finalTimeoutMs   How long {@link #finish()} waits for the final result
+     */
+    static GoogleStreamingRecognitionSession open(BidiStreamingCallable<StreamingRecognizeRequest, StreamingRecognizeResponse> callable,
+                                                  StreamingRecognitionConfig config, boolean expandToLinear16,
+                                                  int chunkBytes, long finalTimeoutMs, StreamingRecognitionListener listener) {
+        GoogleStreamingRecognitionSession session = new GoogleStreamingRecognitionSession(
+                listener, config.getSingleUtterance(), expandToLinear16, chunkBytes, finalTimeoutMs);
+        synchronized (session) {
+            session.requests = callable.splitCall(session);
+            session.send(StreamingRecognizeRequest.newBuilder().setStreamingConfig(config).build());
+        }
+        return session;
+    }
+
+    @Override
+    public synchronized void sendAudio(byte[] audio, int offset, int length) {
+        if (finished || closed) {
+            return;
+        }
+        int bytesPerSample = expandToLinear16 ? 2 : 1;
+        while (length > 0) {
+            int samples = Math.min(length, (chunk.length - chunkLength) / bytesPerSample);
+            if (expandToLinear16) {
+                G711Codec.decodeToLinear16(audio, offset, chunk, chunkLength, samples);
+            } else {
+                System.arraycopy(audio, offset, chunk, chunkLength, samples);
+            }
+            chunkLength += samples * bytesPerSample;
+            offset += samples;
+            length -= samples;
+            if (chunkLength + bytesPerSample > chunk.length) {
+                flush();
+            }
+        }
+    }
+
+    @Override
+    public String finish() {
+        synchronized (this) {
+            if (finished) {
+                return null;
+            }
+            finished = true;
+            if (!closed) {
+                flush();
+                try {
+                    requests.closeSend();
+                } catch (RuntimeException e) {
+                    logger.debug("Closing the recognition stream failed: {}", e.getMessage());
+                }
+            }
+        }
+        try {
+            return result.get(finalTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            logger.warn("No final transcript within {} ms of the end of speech - using the results so far", finalTimeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // Never completed exceptionally
+        }
+        synchronized (this) {
+            cancelCall();
+            return transcript();
+        }
+    }
+
+    @Override
+    public synchronized void cancel() {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        cancelCall();
+        result.complete(null);
+    }
+
+    private void cancelCall() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (controller != null) {
+                controller.cancel();
+            } else {
+                requests.closeSendWithError(new CancellationException("Recognition cancelled"));
+            }
+        } catch (RuntimeException e) {
+            logger.debug("Cancelling the recognition stream failed: {}", e.getMessage());
+        }
+    }
+
+    private void flush() {
+        if (chunkLength == 0) {
+            return;
+        }
+        send(StreamingRecognizeRequest.newBuilder()
+            .setAudioContent(ByteString.copyFrom(chunk, 0, chunkLength))
+            .build());
+        chunkLength = 0;
+    }
+
+    private void send(StreamingRecognizeRequest request) {
+        try {
+            requests.send(request);
+        } catch (RuntimeException e) {
+            // The call already ended - onError/onComplete reports why
+            logger.debug("Sending to the recognition stream failed: {}", e.getMessage());
+            closed = true;
+        }
+    }
+
+    private String transcript() {
+        return finalTranscript.length() > 0 ? finalTranscript.toString() : null;
+    }
+
+    @Override
+    public synchronized void onStart(StreamController controller) {
+        this.controller = controller;
+    }
+
+    @Override
+    public void onResponse(StreamingRecognizeResponse response) {
+        String partial = null;
+        boolean endOfUtterance = false;
+        synchronized (this) {
+            if (result.isDone()) {
+                return;
+            }
+            endOfUtterance = response.getSpeechEventType() == StreamingRecognizeResponse.SpeechEventType.END_OF_SINGLE_UTTERANCE;
+            StringBuilder interim = null;
+            for (StreamingRecognitionResult recognitionResult : response.getResultsList()) {
+                if (recognitionResult.getAlternativesCount() == 0) {
+                    continue;
+                }
+                String text = recognitionResult.getAlternatives(0).getTranscript().trim();
+                if (text.isEmpty()) {
+                    continue;
+                }
+                if (recognitionResult.getIsFinal()) {
+                    append(finalTranscript, text);
+                    endOfUtterance |= !singleUtterance;
+                } else {
+                    if (interim == null) {
+                        interim = new StringBuilder(finalTranscript);
+                    }
+                    append(interim, text);
+                }
+            }
+            if (finished) {
+                return;
+            }
+            if (interim != null) {
+                partial = interim.toString();
+            }
+        }
+        if (partial != null) {
+            listener.onPartialTranscript(partial);
+        }
+        if (endOfUtterance) {
+            listener.onEndOfUtterance();
+        }
+    }
+
+    private static void append(StringBuilder transcript, String text) {
+        if (transcript.length() > 0) {
+            transcript.append(' ');
+        }
+        transcript.append(text);
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        boolean notify;
+        synchronized (this) {
+            closed = true;
+            notify = !finished;
+            result.complete(transcript());
+        }
+        if (notify) {
+            listener.onError(t);
+        }
+    }
+
+    @Override
+    public synchronized void onComplete() {
+        closed = true;
+        result.complete(transcript());
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.twilio.service;
+
+import com.example.twilio.audio.AudioFormat;
+
+import java.util.List;
+
+/**
+ * A speech-to-text backend that transcribes one finished utterance.
+ *
+ * Each engine declares the encodings it accepts; {@link AiAgentService} hands it the caller's
+ * mu-law audio as is when it can, and converts only for engines that need something else.
+ */
+public interface SpeechToTextEngine {
+
+    /**
+     * Short name for logs
+     */
+    String getName();
+
+    /**
+     * Encodings the engine accepts, most preferred first
+     */
+    List<AudioFormat> getSupportedFormats();
+
+    /**
+     * Whether the engine is enabled and initialized
+     */
+    boolean isReady();
+
+    /**
+     * @param audio  Buffer holding the utterance - only read during the call
+     * @param offset Start of the utterance
+     * @param length Utterance length in bytes
+     * @param format Encoding of the audio, one of {@link #getSupportedFormats()}
+     * @return the transcript, or null if nothing was recognized
+     */
+    String transcribe(byte[] audio, int offset, int length, AudioFormat format) throws Exception;
+
+    /**
+     * Transcribes an utterance expected to be one of a few phrases (the answer to a yes/no
+     * question, a weekday). Engines that cannot constrain decoding ignore the grammar.
+     *
+     * @param grammar Expected phrases, or null for open-ended speech
+     */
+    default String transcribe(byte[] audio, int offset, int length, AudioFormat format, List<String> grammar) throws Exception {
+        return transcribe(audio, offset, length, format);
+    }
+
+    /**
+     * Transcribes an utterance with the model chosen for the call (e.g. its language). An
+     * engine falls back to its default model when that one is unknown or not loaded yet;
+     * engines with a single model ignore it.
+     *
+     * @param model   Engine-specific model key (e.g. a vosk.models key), or null for the default
+     * @param grammar Expected phrases, or null for open-ended speech
+     */
+    default String transcribe(byte[] audio, int offset, int length, AudioFormat format, String model,
+                              List<String> grammar) throws Exception {
+        return transcribe(audio, offset, length, format, grammar);
+    }
+
+    /**
+     * Starts loading a model in the background once a call has chosen it, so it is ready by
+     * the call's first utterance. Engines with a single model ignore it.
+     */
+    default void prepareModel(String model) {
+    }
+
+    /**
+     * The format to hand this engine audio in: the source format itself if the engine accepts
+     * it, otherwise its preferred format
+     */
+    default AudioFormat negotiate(AudioFormat source) {
+        List<AudioFormat> supported = getSupportedFormats();
+        return supported.contains(source) ? source : supported.get(0);
+    }
+}
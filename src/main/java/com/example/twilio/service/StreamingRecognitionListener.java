@@ -0,0 +1,27 @@
+package com.example.twilio.service;
+
+/**
+ * Events of a {@link StreamingRecognitionSession}. Called on the recognizer's threads, and
+ * never after the session was finished or cancelled.
+ */
+public interface StreamingRecognitionListener {
+
+    /**
+     * The transcript so far, while the caller is still speaking (may still change)
+     */
+    default void onPartialTranscript(String transcript) {
+    }
+
+    /**
+     * The recognizer decided the caller has finished speaking
+     */
+    default void onEndOfUtterance() {
+    }
+
+    /**
+     * The recognition failed; {@link StreamingRecognitionSession#finish()} returns whatever was
+     * final before the failure
+     */
+    default void onError(Throwable error) {
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.twilio.service;
+
+import com.example.twilio.audio.AudioSegment;
+
+/**
+ * One utterance being recognized while the caller is still speaking.
+ *
+ * Audio is sent frame by frame as it arrives; {@link #finish()} ends the audio at endpoint
+ * time and returns the transcript, which by then is usually already complete. Sends after
+ * {@link #finish()} or {@link #cancel()} are ignored. Safe to use from several threads.
+ */
+public interface StreamingRecognitionSession {
+
+    /**
+     * Sends the next part of the utterance
+     *
+     * @param audio  Buffer holding the audio (mu-law) - only read during the call
+     * @param offset Start of the audio
+     * @param length Audio length in bytes
+     */
+    void sendAudio(byte[] audio, int offset, int length);
+
+    /**
+     * Sends the next part of the utterance in a pooled slab the session takes over: it is
+     * released once consumed (or dropped), so sessions that decode later need not copy it
+     */
+    default void sendAudio(AudioSegment audio) {
+        try {
+            sendAudio(audio.array(), audio.offset(), audio.length());
+        } finally {
+            audio.release();
+        }
+    }
+
+    /**
+     * Ends the audio and waits (bounded) for the final transcript
+     *
+     * @return the transcript, or null if nothing was recognized in time
+     */
+    String finish();
+
+    /**
+     * Abandons the recognition (utterance discarded or call ended)
+     */
+    void cancel();
+}
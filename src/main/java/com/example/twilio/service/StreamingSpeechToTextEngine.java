@@ -0,0 +1,48 @@
+package com.example.twilio.service;
+
+import com.example.twilio.audio.AudioFormat;
+
+import java.util.List;
+
+/**
+ * A speech-to-text engine that can also recognize an utterance while it is being spoken,
+ * so the transcript is ready at endpoint time instead of one round trip later.
+ */
+public interface StreamingSpeechToTextEngine extends SpeechToTextEngine {
+
+    /**
+     * Whether streaming recognition is enabled and usable
+     */
+    boolean isStreamingReady();
+
+    /**
+     * Opens the recognition of one utterance
+     *
+     * @param format   Encoding of the audio that will be sent
+     * @param listener Receives partial transcripts and end-of-utterance events
+     */
+    StreamingRecognitionSession startStreaming(AudioFormat format, StreamingRecognitionListener listener) throws Exception;
+
+    /**
+     * Opens the recognition of an utterance expected to be one of a few phrases. Engines that
+     * cannot constrain decoding ignore the grammar.
+     *
+     * @param grammar Expected phrases, or null for open-ended speech
+     */
+    default StreamingRecognitionSession startStreaming(AudioFormat format, List<String> grammar,
+                                                       StreamingRecognitionListener listener) throws Exception {
+        return startStreaming(format, listener);
+    }
+
+    /**
+     * Opens the recognition of an utterance with the model chosen for the call (see
+     * {@link #transcribe(byte[], int, int, AudioFormat, String, List)})
+     *
+     * @param model   Engine-specific model key, or null for the default
+     * @param grammar Expected phrases, or null for open-ended speech
+     */
+    default StreamingRecognitionSession startStreaming(AudioFormat format, String model, List<String> grammar,
+                                                       StreamingRecognitionListener listener) throws Exception {
+        return startStreaming(format, grammar, listener);
+    }
+}
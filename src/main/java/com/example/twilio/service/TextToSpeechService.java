@@ -0,0 +1,174 @@
+package com.example.twilio.service;
+
+import com.example.twilio.audio.G711Codec;
+import com.example.twilio.audio.PolyphaseResampler;
+import com.google.auth.oauth2.GoogleCredentials;
+import com.google.cloud.texttospeech.v1.AudioConfig;
+import com.google.cloud.texttospeech.v1.AudioEncoding;
+import com.google.cloud.texttospeech.v1.SynthesisInput;
+import com.google.cloud.texttospeech.v1.SynthesizeSpeechResponse;
+import com.google.cloud.texttospeech.v1.TextToSpeechClient;
+import com.google.cloud.texttospeech.v1.TextToSpeechSettings;
+import com.google.cloud.texttospeech.v1.VoiceSelectionParams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PreDestroy;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * Text-to-Speech service used by the bidirectional Media Streams playback path.
+ *
+ * With {@code <Connect><Stream>} Twilio no longer speaks for us via {@code <Say>},
+ * so AI responses are synthesized here as 8 kHz mu-law and written back over the
+ * call's WebSocket by TwilioMediaStreamHandler.
+ */
+@Service
+public class TextToSpeechService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TextToSpeechService.class);
+
+    @Value("${google.cloud.tts.language.code:en-US}")
+    private String languageCode;
+
+    // Optional voice name (e.g. en-US-Standard-C). Empty lets Google pick a default for the language.
+    @Value("${google.cloud.tts.voice.name:}")
+    private String voiceName;
+
+    @Value("${google.cloud.tts.speaking.rate:1.0}")
+    private double speakingRate;
+
+    // Rate requested from Google; anything other than 8000 is resampled to 8 kHz locally
+    @Value("${google.cloud.tts.sample.rate.hertz:8000}")
+    private int synthesisSampleRate;
+
+    // Same service account as Speech-to-Text
+    @Value("${google.cloud.speech.credentials.path:}")
+    private String credentialsPath;
+
+    private volatile TextToSpeechClient client;
+
+    /**
+     * Synthesizes text as raw 8 kHz mu-law audio (no WAV header), ready to be
+     * split into 20 ms Media Stream frames.
+     *
+     * @param text Text to speak
+     * @return mu-law audio bytes, or null if synthesis fails
+     */
+    public byte[] synthesizeMuLaw(String text) {
+        if (text == null || text.trim().isEmpty()) {
+            logger.warn("Cannot synthesize speech: text is null or empty");
+            return null;
+        }
+
+        try {
+            SynthesisInput input = SynthesisInput.newBuilder()
+                    .setText(text)
+                    .build();
+
+            VoiceSelectionParams.Builder voiceBuilder = VoiceSelectionParams.newBuilder()
+                    .setLanguageCode(languageCode);
+            if (voiceName != null && !voiceName.trim().isEmpty()) {
+                voiceBuilder.setName(voiceName.trim());
+            }
+
+            // Linear PCM is encoded locally so all playback goes through the same G.711 codec
+            AudioConfig audioConfig = AudioConfig.newBuilder()
+                    .setAudioEncoding(AudioEncoding.LINEAR16)
+                    .setSampleRateHertz(synthesisSampleRate)
+                    .setSpeakingRate(speakingRate)
+                    .build();
+
+            long start = System.currentTimeMillis();
+            SynthesizeSpeechResponse response = getClient().synthesizeSpeech(input, voiceBuilder.build(), audioConfig);
+            byte[] pcm = stripWavHeader(response.getAudioContent().toByteArray());
+            int samples = pcm.length / 2;
+            if (synthesisSampleRate != G711Codec.SAMPLE_RATE) {
+                // Resample with the anti-aliasing filter (downsampling works in place)
+                PolyphaseResampler resampler = new PolyphaseResampler(synthesisSampleRate, G711Codec.SAMPLE_RATE);
+                byte[] resampled = synthesisSampleRate > G711Codec.SAMPLE_RATE
+                        ? pcm
+                        : new byte[2 * resampler.maxOutputSamples(samples)];
+                samples = resampler.processLinear16(pcm, 0, samples, resampled, 0);
+                pcm = resampled;
+            }
+            byte[] audio = new byte[samples];
+            G711Codec.encodeLinear16(pcm, 0, audio, 0, samples);
+
+            logger.info("Synthesized {} bytes of mu-law audio ({} ms of speech) in {} ms",
+                    audio.length, audio.length / 8, System.currentTimeMillis() - start);
+            return audio;
+        } catch (Exception e) {
+            logger.error("Text-to-Speech synthesis failed: {}", e.getMessage(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Lazily creates the client so that deployments that keep using TwiML
+     * injection never open a Text-to-Speech channel.
+     */
+    private TextToSpeechClient getClient() throws IOException {
+        TextToSpeechClient current = client;
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            if (client == null) {
+                if (credentialsPath != null && !credentialsPath.trim().isEmpty()) {
+                    logger.debug("Using explicit Text-to-Speech credentials from: {}", credentialsPath);
+                    try (FileInputStream credentialsStream = new FileInputStream(credentialsPath)) {
+                        GoogleCredentials credentials = GoogleCredentials.fromStream(credentialsStream);
+                        client = TextToSpeechClient.create(TextToSpeechSettings.newBuilder()
+                                .setCredentialsProvider(() -> credentials)
+                                .build());
+                    }
+                } else {
+                    client = TextToSpeechClient.create();
+                }
+                logger.info("Text-to-Speech client created (language: {})", languageCode);
+            }
+            return client;
+        }
+    }
+
+    /**
+     * Google returns MULAW/LINEAR16 content wrapped in a RIFF/WAV container.
+     * Media Streams expect headerless audio, so return only the "data" chunk.
+     */
+    private byte[] stripWavHeader(byte[] audio) {
+        if (audio.length < 12 || audio[0] != 'R' || audio[1] != 'I' || audio[2] != 'F' || audio[3] != 'F') {
+            return audio;
+        }
+        int offset = 12;
+        while (offset + 8 <= audio.length) {
+            int chunkSize = (audio[offset + 4] & 0xFF)
+                    | (audio[offset + 5] & 0xFF) << 8
+                    | (audio[offset + 6] & 0xFF) << 16
+                    | (audio[offset + 7] & 0xFF) << 24;
+            if (audio[offset] == 'd' && audio[offset + 1] == 'a' && audio[offset + 2] == 't' && audio[offset + 3] == 'a') {
+                int dataStart = offset + 8;
+                int dataLength = Math.min(chunkSize, audio.length - dataStart);
+                byte[] data = new byte[dataLength];
+                System.arraycopy(audio, dataStart, data, 0, dataLength);
+                return data;
+            }
+            // Chunks are padded to an even size
+            offset += 8 + chunkSize + (chunkSize & 1);
+        }
+        logger.warn("WAV container without a data chunk - using synthesized audio as-is");
+        return audio;
+    }
+
+    @PreDestroy
+    public void cleanup() {
+        if (client != null) {
+            client.close();
+            logger.info("Text-to-Speech client closed");
+        }
+    }
+}
@@ -122,6 +122,45 @@ public class TwilioTwiMLInjectionService {
         }
     }
 
+    /**
+     * Injects TwiML that says a message and then reconnects a bidirectional stream.
+     * Only used as a fallback when audio cannot be played over the existing
+     * {@code <Connect><Stream>} WebSocket (e.g. Text-to-Speech is unavailable).
+     *
+     * @param callSid The Call SID
+     * @param message The message to speak
+     * @param streamUrl The WebSocket stream URL to connect after speaking
+     */
+    public boolean injectSayAndConnectStream(String callSid, String message, String streamUrl) {
+        try {
+            if (callSid == null || callSid.isEmpty()) {
+                logger.warn("Cannot inject TwiML: Call SID is null or empty");
+                return false;
+            }
+
+            String twiml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                    "<Response>\n" +
+                    "    <Say voice=\"alice\">" + escapeXml(message) + "</Say>\n" +
+                    "    <Connect>\n" +
+                    "        <Stream url=\"" + escapeXml(streamUrl) + "\" />\n" +
+                    "    </Connect>\n" +
+                    "</Response>";
+
+            logger.info("Injecting TwiML with Say and Connect Stream into call {}: {}", callSid, message);
+
+            Call.updater(callSid)
+                    .setTwiml(twiml)
+                    .update();
+
+            logger.info("Successfully injected TwiML into call {}. Stream will reconnect.", callSid);
+            return true;
+
+        } catch (Exception e) {
+            logger.error("Error injecting TwiML into call {}", callSid, e);
+            return false;
+        }
+    }
+
     /**
      * Plays a final message and hangs up the call safely.
      */
@@ -159,6 +198,47 @@ public class TwilioTwiMLInjectionService {
         }
     }
 
+    /**
+     * Says a message and then dials another number, handing the call over (e.g. to a human
+     * agent). The media stream is stopped; the caller stays on the line with the dialed party.
+     */
+    public boolean injectSayAndDial(String callSid, String message, String number) {
+        try {
+            if (callSid == null || callSid.isEmpty()) {
+                logger.warn("Cannot inject transfer TwiML: Call SID is null or empty");
+                return false;
+            }
+
+            if (number == null || number.trim().isEmpty()) {
+                logger.warn("Cannot inject transfer TwiML: number is null or empty");
+                return false;
+            }
+
+            String twiml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                    "<Response>\n" +
+                    "    <Stop>\n" +
+                    "        <Stream />\n" +
+                    "    </Stop>\n" +
+                    (message != null && !message.trim().isEmpty()
+                            ? "    <Say voice=\"alice\">" + escapeXml(message) + "</Say>\n"
+                            : "") +
+                    "    <Dial>" + escapeXml(number.trim()) + "</Dial>\n" +
+                    "</Response>";
+
+            logger.info("Injecting transfer TwiML into call {} (dialing {})", callSid, number);
+
+            Call.updater(callSid)
+                    .setTwiml(twiml)
+                    .update();
+
+            logger.info("Successfully injected transfer TwiML into call {}", callSid);
+            return true;
+        } catch (Exception e) {
+            logger.error("Error injecting transfer TwiML into call {}", callSid, e);
+            return false;
+        }
+    }
+
     /**
      * Escapes XML special characters
      */
@@ -9,6 +9,11 @@ public class TwilioVoiceService {
     @Value("${twilio.phone.number}")
     private String twilioPhoneNumber;
 
+    // Bidirectional mode: <Connect><Stream> keeps one WebSocket for the whole call
+    // and AI responses are played back as outbound media frames
+    @Value("${twilio.media.stream.bidirectional:false}")
+    private boolean bidirectionalStream;
+
     /**
      * Generates TwiML to start a Media Stream WebSocket connection
      * 
@@ -27,22 +32,35 @@ public class TwilioVoiceService {
                 ? customMessage
                 : "Hello! I'm your AI assistant. How can I help you today?";
         
-        // TwiML with Stream configured to receive audio from caller
-        // The Stream verb will send audio data to the WebSocket URL
-        // Important: Stream must be started BEFORE Say to capture user audio during greeting
-        // The Pause allows time for user to respond after greeting
-        String twiml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
-                "<Response>\n" +
-                "    <Start>\n" +
-                "        <Stream url=\"" + wsUrl + "\" />\n" +
-                "    </Start>\n" +
-                "    <Say voice=\"alice\">" + escapeXml(greetingMessage) + "</Say>\n" +
-                "    <Pause length=\"60\" />\n" +
-                "</Response>";
+        String twiml;
+        if (bidirectionalStream) {
+            // Bidirectional stream: <Connect> blocks for the life of the call, so the
+            // greeting is spoken first and every later response goes over the WebSocket
+            twiml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                    "<Response>\n" +
+                    "    <Say voice=\"alice\">" + escapeXml(greetingMessage) + "</Say>\n" +
+                    "    <Connect>\n" +
+                    "        <Stream url=\"" + wsUrl + "\" />\n" +
+                    "    </Connect>\n" +
+                    "</Response>";
+        } else {
+            // TwiML with Stream configured to receive audio from caller
+            // The Stream verb will send audio data to the WebSocket URL
+            // Important: Stream must be started BEFORE Say to capture user audio during greeting
+            // The Pause allows time for user to respond after greeting
+            twiml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                    "<Response>\n" +
+                    "    <Start>\n" +
+                    "        <Stream url=\"" + wsUrl + "\" />\n" +
+                    "    </Start>\n" +
+                    "    <Say voice=\"alice\">" + escapeXml(greetingMessage) + "</Say>\n" +
+                    "    <Pause length=\"60\" />\n" +
+                    "</Response>";
+        }
         
         // Log the TwiML being generated (for debugging)
         org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(TwilioVoiceService.class);
-        logger.info(">>> Generated TwiML for voice call with WebSocket stream");
+        logger.info(">>> Generated TwiML for voice call with WebSocket stream (bidirectional: {})", bidirectionalStream);
         logger.debug("TwiML: {}", twiml);
         
         return twiml;
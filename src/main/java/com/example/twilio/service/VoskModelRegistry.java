@@ -0,0 +1,468 @@
+package com.example.twilio.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.vosk.Model;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.ToLongFunction;
+
+/**
+ * Vosk models by key (e.g. "en-small", "en-large", "de"), loaded when first needed and
+ * unloaded again when native memory runs short.
+ *
+ * A model is loaded in the background on first use (or up front with {@link #loadNow}); until
+ * it is {@link State#READY} {@link #acquire} returns null, so callers can route the utterance
+ * elsewhere instead of waiting seconds for a cold model. Each resident model owns its
+ * recognizer pool and grammar pools, which together hold at most {@code poolSize} recognizers.
+ *
+ * Models are counted while acquired - a recognizer of theirs is decoding - and only idle
+ * models are unloaded. When loading one more would exceed the native-memory budget, the
+ * least recently used idle models are unloaded first; if that cannot free enough, the model
+ * is not loaded (and is tried again on its next use). A model's size is estimated from its
+ * files on disk, which is roughly what Vosk keeps in memory.
+ *
+ * The pinned model (the default, which decodes every call whose own model is not ready) is
+ * never unloaded and is not counted against the budget: the budget is for the models loaded
+ * on demand next to it, so one call asking for a large model cannot leave the others without
+ * a model.
+ */
+final class VoskModelRegistry implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(VoskModelRegistry.class);
+
+    enum State {
+        UNLOADED,
+        LOADING,
+        READY,
+        // The model could not be loaded (missing or invalid files) - not retried
+        FAILED
+    }
+
+    /**
+     * A resident model with its recognizers
+     */
+    static final class LoadedModel {
+
+        private final String key;
+        private final Model model;
+        private final VoskRecognizerPool recognizers;
+        private final int grammarCacheSize;
+        private final int grammarPoolSize;
+        // Recognizer pools per grammar (JSON phrase list), least recently used first
+        private final LinkedHashMap<String, VoskRecognizerPool> grammarPools = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, VoskRecognizerPool> eldest) {
+                if (size() <= grammarCacheSize) {
+                    return false;
+                }
+                // Busy recognizers are closed as they come back
+                eldest.getValue().close();
+                return true;
+            }
+        };
+
+        private LoadedModel(String key, Model model, VoskRecognizerPool recognizers, int grammarCacheSize, int grammarPoolSize) {
+            this.key = key;
+            this.model = model;
+            this.recognizers = recognizers;
+            this.grammarCacheSize = grammarCacheSize;
+            this.grammarPoolSize = grammarPoolSize;
+        }
+
+        String getKey() {
+            return key;
+        }
+
+        /**
+         * Recognizers for the full vocabulary
+         */
+        VoskRecognizerPool getRecognizers() {
+            return recognizers;
+        }
+
+        /**
+         * Recognizers restricted to a grammar, created on first use
+         *
+         * @param json Grammar as a JSON phrase list
+         * @return the pool, or null if grammars are disabled
+         */
+        VoskRecognizerPool grammarPool(String json) {
+            if (grammarCacheSize <= 0) {
+                return null;
+            }
+            synchronized (grammarPools) {
+                VoskRecognizerPool pool = grammarPools.get(json);
+                if (pool == null) {
+                    int size = grammarPoolSize > 0 ? grammarPoolSize : recognizers.getMaxRecognizers();
+                    // Shares the model's recognizer budget, so grammars never add recognizers
+                    pool = new VoskRecognizerPool(recognizers, json, size);
+                    grammarPools.put(json, pool);
+                    logger.info("Vosk recognizers for grammar {} on model {} created (up to {} idle)", json, key, size);
+                }
+                return pool;
+            }
+        }
+
+        int getCachedGrammars() {
+            synchronized (grammarPools) {
+                return grammarPools.size();
+            }
+        }
+
+        /**
+         * Sum of a statistic over the full-vocabulary pool and every grammar pool, which share
+         * the model's recognizer budget
+         */
+        long sum(ToLongFunction<VoskRecognizerPool> statistic) {
+            long sum = statistic.applyAsLong(recognizers);
+            synchronized (grammarPools) {
+                for (VoskRecognizerPool pool : grammarPools.values()) {
+                    sum += statistic.applyAsLong(pool);
+                }
+            }
+            return sum;
+        }
+
+        private void close() {
+            synchronized (grammarPools) {
+                for (VoskRecognizerPool pool : grammarPools.values()) {
+                    pool.close();
+                }
+                grammarPools.clear();
+            }
+            recognizers.close();
+            try {
+                model.close();
+            } catch (RuntimeException e) {
+                logger.warn("Error closing Vosk model {}", key, e);
+            }
+        }
+    }
+
+    private static final class Entry {
+        private final String key;
+        private final String path;
+        // Guarded by the registry
+        private State state = State.UNLOADED;
+        private LoadedModel loaded;
+        private long bytes;
+        private int refs;
+        private long lastUsed;
+
+        private Entry(String key, String path) {
+            this.key = key;
+            this.path = path;
+        }
+    }
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    // Never unloaded, outside the budget
+    private final String pinnedKey;
+    private final long budgetBytes;
+    private final int poolSize;
+    private final int grammarCacheSize;
+    private final int grammarPoolSize;
+    private final ExecutorService loader;
+    // Waits and rejections of every pool, including those of unloaded models
+    private final VoskRecognizerPool.Statistics poolStatistics = new VoskRecognizerPool.Statistics();
+    // Estimated native memory of the models loaded or being loaded, the pinned one excluded
+    private long residentBytes;
+    private long pinnedBytes;
+    private boolean closed;
+
+    /**
+     * @param paths            Model directories by key
+     * @param pinnedKey        Model that stays loaded, outside the budget (the default model)
+     * @param budgetBytes      Native memory the other resident models may use (0 = unlimited)
+     * @param poolSize         Recognizers per model, grammar recognizers included
+     * @param grammarCacheSize Grammars with cached recognizers per model (0 = no grammars)
+     * @param grammarPoolSize  Idle recognizers kept per grammar (0 = {@code poolSize})
+     */
+    VoskModelRegistry(Map<String, String> paths, String pinnedKey, long budgetBytes, int poolSize, int grammarCacheSize,
+                      int grammarPoolSize) {
+        for (Map.Entry<String, String> path : paths.entrySet()) {
+            entries.put(path.getKey(), new Entry(path.getKey(), path.getValue()));
+        }
+        this.pinnedKey = pinnedKey;
+        this.budgetBytes = budgetBytes;
+        this.poolSize = Math.max(1, poolSize);
+        this.grammarCacheSize = grammarCacheSize;
+        this.grammarPoolSize = grammarPoolSize;
+        this.loader = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "vosk-model-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    Set<String> getKeys() {
+        return Collections.unmodifiableSet(entries.keySet());
+    }
+
+    synchronized State getState(String key) {
+        Entry entry = entries.get(key);
+        return entry != null ? entry.state : null;
+    }
+
+    /**
+     * Whether the model is resident, so {@link #acquire} returns it without waiting
+     */
+    boolean isReady(String key) {
+        return getState(key) == State.READY;
+    }
+
+    /**
+     * Loads the model on the calling thread (startup)
+     *
+     * @return true if it is ready
+     */
+    boolean loadNow(String key) {
+        Entry entry = startLoading(key);
+        if (entry != null) {
+            load(entry);
+        }
+        return isReady(key);
+    }
+
+    /**
+     * Starts loading the model in the background unless it is resident or already loading
+     */
+    void loadAsync(String key) {
+        Entry entry = startLoading(key);
+        if (entry != null) {
+            try {
+                loader.execute(() -> load(entry));
+            } catch (RuntimeException e) {
+                // Shutting down
+                synchronized (this) {
+                    entry.state = State.UNLOADED;
+                }
+            }
+        }
+    }
+
+    private synchronized Entry startLoading(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null || closed || entry.state != State.UNLOADED) {
+            return null;
+        }
+        entry.state = State.LOADING;
+        return entry;
+    }
+
+    /**
+     * Takes a reference to a resident model; it stays loaded until {@link #release}d.
+     * A model that is not loaded starts loading in the background.
+     *
+     * @return the model, or null if it is not ready (or unknown)
+     */
+    LoadedModel acquire(String key) {
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.state == State.READY) {
+                entry.refs++;
+                entry.lastUsed = System.nanoTime();
+                return entry.loaded;
+            }
+        }
+        loadAsync(key);
+        return null;
+    }
+
+    synchronized void release(LoadedModel model) {
+        Entry entry = entries.get(model.getKey());
+        if (entry != null && entry.loaded == model && entry.refs > 0) {
+            entry.refs--;
+        }
+    }
+
+    private void load(Entry entry) {
+        long bytes = sizeOnDisk(new File(entry.path));
+        List<LoadedModel> evicted = new ArrayList<>();
+        synchronized (this) {
+            if (!reserve(entry, bytes, evicted)) {
+                entry.state = State.UNLOADED;
+                logger.warn("Vosk model {} ({} MB) does not fit the {} MB budget next to the other models in use - not loaded",
+                           entry.key, bytes >> 20, budgetBytes >> 20);
+                return;
+            }
+        }
+        for (LoadedModel model : evicted) {
+            logger.info("Unloading Vosk model {} to make room for {}", model.getKey(), entry.key);
+            model.close();
+        }
+
+        LoadedModel loaded = null;
+        long start = System.nanoTime();
+        try {
+            Model model = new Model(entry.path);
+            VoskRecognizerPool recognizers = new VoskRecognizerPool(model, VoskSpeechToTextService.MODEL_SAMPLE_RATE, poolSize, poolStatistics);
+            loaded = new LoadedModel(entry.key, model, recognizers, grammarCacheSize, grammarPoolSize);
+            recognizers.prewarm(poolSize);
+        } catch (IOException | RuntimeException e) {
+            logger.error("Failed to load Vosk model {} from {}: {}", entry.key, entry.path, e.getMessage(), e);
+            if (loaded != null) {
+                loaded.close();
+            }
+            synchronized (this) {
+                entry.state = State.FAILED;
+                if (isPinned(entry)) {
+                    pinnedBytes = 0;
+                } else {
+                    residentBytes -= entry.bytes;
+                }
+                entry.bytes = 0;
+            }
+            return;
+        }
+
+        boolean discard;
+        synchronized (this) {
+            discard = closed;
+            if (!discard) {
+                entry.loaded = loaded;
+                entry.state = State.READY;
+                entry.lastUsed = System.nanoTime();
+            }
+        }
+        if (discard) {
+            loaded.close();
+            return;
+        }
+        logger.info("Vosk model {} loaded from {} in {} ms (~{} MB, {} recognizers)",
+                   entry.key, entry.path, (System.nanoTime() - start) / 1_000_000, bytes >> 20, poolSize);
+    }
+
+    private boolean isPinned(Entry entry) {
+        return entry.key.equals(pinnedKey);
+    }
+
+    /**
+     * Makes room for {@code bytes} more, unloading idle models least recently used first -
+     * but only if enough can be freed. The pinned model always fits and is never unloaded.
+     */
+    private boolean reserve(Entry entry, long bytes, List<LoadedModel> evicted) {
+        if (isPinned(entry)) {
+            entry.bytes = bytes;
+            pinnedBytes = bytes;
+            return true;
+        }
+        if (budgetBytes > 0 && residentBytes + bytes > budgetBytes) {
+            List<Entry> idle = new ArrayList<>();
+            long freeable = 0;
+            for (Entry candidate : entries.values()) {
+                if (candidate != entry && !isPinned(candidate) && candidate.state == State.READY && candidate.refs == 0) {
+                    idle.add(candidate);
+                    freeable += candidate.bytes;
+                }
+            }
+            if (residentBytes - freeable + bytes > budgetBytes) {
+                return false;
+            }
+            idle.sort(Comparator.comparingLong(candidate -> candidate.lastUsed));
+            for (Entry victim : idle) {
+                if (residentBytes + bytes <= budgetBytes) {
+                    break;
+                }
+                evicted.add(victim.loaded);
+                victim.loaded = null;
+                victim.state = State.UNLOADED;
+                residentBytes -= victim.bytes;
+                victim.bytes = 0;
+            }
+        }
+        entry.bytes = bytes;
+        residentBytes += bytes;
+        return true;
+    }
+
+    private static long sizeOnDisk(File file) {
+        if (file.isFile()) {
+            return file.length();
+        }
+        long size = 0;
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                size += sizeOnDisk(child);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Estimated native memory of all loaded models, the pinned one included
+     */
+    synchronized long getResidentBytes() {
+        return residentBytes + pinnedBytes;
+    }
+
+    /**
+     * Recognizer waits and rejections since startup, over all models
+     */
+    VoskRecognizerPool.Statistics getPoolStatistics() {
+        return poolStatistics;
+    }
+
+    /**
+     * Sum of a recognizer pool statistic over every pool of the resident models
+     */
+    synchronized long sum(ToLongFunction<VoskRecognizerPool> statistic) {
+        long sum = 0;
+        for (Entry entry : entries.values()) {
+            if (entry.loaded != null) {
+                sum += entry.loaded.sum(statistic);
+            }
+        }
+        return sum;
+    }
+
+    synchronized int getCachedGrammars() {
+        int grammars = 0;
+        for (Entry entry : entries.values()) {
+            if (entry.loaded != null) {
+                grammars += entry.loaded.getCachedGrammars();
+            }
+        }
+        return grammars;
+    }
+
+    /**
+     * Unloads every model; call once no recognizer is decoding any more
+     */
+    @Override
+    public void close() {
+        List<LoadedModel> toClose = new ArrayList<>();
+        synchronized (this) {
+            closed = true;
+            for (Entry entry : entries.values()) {
+                if (entry.loaded != null) {
+                    toClose.add(entry.loaded);
+                    entry.loaded = null;
+                }
+                entry.state = State.UNLOADED;
+                entry.refs = 0;
+            }
+            residentBytes = 0;
+            pinnedBytes = 0;
+        }
+        loader.shutdownNow();
+        for (LoadedModel model : toClose) {
+            model.close();
+        }
+    }
+}
@@ -0,0 +1,372 @@
+package com.example.twilio.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.vosk.Model;
+import org.vosk.Recognizer;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reusable Vosk recognizers for one loaded model.
+ *
+ * A recognizer owns a native decoder (several MB, more for large models) that the garbage
+ * collector never frees, and building one costs a few milliseconds per turn. The pool keeps
+ * at most {@code maxRecognizers} of them - which also bounds how many utterances are decoded
+ * natively at once - and hands them out most recently used first. A returned recognizer is
+ * {@code reset()} for the next utterance; one that failed is closed and replaced. Closing
+ * the pool closes the idle recognizers at once and the busy ones as they come back.
+ *
+ * Waits for a free recognizer are counted and timed so a pool that is too small shows up in
+ * the metrics rather than as slow turns. The counts go to a {@link Statistics} shared by every
+ * pool of the registry, so they keep growing when grammar pools or whole models are closed.
+ *
+ * A pool created with a grammar holds recognizers restricted to that phrase list (Vosk's
+ * grammar constructor), which decode much faster than the full vocabulary. It is created from
+ * the model's full-vocabulary pool and shares its budget: recognizers busy and alive across
+ * all of the model's pools stay within {@code maxRecognizers}. When the budget is used up by
+ * idle recognizers of other pools, the least recently used of those is closed to make room.
+ */
+final class VoskRecognizerPool implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(VoskRecognizerPool.class);
+
+    /**
+     * Cumulative wait and rejection counts, shared by pools that come and go
+     */
+    static final class Statistics {
+        private final AtomicLong waits = new AtomicLong();
+        private final AtomicLong totalWaitNanos = new AtomicLong();
+        private final AtomicLong maxWaitNanos = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+
+        private void recordWait(long nanos) {
+            waits.incrementAndGet();
+            totalWaitNanos.addAndGet(nanos);
+            maxWaitNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        /**
+         * Acquisitions that had to wait
+         */
+        long getWaits() {
+            return waits.get();
+        }
+
+        long getTotalWaitNanos() {
+            return totalWaitNanos.get();
+        }
+
+        long getMaxWaitNanos() {
+            return maxWaitNanos.get();
+        }
+
+        /**
+         * Acquisitions that found no recognizer (in time)
+         */
+        long getRejected() {
+            return rejected.get();
+        }
+    }
+
+    /**
+     * Recognizers of one model, shared by its full-vocabulary and grammar pools
+     */
+    private static final class Budget {
+        private final int maxRecognizers;
+        // Busy recognizers
+        private final Semaphore permits;
+        // Alive recognizers (idle and busy)
+        private final AtomicInteger alive = new AtomicInteger();
+        private final List<VoskRecognizerPool> pools = new CopyOnWriteArrayList<>();
+
+        private Budget(int maxRecognizers) {
+            this.maxRecognizers = maxRecognizers;
+            this.permits = new Semaphore(maxRecognizers, true);
+        }
+
+        /**
+         * Counts one more recognizer, closing an idle one of some pool first if the budget is
+         * used up. Only overshoots if other threads took all idle recognizers meanwhile.
+         */
+        private void reserve() {
+            while (true) {
+                int current = alive.get();
+                if (current < maxRecognizers) {
+                    if (alive.compareAndSet(current, current + 1)) {
+                        return;
+                    }
+                } else if (!trimOne()) {
+                    alive.incrementAndGet();
+                    return;
+                }
+            }
+        }
+
+        // Grammar pools (added last) give up their recognizers before the full vocabulary
+        private boolean trimOne() {
+            VoskRecognizerPool[] snapshot = pools.toArray(new VoskRecognizerPool[0]);
+            for (int i = snapshot.length - 1; i >= 0; i--) {
+                if (snapshot[i].trimIdle()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private final Model model;
+    private final float sampleRate;
+    // JSON phrase list the recognizers are restricted to, or null for the full vocabulary
+    private final String grammar;
+    private final Budget budget;
+    private final Statistics statistics;
+    // Idle recognizers kept for reuse
+    private final int maxIdle;
+    private final Semaphore permits;
+    // Idle recognizers, most recently returned first
+    private final ArrayDeque<Recognizer> idle = new ArrayDeque<>();
+    private boolean closed;
+
+    private final AtomicInteger created = new AtomicInteger();
+    private final AtomicInteger inUse = new AtomicInteger();
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    /**
+     * @param model          Loaded model - owned by the caller, not closed by the pool
+     * @param sampleRate     Sample rate the recognizers are created for
+     * @param maxRecognizers Most recognizers alive (and busy) at once
+     * @param statistics     Where waits and rejections are counted
+     */
+    VoskRecognizerPool(Model model, float sampleRate, int maxRecognizers, Statistics statistics) {
+        this(model, sampleRate, null, new Budget(Math.max(1, maxRecognizers)), maxRecognizers, statistics);
+    }
+
+    /**
+     * Recognizers for a grammar, within the budget of the model's full-vocabulary pool
+     *
+     * @param vocabulary Full-vocabulary pool of the model
+     * @param grammar    JSON array of the phrases to recognize (e.g. {@code ["yes", "no", "[unk]"]})
+     * @param maxIdle    Idle recognizers kept for the grammar
+     */
+    VoskRecognizerPool(VoskRecognizerPool vocabulary, String grammar, int maxIdle) {
+        this(vocabulary.model, vocabulary.sampleRate, grammar, vocabulary.budget, maxIdle, vocabulary.statistics);
+    }
+
+    private VoskRecognizerPool(Model model, float sampleRate, String grammar, Budget budget, int maxIdle,
+                               Statistics statistics) {
+        this.model = model;
+        this.sampleRate = sampleRate;
+        this.grammar = grammar;
+        this.budget = budget;
+        this.statistics = statistics;
+        this.maxIdle = Math.max(1, Math.min(maxIdle, budget.maxRecognizers));
+        this.permits = budget.permits;
+        budget.pools.add(this);
+    }
+
+    /**
+     * Creates recognizers up front so the first turns do not pay for it
+     *
+     * @param count Recognizers to create (at most the pool size)
+     */
+    void prewarm(int count) throws IOException {
+        int target = Math.min(count, maxIdle);
+        while (created.get() < target) {
+            Recognizer recognizer = create();
+            synchronized (this) {
+                if (!closed) {
+                    idle.push(recognizer);
+                    continue;
+                }
+            }
+            close(recognizer);
+            return;
+        }
+    }
+
+    /**
+     * Takes a recognizer, waiting up to {@code timeoutMs} for one to be returned
+     *
+     * @return the recognizer, or null if none became free in time
+     */
+    Recognizer acquire(long timeoutMs) throws IOException, InterruptedException {
+        if (permits.tryAcquire()) {
+            return take();
+        }
+        waiting.incrementAndGet();
+        long start = System.nanoTime();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(timeoutMs, TimeUnit.MILLISECONDS);
+        } finally {
+            waiting.decrementAndGet();
+        }
+        statistics.recordWait(System.nanoTime() - start);
+        if (!acquired) {
+            statistics.rejected.incrementAndGet();
+            return null;
+        }
+        return take();
+    }
+
+    /**
+     * Takes a recognizer only if one is free right now (for threads that must not block)
+     *
+     * @return the recognizer, or null if all are busy
+     */
+    Recognizer tryAcquire() throws IOException {
+        if (!permits.tryAcquire()) {
+            statistics.rejected.incrementAndGet();
+            return null;
+        }
+        return take();
+    }
+
+    private Recognizer take() throws IOException {
+        Recognizer recognizer;
+        try {
+            synchronized (this) {
+                if (closed) {
+                    throw new IllegalStateException("Vosk recognizer pool is closed");
+                }
+                recognizer = idle.poll();
+            }
+            // Outside the lock: making room may close idle recognizers of the other pools
+            if (recognizer == null) {
+                recognizer = create();
+            }
+        } catch (IOException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+        inUse.incrementAndGet();
+        return recognizer;
+    }
+
+    private Recognizer create() throws IOException {
+        budget.reserve();
+        Recognizer recognizer;
+        try {
+            recognizer = grammar != null ? new Recognizer(model, sampleRate, grammar) : new Recognizer(model, sampleRate);
+        } catch (IOException | RuntimeException e) {
+            budget.alive.decrementAndGet();
+            throw e;
+        }
+        created.incrementAndGet();
+        return recognizer;
+    }
+
+    /**
+     * Closes the least recently used idle recognizer to free budget for another pool
+     *
+     * @return false if none was idle
+     */
+    private boolean trimIdle() {
+        Recognizer recognizer;
+        synchronized (this) {
+            recognizer = idle.pollLast();
+        }
+        if (recognizer == null) {
+            return false;
+        }
+        close(recognizer);
+        return true;
+    }
+
+    /**
+     * Returns a recognizer after a completed utterance; it is reset for the next one
+     */
+    void release(Recognizer recognizer) {
+        boolean keep;
+        try {
+            recognizer.reset();
+            synchronized (this) {
+                keep = !closed && idle.size() < maxIdle;
+                if (keep) {
+                    idle.push(recognizer);
+                }
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Resetting Vosk recognizer failed - replacing it: {}", e.getMessage());
+            keep = false;
+        }
+        if (!keep) {
+            close(recognizer);
+        }
+        inUse.decrementAndGet();
+        permits.release();
+    }
+
+    /**
+     * Returns a recognizer that failed: it is closed and a fresh one is created when needed
+     */
+    void evict(Recognizer recognizer) {
+        close(recognizer);
+        inUse.decrementAndGet();
+        permits.release();
+    }
+
+    private void close(Recognizer recognizer) {
+        try {
+            recognizer.close();
+        } catch (RuntimeException e) {
+            logger.warn("Closing Vosk recognizer failed: {}", e.getMessage());
+        }
+        created.decrementAndGet();
+        budget.alive.decrementAndGet();
+    }
+
+    /**
+     * Closes the idle recognizers; busy ones are closed when they are returned
+     */
+    @Override
+    public void close() {
+        budget.pools.remove(this);
+        ArrayDeque<Recognizer> toClose;
+        synchronized (this) {
+            closed = true;
+            toClose = new ArrayDeque<>(idle);
+            idle.clear();
+        }
+        for (Recognizer recognizer : toClose) {
+            close(recognizer);
+        }
+    }
+
+    String getGrammar() {
+        return grammar;
+    }
+
+    /**
+     * Most recognizers alive at once, across the model's pools
+     */
+    int getMaxRecognizers() {
+        return budget.maxRecognizers;
+    }
+
+    /**
+     * Recognizers alive (idle and busy)
+     */
+    int getCreated() {
+        return created.get();
+    }
+
+    int getInUse() {
+        return inUse.get();
+    }
+
+    /**
+     * Threads waiting for a recognizer right now
+     */
+    int getWaiting() {
+        return waiting.get();
+    }
+}
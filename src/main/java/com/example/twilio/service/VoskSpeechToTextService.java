@@ -1,21 +1,41 @@
 package com.example.twilio.service;
 
+import com.example.twilio.audio.AudioFormat;
+import com.example.twilio.audio.G711Codec;
+import com.example.twilio.audio.PolyphaseResampler;
+
 import java.io.File;
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.vosk.LibVosk;
+import org.vosk.LogLevel;
+import org.vosk.Recognizer;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 
-// Vosk imports - Using reflection to load dynamically
-// Download from: https://github.com/alphacep/vosk-api/releases
-// Add vosk.jar to classpath and native library to library path
-
 /**
  * Open Source Speech-to-Text Service using Vosk
  * 
@@ -27,30 +47,93 @@ import javax.annotation.PreDestroy;
  * 2. Extract the model to a directory (e.g., ./models/vosk-model-small-en-us-0.15)
  * 3. Set the model path in application.properties: vosk.model.path=./models/vosk-model-small-en-us-0.15
  * 
+ * Bound directly to the com.alphacephei:vosk dependency. Recognizers come from a
+ * {@link VoskRecognizerPool} (vosk.recognizer.pool.size, one per CPU core by default): they are
+ * reused across turns, reset between utterances and closed explicitly, so turns neither build
+ * a recognizer nor leak its native memory.
+ * 
+ * With vosk.streaming.enabled each utterance is decoded while it is spoken, on a small pool
+ * of decoder threads (see {@link VoskStreamingRecognitionSession}), so the turn only waits for
+ * the decoder to catch up rather than for the whole utterance to be decoded.
+ * 
+ * An utterance that answers a prompt with an expected answer set (yes/no, a weekday) is
+ * decoded against that phrase list only. Recognizers for the most recent grammars are cached
+ * in pools of their own (vosk.grammar.cache.size), since building one compiles the grammar;
+ * they count against the model's vosk.recognizer.pool.size like any other recognizer.
+ * Speech outside the grammar comes back as [unk]; a result with any [unk] in it is not a
+ * closed answer ("no, I want to reschedule" is not "no"), so the utterance is decoded again
+ * with the full vocabulary.
+ * 
+ * Further models (other languages, a large English model) are listed in vosk.models and kept
+ * by a {@link VoskModelRegistry}: each is loaded in the background on first use and unloaded,
+ * least recently used first, when the loaded models would exceed vosk.model.memory.budget.mb.
+ * 
  * Alternative: Use CMU Sphinx (see SphinxSpeechToTextService.java)
  */
 @Service
-public class VoskSpeechToTextService {
+public class VoskSpeechToTextService implements StreamingSpeechToTextEngine {
 
     private static final Logger logger = LoggerFactory.getLogger(VoskSpeechToTextService.class);
 
     @Value("${vosk.model.path:./models/vosk-model-small-en-us-0.15}")
     private String modelPath;
 
+    // Further models by key, e.g. "en-large=./models/vosk-model-en-us-0.22,de=./models/vosk-model-small-de-0.15"
+    // (vosk.model.path is the model "default"); loaded when first used
+    @Value("${vosk.models:}")
+    private String extraModels;
+
+    // Model call audio is transcribed with; loaded at startup
+    @Value("${vosk.model.default:default}")
+    private String defaultModel;
+
+    // Native memory all loaded models may use, estimated from their size on disk (0 = unlimited)
+    @Value("${vosk.model.memory.budget.mb:0}")
+    private long modelMemoryBudgetMb;
+
     @Value("${vosk.enabled:false}")
     private boolean enabled;
 
-    // Vosk types - Using reflection to load dynamically
-    private Object model;
-    private Object recognizer;
-    private Class<?> modelClass;
-    private Class<?> recognizerClass;
-    private java.lang.reflect.Method recognizerAcceptWaveForm;
-    private java.lang.reflect.Method recognizerGetResult;
-    private java.lang.reflect.Method recognizerGetPartialResult;
-    private java.lang.reflect.Method recognizerGetFinalResult;
+    // Decode utterances frame by frame while the caller speaks
+    @Value("${vosk.streaming.enabled:true}")
+    private boolean streamingEnabled;
+
+    // How long the end of a turn waits for the decoder to catch up before transcribing in batch
+    @Value("${vosk.streaming.final.timeout.ms:1500}")
+    private long streamingFinalTimeoutMs;
+
+    // Decoder threads shared by all calls (0 = one per CPU core)
+    @Value("${vosk.streaming.threads:0}")
+    private int streamingThreads;
+
+    // Recognizers kept for reuse - also the most utterances decoded at once (0 = one per CPU core)
+    @Value("${vosk.recognizer.pool.size:0}")
+    private int recognizerPoolSize;
+
+    // How long a turn waits for a free recognizer before giving up on Vosk
+    @Value("${vosk.recognizer.pool.acquire.timeout.ms:2000}")
+    private long recognizerAcquireTimeoutMs;
+
+    // Grammars whose recognizers are kept (0 = never decode against a grammar)
+    @Value("${vosk.grammar.cache.size:16}")
+    private int grammarCacheSize;
+
+    // Idle recognizers kept per cached grammar (0 = up to vosk.recognizer.pool.size)
+    @Value("${vosk.grammar.pool.size:0}")
+    private int grammarPoolSize;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    // Sample rate the models expect; call audio is resampled from 8000 Hz
+    static final int MODEL_SAMPLE_RATE = 16000;
+    // What a grammar-restricted recognizer returns for a word outside its grammar
+    static final String UNKNOWN_WORD = "[unk]";
+
+    private VoskModelRegistry models;
     private boolean initialized = false;
     private boolean libraryAvailable = false;
+    private ExecutorService decoder;
 
     /**
      * Initialize Vosk model using reflection
@@ -63,78 +146,60 @@ public class VoskSpeechToTextService {
         }
 
         try {
-            logger.info("Initializing Vosk model from path: {}", modelPath);
+            Map<String, String> modelPaths = modelPaths();
+            String defaultPath = modelPaths.get(defaultModel);
+            if (defaultPath == null) {
+                logger.error("Vosk default model '{}' is not configured (models: {})", defaultModel, modelPaths.keySet());
+                return;
+            }
+            logger.info("Initializing Vosk model {} from path: {}", defaultModel, defaultPath);
             
             // Check if model directory exists
-            File modelDir = new File(modelPath);
+            File modelDir = new File(defaultPath);
             if (!modelDir.exists() || !modelDir.isDirectory()) {
-                logger.error("Vosk model directory not found: {}. Please download a model from https://alphacephei.com/vosk/models", modelPath);
+                logger.error("Vosk model directory not found: {}. Please download a model from https://alphacephei.com/vosk/models", defaultPath);
                 logger.error("Expected path: {}", modelDir.getAbsolutePath());
                 return;
             }
 
-            // Try to load Vosk classes using reflection
-            // Vosk uses org.vosk package (not org.kaldi)
+            // Load the native library (bundled with the com.alphacephei:vosk jar)
             try {
-                // Try to load LibVosk first (for native library loading)
-                try {
-                    Class<?> libVoskClass = Class.forName("org.vosk.LibVosk");
-                    java.lang.reflect.Method loadMethod = libVoskClass.getMethod("load");
-                    loadMethod.invoke(null); // Static method
-                    logger.info("Vosk native library loaded successfully");
-                } catch (ClassNotFoundException e) {
-                    logger.debug("LibVosk class not found, trying without explicit load");
-                } catch (Exception e) {
-                    logger.warn("Failed to load Vosk native library explicitly: {}", e.getMessage());
-                    // Continue anyway - native library might load automatically
-                }
-                
-                // Load main Vosk classes
-                modelClass = Class.forName("org.vosk.Model");
-                recognizerClass = Class.forName("org.vosk.Recognizer");
-                
-                // Verify constructors exist (for validation)
-                modelClass.getConstructor(String.class);
-                recognizerClass.getConstructor(modelClass, float.class);
-                
-                // Get methods we need
-                // Note: Vosk uses acceptWaveForm(byte[], int) not acceptWaveForm(float[], int)
-                recognizerAcceptWaveForm = recognizerClass.getMethod("acceptWaveForm", byte[].class, int.class);
-                recognizerGetResult = recognizerClass.getMethod("getResult");
-                recognizerGetPartialResult = recognizerClass.getMethod("getPartialResult");
-                recognizerGetFinalResult = recognizerClass.getMethod("getFinalResult");
-                
+                LibVosk.setLogLevel(LogLevel.WARNINGS);
                 libraryAvailable = true;
-                logger.info("Vosk library classes loaded successfully");
-            } catch (ClassNotFoundException e) {
-                logger.error("Vosk library not found. The Maven dependency may not be available.");
-                logger.error("Try adding the dependency to pom.xml:");
+                logger.info("Vosk native library loaded successfully");
+            } catch (LinkageError e) {
+                logger.error("Vosk library not available: {}", e.getMessage());
+                logger.error("Make sure the dependency is in pom.xml:");
                 logger.error("  <dependency>");
                 logger.error("    <groupId>com.alphacephei</groupId>");
                 logger.error("    <artifactId>vosk</artifactId>");
                 logger.error("    <version>0.3.45</version>");
                 logger.error("  </dependency>");
                 logger.error("Or download from: https://github.com/alphacep/vosk-api/releases");
-                logger.error("The JAR file should be in the Maven repository or you may need to build it from source.");
-                return;
-            } catch (Exception e) {
-                logger.error("Failed to load Vosk library methods: {}", e.getMessage(), e);
                 return;
             }
 
             // Load Vosk model
             try {
-                java.lang.reflect.Constructor<?> modelConstructor = modelClass.getConstructor(String.class);
-                model = modelConstructor.newInstance(modelPath);
-                
-                // Create recognizer with sample rate 16000 Hz (Vosk models expect 16000 Hz)
+                // Recognizers run at 16000 Hz (Vosk models expect 16000 Hz)
                 // We'll resample 8000 Hz audio to 16000 Hz before processing
-                java.lang.reflect.Constructor<?> recognizerConstructor = recognizerClass.getConstructor(modelClass, float.class);
-                recognizer = recognizerConstructor.newInstance(model, 16000.0f);
+                int poolSize = recognizerPoolSize > 0 ? recognizerPoolSize : Runtime.getRuntime().availableProcessors();
+                models = new VoskModelRegistry(modelPaths, defaultModel, modelMemoryBudgetMb << 20, poolSize,
+                                               grammarCacheSize, grammarPoolSize);
+                // The default model is loaded now and stays loaded, the others when first used
+                if (!models.loadNow(defaultModel)) {
+                    logger.error("Make sure the model path is correct and the model files are valid");
+                    return;
+                }
+                registerPoolMetrics();
                 
                 initialized = true;
-                logger.info("Vosk model initialized successfully from: {}", modelPath);
-            } catch (Exception e) {
+                logger.info("Vosk model initialized successfully from: {} ({} pooled recognizers, models: {})",
+                           defaultPath, poolSize, modelPaths.keySet());
+                if (streamingEnabled) {
+                    startDecoder();
+                }
+            } catch (RuntimeException e) {
                 logger.error("Failed to load Vosk model: {}", e.getMessage(), e);
                 logger.error("Make sure the model path is correct and the model files are valid");
                 initialized = false;
@@ -146,6 +211,73 @@ public class VoskSpeechToTextService {
         }
     }
 
+    /**
+     * vosk.model.path as "default", plus the vosk.models entries
+     */
+    private Map<String, String> modelPaths() {
+        Map<String, String> paths = new LinkedHashMap<>();
+        paths.put("default", modelPath);
+        for (String entry : extraModels.split(",")) {
+            int separator = entry.indexOf('=');
+            if (separator <= 0) {
+                if (!entry.trim().isEmpty()) {
+                    logger.warn("Ignoring Vosk model entry '{}' - expected key=path", entry.trim());
+                }
+                continue;
+            }
+            paths.put(entry.substring(0, separator).trim(), entry.substring(separator + 1).trim());
+        }
+        return paths;
+    }
+
+    // Pool sizes are summed over the loaded models; waits and rejections are counted since startup
+    private void registerPoolMetrics() {
+        if (meterRegistry == null) {
+            return;
+        }
+        Gauge.builder("vosk.recognizer.pool.in.use", models, registry -> registry.sum(VoskRecognizerPool::getInUse))
+                .description("Vosk recognizers decoding an utterance")
+                .register(meterRegistry);
+        Gauge.builder("vosk.recognizer.pool.created", models, registry -> registry.sum(VoskRecognizerPool::getCreated))
+                .description("Vosk recognizers alive (idle and busy)")
+                .register(meterRegistry);
+        Gauge.builder("vosk.recognizer.pool.waiting", models, registry -> registry.sum(VoskRecognizerPool::getWaiting))
+                .description("Turns waiting for a free Vosk recognizer")
+                .register(meterRegistry);
+        FunctionTimer.builder("vosk.recognizer.pool.wait", models.getPoolStatistics(),
+                        VoskRecognizerPool.Statistics::getWaits, VoskRecognizerPool.Statistics::getTotalWaitNanos,
+                        TimeUnit.NANOSECONDS)
+                .description("Time spent waiting for a free Vosk recognizer")
+                .register(meterRegistry);
+        FunctionCounter.builder("vosk.recognizer.pool.rejected", models.getPoolStatistics(),
+                        VoskRecognizerPool.Statistics::getRejected)
+                .description("Utterances that found no free Vosk recognizer")
+                .register(meterRegistry);
+        Gauge.builder("vosk.grammar.cache.size", models, VoskModelRegistry::getCachedGrammars)
+                .description("Grammars with cached Vosk recognizers")
+                .register(meterRegistry);
+        Gauge.builder("vosk.model.resident.bytes", models, VoskModelRegistry::getResidentBytes)
+                .description("Estimated native memory of the loaded Vosk models")
+                .register(meterRegistry);
+        for (String key : models.getKeys()) {
+            Gauge.builder("vosk.model.ready", models, registry -> registry.isReady(key) ? 1 : 0)
+                    .description("Whether the Vosk model is loaded and ready")
+                    .tag("model", key)
+                    .register(meterRegistry);
+        }
+    }
+
+    private void startDecoder() {
+        int threads = streamingThreads > 0 ? streamingThreads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger counter = new AtomicInteger();
+        decoder = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "vosk-decoder-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        logger.info("Vosk streaming recognition enabled ({} decoder threads)", threads);
+    }
+
     /**
      * Transcribe audio bytes to text
      * 
@@ -154,6 +286,26 @@ public class VoskSpeechToTextService {
      * @return Transcribed text, or null if transcription fails
      */
     public String transcribe(byte[] pcmAudio, int sampleRate) {
+        return transcribe(pcmAudio, sampleRate, null);
+    }
+
+    /**
+     * Transcribe audio bytes expected to be one of a few phrases
+     *
+     * @param grammar Expected phrases, or null to decode with the full vocabulary
+     */
+    public String transcribe(byte[] pcmAudio, int sampleRate, List<String> grammar) {
+        return transcribe(pcmAudio, sampleRate, defaultModel, grammar);
+    }
+
+    /**
+     * Transcribe audio bytes with one of the configured models (vosk.models)
+     *
+     * @param modelKey Model to use, or null for the default; if it is not loaded yet it starts
+     *                 loading and the utterance is decoded with the default model
+     * @param grammar  Expected phrases, or null to decode with the full vocabulary
+     */
+    public String transcribe(byte[] pcmAudio, int sampleRate, String modelKey, List<String> grammar) {
         if (!initialized || !enabled || !libraryAvailable) {
             if (!libraryAvailable) {
                 logger.warn("Vosk library not available. Please download from https://github.com/alphacep/vosk-api/releases");
@@ -183,119 +335,55 @@ public class VoskSpeechToTextService {
             int bytesToProcess = pcmAudio.length;
             
             if (sampleRate == 8000) {
-                // Resample from 8000 Hz to 16000 Hz (upsample by 2x)
-                audioToProcess = resampleAudio8000To16000(pcmAudio);
-                bytesToProcess = audioToProcess.length;
+                // Resample from 8000 Hz to 16000 Hz (upsample by 2x) with a polyphase low-pass filter;
+                // linear interpolation left aliasing images above 4 kHz that hurt recognition
+                PolyphaseResampler resampler = new PolyphaseResampler(8000, 16000);
+                int inputSamples = pcmAudio.length / 2;
+                audioToProcess = new byte[2 * resampler.maxOutputSamples(inputSamples)];
+                bytesToProcess = 2 * resampler.processLinear16(pcmAudio, 0, inputSamples, audioToProcess, 0);
                 logger.debug("Resampled audio from 8000 Hz to 16000 Hz: {} bytes -> {} bytes", pcmAudio.length, bytesToProcess);
                 
                 // Validate resampled audio
-                if (audioToProcess == null || audioToProcess.length < 2) {
+                if (bytesToProcess < 2) {
                     logger.error("Resampling failed or produced invalid audio");
                     return null;
                 }
             }
             
-            // Create a new recognizer for each transcription to avoid state issues
-            // Vosk recognizers can have internal state that gets corrupted if reused incorrectly
-            Object currentRecognizer;
-            try {
-                logger.debug("Creating new Vosk recognizer with 16000 Hz for this transcription");
-                java.lang.reflect.Constructor<?> recognizerConstructor = recognizerClass.getConstructor(modelClass, float.class);
-                currentRecognizer = recognizerConstructor.newInstance(model, 16000.0f);
-            } catch (Exception e) {
-                logger.error("Failed to create Vosk recognizer: {}", e.getMessage(), e);
-                return null;
-            }
-
             // Validate audio format - must be even number of bytes (16-bit samples)
             if (bytesToProcess % 2 != 0) {
                 logger.warn("Audio data length is not even ({} bytes), truncating by 1 byte", bytesToProcess);
                 bytesToProcess = bytesToProcess - 1;
             }
             
-            // Vosk accepts both byte[] and short[] formats
-            // Try short[] format first (more common), fallback to byte[] if needed
-            logger.debug("Processing {} bytes of audio with Vosk ({} samples)", bytesToProcess, bytesToProcess / 2);
-            
-            // Convert to short array (16-bit samples)
-            int numSamples = bytesToProcess / 2;
-            short[] audioShorts = new short[numSamples];
-            ByteBuffer buffer = ByteBuffer.wrap(audioToProcess, 0, bytesToProcess);
-            buffer.order(ByteOrder.LITTLE_ENDIAN);
-            for (int i = 0; i < numSamples; i++) {
-                audioShorts[i] = buffer.getShort();
+            // Held until the decode is done, so the model cannot be unloaded under it
+            VoskModelRegistry.LoadedModel model = acquireModel(modelKey);
+            if (model == null) {
+                logger.warn("Vosk model {} is {} - skipping Vosk for this utterance", defaultModel, models.getState(defaultModel));
+                return null;
             }
-            
-            // Try to use acceptWaveForm(short[], int) method
-            Boolean hasResult = false;
             try {
-                // Check if acceptWaveForm(short[], int) method exists
-                java.lang.reflect.Method acceptWaveFormShorts = null;
-                try {
-                    acceptWaveFormShorts = recognizerClass.getMethod("acceptWaveForm", short[].class, int.class);
-                } catch (NoSuchMethodException e) {
-                    // Method doesn't exist, will use byte[] version
-                }
-                
-                if (acceptWaveFormShorts != null) {
-                    // Use short[] version (preferred)
-                    logger.debug("Using acceptWaveForm(short[], int) method");
-                    hasResult = (Boolean) acceptWaveFormShorts.invoke(currentRecognizer, audioShorts, numSamples);
-                } else {
-                    // Fallback to byte[] version
-                    logger.debug("Using acceptWaveForm(byte[], int) method");
-                    hasResult = (Boolean) recognizerAcceptWaveForm.invoke(currentRecognizer, audioToProcess, bytesToProcess);
-                }
-            } catch (Exception e) {
-                logger.error("Error calling acceptWaveForm: {}", e.getMessage(), e);
-                // Try byte[] version as fallback
-                try {
-                    logger.debug("Falling back to byte[] version");
-                    hasResult = (Boolean) recognizerAcceptWaveForm.invoke(currentRecognizer, audioToProcess, bytesToProcess);
-                } catch (Exception e2) {
-                    logger.error("Both acceptWaveForm methods failed: {}", e2.getMessage(), e2);
-                    return null;
-                }
-            }
-            
-            // Always try to get final result first (even if hasResult is false)
-            // This ensures we get any text that was recognized
-            String finalResult = (String) recognizerGetFinalResult.invoke(currentRecognizer);
-            if (finalResult != null) {
-                logger.info("Vosk final result: {}", finalResult);
-                String extracted = extractTextFromResult(finalResult);
-                if (extracted != null && !extracted.trim().isEmpty()) {
-                    logger.info("Vosk extracted text (final): {}", extracted);
-                    return extracted;
+                VoskRecognizerPool constrained = grammarPool(model, grammar);
+                if (constrained != null) {
+                    try {
+                        String text = decode(constrained, audioToProcess, bytesToProcess);
+                        if (text != null && !isOutOfGrammar(text)) {
+                            return text;
+                        }
+                        logger.debug("Speech outside the expected grammar ({}) - decoding with the full vocabulary", text);
+                    } catch (IllegalStateException e) {
+                        // Evicted from the cache meanwhile
+                        logger.debug("Vosk grammar recognizers unavailable: {}", e.getMessage());
+                    }
                 }
+                return withoutUnknown(decode(model.getRecognizers(), audioToProcess, bytesToProcess));
+            } finally {
+                models.release(model);
             }
             
-            if (hasResult) {
-                // Final result from getResult() method
-                String result = (String) recognizerGetResult.invoke(currentRecognizer);
-                logger.info("Vosk transcription result (getResult): {}", result);
-                String extracted = extractTextFromResult(result);
-                if (extracted != null && !extracted.trim().isEmpty()) {
-                    logger.info("Vosk extracted text (getResult): {}", extracted);
-                    return extracted;
-                } else {
-                    logger.warn("Vosk getResult() returned empty. Raw result: {}", result);
-                }
-            }
-            
-            // Get partial result as fallback
-            String partial = (String) recognizerGetPartialResult.invoke(currentRecognizer);
-            logger.info("Vosk transcription result (partial): {}", partial);
-            String extracted = extractTextFromResult(partial);
-            if (extracted != null && !extracted.trim().isEmpty()) {
-                logger.info("Vosk extracted text (partial): {}", extracted);
-                return extracted;
-            } else {
-                logger.warn("Vosk returned no transcription. Partial result: {}", partial);
-                logger.warn("This might indicate: audio too short, poor quality, or no speech detected");
-                return null;
-            }
-            
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
         } catch (Exception e) {
             logger.error("Error during Vosk transcription: {}", e.getMessage(), e);
             logger.error("Stack trace:", e);
@@ -304,84 +392,170 @@ public class VoskSpeechToTextService {
     }
 
     /**
-     * Transcribe audio with default 8000 Hz sample rate (Twilio standard)
+     * Decodes an utterance on a recognizer borrowed from {@code pool}
      */
-    public String transcribe(byte[] pcmAudio) {
-        return transcribe(pcmAudio, 8000);
+    private String decode(VoskRecognizerPool pool, byte[] audioToProcess, int bytesToProcess) throws IOException, InterruptedException {
+        // Pooled recognizer - reset after every utterance, so no state carries over
+        Recognizer recognizer = pool.acquire(recognizerAcquireTimeoutMs);
+        if (recognizer == null) {
+            logger.warn("All {} Vosk recognizers busy for {} ms - skipping Vosk for this utterance",
+                       pool.getMaxRecognizers(), recognizerAcquireTimeoutMs);
+            return null;
+        }
+        boolean healthy = false;
+        try {
+            String text = recognize(recognizer, audioToProcess, bytesToProcess);
+            healthy = true;
+            return text;
+        } finally {
+            if (healthy) {
+                pool.release(recognizer);
+            } else {
+                pool.evict(recognizer);
+            }
+        }
     }
 
     /**
-     * Finalize recognition and get final result
-     * Call this when audio stream ends
+     * Takes a reference to the model chosen for the call, or to the default model while that
+     * one is unknown, still loading or failed to load
+     *
+     * @return the model, or null if not even the default is loaded
      */
-    public String finalizeRecognition() {
-        if (!initialized || recognizer == null || !libraryAvailable) {
-            return null;
+    private VoskModelRegistry.LoadedModel acquireModel(String modelKey) {
+        if (modelKey != null && !modelKey.equals(defaultModel)) {
+            VoskModelRegistry.State state = models.getState(modelKey);
+            if (state == null) {
+                logger.warn("Vosk model {} is not configured (vosk.models) - using {}", modelKey, defaultModel);
+            } else {
+                // Starts loading a cold model for the call's next utterances
+                VoskModelRegistry.LoadedModel model = models.acquire(modelKey);
+                if (model != null) {
+                    return model;
+                }
+                logger.info("Vosk model {} is {} - using {} for this utterance", modelKey, models.getState(modelKey), defaultModel);
+            }
         }
+        return models.acquire(defaultModel);
+    }
 
-        try {
-            String finalResult = (String) recognizerGetFinalResult.invoke(recognizer);
-            logger.debug("Vosk final result: {}", finalResult);
-            return extractTextFromResult(finalResult);
-        } catch (Exception e) {
-            logger.error("Error finalizing Vosk recognition: {}", e.getMessage(), e);
+    /**
+     * Recognizers of {@code model} restricted to {@code grammar}, created on first use
+     *
+     * @return the pool, or null for no grammar (or grammars disabled)
+     */
+    private VoskRecognizerPool grammarPool(VoskModelRegistry.LoadedModel model, List<String> grammar) {
+        if (grammar == null || grammar.isEmpty()) {
             return null;
         }
+        return model.grammarPool(grammarJson(grammar));
     }
 
     /**
-     * Resample audio from 8000 Hz to 16000 Hz (upsample by 2x)
-     * Uses linear interpolation to double the sample rate
-     * 
-     * @param pcm8000 PCM audio at 8000 Hz (16-bit, little-endian)
-     * @return PCM audio at 16000 Hz (16-bit, little-endian)
+     * Vosk grammar: JSON array of lower-case phrases, plus [unk] so speech outside the
+     * grammar is not forced onto the closest phrase
      */
-    private byte[] resampleAudio8000To16000(byte[] pcm8000) {
-        if (pcm8000 == null || pcm8000.length == 0) {
-            return pcm8000;
+    static String grammarJson(List<String> grammar) {
+        Set<String> phrases = new TreeSet<>();
+        for (String phrase : grammar) {
+            String normalized = phrase == null ? "" : phrase.trim().toLowerCase(Locale.ROOT).replaceAll("\\s+", " ");
+            if (!normalized.isEmpty()) {
+                phrases.add(normalized);
+            }
         }
+        StringBuilder json = new StringBuilder("[");
+        for (String phrase : phrases) {
+            json.append('"').append(phrase.replace("\\", "\\\\").replace("\"", "\\\"")).append("\", ");
+        }
+        return json.append('"').append(UNKNOWN_WORD).append("\"]").toString();
+    }
+
+    /**
+     * Runs one whole utterance (16 kHz LINEAR16) through the recognizer
+     */
+    private String recognize(Recognizer recognizer, byte[] audioToProcess, int bytesToProcess) {
+        // Vosk takes little-endian LINEAR16 bytes directly - no conversion to short[] needed
+        logger.debug("Processing {} bytes of audio with Vosk ({} samples)", bytesToProcess, bytesToProcess / 2);
+        boolean hasResult = recognizer.acceptWaveForm(audioToProcess, bytesToProcess);
         
-        // PCM is 16-bit (2 bytes per sample), little-endian
-        int numSamples8000 = pcm8000.length / 2;
-        int numSamples16000 = numSamples8000 * 2; // Double the samples
-        
-        // Read input samples
-        short[] samples8000 = new short[numSamples8000];
-        ByteBuffer inputBuffer = ByteBuffer.wrap(pcm8000);
-        inputBuffer.order(ByteOrder.LITTLE_ENDIAN);
-        for (int i = 0; i < numSamples8000; i++) {
-            samples8000[i] = inputBuffer.getShort();
+        // Always try to get final result first (even if hasResult is false)
+        // This ensures we get any text that was recognized
+        String finalResult = recognizer.getFinalResult();
+        if (finalResult != null) {
+            logger.info("Vosk final result: {}", finalResult);
+            String extracted = extractTextFromResult(finalResult);
+            if (extracted != null && !extracted.trim().isEmpty()) {
+                logger.info("Vosk extracted text (final): {}", extracted);
+                return extracted;
+            }
         }
         
-        // Resample using linear interpolation
-        short[] samples16000 = new short[numSamples16000];
-        for (int i = 0; i < numSamples16000; i++) {
-            // Map output index to input index (0.5x because we're upsampling 2x)
-            double inputIndex = i * 0.5;
-            int inputIndexInt = (int) inputIndex;
-            double fraction = inputIndex - inputIndexInt;
-            
-            if (inputIndexInt >= numSamples8000 - 1) {
-                // Last sample, just repeat it
-                samples16000[i] = samples8000[numSamples8000 - 1];
+        if (hasResult) {
+            // Final result from getResult() method
+            String result = recognizer.getResult();
+            logger.info("Vosk transcription result (getResult): {}", result);
+            String extracted = extractTextFromResult(result);
+            if (extracted != null && !extracted.trim().isEmpty()) {
+                logger.info("Vosk extracted text (getResult): {}", extracted);
+                return extracted;
             } else {
-                // Linear interpolation between two samples
-                short sample1 = samples8000[inputIndexInt];
-                short sample2 = samples8000[inputIndexInt + 1];
-                samples16000[i] = (short) (sample1 + (sample2 - sample1) * fraction);
+                logger.warn("Vosk getResult() returned empty. Raw result: {}", result);
             }
         }
         
-        // Convert back to byte array
-        ByteBuffer outputBuffer = ByteBuffer.allocate(numSamples16000 * 2);
-        outputBuffer.order(ByteOrder.LITTLE_ENDIAN);
-        for (short sample : samples16000) {
-            outputBuffer.putShort(sample);
+        // Get partial result as fallback
+        String partial = recognizer.getPartialResult();
+        logger.info("Vosk transcription result (partial): {}", partial);
+        String extracted = extractTextFromResult(partial);
+        if (extracted != null && !extracted.trim().isEmpty()) {
+            logger.info("Vosk extracted text (partial): {}", extracted);
+            return extracted;
+        } else {
+            logger.warn("Vosk returned no transcription. Partial result: {}", partial);
+            logger.warn("This might indicate: audio too short, poor quality, or no speech detected");
+            return null;
         }
-        
-        return outputBuffer.array();
     }
-    
+
+    @Override
+    public String getName() {
+        return "Vosk";
+    }
+
+    /**
+     * Vosk only takes 16-bit PCM
+     */
+    @Override
+    public List<AudioFormat> getSupportedFormats() {
+        return List.of(AudioFormat.LINEAR16);
+    }
+
+    @Override
+    public String transcribe(byte[] audio, int offset, int length, AudioFormat format) {
+        return transcribe(audio, offset, length, format, null);
+    }
+
+    @Override
+    public String transcribe(byte[] audio, int offset, int length, AudioFormat format, List<String> grammar) {
+        return transcribe(audio, offset, length, format, defaultModel, grammar);
+    }
+
+    @Override
+    public String transcribe(byte[] audio, int offset, int length, AudioFormat format, String model, List<String> grammar) {
+        if (format != AudioFormat.LINEAR16) {
+            throw new IllegalArgumentException("Vosk needs LINEAR16 audio, got " + format);
+        }
+        byte[] pcmAudio = offset == 0 && length == audio.length ? audio : Arrays.copyOfRange(audio, offset, offset + length);
+        return transcribe(pcmAudio, G711Codec.SAMPLE_RATE, model, grammar);
+    }
+
+    /**
+     * Transcribe audio with default 8000 Hz sample rate (Twilio standard)
+     */
+    public String transcribe(byte[] pcmAudio) {
+        return transcribe(pcmAudio, 8000);
+    }
+
     /**
      * Convert PCM byte array to float array (not needed for Vosk, but kept for compatibility)
      * Vosk accepts byte arrays directly via acceptWaveForm(byte[], int)
@@ -411,7 +585,7 @@ public class VoskSpeechToTextService {
      * - Final result: {"text": "hello world", "partial": false}
      * - Partial result: {"partial": "hello wor"}
      */
-    private String extractTextFromResult(String jsonResult) {
+    static String extractTextFromResult(String jsonResult) {
         if (jsonResult == null || jsonResult.trim().isEmpty()) {
             logger.debug("Vosk JSON result is null or empty");
             return null;
@@ -443,13 +617,34 @@ public class VoskSpeechToTextService {
         return null;
     }
     
+    /**
+     * Whether a grammar-restricted recognizer heard speech outside its grammar: it returns
+     * [unk] for every such word, so the phrases around it are not the whole answer
+     */
+    static boolean isOutOfGrammar(String text) {
+        return text != null && text.contains(UNKNOWN_WORD);
+    }
+
+    /**
+     * Drops stray [unk] words from a full-vocabulary result
+     *
+     * @return the text, or null if nothing else was recognized
+     */
+    static String withoutUnknown(String text) {
+        if (text == null || !text.contains(UNKNOWN_WORD)) {
+            return text;
+        }
+        String known = text.replace(UNKNOWN_WORD, " ").trim().replaceAll("\\s+", " ");
+        return known.isEmpty() ? null : known;
+    }
+
     /**
      * Extract a field value from JSON string
      * @param json JSON string
      * @param fieldName Field name to extract (e.g., "text", "partial")
      * @return Field value or null if not found
      */
-    private String extractField(String json, String fieldName) {
+    private static String extractField(String json, String fieldName) {
         try {
             String searchPattern = "\"" + fieldName + "\"";
             int fieldStart = json.indexOf(searchPattern);
@@ -492,10 +687,90 @@ public class VoskSpeechToTextService {
     /**
      * Check if service is ready
      */
+    @Override
     public boolean isReady() {
         return initialized && enabled && libraryAvailable;
     }
     
+    @Override
+    public boolean isStreamingReady() {
+        return isReady() && decoder != null;
+    }
+
+    /**
+     * @param format MULAW (as buffered from the call) or LINEAR16, both at 8000 Hz
+     */
+    @Override
+    public StreamingRecognitionSession startStreaming(AudioFormat format, StreamingRecognitionListener listener) throws IOException {
+        return startStreaming(format, null, listener);
+    }
+
+    /**
+     * @param grammar Expected phrases; decoded with the full vocabulary when all recognizers
+     *                for the grammar are busy
+     */
+    @Override
+    public StreamingRecognitionSession startStreaming(AudioFormat format, List<String> grammar,
+                                                     StreamingRecognitionListener listener) throws IOException {
+        return startStreaming(format, defaultModel, grammar, listener);
+    }
+
+    /**
+     * @param modelKey Model chosen for the call, or null; the default model decodes while it
+     *                 is loading
+     */
+    @Override
+    public StreamingRecognitionSession startStreaming(AudioFormat format, String modelKey, List<String> grammar,
+                                                     StreamingRecognitionListener listener) throws IOException {
+        if (!isStreamingReady()) {
+            throw new IllegalStateException("Vosk streaming recognition is not available");
+        }
+        // Held by the session until its recognizer is returned
+        VoskModelRegistry.LoadedModel model = acquireModel(modelKey);
+        if (model == null) {
+            throw new IllegalStateException("Vosk model " + defaultModel + " is " + models.getState(defaultModel));
+        }
+        Runnable releaseModel = () -> models.release(model);
+        try {
+            VoskRecognizerPool constrained = grammarPool(model, grammar);
+            if (constrained != null) {
+                try {
+                    Recognizer recognizer = constrained.tryAcquire();
+                    if (recognizer != null) {
+                        return new VoskStreamingRecognitionSession(constrained, recognizer, releaseModel, decoder, format,
+                                                                   streamingFinalTimeoutMs, listener);
+                    }
+                } catch (IllegalStateException e) {
+                    // Evicted from the cache meanwhile
+                    logger.debug("Vosk grammar recognizers unavailable: {}", e.getMessage());
+                }
+            }
+            // Never waits: the caller is the call's message thread. With every recognizer busy the
+            // utterance goes to the next streaming engine or is transcribed at the end of the turn
+            VoskRecognizerPool recognizers = model.getRecognizers();
+            Recognizer recognizer = recognizers.tryAcquire();
+            if (recognizer == null) {
+                throw new IllegalStateException("all " + recognizers.getMaxRecognizers() + " Vosk recognizers are busy");
+            }
+            return new VoskStreamingRecognitionSession(recognizers, recognizer, releaseModel, decoder, format,
+                                                       streamingFinalTimeoutMs, listener);
+        } catch (IOException | RuntimeException e) {
+            releaseModel.run();
+            throw e;
+        }
+    }
+
+    /**
+     * Starts loading a model in the background once a call's language is known, so it is
+     * ready by the time the first utterance needs it
+     */
+    @Override
+    public void prepareModel(String modelKey) {
+        if (models != null && modelKey != null) {
+            models.loadAsync(modelKey);
+        }
+    }
+
     /**
      * Check if Vosk library is available (even if not initialized)
      */
@@ -508,19 +783,22 @@ public class VoskSpeechToTextService {
      */
     @PreDestroy
     public void cleanup() {
-        if (recognizer != null) {
+        if (decoder != null) {
+            // Let running decodes finish - the model must not be freed under them
+            decoder.shutdownNow();
             try {
-                recognizer = null;
-            } catch (Exception e) {
-                logger.warn("Error cleaning up Vosk recognizer", e);
+                decoder.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
         }
         
-        if (model != null) {
+        if (models != null) {
             try {
-                model = null;
+                models.close();
+                models = null;
             } catch (Exception e) {
-                logger.warn("Error cleaning up Vosk model", e);
+                logger.warn("Error cleaning up Vosk models", e);
             }
         }
         
@@ -0,0 +1,353 @@
+package com.example.twilio.service;
+
+import com.example.twilio.audio.AudioFormat;
+import com.example.twilio.audio.AudioSegment;
+import com.example.twilio.audio.G711Codec;
+import com.example.twilio.audio.PolyphaseResampler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.vosk.Recognizer;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * One utterance decoded by Vosk while it is spoken.
+ *
+ * Each frame is expanded to LINEAR16, resampled to 16 kHz by a per-utterance streaming
+ * {@link PolyphaseResampler} (so frame boundaries leave no trace) and passed to
+ * {@code acceptWaveForm} right away. By the time the caller stops speaking the decoder has
+ * already seen nearly all of the audio, and {@link #finish()} only has to wait for the last
+ * frames and {@code getFinalResult}, instead of decoding the whole utterance after the fact.
+ *
+ * Decoding runs on the shared decoder pool, never on the caller's thread; the frames of one
+ * utterance are queued and processed strictly in order, one at a time. The recognizer is
+ * borrowed from the {@link VoskRecognizerPool} for the utterance and returned by the last task
+ * (closed instead if it failed).
+ *
+ * {@link #finish()} waits at most {@code finalTimeoutMs}: a decoder that is stalled or far
+ * behind must not hold the turn (and its executor slot). On timeout the frames still queued
+ * are dropped and the turn falls back to batch transcription; the recognizer is returned as
+ * soon as the decoder gets to it.
+ *
+ * A recognizer restricted to a grammar reports [unk] for speech outside it. Once that happens
+ * the session stops reporting partials (a bare "no" heard in "no, I want to reschedule" must
+ * not look like an answer) and {@link #finish()} returns null, so the turn is transcribed with
+ * the full vocabulary.
+ */
+final class VoskStreamingRecognitionSession implements StreamingRecognitionSession {
+
+    private static final Logger logger = LoggerFactory.getLogger(VoskStreamingRecognitionSession.class);
+
+    // Input samples decoded per acceptWaveForm call at most
+    private static final int BLOCK_SAMPLES = 320;
+
+    private final VoskRecognizerPool pool;
+    // Runs once the recognizer is returned (releases the model it belongs to)
+    private final Runnable onClose;
+    private final Executor decoder;
+    private final AudioFormat format;
+    private final StreamingRecognitionListener listener;
+    private final long finalTimeoutMs;
+
+    // Decoder-thread state (tasks never overlap)
+    private final PolyphaseResampler resampler = new PolyphaseResampler(G711Codec.SAMPLE_RATE, VoskSpeechToTextService.MODEL_SAMPLE_RATE);
+    private final byte[] linear16 = new byte[2 * BLOCK_SAMPLES];
+    private final byte[] resampled;
+    private Recognizer recognizer;
+    private boolean failed;
+    private final StringBuilder finalTranscript = new StringBuilder();
+    private String lastPartial;
+    // A grammar recognizer heard [unk]: the transcript is not a closed answer
+    private boolean outOfGrammar;
+
+    // Tasks waiting for the decoder, and whether one of them is being run
+    private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+    private boolean running;
+    // finish() or cancel() was called
+    private volatile boolean finished;
+    // finish() gave up waiting - skip whatever is still queued
+    private volatile boolean abandoned;
+
+    /**
+     * @param recognizer Borrowed from {@code pool}; returned when the session ends
+     * @param onClose        Run after the recognizer was returned
+     * @param finalTimeoutMs How long {@link #finish()} waits for the decoder
+     */
+    VoskStreamingRecognitionSession(VoskRecognizerPool pool, Recognizer recognizer, Runnable onClose, Executor decoder,
+                                    AudioFormat format, long finalTimeoutMs, StreamingRecognitionListener listener) {
+        this.pool = pool;
+        this.recognizer = recognizer;
+        this.onClose = onClose;
+        this.decoder = decoder;
+        this.format = format;
+        this.listener = listener;
+        this.finalTimeoutMs = finalTimeoutMs;
+        this.resampled = new byte[2 * resampler.maxOutputSamples(BLOCK_SAMPLES)];
+    }
+
+    @Override
+    public void sendAudio(byte[] audio, int offset, int length) {
+        if (length <= 0) {
+            return;
+        }
+        // The caller's buffer is only ours for the duration of the call
+        byte[] copy = Arrays.copyOfRange(audio, offset, offset + length);
+        synchronized (tasks) {
+            if (finished) {
+                return;
+            }
+            enqueue(() -> accept(copy, 0, copy.length));
+        }
+    }
+
+    /**
+     * Queues the slab as it is - no copy - and releases it once decoded (or dropped)
+     */
+    @Override
+    public void sendAudio(AudioSegment audio) {
+        if (audio.length() <= 0) {
+            audio.release();
+            return;
+        }
+        synchronized (tasks) {
+            if (finished) {
+                audio.release();
+                return;
+            }
+            enqueue(new AudioTask(audio));
+        }
+    }
+
+    @Override
+    public String finish() {
+        CompletableFuture<String> result = new CompletableFuture<>();
+        synchronized (tasks) {
+            if (finished) {
+                return null;
+            }
+            finished = true;
+            // Runs after every frame queued so far
+            enqueue(() -> {
+                try {
+                    result.complete(abandoned ? null : finalResult());
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                } finally {
+                    close();
+                }
+            });
+        }
+        try {
+            return result.get(finalTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            logger.warn("Vosk decoder did not catch up within {} ms of the end of speech - abandoning the streaming transcript", finalTimeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            logger.warn("Vosk streaming recognition failed at the end of the utterance: {}", e.getCause().getMessage());
+        }
+        abandon();
+        return null;
+    }
+
+    /**
+     * Drops the queued frames; the final task still runs and returns the recognizer
+     */
+    private void abandon() {
+        synchronized (tasks) {
+            abandoned = true;
+            tasks.removeIf(task -> {
+                if (task instanceof AudioTask) {
+                    ((AudioTask) task).audio.release();
+                    return true;
+                }
+                return false;
+            });
+        }
+    }
+
+    @Override
+    public void cancel() {
+        synchronized (tasks) {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            // Drop the frames still waiting; the recognizer is closed on the decoder thread
+            // so it cannot be freed under a running acceptWaveForm
+            abandoned = true;
+            for (Runnable task : tasks) {
+                if (task instanceof AudioTask) {
+                    ((AudioTask) task).audio.release();
+                }
+            }
+            tasks.clear();
+            enqueue(this::close);
+        }
+    }
+
+    private void enqueue(Runnable task) {
+        synchronized (tasks) {
+            tasks.add(task);
+            if (!running) {
+                decoder.execute(this::drain);
+                running = true;
+            }
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            Runnable task;
+            synchronized (tasks) {
+                task = tasks.poll();
+                if (task == null) {
+                    running = false;
+                    return;
+                }
+            }
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                logger.error("Vosk streaming task failed", e);
+            }
+        }
+    }
+
+    private void accept(byte[] audio, int offset, int length) {
+        if (failed || abandoned || recognizer == null) {
+            return;
+        }
+        try {
+            if (format == AudioFormat.LINEAR16) {
+                int samples = length / 2;
+                for (int done = 0; done < samples; done += BLOCK_SAMPLES) {
+                    int n = Math.min(BLOCK_SAMPLES, samples - done);
+                    acceptResampled(audio, offset + 2 * done, n);
+                }
+            } else {
+                for (int done = 0; done < length; done += BLOCK_SAMPLES) {
+                    int n = Math.min(BLOCK_SAMPLES, length - done);
+                    G711Codec.decodeToLinear16(audio, offset + done, linear16, 0, n);
+                    acceptResampled(linear16, 0, n);
+                }
+            }
+            reportPartial();
+        } catch (RuntimeException e) {
+            fail(e);
+        }
+    }
+
+    private void acceptResampled(byte[] pcm, int offset, int samples) {
+        int written = resampler.processLinear16(pcm, offset, samples, resampled, 0);
+        if (written > 0 && recognizer.acceptWaveForm(resampled, 2 * written)) {
+            // Vosk closed a segment at a pause inside the utterance - keep its text
+            append(text(recognizer.getResult()));
+        }
+    }
+
+    private void reportPartial() {
+        if (finished || outOfGrammar) {
+            return;
+        }
+        String partial = text(recognizer.getPartialResult());
+        if (outOfGrammar) {
+            return;
+        }
+        String text = partial != null && !partial.isEmpty()
+                ? (finalTranscript.length() > 0 ? finalTranscript + " " + partial : partial)
+                : (finalTranscript.length() > 0 ? finalTranscript.toString() : null);
+        if (text != null && !text.equals(lastPartial)) {
+            lastPartial = text;
+            listener.onPartialTranscript(text);
+        }
+    }
+
+    private String finalResult() {
+        if (failed || recognizer == null) {
+            return null;
+        }
+        append(text(recognizer.getFinalResult()));
+        if (outOfGrammar) {
+            logger.debug("Speech outside the expected grammar - leaving the utterance to the full vocabulary");
+            return null;
+        }
+        return finalTranscript.length() > 0 ? finalTranscript.toString() : null;
+    }
+
+    /**
+     * Text of a Vosk result; notes speech outside the grammar, and drops stray [unk] words of
+     * a full-vocabulary recognizer
+     */
+    private String text(String result) {
+        String text = VoskSpeechToTextService.extractTextFromResult(result);
+        if (pool.getGrammar() == null) {
+            return VoskSpeechToTextService.withoutUnknown(text);
+        }
+        if (VoskSpeechToTextService.isOutOfGrammar(text)) {
+            outOfGrammar = true;
+        }
+        return text;
+    }
+
+    private void append(String text) {
+        if (text == null || text.trim().isEmpty()) {
+            return;
+        }
+        if (finalTranscript.length() > 0) {
+            finalTranscript.append(' ');
+        }
+        finalTranscript.append(text.trim());
+    }
+
+    private void fail(RuntimeException e) {
+        failed = true;
+        logger.warn("Vosk streaming recognition failed: {}", e.getMessage());
+        if (!finished) {
+            listener.onError(e);
+        }
+    }
+
+    /**
+     * Decodes a pooled slab and returns it to its pool
+     */
+    private final class AudioTask implements Runnable {
+        private final AudioSegment audio;
+
+        AudioTask(AudioSegment audio) {
+            this.audio = audio;
+        }
+
+        @Override
+        public void run() {
+            try {
+                accept(audio.array(), audio.offset(), audio.length());
+            } finally {
+                audio.release();
+            }
+        }
+    }
+
+    private void close() {
+        Recognizer current = recognizer;
+        if (current == null) {
+            return;
+        }
+        recognizer = null;
+        try {
+            if (failed) {
+                pool.evict(current);
+            } else {
+                pool.release(current);
+            }
+        } finally {
+            onClose.run();
+        }
+    }
+}
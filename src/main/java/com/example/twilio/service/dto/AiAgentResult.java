@@ -1,17 +1,39 @@
 package com.example.twilio.service.dto;
 
+import java.util.List;
+
 /**
  * Result of processing audio by the AI agent.
- * Contains the AI response text and flags for call control (e.g., end call).
+ * Contains the AI response text and flags for call control (e.g., end call, transfer).
  */
 public class AiAgentResult {
 
     private final String aiResponse;
     private final boolean endCall;
+    private final List<String> expectedGrammar;
+    private final String transferNumber;
 
     public AiAgentResult(String aiResponse, boolean endCall) {
+        this(aiResponse, endCall, null);
+    }
+
+    /**
+     * @param expectedGrammar Phrases the caller's answer to this response is expected to be one
+     *                        of (e.g. "yes", "no"), or null for an open-ended answer
+     */
+    public AiAgentResult(String aiResponse, boolean endCall, List<String> expectedGrammar) {
+        this(aiResponse, endCall, expectedGrammar, null);
+    }
+
+    /**
+     * @param transferNumber Number the call is handed over to after the response is spoken
+     *                       (e.g. a human agent), or null to stay in the conversation
+     */
+    public AiAgentResult(String aiResponse, boolean endCall, List<String> expectedGrammar, String transferNumber) {
         this.aiResponse = aiResponse;
         this.endCall = endCall;
+        this.expectedGrammar = expectedGrammar == null || expectedGrammar.isEmpty() ? null : List.copyOf(expectedGrammar);
+        this.transferNumber = transferNumber == null || transferNumber.trim().isEmpty() ? null : transferNumber.trim();
     }
 
     public String getAiResponse() {
@@ -21,7 +43,18 @@ public class AiAgentResult {
     public boolean isEndCall() {
         return endCall;
     }
-}
-
 
+    /**
+     * Phrases the next utterance is expected to be one of, or null if it is open-ended
+     */
+    public List<String> getExpectedGrammar() {
+        return expectedGrammar;
+    }
 
+    /**
+     * Number to transfer the call to, or null if the call is not transferred
+     */
+    public String getTransferNumber() {
+        return transferNumber;
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.twilio.service.dto;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Answer sets a response can declare for the caller's reply (see
+ * {@link AiAgentResult#getExpectedGrammar()}), so the reply is decoded against a few phrases
+ * instead of the full vocabulary. Phrases are spelled the way the recognizer writes them:
+ * lower case, numbers as words.
+ */
+public final class ExpectedGrammars {
+
+    /**
+     * Answers to a yes/no question
+     */
+    public static final List<String> YES_NO = List.of(
+        "yes", "yeah", "yep", "sure", "correct", "that's right", "okay",
+        "no", "nope", "not really", "that's wrong");
+
+    /**
+     * Answers to "which day?"
+     */
+    public static final List<String> WEEKDAYS = List.of(
+        "monday", "tuesday", "wednesday", "thursday", "friday", "saturday", "sunday",
+        "today", "tomorrow", "the day after tomorrow");
+
+    /**
+     * Answers to "what time?": the hour with an optional quarter, "a m"/"p m" or
+     * "in the morning"/"in the afternoon"/"in the evening", and the parts of the day alone
+     */
+    public static final List<String> TIME_SLOTS = timeSlots();
+
+    private ExpectedGrammars() {
+    }
+
+    private static List<String> timeSlots() {
+        String[] hours = {"one", "two", "three", "four", "five", "six", "seven", "eight", "nine", "ten", "eleven", "twelve"};
+        String[] minutes = {"", " o'clock", " fifteen", " thirty", " forty five"};
+        String[] suffixes = {"", " a m", " p m", " in the morning", " in the afternoon", " in the evening"};
+        List<String> slots = new ArrayList<>();
+        for (String hour : hours) {
+            for (String minute : minutes) {
+                for (String suffix : suffixes) {
+                    slots.add(hour + minute + suffix);
+                }
+            }
+        }
+        slots.add("noon");
+        slots.add("midday");
+        slots.add("morning");
+        slots.add("afternoon");
+        slots.add("evening");
+        slots.add("any time");
+        return Collections.unmodifiableList(slots);
+    }
+}
@@ -3,12 +3,11 @@ package com.example.twilio.service.example;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.example.twilio.audio.G711Codec;
 import com.example.twilio.service.VoskSpeechToTextService;
 
 /**
@@ -103,33 +102,7 @@ public class OpenSourceSpeechToTextExample {
      * (Same conversion as in AiAgentService)
      */
     private static byte[] convertMuLawToPCM(byte[] muLawData) {
-        short[] pcmData = new short[muLawData.length];
-        for (int i = 0; i < muLawData.length; i++) {
-            pcmData[i] = muLawToLinear(muLawData[i] & 0xFF);
-        }
-        
-        ByteBuffer buffer = ByteBuffer.allocate(pcmData.length * 2);
-        buffer.order(ByteOrder.LITTLE_ENDIAN);
-        for (short sample : pcmData) {
-            buffer.putShort(sample);
-        }
-        return buffer.array();
-    }
-
-    /**
-     * Convert mu-law sample to linear PCM
-     */
-    private static short muLawToLinear(int muLawByte) {
-        muLawByte = ~muLawByte;
-        int sign = muLawByte & 0x80;
-        int exponent = (muLawByte >> 4) & 0x07;
-        int mantissa = muLawByte & 0x0F;
-        
-        int sample = mantissa << (exponent + 3);
-        if (sign != 0) {
-            sample = -sample;
-        }
-        return (short) sample;
+        return G711Codec.decodeToLinear16(muLawData);
     }
 
     /**
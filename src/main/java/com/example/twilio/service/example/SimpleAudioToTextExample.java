@@ -3,8 +3,8 @@ package com.example.twilio.service.example;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
+
+import com.example.twilio.audio.G711Codec;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,36 +34,8 @@ public class SimpleAudioToTextExample {
             return new byte[0];
         }
 
-        // Mu-law to PCM conversion
-        short[] pcmData = new short[muLawData.length];
-        for (int i = 0; i < muLawData.length; i++) {
-            pcmData[i] = muLawToLinear(muLawData[i] & 0xFF);
-        }
-        
-        // Convert to byte array (little-endian, 16-bit)
-        ByteBuffer buffer = ByteBuffer.allocate(pcmData.length * 2);
-        buffer.order(ByteOrder.LITTLE_ENDIAN);
-        for (short sample : pcmData) {
-            buffer.putShort(sample);
-        }
-        return buffer.array();
-    }
-
-    /**
-     * Convert mu-law sample to linear PCM
-     * This is the actual conversion algorithm
-     */
-    private static short muLawToLinear(int muLawByte) {
-        muLawByte = ~muLawByte;
-        int sign = muLawByte & 0x80;
-        int exponent = (muLawByte >> 4) & 0x07;
-        int mantissa = muLawByte & 0x0F;
-        
-        int sample = mantissa << (exponent + 3);
-        if (sign != 0) {
-            sample = -sample;
-        }
-        return (short) sample;
+        // Mu-law to PCM conversion (little-endian, 16-bit)
+        return G711Codec.decodeToLinear16(muLawData);
     }
 
     /**
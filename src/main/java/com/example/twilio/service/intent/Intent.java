@@ -0,0 +1,12 @@
+package com.example.twilio.service.intent;
+
+/**
+ * Simple caller intents that can be recognized from a partial transcript, before the caller
+ * has finished the utterance
+ */
+public enum Intent {
+    GOODBYE,
+    YES,
+    NO,
+    HUMAN_AGENT
+}
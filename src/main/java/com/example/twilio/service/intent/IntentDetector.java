@@ -0,0 +1,75 @@
+package com.example.twilio.service.intent;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the intent matchers over partial transcripts.
+ *
+ * Partial hypotheses arrive many times per second while the caller speaks, so the matchers
+ * are plain phrase lookups. A match does not end the utterance by itself: the caller has to
+ * pause briefly as well (see {@code conversation.early.intent.hold.ms}), which is still far
+ * shorter than the silence timeout and skips the final decode.
+ */
+@Component
+public class IntentDetector {
+
+    @Value("${conversation.early.intent.enabled:true}")
+    private boolean enabled;
+
+    private final List<IntentMatcher> matchers = new ArrayList<>();
+
+    public IntentDetector() {
+        // Checked in order; the first match wins
+        matchers.add(new PhraseIntentMatcher(Intent.HUMAN_AGENT, true,
+            "speak to a human", "talk to a human", "speak to a person", "talk to a person",
+            "speak to someone", "talk to someone", "speak to an agent", "talk to an agent",
+            "speak to a representative", "talk to a representative", "real person", "human agent",
+            "live agent", "customer service representative"));
+        matchers.add(new PhraseIntentMatcher(Intent.HUMAN_AGENT, false,
+            "agent", "representative", "operator", "human"));
+        matchers.add(new PhraseIntentMatcher(Intent.GOODBYE, false,
+            "goodbye", "good bye", "bye", "bye bye", "bye now", "thats all", "that is all", "nothing else",
+            "end the call", "hang up", "im done", "that will be all", "have a nice day"));
+        matchers.add(new PhraseIntentMatcher(Intent.YES, false,
+            "yes", "yeah", "yep", "yup", "sure", "correct", "right", "ok", "okay", "thats right",
+            "thats correct", "absolutely", "of course", "yes it is", "yes i do", "sounds good"));
+        matchers.add(new PhraseIntentMatcher(Intent.NO, false,
+            "no", "nope", "nah", "not really", "no it isnt", "no i dont", "thats wrong", "incorrect"));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param transcript Partial (or final) transcript of the utterance so far
+     * @return the intent it expresses, or null if none (or early detection is disabled)
+     */
+    public IntentMatch detect(String transcript) {
+        return enabled ? classify(transcript) : null;
+    }
+
+    /**
+     * Matches a transcript whether or not early detection is enabled, e.g. the final
+     * transcript of a turn that was endpointed the usual way
+     *
+     * @return the intent it expresses, or null if none
+     */
+    public IntentMatch classify(String transcript) {
+        if (transcript == null) {
+            return null;
+        }
+        String normalized = PhraseIntentMatcher.normalize(transcript);
+        for (IntentMatcher matcher : matchers) {
+            Intent intent = matcher.match(normalized);
+            if (intent != null) {
+                return new IntentMatch(intent, transcript.trim());
+            }
+        }
+        return null;
+    }
+}
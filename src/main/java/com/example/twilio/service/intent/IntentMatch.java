@@ -0,0 +1,31 @@
+package com.example.twilio.service.intent;
+
+/**
+ * An intent recognized in a (partial) transcript
+ */
+public final class IntentMatch {
+
+    private final Intent intent;
+    private final String transcript;
+
+    public IntentMatch(Intent intent, String transcript) {
+        this.intent = intent;
+        this.transcript = transcript;
+    }
+
+    public Intent getIntent() {
+        return intent;
+    }
+
+    /**
+     * The transcript the intent was recognized in
+     */
+    public String getTranscript() {
+        return transcript;
+    }
+
+    @Override
+    public String toString() {
+        return intent + " (\"" + transcript + "\")";
+    }
+}
@@ -0,0 +1,15 @@
+package com.example.twilio.service.intent;
+
+/**
+ * Cheap check of a transcript for one intent. Called for every partial result, so it must not
+ * do more than string work.
+ */
+@FunctionalInterface
+public interface IntentMatcher {
+
+    /**
+     * @param normalized Transcript as returned by {@link PhraseIntentMatcher#normalize(String)}
+     * @return the intent, or null if the transcript does not express it
+     */
+    Intent match(String normalized);
+}
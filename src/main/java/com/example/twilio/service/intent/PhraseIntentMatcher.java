@@ -0,0 +1,94 @@
+package com.example.twilio.service.intent;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Matches an intent by phrase.
+ *
+ * A partial transcript is a guess about the words so far, so by default the whole utterance
+ * must be one of the phrases: "yes" is a confirmation, "yes but first..." is not. Leading
+ * fillers ("um", "oh", "well") and politeness ("please", "thank you") around the phrase are
+ * ignored. Matchers created with {@code anywhere} accept the phrase anywhere in the utterance,
+ * for phrases that keep their meaning in a longer sentence ("speak to a human").
+ */
+public final class PhraseIntentMatcher implements IntentMatcher {
+
+    private static final List<String> LEADING = Arrays.asList(
+        "um", "uh", "er", "oh", "ah", "well", "okay", "ok", "so", "thank you", "thanks");
+    private static final List<String> TRAILING = Arrays.asList(
+        "please", "thank you", "thanks");
+
+    private final Intent intent;
+    private final boolean anywhere;
+    private final Set<String> phrases;
+
+    public PhraseIntentMatcher(Intent intent, boolean anywhere, String... phrases) {
+        this.intent = intent;
+        this.anywhere = anywhere;
+        Set<String> normalized = new HashSet<>();
+        for (String phrase : phrases) {
+            normalized.add(normalize(phrase));
+        }
+        this.phrases = Collections.unmodifiableSet(normalized);
+    }
+
+    @Override
+    public Intent match(String normalized) {
+        if (normalized == null || normalized.isEmpty()) {
+            return null;
+        }
+        if (anywhere) {
+            String padded = " " + normalized + " ";
+            for (String phrase : phrases) {
+                if (padded.contains(" " + phrase + " ")) {
+                    return intent;
+                }
+            }
+            return null;
+        }
+        return matchesStripped(normalized, new HashSet<>()) ? intent : null;
+    }
+
+    /**
+     * Whether the text, or the text with any combination of leading fillers and trailing
+     * politeness removed, is one of the phrases. Every combination is tried because a word can
+     * be both a filler and the answer: "ok thanks" is "ok" once "thanks" is dropped, but
+     * "thanks" if "ok" is dropped first.
+     */
+    private boolean matchesStripped(String text, Set<String> tried) {
+        if (!tried.add(text)) {
+            return false;
+        }
+        if (phrases.contains(text)) {
+            return true;
+        }
+        for (String word : LEADING) {
+            if (text.startsWith(word + " ") && matchesStripped(text.substring(word.length() + 1), tried)) {
+                return true;
+            }
+        }
+        for (String word : TRAILING) {
+            if (text.endsWith(" " + word) && matchesStripped(text.substring(0, text.length() - word.length() - 1), tried)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Lower case, apostrophes dropped, anything else that is not a letter or digit turned into
+     * single spaces
+     */
+    public static String normalize(String transcript) {
+        if (transcript == null) {
+            return "";
+        }
+        String text = transcript.toLowerCase(Locale.ROOT).replace("'", "").replace("’", "");
+        return text.replaceAll("[^\\p{L}\\p{N}]+", " ").trim();
+    }
+}
@@ -1,147 +1,381 @@
 package com.example.twilio.websocket;
 
+import com.example.twilio.audio.AudioSegment;
+import com.example.twilio.audio.G711Codec;
+import com.example.twilio.audio.SlabPool;
+import com.example.twilio.service.StreamingRecognitionSession;
+
 import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Audio buffer to accumulate audio chunks before processing
+ *
+ * Chunks are appended to one contiguous slab from a shared {@link SlabPool}; the slab doubles
+ * when full, up to the per-utterance cap. Byte, sample and chunk counts are kept as running
+ * counters, and durations are derived from samples received (8 kHz mu-law, one byte per
+ * sample) rather than from the wall clock. The finished utterance is handed to speech-to-text
+ * as an {@link AudioSegment} over the slab itself, without copying.
+ *
+ * Between utterances silence frames are still written, into a sliding pre-roll window at the
+ * front of the slab: only the last {@code preRollMs} are kept, and the window is compacted to
+ * the front once it spans twice that. When speech starts the utterance simply begins at the
+ * window's start offset, so the soft onset that preceded the first voiced frame is part of the
+ * utterance without being copied. Inside an utterance silence frames are kept as pauses up to
+ * {@code maxPauseMs}; trailing silence after the last voiced frame is trimmed when the
+ * utterance is taken.
+ *
+ * When the frames are conditioned before they are buffered, the audio lags the speech
+ * decisions by the conditioner's latency; the end of the last voiced frame and the pauses are
+ * then counted that many samples later, so the tail of the utterance is kept.
  */
 public class AudioBuffer {
-    private final List<byte[]> chunks = new ArrayList<>();
-    private long lastAudioTime = System.currentTimeMillis();
-    private long firstAudioTime = 0; // Timestamp of first audio chunk with energy
+    private final SlabPool pool;
+    private final int maxBytes;
+    private final int preRollBytes;
+    private final int maxPauseBytes;
+    // Conditioning delay: audio of a voiced frame is buffered this many bytes after it
+    private final int latencyBytes;
     private final long silenceTimeoutMs;
-    
-    public AudioBuffer(long silenceTimeoutMs) {
+
+    private byte[] slab;
+    // Buffered audio is [start, length) of the slab: the pre-roll window, then the utterance
+    private int start;
+    private int length;
+    private boolean inUtterance;
+    private int chunkCount;
+    // Byte offsets of the first voiced chunk and the end of the last one (-1 = none yet)
+    private int firstVoicedOffset = -1;
+    private int lastVoicedEnd = -1;
+    // Incremented whenever the buffered audio is taken or discarded
+    private int generation;
+    // Wall clock of the last chunk with energy - drives end-of-speech detection only
+    private volatile long lastAudioTime = System.currentTimeMillis();
+
+    /**
+     * @param silenceTimeoutMs Silence that ends an utterance
+     * @param maxUtteranceMs   Hard cap on buffered audio per utterance
+     * @param pool             Shared slab pool
+     */
+    public AudioBuffer(long silenceTimeoutMs, long maxUtteranceMs, SlabPool pool) {
+        this(silenceTimeoutMs, maxUtteranceMs, 0, 0, pool);
+    }
+
+    /**
+     * @param silenceTimeoutMs Silence that ends an utterance
+     * @param maxUtteranceMs   Hard cap on buffered audio per utterance
+     * @param preRollMs        Audio kept from before the first voiced frame
+     * @param maxPauseMs       Longest pause kept inside an utterance
+     * @param pool             Shared slab pool
+     */
+    public AudioBuffer(long silenceTimeoutMs, long maxUtteranceMs, long preRollMs, long maxPauseMs, SlabPool pool) {
+        this(silenceTimeoutMs, maxUtteranceMs, preRollMs, maxPauseMs, 0, pool);
+    }
+
+    /**
+     * @param silenceTimeoutMs Silence that ends an utterance
+     * @param maxUtteranceMs   Hard cap on buffered audio per utterance
+     * @param preRollMs        Audio kept from before the first voiced frame
+     * @param maxPauseMs       Longest pause kept inside an utterance
+     * @param latencySamples   Delay of the buffered audio behind the speech decisions
+     * @param pool             Shared slab pool
+     */
+    public AudioBuffer(long silenceTimeoutMs, long maxUtteranceMs, long preRollMs, long maxPauseMs,
+                       int latencySamples, SlabPool pool) {
         this.silenceTimeoutMs = silenceTimeoutMs;
+        this.maxBytes = (int) Math.min(pool.getMaxSlabBytes(), maxUtteranceMs * G711Codec.SAMPLE_RATE / 1000);
+        this.preRollBytes = (int) Math.min(maxBytes / 2, preRollMs * G711Codec.SAMPLE_RATE / 1000);
+        this.maxPauseBytes = (int) (maxPauseMs * G711Codec.SAMPLE_RATE / 1000);
+        // 8 kHz mu-law: one byte per sample
+        this.latencyBytes = Math.max(0, latencySamples);
+        this.pool = pool;
     }
-    
+
     /**
      * Adds an audio chunk to the buffer
      * Only updates lastAudioTime if the chunk contains actual audio (not silence)
-     * 
+     *
      * @param audioData Audio chunk (mu-law encoded)
      * @param hasEnergy Whether this chunk contains actual audio energy (not silence)
+     * @return false if the chunk was dropped because the utterance reached its maximum length
      */
-    public void addChunk(byte[] audioData, boolean hasEnergy) {
-        synchronized (chunks) {
-            chunks.add(audioData);
-            // Only update timestamp if there's actual audio energy
-            // This prevents silence chunks from resetting the silence timer
-            if (hasEnergy) {
-                long currentTime = System.currentTimeMillis();
-                // Track first audio chunk with energy
-                if (firstAudioTime == 0) {
-                    firstAudioTime = currentTime;
-                }
-                lastAudioTime = currentTime;
+    public boolean addChunk(byte[] audioData, boolean hasEnergy) {
+        return addChunk(audioData, 0, audioData.length, hasEnergy);
+    }
+
+    /**
+     * Copies part of a (possibly reused) frame buffer into the utterance
+     *
+     * @param audioData Frame buffer (mu-law encoded) - not retained
+     * @param offset    Start of the chunk
+     * @param chunkLength Chunk length in bytes
+     * @param hasEnergy Whether this chunk contains actual audio energy (not silence)
+     * @return false if the chunk was dropped because the utterance reached its maximum length
+     */
+    public synchronized boolean addChunk(byte[] audioData, int offset, int chunkLength, boolean hasEnergy) {
+        if (length - start + chunkLength > maxBytes) {
+            return false;
+        }
+        if (!inUtterance) {
+            // The pre-roll window becomes the start of the utterance
+            inUtterance = true;
+            chunkCount = 0;
+        }
+        ensureCapacity(chunkLength);
+        System.arraycopy(audioData, offset, slab, length, chunkLength);
+        // Only update timestamp if there's actual audio energy
+        // This prevents silence chunks from resetting the silence timer
+        if (hasEnergy) {
+            if (firstVoicedOffset < 0) {
+                firstVoicedOffset = length;
+            }
+            lastVoicedEnd = length + chunkLength;
+            lastAudioTime = System.currentTimeMillis();
+        }
+        length += chunkLength;
+        chunkCount++;
+        return true;
+    }
+
+    /**
+     * Adds a frame without speech energy. Between utterances it goes to the pre-roll window;
+     * inside an utterance it is kept as part of a pause, unless the pause is already longer than
+     * the configured maximum.
+     *
+     * @param audioData Frame buffer (mu-law encoded) - not retained
+     * @param offset    Start of the chunk
+     * @param chunkLength Chunk length in bytes
+     * @return true if the frame was added to an utterance in progress
+     */
+    public synchronized boolean addSilence(byte[] audioData, int offset, int chunkLength) {
+        if (inUtterance) {
+            if (lastVoicedEnd >= 0 && length - (lastVoicedEnd + latencyBytes) + chunkLength > maxPauseBytes) {
+                return false;
+            }
+            return addChunk(audioData, offset, chunkLength, false);
+        }
+        if (preRollBytes == 0) {
+            return false;
+        }
+        if (length + chunkLength > 2 * preRollBytes) {
+            compact();
+        }
+        ensureCapacity(chunkLength);
+        System.arraycopy(audioData, offset, slab, length, chunkLength);
+        length += chunkLength;
+        // Slide the window so it holds at most the last preRollBytes
+        start = Math.max(start, length - preRollBytes);
+        return false;
+    }
+
+    private void ensureCapacity(int chunkLength) {
+        int required = length + chunkLength;
+        if (slab == null) {
+            slab = pool.acquire(required);
+        } else if (slab.length < required) {
+            int used = length - start;
+            if (used + chunkLength <= slab.length) {
+                compact();
+            } else {
+                byte[] larger = pool.acquire(Math.max(used + chunkLength, slab.length * 2));
+                System.arraycopy(slab, start, larger, 0, used);
+                pool.release(slab);
+                slab = larger;
+                shift(start);
             }
         }
     }
-    
-    // Note: Legacy method removed - must use addChunk(byte[], boolean) with AudioEnergyDetector instance
-    
-    public int getChunkCount() {
-        synchronized (chunks) {
-            return chunks.size();
+
+    /**
+     * Moves the buffered audio to the front of the slab
+     */
+    private void compact() {
+        if (start > 0) {
+            System.arraycopy(slab, start, slab, 0, length - start);
+            shift(start);
         }
     }
-    
-    public long getTotalBytes() {
-        synchronized (chunks) {
-            return chunks.stream().mapToLong(arr -> arr.length).sum();
+
+    private void shift(int bytes) {
+        start -= bytes;
+        length -= bytes;
+        if (firstVoicedOffset >= 0) {
+            firstVoicedOffset -= bytes;
+            lastVoicedEnd -= bytes;
         }
     }
-    
+
+    public synchronized int getChunkCount() {
+        return chunkCount;
+    }
+
+    public synchronized long getTotalBytes() {
+        return inUtterance ? length - start : 0;
+    }
+
+    /**
+     * Samples buffered for the utterance, pre-roll included (8 kHz mu-law: one byte per sample)
+     */
+    public synchronized long getSampleCount() {
+        return getTotalBytes();
+    }
+
+    /**
+     * True once the utterance has reached its maximum length - it should be processed now
+     */
+    public synchronized boolean isFull() {
+        return inUtterance && length - start + MediaStreamMessages.FRAME_BYTES > maxBytes;
+    }
+
     /**
      * Checks if silence has been detected (no audio for the configured timeout period)
-     * 
+     *
      * @return true if silence timeout has been reached and there are buffered chunks
      */
-    public boolean hasSilence() {
-        synchronized (chunks) {
-            long currentTime = System.currentTimeMillis();
-            long timeSinceLastAudio = currentTime - lastAudioTime;
-            boolean hasChunks = !chunks.isEmpty();
-            boolean timeoutReached = timeSinceLastAudio >= silenceTimeoutMs;
-            boolean silenceDetected = timeoutReached && hasChunks;
-            
-            // Enhanced logging for debugging
-            org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(AudioBuffer.class);
-            if (silenceDetected) {
-                logger.info(">>> hasSilence() = TRUE: timeSinceAudio={}ms (timeout={}ms), chunks={}, bytes={}", 
-                           timeSinceLastAudio, silenceTimeoutMs, chunks.size(), getTotalBytes());
-            } else {
-                logger.debug(">>> hasSilence() = FALSE: timeSinceAudio={}ms (timeout={}ms), hasChunks={}, timeoutReached={}", 
-                           timeSinceLastAudio, silenceTimeoutMs, hasChunks, timeoutReached);
-            }
-            
-            return silenceDetected;
-        }
+    public synchronized boolean hasSilence() {
+        return inUtterance && getTimeSinceLastAudio() >= silenceTimeoutMs;
     }
-    
+
     /**
      * Gets the time since last audio chunk was received
-     * 
+     *
      * @return milliseconds since last audio
      */
     public long getTimeSinceLastAudio() {
         return System.currentTimeMillis() - lastAudioTime;
     }
-    
+
     /**
-     * Gets the total duration of audio captured (from first to last audio chunk with energy)
-     * 
+     * Gets the duration of audio captured, from the start of the first to the end of the
+     * last chunk with energy, counted in samples received
+     *
      * @return milliseconds of audio duration, or 0 if no audio captured yet
      */
-    public long getAudioDuration() {
-        synchronized (chunks) {
-            if (firstAudioTime == 0 || chunks.isEmpty()) {
-                return 0;
-            }
-            // Duration is from first audio to last audio
-            return lastAudioTime - firstAudioTime;
+    public synchronized long getAudioDuration() {
+        if (firstVoicedOffset < 0) {
+            return 0;
+        }
+        return (lastVoicedEnd - firstVoicedOffset) * 1000L / G711Codec.SAMPLE_RATE;
+    }
+
+    /**
+     * Hands the buffered utterance (pre-roll included, trailing pause trimmed) over without
+     * copying and resets the buffer.
+     * The caller must {@link AudioSegment#release()} the segment once speech-to-text is done.
+     *
+     * @return the utterance, or null if nothing is buffered
+     */
+    public synchronized AudioSegment takeSegment() {
+        if (!inUtterance) {
+            return null;
         }
+        // The delayed tail of the last voiced frame is part of the utterance
+        int end = lastVoicedEnd >= 0 ? Math.min(length, lastVoicedEnd + latencyBytes) : length;
+        AudioSegment segment = new AudioSegment(pool, slab, start, end - start);
+        // The next chunk starts a new slab; this one now belongs to the segment
+        slab = null;
+        reset();
+        return segment;
+    }
+
+    /**
+     * Identifies the current utterance: changes when it is taken or discarded
+     */
+    public synchronized int getGeneration() {
+        return generation;
     }
-    
-    public byte[] getBufferedAudio() {
-        synchronized (chunks) {
-            if (chunks.isEmpty()) {
-                return null;
+
+    /**
+     * Sends the part of the utterance a streaming recognizer has not seen yet.
+     *
+     * The new bytes are copied into slabs from {@code frames} under the buffer's lock (the
+     * utterance slab may grow or be taken by a turn as soon as it is released) and handed to
+     * the recognizer after it, so a slow recognizer never holds up the frames being buffered.
+     *
+     * @param from   Utterance bytes (pre-roll included) already sent
+     * @param frames Pool for the copies, released by the recognizer
+     * @return utterance bytes sent so far - the next {@code from}
+     */
+    public int streamTo(StreamingRecognitionSession recognition, int from, SlabPool frames) {
+        AudioSegment first = null;
+        List<AudioSegment> more = null;
+        int buffered;
+        synchronized (this) {
+            if (!inUtterance) {
+                return from;
             }
-            
-            // Calculate total size
-            int totalSize = chunks.stream().mapToInt(arr -> arr.length).sum();
-            byte[] result = new byte[totalSize];
-            
-            // Copy all chunks into result
-            int offset = 0;
-            for (byte[] chunk : chunks) {
-                System.arraycopy(chunk, 0, result, offset, chunk.length);
-                offset += chunk.length;
+            buffered = length - start;
+            for (int sent = from; sent < buffered; ) {
+                byte[] copy = frames.acquire(buffered - sent);
+                int n = Math.min(copy.length, buffered - sent);
+                System.arraycopy(slab, start + sent, copy, 0, n);
+                AudioSegment segment = new AudioSegment(frames, copy, 0, n);
+                if (first == null) {
+                    first = segment;
+                } else {
+                    if (more == null) {
+                        more = new ArrayList<>();
+                    }
+                    more.add(segment);
+                }
+                sent += n;
             }
-            
-            // Clear buffer
-            chunks.clear();
-            lastAudioTime = System.currentTimeMillis();
-            firstAudioTime = 0; // Reset first audio time
-            
-            return result;
         }
-    }
-    
-    public void clear() {
-        synchronized (chunks) {
-            chunks.clear();
-            lastAudioTime = System.currentTimeMillis();
-            firstAudioTime = 0; // Reset first audio time
+        if (first != null) {
+            recognition.sendAudio(first);
         }
+        if (more != null) {
+            for (AudioSegment segment : more) {
+                recognition.sendAudio(segment);
+            }
+        }
+        return buffered;
     }
-    
-    public boolean isEmpty() {
-        synchronized (chunks) {
-            return chunks.isEmpty();
+
+    /**
+     * Copy of the buffered audio; resets the buffer
+     */
+    public synchronized byte[] getBufferedAudio() {
+        AudioSegment segment = takeSegment();
+        if (segment == null) {
+            return null;
         }
+        byte[] result = segment.toByteArray();
+        segment.release();
+        return result;
     }
-}
 
+    /**
+     * Discards the buffered audio and the pre-roll, keeping the slab for the next utterance
+     */
+    public synchronized void clear() {
+        reset();
+    }
+
+    /**
+     * Discards the buffered audio and returns the slab to the pool (session closed)
+     */
+    public synchronized void release() {
+        reset();
+        pool.release(slab);
+        slab = null;
+    }
+
+    private void reset() {
+        generation++;
+        start = 0;
+        length = 0;
+        inUtterance = false;
+        chunkCount = 0;
+        firstVoicedOffset = -1;
+        lastVoicedEnd = -1;
+        lastAudioTime = System.currentTimeMillis();
+    }
+
+    /**
+     * True if no utterance is in progress (the pre-roll window alone does not count)
+     */
+    public synchronized boolean isEmpty() {
+        return !inUtterance;
+    }
+}
@@ -1,5 +1,6 @@
 package com.example.twilio.websocket;
 
+import com.example.twilio.audio.G711Codec;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
@@ -15,6 +16,28 @@ public class AudioEnergyDetector {
     // Threshold of 10 means we ignore very quiet audio (background noise)
     private static final int SILENCE_THRESHOLD = 10;
     
+    // Per mu-law code, precomputed so the analysis loop has no data-dependent branches:
+    // squared distance from the 127 silence code (legacy energy metric), 0 for silent codes
+    private static final int[] DEVIATION_SQUARED = new int[256];
+    // 1 if the code is away from the silence code, 0 otherwise
+    private static final int[] NON_SILENT = new int[256];
+    // Magnitude of the ITU-T G.711 16-bit linear sample, and its square
+    private static final int[] MAGNITUDE = new int[256];
+    private static final long[] MAGNITUDE_SQUARED = new long[256];
+    
+    static {
+        for (int code = 0; code < 256; code++) {
+            int deviation = Math.abs(code - 127);
+            boolean nonSilent = deviation > SILENCE_THRESHOLD;
+            DEVIATION_SQUARED[code] = nonSilent ? deviation * deviation : 0;
+            NON_SILENT[code] = nonSilent ? 1 : 0;
+            
+            int magnitude = Math.abs(G711Codec.decode((byte) code));
+            MAGNITUDE[code] = magnitude;
+            MAGNITUDE_SQUARED[code] = (long) magnitude * magnitude;
+        }
+    }
+    
     // Minimum energy level to consider as actual audio (not silence)
     // This is the RMS (Root Mean Square) threshold
     // Default: 100.0 - more sensitive to detect normal speech
@@ -36,56 +59,79 @@ public class AudioEnergyDetector {
     }
     
     /**
-     * Checks if audio chunk contains actual speech (not silence)
-     * 
+     * Analyzes a frame in a single pass: legacy energy, non-silence percentage, speech decision,
+     * linear RMS, peak and zero-crossings. Every per-sample value comes from a 256-entry table,
+     * so the loop is a few array reads and adds per byte with no data-dependent branches.
+     *
      * @param muLawAudio Raw mu-law encoded audio bytes
-     * @return true if audio contains speech, false if silence
+     * @param offset     Start of the frame
+     * @param length     Frame length in bytes (one byte per sample)
+     * @param stats      Overwritten with the result
+     * @return {@code stats}
      */
-    public boolean hasAudioEnergy(byte[] muLawAudio) {
-        if (muLawAudio == null || muLawAudio.length == 0) {
-            return false;
+    public FrameStats analyze(byte[] muLawAudio, int offset, int length, FrameStats stats) {
+        if (muLawAudio == null || length <= 0) {
+            stats.set(0.0, 0.0, false, 0.0, 0, 0, 0);
+            return stats;
         }
         
-        // Calculate RMS (Root Mean Square) energy
-        long sumOfSquares = 0;
+        long deviationSquares = 0;
         int nonSilenceSamples = 0;
+        long linearSquares = 0;
+        int peak = 0;
+        int zeroCrossings = 0;
+        // Bit 7 of a mu-law code is the sign bit (set = positive)
+        int previousSign = (muLawAudio[offset] >> 7) & 1;
         
-        for (byte sample : muLawAudio) {
-            // Convert signed byte to unsigned (0-255)
-            int unsignedSample = sample & 0xFF;
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            int code = muLawAudio[i] & 0xFF;
             
-            // Mu-law zero point is around 127 (0x7F)
-            // Calculate deviation from silence point
-            int deviation = Math.abs(unsignedSample - 127);
+            // Mu-law zero point is around 127 (0x7F); only samples away from it count as energy
+            deviationSquares += DEVIATION_SQUARED[code];
+            nonSilenceSamples += NON_SILENT[code];
             
-            // Count non-silence samples
-            if (deviation > SILENCE_THRESHOLD) {
-                sumOfSquares += (long) deviation * deviation;
-                nonSilenceSamples++;
-            }
-        }
-        
-        // If no non-silence samples, it's silence
-        if (nonSilenceSamples == 0) {
-            return false;
-        }
-        
-        // Calculate percentage of non-silence samples
-        double nonSilencePercent = (double) nonSilenceSamples / muLawAudio.length * 100.0;
-        
-        // If too few samples have energy, it's likely background noise, not speech
-        if (nonSilencePercent < minNonSilencePercent) {
-            return false;
+            linearSquares += MAGNITUDE_SQUARED[code];
+            peak = Math.max(peak, MAGNITUDE[code]);
+            int sign = code >> 7;
+            zeroCrossings += sign ^ previousSign;
+            previousSign = sign;
         }
         
-        // Calculate RMS energy (only from non-silence samples)
-        double rms = Math.sqrt((double) sumOfSquares / nonSilenceSamples);
+        double energy = nonSilenceSamples == 0 ? 0.0 : Math.sqrt((double) deviationSquares / nonSilenceSamples);
+        double nonSilencePercent = (double) nonSilenceSamples / length * 100.0;
+        // Too few samples with energy is background noise; otherwise only the RMS decides
+        boolean hasEnergy = nonSilenceSamples > 0
+                && nonSilencePercent >= minNonSilencePercent
+                && energy > minEnergyThreshold;
+        double rms = Math.sqrt((double) linearSquares / length);
         
-        // Consider it audio only if RMS exceeds threshold
-        // This is stricter - we only use RMS, not average amplitude
-        boolean hasEnergy = rms > minEnergyThreshold;
-        
-        return hasEnergy;
+        stats.set(energy, nonSilencePercent, hasEnergy, rms, peak, zeroCrossings, length);
+        return stats;
+    }
+    
+    /**
+     * Same as {@link #analyze(byte[], int, int, FrameStats)} with a new result object
+     */
+    public FrameStats analyze(byte[] muLawAudio, int offset, int length) {
+        return analyze(muLawAudio, offset, length, new FrameStats());
+    }
+    
+    /**
+     * Checks if audio chunk contains actual speech (not silence)
+     * 
+     * @param muLawAudio Raw mu-law encoded audio bytes
+     * @return true if audio contains speech, false if silence
+     */
+    public boolean hasAudioEnergy(byte[] muLawAudio) {
+        return muLawAudio != null && hasAudioEnergy(muLawAudio, 0, muLawAudio.length);
+    }
+    
+    /**
+     * Same as {@link #hasAudioEnergy(byte[])} for a region of a reused buffer
+     */
+    public boolean hasAudioEnergy(byte[] muLawAudio, int offset, int length) {
+        return analyze(muLawAudio, offset, length).hasEnergy();
     }
     
     /**
@@ -95,28 +141,14 @@ public class AudioEnergyDetector {
      * @return RMS energy value (0 = silence, higher = louder)
      */
     public double calculateEnergy(byte[] muLawAudio) {
-        if (muLawAudio == null || muLawAudio.length == 0) {
-            return 0.0;
-        }
-        
-        long sumOfSquares = 0;
-        int nonSilenceSamples = 0;
-        
-        for (byte sample : muLawAudio) {
-            int unsignedSample = sample & 0xFF;
-            int deviation = Math.abs(unsignedSample - 127);
-            
-            if (deviation > SILENCE_THRESHOLD) {
-                sumOfSquares += (long) deviation * deviation;
-                nonSilenceSamples++;
-            }
-        }
-        
-        if (nonSilenceSamples == 0) {
-            return 0.0;
-        }
-        
-        return Math.sqrt((double) sumOfSquares / nonSilenceSamples);
+        return muLawAudio == null ? 0.0 : calculateEnergy(muLawAudio, 0, muLawAudio.length);
+    }
+    
+    /**
+     * Same as {@link #calculateEnergy(byte[])} for a region of a reused buffer
+     */
+    public double calculateEnergy(byte[] muLawAudio, int offset, int length) {
+        return analyze(muLawAudio, offset, length).getEnergy();
     }
     
     /**
@@ -126,20 +158,13 @@ public class AudioEnergyDetector {
      * @return Percentage (0.0 to 100.0) of non-silence samples
      */
     public double getNonSilencePercentage(byte[] muLawAudio) {
-        if (muLawAudio == null || muLawAudio.length == 0) {
-            return 0.0;
-        }
-        
-        int nonSilenceCount = 0;
-        for (byte sample : muLawAudio) {
-            int unsignedSample = sample & 0xFF;
-            int deviation = Math.abs(unsignedSample - 127);
-            if (deviation > SILENCE_THRESHOLD) {
-                nonSilenceCount++;
-            }
-        }
-        
-        return (double) nonSilenceCount / muLawAudio.length * 100.0;
+        return muLawAudio == null ? 0.0 : getNonSilencePercentage(muLawAudio, 0, muLawAudio.length);
+    }
+    
+    /**
+     * Same as {@link #getNonSilencePercentage(byte[])} for a region of a reused buffer
+     */
+    public double getNonSilencePercentage(byte[] muLawAudio, int offset, int length) {
+        return analyze(muLawAudio, offset, length).getNonSilencePercent();
     }
 }
-
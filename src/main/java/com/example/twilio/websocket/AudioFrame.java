@@ -0,0 +1,26 @@
+package com.example.twilio.websocket;
+
+/**
+ * One inbound media frame as it moves through the call's {@link AudioPipeline}.
+ *
+ * Reusable: the handler points it at each new frame and the stages fill in the rest, so one
+ * instance per session carries every frame of the call. {@code audio} may be a reused buffer
+ * and stages may rewrite it in place (conditioning does); anything kept beyond the frame is
+ * copied.
+ */
+final class AudioFrame {
+
+    // Mu-law samples [0, length)
+    byte[] audio;
+    int length;
+    // Filled by the decode stage
+    final FrameStats stats = new FrameStats();
+    // Filled by the vad stage
+    boolean speech;
+
+    void reset(byte[] audio, int length) {
+        this.audio = audio;
+        this.length = length;
+        this.speech = false;
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.twilio.websocket;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+
+/**
+ * Ordered chain of {@link AudioStage}s that every inbound frame of a call goes through, with
+ * the time and allocation of each stage recorded per call. The stages are shared; each call
+ * gets its own pipeline for the metrics.
+ *
+ * The stage list comes from {@code audio.pipeline.stages}, so stages can be dropped per
+ * deployment (e.g. no conditioning, or no streaming to speech-to-text), and the diagnostics
+ * endpoint shows which stage the time and garbage go to. Work that happens once per utterance
+ * rather than per frame is recorded in {@link #getTurnMetrics()}.
+ *
+ * Allocation is measured with the JVM's per-thread allocation counter where available; without
+ * it the byte counts stay 0, and with {@code audio.pipeline.metrics.enabled=false} nothing is
+ * measured. Not thread-safe - frames of a call arrive on one thread.
+ */
+final class AudioPipeline {
+
+    private static final com.sun.management.ThreadMXBean ALLOCATION_COUNTER = allocationCounter();
+
+    private final AudioStage[] stages;
+    private final StageMetrics[] metrics;
+    private final StageMetrics turnMetrics = new StageMetrics("turn");
+    private final boolean timed;
+
+    /**
+     * @param names  Stage names, in order
+     * @param stages Stages, in the same order
+     * @param timed  Whether to record time and allocation
+     */
+    AudioPipeline(List<String> names, List<AudioStage> stages, boolean timed) {
+        if (names.size() != stages.size()) {
+            throw new IllegalArgumentException("Got " + names.size() + " stage names for " + stages.size() + " stages");
+        }
+        this.stages = stages.toArray(new AudioStage[0]);
+        this.metrics = new StageMetrics[names.size()];
+        for (int i = 0; i < metrics.length; i++) {
+            metrics[i] = new StageMetrics(names.get(i));
+        }
+        this.timed = timed;
+    }
+
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean counter = (com.sun.management.ThreadMXBean) bean;
+            if (!counter.isThreadAllocatedMemorySupported()) {
+                return null;
+            }
+            if (!counter.isThreadAllocatedMemoryEnabled()) {
+                counter.setThreadAllocatedMemoryEnabled(true);
+            }
+            return counter;
+        }
+        return null;
+    }
+
+    /**
+     * Bytes allocated so far by the current thread, or 0 if the JVM does not count them
+     */
+    static long allocatedBytes() {
+        return ALLOCATION_COUNTER != null ? ALLOCATION_COUNTER.getCurrentThreadAllocatedBytes() : 0;
+    }
+
+    /**
+     * Runs every stage on the frame
+     */
+    void process(CallSession callSession, AudioFrame frame) {
+        if (!timed) {
+            for (AudioStage stage : stages) {
+                stage.process(callSession, frame);
+            }
+            return;
+        }
+        long bytes = allocatedBytes();
+        long time = System.nanoTime();
+        for (int i = 0; i < stages.length; i++) {
+            stages[i].process(callSession, frame);
+            long nowBytes = allocatedBytes();
+            long now = System.nanoTime();
+            metrics[i].record(now - time, nowBytes - bytes);
+            bytes = nowBytes;
+            time = now;
+        }
+    }
+
+    boolean isTimed() {
+        return timed;
+    }
+
+    StageMetrics[] getStageMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Utterance-level work after endpointing (speech-to-text and response generation)
+     */
+    StageMetrics getTurnMetrics() {
+        return turnMetrics;
+    }
+}
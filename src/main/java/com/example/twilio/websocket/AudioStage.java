@@ -0,0 +1,15 @@
+package com.example.twilio.websocket;
+
+/**
+ * One step of the per-frame audio path (decode, speech detection, conditioning, endpointing).
+ *
+ * Stages keep no state of their own - per-call state (detector, noise floor, buffer) lives in
+ * the {@link CallSession} - so one instance serves every call. They run on the call's WebSocket
+ * thread in the order configured by {@code audio.pipeline.stages} and communicate through the
+ * {@link AudioFrame}.
+ */
+@FunctionalInterface
+interface AudioStage {
+
+    void process(CallSession callSession, AudioFrame frame);
+}
@@ -0,0 +1,403 @@
+package com.example.twilio.websocket;
+
+import com.example.twilio.audio.SpeechConditioner;
+import com.example.twilio.service.StreamingRecognitionSession;
+import com.example.twilio.service.intent.IntentMatch;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * All state of one Twilio Media Stream WebSocket session.
+ *
+ * The handler looks this object up once per message; everything else (socket, audio buffer,
+ * Twilio SIDs, turn and playback state) is a field here, so a session is created and removed
+ * in one step and cannot be left half cleaned up.
+ *
+ * Every timer scheduled for the session goes through this object so it can be
+ * cancelled when the stream stops, the socket closes or the transport fails.
+ * Without this the silence checker kept firing for sessions that no longer exist.
+ */
+class CallSession {
+
+    private final String sessionId;
+    // Decorated for sends from several threads
+    private final WebSocketSession socket;
+    private final AudioBuffer audioBuffer;
+    private final NoiseFloorTracker noiseFloor;
+    private final VoiceActivityDetector voiceActivityDetector;
+    private final SpeechConditioner speechConditioner;
+    private final AudioPipeline pipeline;
+    private final TimingWheel timers;
+    private final Set<TimingWheel.Timeout> pendingTimers = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    // Set by the "start" event
+    private volatile String callSid;
+    private volatile String streamSid;
+    private volatile String streamUrl;
+    // Speech model the call asked for (start event custom parameter), or null for the default
+    private volatile String speechModel;
+
+    // True from the end of the caller's utterance until the AI has finished responding
+    private final AtomicBoolean processing = new AtomicBoolean(false);
+    // When the last AI response was sent (debouncing)
+    private volatile long lastResponseTime;
+    // Name of the mark sent after the AI response audio - set only while playback is in progress
+    private final AtomicReference<String> playbackMark = new AtomicReference<>();
+    // Consecutive voiced frames heard while the AI is speaking (barge-in detection)
+    private volatile int bargeInFrames;
+
+    // End-of-speech deadline: last voiced frame + silence timeout. Armed from the message
+    // thread, the timer worker (re-arm on expiry) and barge-in detection, so every read-modify-
+    // write of it holds endpointTimerLock - otherwise two timers could be armed or a cancel lost
+    private final Object endpointTimerLock = new Object();
+    private TimingWheel.Timeout endpointTimer;
+    
+    // Streaming recognition of the utterance in progress; taken by the turn that processes it
+    private final AtomicReference<StreamingRecognitionSession> recognition = new AtomicReference<>();
+    // Buffer generation of the utterance it recognizes, utterance bytes sent to it, and whether
+    // opening one failed for this utterance (message thread only)
+    private int recognitionGeneration;
+    private int recognitionBytes;
+    private boolean recognitionUnavailable;
+    // Buffer generation of the audio held back by the speech conditioner (message thread only)
+    private int conditionedGeneration;
+    // Answers the last AI response expects (see AiAgentResult#getExpectedGrammar), or null
+    private volatile List<String> expectedGrammar;
+    // Intent heard in the latest partial transcript of that utterance (see IntentDetector)
+    private final AtomicReference<IntentMatch> intentCandidate = new AtomicReference<>();
+    
+    // Decode target for inbound media messages, reused for every frame
+    private final MediaFrame mediaFrame = new MediaFrame();
+    // Current inbound frame as it passes through the pipeline, reused for every frame
+    private final AudioFrame audioFrame = new AudioFrame();
+
+    CallSession(String sessionId, WebSocketSession socket, AudioBuffer audioBuffer, NoiseFloorTracker noiseFloor,
+                VoiceActivityDetector voiceActivityDetector, SpeechConditioner speechConditioner,
+                AudioPipeline pipeline, TimingWheel timers) {
+        this.sessionId = sessionId;
+        this.socket = socket;
+        this.audioBuffer = audioBuffer;
+        this.noiseFloor = noiseFloor;
+        this.voiceActivityDetector = voiceActivityDetector;
+        this.speechConditioner = speechConditioner;
+        this.pipeline = pipeline;
+        this.timers = timers;
+    }
+
+    String getSessionId() {
+        return sessionId;
+    }
+    
+    WebSocketSession getSocket() {
+        return socket;
+    }
+    
+    AudioBuffer getAudioBuffer() {
+        return audioBuffer;
+    }
+    
+    NoiseFloorTracker getNoiseFloor() {
+        return noiseFloor;
+    }
+    
+    VoiceActivityDetector getVoiceActivityDetector() {
+        return voiceActivityDetector;
+    }
+    
+    /**
+     * Noise suppression and gain control for inbound frames, or null when disabled
+     */
+    SpeechConditioner getSpeechConditioner() {
+        return speechConditioner;
+    }
+    
+    int getConditionedGeneration() {
+        return conditionedGeneration;
+    }
+    
+    void setConditionedGeneration(int generation) {
+        conditionedGeneration = generation;
+    }
+    
+    MediaFrame getMediaFrame() {
+        return mediaFrame;
+    }
+    
+    AudioFrame getAudioFrame() {
+        return audioFrame;
+    }
+    
+    AudioPipeline getPipeline() {
+        return pipeline;
+    }
+    
+    String getCallSid() {
+        return callSid;
+    }
+    
+    void setCallSid(String callSid) {
+        this.callSid = callSid;
+    }
+    
+    String getStreamSid() {
+        return streamSid;
+    }
+    
+    void setStreamSid(String streamSid) {
+        this.streamSid = streamSid;
+    }
+    
+    String getStreamUrl() {
+        return streamUrl;
+    }
+    
+    void setStreamUrl(String streamUrl) {
+        this.streamUrl = streamUrl;
+    }
+    
+    String getSpeechModel() {
+        return speechModel;
+    }
+    
+    void setSpeechModel(String speechModel) {
+        this.speechModel = speechModel;
+    }
+    
+    boolean isProcessing() {
+        return processing.get();
+    }
+    
+    /**
+     * Claims the session for one turn.
+     *
+     * @return false if a turn is already in progress
+     */
+    boolean startTurn() {
+        return processing.compareAndSet(false, true);
+    }
+    
+    /**
+     * Returns the session to listening.
+     *
+     * @return false if no turn was in progress
+     */
+    boolean endTurn() {
+        return processing.compareAndSet(true, false);
+    }
+    
+    long getLastResponseTime() {
+        return lastResponseTime;
+    }
+    
+    void setLastResponseTime(long lastResponseTime) {
+        this.lastResponseTime = lastResponseTime;
+    }
+    
+    void startPlayback(String markName) {
+        playbackMark.set(markName);
+    }
+    
+    boolean isPlayingBack() {
+        return playbackMark.get() != null;
+    }
+    
+    /**
+     * Ends playback if {@code markName} is the mark of the response currently playing.
+     */
+    boolean finishPlayback(String markName) {
+        return playbackMark.compareAndSet(markName, null);
+    }
+    
+    /**
+     * Ends playback whatever is playing.
+     *
+     * @return the mark of the interrupted response, or null if nothing was playing
+     */
+    String stopPlayback() {
+        return playbackMark.getAndSet(null);
+    }
+    
+    /**
+     * Called from the session's message thread only
+     */
+    int incrementBargeInFrames() {
+        return ++bargeInFrames;
+    }
+    
+    /**
+     * @return the voiced run that was discarded
+     */
+    int resetBargeInFrames() {
+        int frames = bargeInFrames;
+        bargeInFrames = 0;
+        return frames;
+    }
+
+    StreamingRecognitionSession getRecognition() {
+        return recognition.get();
+    }
+    
+    void setRecognition(StreamingRecognitionSession session) {
+        recognition.set(session);
+    }
+    
+    int getRecognitionGeneration() {
+        return recognitionGeneration;
+    }
+    
+    /**
+     * Starts the recognition bookkeeping over for a new utterance (message thread only)
+     *
+     * @param generation {@link AudioBuffer#getGeneration()} of the utterance
+     */
+    void resetRecognition(int generation) {
+        recognitionGeneration = generation;
+        recognitionBytes = 0;
+        recognitionUnavailable = false;
+    }
+    
+    /**
+     * Detaches the recognition, so it is finished or cancelled by exactly one owner
+     *
+     * @return the recognition, or null if none was open
+     */
+    StreamingRecognitionSession takeRecognition() {
+        return recognition.getAndSet(null);
+    }
+    
+    List<String> getExpectedGrammar() {
+        return expectedGrammar;
+    }
+
+    void setExpectedGrammar(List<String> expectedGrammar) {
+        this.expectedGrammar = expectedGrammar;
+    }
+
+    IntentMatch getIntentCandidate() {
+        return intentCandidate.get();
+    }
+
+    void setIntentCandidate(IntentMatch match) {
+        intentCandidate.set(match);
+    }
+
+    /**
+     * Claims the intent candidate for a turn, unless a newer partial transcript replaced it
+     *
+     * @return true if {@code expected} was still the candidate
+     */
+    boolean takeIntentCandidate(IntentMatch expected) {
+        return intentCandidate.compareAndSet(expected, null);
+    }
+
+    void clearIntentCandidate() {
+        intentCandidate.set(null);
+    }
+
+    int getRecognitionBytes() {
+        return recognitionBytes;
+    }
+    
+    void setRecognitionBytes(int recognitionBytes) {
+        this.recognitionBytes = recognitionBytes;
+    }
+    
+    boolean isRecognitionUnavailable() {
+        return recognitionUnavailable;
+    }
+    
+    void setRecognitionUnavailable(boolean recognitionUnavailable) {
+        this.recognitionUnavailable = recognitionUnavailable;
+    }
+
+    /**
+     * Arms the end-of-speech timer, or pushes it back if it is already armed.
+     * Called for every voiced frame, so the common case is an uncontended lock and a single
+     * volatile write.
+     *
+     * @param task    run when no voiced frame has re-armed the timer for {@code delayMs}
+     * @param delayMs silence timeout in milliseconds
+     */
+    void armEndpointTimer(Runnable task, long delayMs) {
+        synchronized (endpointTimerLock) {
+            TimingWheel.Timeout current = endpointTimer;
+            if (current != null && current.extend(delayMs)) {
+                return;
+            }
+            endpointTimer = schedule(task, delayMs);
+        }
+    }
+
+    /**
+     * Arms the end-of-speech timer only if none is pending (frames that must not push it back).
+     */
+    void ensureEndpointTimer(Runnable task, long delayMs) {
+        synchronized (endpointTimerLock) {
+            TimingWheel.Timeout current = endpointTimer;
+            if (current == null || current.isDone()) {
+                endpointTimer = schedule(task, delayMs);
+            }
+        }
+    }
+
+    void cancelEndpointTimer() {
+        synchronized (endpointTimerLock) {
+            TimingWheel.Timeout current = endpointTimer;
+            if (current != null) {
+                current.cancel();
+                endpointTimer = null;
+            }
+        }
+    }
+
+    /**
+     * Schedules a one-shot task owned by this session.
+     *
+     * @return the timer, or null if the session is already closed
+     */
+    TimingWheel.Timeout schedule(Runnable task, long delayMs) {
+        if (closed.get()) {
+            return null;
+        }
+        // Forget timers that already fired so the set stays small on long calls
+        pendingTimers.removeIf(TimingWheel.Timeout::isDone);
+        TimingWheel.Timeout timeout = timers.schedule(task, delayMs);
+        pendingTimers.add(timeout);
+        // close() may have run between the closed check and add()
+        if (closed.get()) {
+            timeout.cancel();
+            pendingTimers.remove(timeout);
+            return null;
+        }
+        return timeout;
+    }
+
+    boolean isClosed() {
+        return closed.get();
+    }
+
+    /**
+     * Cancels every timer owned by this session. Safe to call more than once.
+     *
+     * @return number of timers that were still pending
+     */
+    int close() {
+        if (!closed.compareAndSet(false, true)) {
+            return 0;
+        }
+        int cancelled = 0;
+        for (TimingWheel.Timeout timer : pendingTimers) {
+            if (timer.cancel()) {
+                cancelled++;
+            }
+        }
+        pendingTimers.clear();
+        return cancelled;
+    }
+}
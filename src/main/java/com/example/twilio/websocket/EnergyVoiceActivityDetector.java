@@ -0,0 +1,40 @@
+package com.example.twilio.websocket;
+
+/**
+ * The original speech detector: {@link AudioEnergyDetector}'s energy and non-silence thresholds,
+ * minus frames whose energy is suspiciously constant.
+ *
+ * With a {@link NoiseFloorTracker} the fixed thresholds are replaced by the call's adaptive
+ * threshold on the frame's linear RMS, so each line gets a threshold above its own noise.
+ * Without one the detector is stateless and one instance is shared by all calls.
+ */
+public final class EnergyVoiceActivityDetector implements VoiceActivityDetector {
+
+    static final EnergyVoiceActivityDetector INSTANCE = new EnergyVoiceActivityDetector(null);
+
+    // Null = fixed thresholds from AudioEnergyDetector
+    private final NoiseFloorTracker noiseFloor;
+
+    EnergyVoiceActivityDetector(NoiseFloorTracker noiseFloor) {
+        this.noiseFloor = noiseFloor;
+    }
+
+    @Override
+    public boolean isSpeech(byte[] muLawAudio, int offset, int length, FrameStats stats) {
+        boolean loudEnough = noiseFloor != null
+                ? stats.getRms() > noiseFloor.getThresholdRms()
+                : stats.hasEnergy();
+        return loudEnough && !isSuspiciousConstantEnergy(stats);
+    }
+
+    /**
+     * Additional check: If energy is suspiciously constant (around 127-128), it might be noise/feedback
+     * Real speech has varying energy levels, not constant values
+     * Check for constant energy around the mu-law zero point (127) or slightly above (128)
+     */
+    static boolean isSuspiciousConstantEnergy(FrameStats stats) {
+        double energy = stats.getEnergy();
+        return (Math.abs(energy - 127.0) < 2.0 || Math.abs(energy - 128.0) < 2.0)
+                && stats.getNonSilencePercent() >= 99.0;
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.twilio.websocket;
+
+/**
+ * Result of {@link AudioEnergyDetector#analyze(byte[], int, int, FrameStats)} for one audio frame.
+ *
+ * Reusable: the detector overwrites every field, so the media path keeps one instance per
+ * session instead of allocating a result for every 20 ms frame.
+ */
+public final class FrameStats {
+
+    private double energy;
+    private double nonSilencePercent;
+    private boolean hasEnergy;
+    private double rms;
+    private int peak;
+    private int zeroCrossings;
+    private int samples;
+
+    void set(double energy, double nonSilencePercent, boolean hasEnergy,
+             double rms, int peak, int zeroCrossings, int samples) {
+        this.energy = energy;
+        this.nonSilencePercent = nonSilencePercent;
+        this.hasEnergy = hasEnergy;
+        this.rms = rms;
+        this.peak = peak;
+        this.zeroCrossings = zeroCrossings;
+        this.samples = samples;
+    }
+
+    /**
+     * Legacy energy: RMS of the mu-law code distance from 127 over the non-silent samples.
+     * Not a linear amplitude - kept because audio.energy.threshold is expressed in it.
+     */
+    public double getEnergy() {
+        return energy;
+    }
+
+    /**
+     * Percentage (0.0 to 100.0) of samples away from the mu-law silence code
+     */
+    public double getNonSilencePercent() {
+        return nonSilencePercent;
+    }
+
+    /**
+     * Whether the frame passes the configured speech thresholds
+     */
+    public boolean hasEnergy() {
+        return hasEnergy;
+    }
+
+    /**
+     * RMS of the decoded 16-bit linear samples over the whole frame
+     */
+    public double getRms() {
+        return rms;
+    }
+
+    /**
+     * Largest absolute 16-bit linear sample
+     */
+    public int getPeak() {
+        return peak;
+    }
+
+    /**
+     * Number of sign changes between consecutive linear samples
+     */
+    public int getZeroCrossings() {
+        return zeroCrossings;
+    }
+
+    public int getSamples() {
+        return samples;
+    }
+}
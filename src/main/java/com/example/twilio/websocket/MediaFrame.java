@@ -0,0 +1,40 @@
+package com.example.twilio.websocket;
+
+/**
+ * Reusable holder for the last inbound media frame of a session.
+ *
+ * One instance per session, overwritten by every media message. Spring delivers the messages
+ * of a WebSocket session one at a time, so the frame is only touched by one thread at a time;
+ * anything that keeps audio beyond the current message must copy it.
+ */
+final class MediaFrame {
+
+    // 20 ms of 8 kHz mu-law - grows if Twilio ever sends larger frames
+    byte[] audio = new byte[MediaStreamMessages.FRAME_BYTES];
+    int length;
+    long sequenceNumber = -1;
+    long timestamp = -1;
+
+    // Last sequence number seen, to spot dropped frames
+    long lastSequenceNumber = -1;
+
+    void ensureCapacity(int capacity) {
+        if (audio.length < capacity) {
+            audio = new byte[capacity];
+        }
+    }
+
+    /**
+     * @return number of frames missing between the previous message and this one
+     */
+    long advanceSequence() {
+        long missing = 0;
+        if (lastSequenceNumber >= 0 && sequenceNumber > lastSequenceNumber + 1) {
+            missing = sequenceNumber - lastSequenceNumber - 1;
+        }
+        if (sequenceNumber >= 0) {
+            lastSequenceNumber = sequenceNumber;
+        }
+        return missing;
+    }
+}
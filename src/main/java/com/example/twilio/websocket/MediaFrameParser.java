@@ -0,0 +1,148 @@
+package com.example.twilio.websocket;
+
+import java.util.Arrays;
+
+/**
+ * Fast path for inbound Twilio "media" messages, which arrive 50 times per second per call:
+ * {"event":"media","sequenceNumber":"4","media":{"track":"inbound","chunk":"3","timestamp":"5","payload":"..."},"streamSid":"MZ..."}
+ *
+ * The fields we need are scanned directly out of the message text and the base64 payload is
+ * decoded straight into the session's reusable {@link MediaFrame}, so a media message costs no
+ * JsonNode tree, no payload String and no new byte[]. Anything unexpected (other events, escaped
+ * strings) is reported as not handled and the caller falls back to the ObjectMapper.
+ */
+final class MediaFrameParser {
+
+    private static final String EVENT_KEY = "\"event\"";
+    private static final String MEDIA_VALUE = "\"media\"";
+    private static final String SEQUENCE_KEY = "\"sequenceNumber\"";
+    private static final String MEDIA_KEY = "\"media\"";
+    private static final String TIMESTAMP_KEY = "\"timestamp\"";
+    private static final String PAYLOAD_KEY = "\"payload\"";
+
+    private static final byte[] BASE64_VALUES = new byte[128];
+
+    static {
+        Arrays.fill(BASE64_VALUES, (byte) -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < alphabet.length(); i++) {
+            BASE64_VALUES[alphabet.charAt(i)] = (byte) i;
+        }
+    }
+
+    private MediaFrameParser() {
+    }
+
+    /**
+     * Parses a media message into {@code frame}.
+     *
+     * @return false if the message is not a media event in the expected shape - use the generic path
+     * @throws IllegalArgumentException if the payload is not valid base64
+     */
+    static boolean parseMedia(String json, MediaFrame frame) {
+        int event = valueStart(json, EVENT_KEY, 0);
+        if (event < 0 || !json.startsWith(MEDIA_VALUE, event)) {
+            return false;
+        }
+        // The "media" key follows the "media" event value, so search after it
+        int media = valueStart(json, MEDIA_KEY, event + MEDIA_VALUE.length());
+        if (media < 0 || json.charAt(media) != '{') {
+            return false;
+        }
+        int payload = valueStart(json, PAYLOAD_KEY, media);
+        if (payload < 0 || json.charAt(payload) != '"') {
+            return false;
+        }
+        int payloadStart = payload + 1;
+        int payloadEnd = json.indexOf('"', payloadStart);
+        if (payloadEnd < 0 || json.lastIndexOf('\\', payloadEnd) >= payloadStart) {
+            return false;
+        }
+
+        int dataEnd = payloadEnd;
+        while (dataEnd > payloadStart && json.charAt(dataEnd - 1) == '=') {
+            dataEnd--;
+        }
+
+        int sequence = valueStart(json, SEQUENCE_KEY, 0);
+        int timestamp = valueStart(json, TIMESTAMP_KEY, media);
+        frame.sequenceNumber = sequence < 0 ? -1 : parseLong(json, sequence);
+        frame.timestamp = timestamp < 0 ? -1 : parseLong(json, timestamp);
+        frame.ensureCapacity((dataEnd - payloadStart) * 6 / 8);
+        frame.length = decodeBase64(json, payloadStart, dataEnd, frame.audio);
+        return true;
+    }
+
+    /**
+     * Finds {@code key} followed by a colon and returns the index of its value, or -1
+     */
+    private static int valueStart(String json, String key, int from) {
+        int index = from;
+        while ((index = json.indexOf(key, index)) >= 0) {
+            int i = skipWhitespace(json, index + key.length());
+            if (i < json.length() && json.charAt(i) == ':') {
+                i = skipWhitespace(json, i + 1);
+                return i < json.length() ? i : -1;
+            }
+            // Matched a string value, not a key
+            index += key.length();
+        }
+        return -1;
+    }
+
+    private static int skipWhitespace(String json, int i) {
+        while (i < json.length() && json.charAt(i) <= ' ') {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Twilio sends numbers as strings ("4") - accepts both quoted and bare digits
+     *
+     * @return the value, or -1 if it is not a non-negative integer
+     */
+    private static long parseLong(String json, int i) {
+        if (json.charAt(i) == '"') {
+            i++;
+        }
+        long value = 0;
+        int digits = 0;
+        for (; i < json.length(); i++, digits++) {
+            char c = json.charAt(i);
+            if (c < '0' || c > '9') {
+                break;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return digits == 0 ? -1 : value;
+    }
+
+    /**
+     * Decodes standard base64 characters json[from, to) into {@code out} (padding already stripped)
+     *
+     * @return number of bytes written
+     */
+    static int decodeBase64(CharSequence json, int from, int to, byte[] out) {
+        int bits = 0;
+        int bitCount = 0;
+        int length = 0;
+        for (int i = from; i < to; i++) {
+            char c = json.charAt(i);
+            if (c == '=') {
+                break;
+            }
+            int value = c < 128 ? BASE64_VALUES[c] : -1;
+            if (value < 0) {
+                throw new IllegalArgumentException("Illegal base64 character 0x" + Integer.toHexString(c) + " at " + (i - from));
+            }
+            bits = ((bits << 6) | value) & 0xFFFFFF;
+            bitCount += 6;
+            if (bitCount >= 8) {
+                bitCount -= 8;
+                out[length++] = (byte) (bits >> bitCount);
+            }
+        }
+        return length;
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.twilio.websocket;
+
+import java.util.Base64;
+
+/**
+ * Builds the outbound messages of the bidirectional Twilio Media Streams protocol.
+ *
+ * The schema is fixed and every value is either base64 or a Twilio SID, so the JSON
+ * is assembled directly instead of going through an ObjectMapper for each 20 ms frame.
+ */
+final class MediaStreamMessages {
+
+    // 20 ms of 8 kHz mu-law audio
+    static final int FRAME_BYTES = 160;
+
+    private MediaStreamMessages() {
+    }
+
+    /**
+     * Outbound audio frame: {"event":"media","streamSid":"...","media":{"payload":"..."}}
+     */
+    static String media(String streamSid, byte[] muLawAudio, int offset, int length) {
+        byte[] frame = muLawAudio;
+        if (offset != 0 || length != muLawAudio.length) {
+            frame = new byte[length];
+            System.arraycopy(muLawAudio, offset, frame, 0, length);
+        }
+        String payload = Base64.getEncoder().encodeToString(frame);
+        return new StringBuilder(payload.length() + 96)
+                .append("{\"event\":\"media\",\"streamSid\":\"").append(streamSid)
+                .append("\",\"media\":{\"payload\":\"").append(payload)
+                .append("\"}}")
+                .toString();
+    }
+
+    /**
+     * Mark message: Twilio echoes it back once all media sent before it has been played.
+     */
+    static String mark(String streamSid, String name) {
+        return "{\"event\":\"mark\",\"streamSid\":\"" + streamSid + "\",\"mark\":{\"name\":\"" + name + "\"}}";
+    }
+
+    /**
+     * Clear message: drops all buffered outbound audio (barge-in). Pending marks are echoed back.
+     */
+    static String clear(String streamSid) {
+        return "{\"event\":\"clear\",\"streamSid\":\"" + streamSid + "\"}";
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.twilio.websocket;
+
+/**
+ * Per-call estimate of the line's noise floor and the speech threshold derived from it.
+ *
+ * The floor is tracked with minimum statistics on the linear RMS of each frame, in dB: the
+ * quietest frame of each {@link #BLOCK_FRAMES}-frame block is kept for the last
+ * {@link #BLOCKS} blocks (about two seconds of 20 ms frames), and the floor follows the lowest
+ * of them. Speech always has gaps between syllables, so the minimum is the line noise whether
+ * or not the detector called the frames speech; a hum or carrier noise that switches on
+ * mid-call raises the floor within the window instead of being taken for speech forever. The speech
+ * threshold is the floor plus a fixed SNR margin, clamped to a sane range - a quiet handset
+ * gets a low threshold, a noisy carrier or background a higher one, without re-tuning
+ * {@code audio.energy.threshold} for everybody.
+ *
+ * Updated on the call's WebSocket thread, O(1) per frame with no allocation. The published
+ * values are volatile so diagnostics can read them from any thread.
+ */
+public final class NoiseFloorTracker {
+
+    static final int BLOCK_FRAMES = 25;
+    static final int BLOCKS = 4;
+    // The minimum of a block sits slightly below the mean noise level
+    private static final double MINIMUM_BIAS_DB = 1.5;
+    // Per-frame smoothing of the floor towards the windowed minimum
+    private static final double SMOOTHING = 0.1;
+
+    private final double snrDb;
+    private final double minThresholdRms;
+    private final double maxThresholdRms;
+
+    private double floorDb;
+    private final double[] blockMinimumDb = new double[BLOCKS];
+    private int completedBlocks;
+    private double currentMinimumDb = Double.MAX_VALUE;
+    private int currentFrames;
+    private volatile double noiseFloorRms;
+    private volatile double thresholdRms;
+    private volatile double lastFrameRms;
+    private volatile long speechFrames;
+    private volatile long noiseFrames;
+
+    /**
+     * @param initialFloorRms Floor assumed until frames have been heard
+     * @param snrDb           Margin between floor and speech threshold
+     * @param minThresholdRms Lowest speech threshold (linear RMS)
+     * @param maxThresholdRms Highest speech threshold (linear RMS)
+     */
+    public NoiseFloorTracker(double initialFloorRms, double snrDb, double minThresholdRms, double maxThresholdRms) {
+        this.snrDb = snrDb;
+        this.minThresholdRms = minThresholdRms;
+        this.maxThresholdRms = Math.max(minThresholdRms, maxThresholdRms);
+        this.floorDb = toDb(initialFloorRms);
+        publish();
+    }
+
+    /**
+     * Feeds one analyzed frame
+     *
+     * @param stats  Frame statistics
+     * @param speech Whether the frame was classified as speech
+     */
+    public void update(FrameStats stats, boolean speech) {
+        double rms = stats.getRms();
+        lastFrameRms = rms;
+        if (speech) {
+            speechFrames++;
+        } else {
+            noiseFrames++;
+        }
+        if (stats.getPeak() == 0) {
+            // Digital silence (muted or on hold) says nothing about the line noise
+            return;
+        }
+        double levelDb = toDb(rms);
+        currentMinimumDb = Math.min(currentMinimumDb, levelDb);
+        if (++currentFrames == BLOCK_FRAMES) {
+            blockMinimumDb[completedBlocks % BLOCKS] = currentMinimumDb;
+            completedBlocks++;
+            currentMinimumDb = Double.MAX_VALUE;
+            currentFrames = 0;
+        }
+        if (completedBlocks == 0) {
+            // Too early for a floor estimate
+            return;
+        }
+        double minimumDb = currentMinimumDb;
+        for (int i = 0; i < Math.min(completedBlocks, BLOCKS); i++) {
+            minimumDb = Math.min(minimumDb, blockMinimumDb[i]);
+        }
+        floorDb += SMOOTHING * (minimumDb + MINIMUM_BIAS_DB - floorDb);
+        publish();
+    }
+
+    private void publish() {
+        double floorRms = Math.pow(10.0, floorDb / 20.0);
+        noiseFloorRms = floorRms;
+        thresholdRms = Math.max(minThresholdRms, Math.min(maxThresholdRms, floorRms * Math.pow(10.0, snrDb / 20.0)));
+    }
+
+    private static double toDb(double rms) {
+        return 20.0 * Math.log10(Math.max(rms, 1.0));
+    }
+
+    /**
+     * Current noise floor (linear RMS of 16-bit samples)
+     */
+    public double getNoiseFloorRms() {
+        return noiseFloorRms;
+    }
+
+    /**
+     * Current speech threshold (linear RMS of 16-bit samples)
+     */
+    public double getThresholdRms() {
+        return thresholdRms;
+    }
+
+    public double getLastFrameRms() {
+        return lastFrameRms;
+    }
+
+    public long getSpeechFrames() {
+        return speechFrames;
+    }
+
+    public long getNoiseFrames() {
+        return noiseFrames;
+    }
+}
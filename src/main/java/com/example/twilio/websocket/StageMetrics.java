@@ -0,0 +1,57 @@
+package com.example.twilio.websocket;
+
+/**
+ * Cumulative cost of one pipeline stage for one call: invocations, wall time and bytes
+ * allocated on the calling thread.
+ *
+ * Written by one thread at a time (frames of a call arrive on one thread, turns of a call do
+ * not overlap); the fields are volatile so diagnostics can read them from any thread.
+ */
+final class StageMetrics {
+
+    private final String name;
+    private volatile long count;
+    private volatile long totalNanos;
+    private volatile long maxNanos;
+    private volatile long allocatedBytes;
+
+    StageMetrics(String name) {
+        this.name = name;
+    }
+
+    void record(long nanos, long bytes) {
+        count++;
+        totalNanos += nanos;
+        if (nanos > maxNanos) {
+            maxNanos = nanos;
+        }
+        if (bytes > 0) {
+            allocatedBytes += bytes;
+        }
+    }
+
+    String getName() {
+        return name;
+    }
+
+    long getCount() {
+        return count;
+    }
+
+    long getTotalNanos() {
+        return totalNanos;
+    }
+
+    long getMaxNanos() {
+        return maxNanos;
+    }
+
+    long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    double getMeanNanos() {
+        long n = count;
+        return n > 0 ? (double) totalNanos / n : 0.0;
+    }
+}
@@ -0,0 +1,281 @@
+package com.example.twilio.websocket;
+
+import com.example.twilio.audio.G711Codec;
+
+/**
+ * Multi-band statistical speech detector in the style of the WebRTC VAD.
+ *
+ * Each frame (10 or 20 ms) is split into six telephone bands by band-pass biquads, and the log
+ * energy of every band is compared against two Gaussian models per band: background noise and
+ * speech. The per-band log-likelihood ratios are combined into a weighted sum; a frame is raw
+ * speech if the sum or any single band exceeds the threshold for the configured aggressiveness.
+ *
+ * The noise model tracks the line: it follows drops quickly and rises slowly, and is updated
+ * from every non-speech frame. Line noise, hum and comfort noise that switch on mid-call are
+ * stationary - their level stays within a few dB, while speech rises and falls with every
+ * syllable - so once the level has stayed within {@link #STATIONARY_SPREAD_DB} for
+ * {@link #STATIONARY_MS} the frames are reclassified as noise and absorbed into the noise model
+ * instead of being sent to speech-to-text.
+ *
+ * Raw decisions are smoothed: speech starts after {@link #ONSET_MS} of consecutive raw speech
+ * and is held for the hangover time after it stops, so word endings and short unvoiced
+ * consonants are not chopped off.
+ *
+ * One instance per call; not thread-safe (frames of a call arrive on one thread). The
+ * analysis is six biquads (run three at a time so their recursions overlap) and six
+ * logarithms per frame, with no allocation.
+ */
+public final class StatisticalVoiceActivityDetector implements VoiceActivityDetector {
+
+    private static final int BANDS = 6;
+    // Band edges in Hz
+    private static final double[] BAND_LOW = {80, 250, 500, 1000, 2000, 3000};
+    private static final double[] BAND_HIGH = {250, 500, 1000, 2000, 3000, 3800};
+    // Contribution of each band to the total log-likelihood ratio (speech energy is mid-band)
+    private static final double[] BAND_WEIGHT = {0.6, 1.0, 1.2, 1.2, 1.0, 0.6};
+
+    // Thresholds per aggressiveness (0 = most permissive, 3 = most aggressive at rejecting noise)
+    private static final double[] TOTAL_THRESHOLD = {3.0, 5.0, 7.5, 10.0};
+    private static final double[] BAND_THRESHOLD = {4.0, 5.5, 7.0, 9.0};
+
+    // Model parameters in dB
+    private static final double INITIAL_NOISE_DB = 30.0;
+    private static final double SPEECH_OFFSET_DB = 15.0;
+    private static final double MIN_SPEECH_OFFSET_DB = 6.0;
+    private static final double SPEECH_STD_DB = 6.0;
+    private static final double MIN_NOISE_STD_DB = 1.5;
+    private static final double MAX_NOISE_STD_DB = 10.0;
+
+    // Noise model adaptation per frame: down, up, up while speech, up while stationary
+    private static final double NOISE_DECAY = 0.1;
+    private static final double NOISE_RISE = 0.03;
+    private static final double NOISE_RISE_SPEECH = 0.002;
+    private static final double NOISE_RISE_STATIONARY = 0.1;
+    private static final double SPEECH_ADAPT = 0.05;
+
+    // Level range (dB) within which a window of frames counts as stationary
+    static final double STATIONARY_SPREAD_DB = 6.0;
+    static final long STATIONARY_MS = 500;
+    static final long ONSET_MS = 20;
+    private static final int LEVEL_HISTORY = 64;
+
+    // Mu-law code to linear sample
+    private static final float[] LINEAR = new float[256];
+
+    // Biquad coefficients per band (b1 is 0 for a band-pass)
+    private static final float[] B0 = new float[BANDS];
+    private static final float[] B2 = new float[BANDS];
+    private static final float[] A1 = new float[BANDS];
+    private static final float[] A2 = new float[BANDS];
+
+    static {
+        for (int code = 0; code < 256; code++) {
+            LINEAR[code] = G711Codec.decode((byte) code);
+        }
+        for (int band = 0; band < BANDS; band++) {
+            // Band-pass with 0 dB peak gain at the geometric center of the band
+            double center = Math.sqrt(BAND_LOW[band] * BAND_HIGH[band]);
+            double q = center / (BAND_HIGH[band] - BAND_LOW[band]);
+            double w0 = 2 * Math.PI * center / G711Codec.SAMPLE_RATE;
+            double alpha = Math.sin(w0) / (2 * q);
+            double a0 = 1 + alpha;
+            B0[band] = (float) (alpha / a0);
+            B2[band] = (float) (-alpha / a0);
+            A1[band] = (float) (-2 * Math.cos(w0) / a0);
+            A2[band] = (float) ((1 - alpha) / a0);
+        }
+    }
+
+    private final double totalThreshold;
+    private final double bandThreshold;
+    private final long hangoverMs;
+
+    // Filter state (transposed direct form II)
+    private final float[] state1 = new float[BANDS];
+    private final float[] state2 = new float[BANDS];
+    private float[] samples = new float[MediaStreamMessages.FRAME_BYTES];
+
+    private final float[] bandEnergy = new float[BANDS];
+    private final double[] bandDb = new double[BANDS];
+    // Mean band level of recent frames (ring)
+    private final double[] levelHistory = new double[LEVEL_HISTORY];
+    private int levelCount;
+    private final double[] noiseMean = new double[BANDS];
+    private final double[] noiseVariance = new double[BANDS];
+    private final double[] speechMean = new double[BANDS];
+    private boolean initialized;
+
+    private long onsetMs;
+    private long hangoverLeftMs;
+    private boolean speaking;
+
+    /**
+     * @param aggressiveness 0 (keeps the most speech) to 3 (rejects the most noise)
+     * @param hangoverMs     How long speech is held after the last raw speech frame
+     */
+    public StatisticalVoiceActivityDetector(int aggressiveness, long hangoverMs) {
+        int mode = Math.max(0, Math.min(TOTAL_THRESHOLD.length - 1, aggressiveness));
+        this.totalThreshold = TOTAL_THRESHOLD[mode];
+        this.bandThreshold = BAND_THRESHOLD[mode];
+        this.hangoverMs = hangoverMs;
+    }
+
+    @Override
+    public boolean isSpeech(byte[] muLawAudio, int offset, int length, FrameStats stats) {
+        if (length <= 0) {
+            return speaking;
+        }
+        long frameMs = Math.max(1, length * 1000L / G711Codec.SAMPLE_RATE);
+        boolean rawSpeech = stats.getPeak() > 0 && classify(muLawAudio, offset, length, frameMs);
+
+        if (rawSpeech) {
+            onsetMs += frameMs;
+            if (onsetMs >= ONSET_MS) {
+                speaking = true;
+                hangoverLeftMs = hangoverMs;
+            }
+        } else {
+            onsetMs = 0;
+            if (speaking) {
+                hangoverLeftMs -= frameMs;
+                speaking = hangoverLeftMs >= 0;
+            }
+        }
+        return speaking;
+    }
+
+    /**
+     * Band analysis, likelihood test and model update for one frame
+     *
+     * @return the raw (unsmoothed) speech decision
+     */
+    private boolean classify(byte[] muLawAudio, int offset, int length, long frameMs) {
+        if (samples.length < length) {
+            samples = new float[length];
+        }
+        float[] x = samples;
+        for (int i = 0; i < length; i++) {
+            x[i] = LINEAR[muLawAudio[offset + i] & 0xFF];
+        }
+        filterBands(x, length, 0);
+        filterBands(x, length, 3);
+
+        double meanLevel = 0;
+        for (int band = 0; band < BANDS; band++) {
+            bandDb[band] = 10.0 * Math.log10(bandEnergy[band] / length + 1.0);
+            meanLevel += bandDb[band] / BANDS;
+        }
+
+        if (!initialized) {
+            for (int band = 0; band < BANDS; band++) {
+                noiseMean[band] = Math.min(bandDb[band], INITIAL_NOISE_DB);
+                noiseVariance[band] = 3.0 * 3.0;
+                speechMean[band] = noiseMean[band] + SPEECH_OFFSET_DB;
+            }
+            initialized = true;
+        }
+
+        double total = 0;
+        double maxBand = Double.NEGATIVE_INFINITY;
+        for (int band = 0; band < BANDS; band++) {
+            double level = bandDb[band];
+            double noiseStd = Math.sqrt(noiseVariance[band]);
+            // Levels below the noise mean are treated as noise, not as unlikely noise
+            double deviation = Math.max(0.0, level - noiseMean[band]);
+            double speechDeviation = noiseMean[band] + deviation - speechMean[band];
+            double llr = Math.log(noiseStd / SPEECH_STD_DB)
+                    + deviation * deviation / (2 * noiseVariance[band])
+                    - speechDeviation * speechDeviation / (2 * SPEECH_STD_DB * SPEECH_STD_DB);
+            total += BAND_WEIGHT[band] * llr;
+            maxBand = Math.max(maxBand, llr);
+        }
+
+        boolean steadyNoise = isStationary(meanLevel, frameMs);
+        boolean rawSpeech = !steadyNoise && (total > totalThreshold || maxBand > bandThreshold);
+
+        for (int band = 0; band < BANDS; band++) {
+            double level = bandDb[band];
+            double mean = noiseMean[band];
+            double rate;
+            if (level < mean) {
+                rate = NOISE_DECAY;
+            } else if (steadyNoise) {
+                rate = NOISE_RISE_STATIONARY;
+            } else {
+                rate = rawSpeech ? NOISE_RISE_SPEECH : NOISE_RISE;
+            }
+            mean += rate * (level - mean);
+            noiseMean[band] = mean;
+            if (!rawSpeech) {
+                double d = level - mean;
+                double variance = noiseVariance[band] + rate * (d * d - noiseVariance[band]);
+                noiseVariance[band] = Math.max(MIN_NOISE_STD_DB * MIN_NOISE_STD_DB,
+                        Math.min(MAX_NOISE_STD_DB * MAX_NOISE_STD_DB, variance));
+            } else {
+                speechMean[band] += SPEECH_ADAPT * (level - speechMean[band]);
+            }
+            speechMean[band] = Math.max(speechMean[band], mean + MIN_SPEECH_OFFSET_DB);
+        }
+        return rawSpeech;
+    }
+
+    /**
+     * Runs three band filters over the frame in one pass and stores their energy
+     */
+    private void filterBands(float[] x, int length, int first) {
+        int second = first + 1;
+        int third = first + 2;
+        float b0a = B0[first], b2a = B2[first], a1a = A1[first], a2a = A2[first];
+        float b0b = B0[second], b2b = B2[second], a1b = A1[second], a2b = A2[second];
+        float b0c = B0[third], b2c = B2[third], a1c = A1[third], a2c = A2[third];
+        float s1a = state1[first], s2a = state2[first];
+        float s1b = state1[second], s2b = state2[second];
+        float s1c = state1[third], s2c = state2[third];
+        float ea = 0, eb = 0, ec = 0;
+        for (int i = 0; i < length; i++) {
+            float in = x[i];
+            float outA = b0a * in + s1a;
+            float outB = b0b * in + s1b;
+            float outC = b0c * in + s1c;
+            s1a = s2a - a1a * outA;
+            s1b = s2b - a1b * outB;
+            s1c = s2c - a1c * outC;
+            s2a = b2a * in - a2a * outA;
+            s2b = b2b * in - a2b * outB;
+            s2c = b2c * in - a2c * outC;
+            ea += outA * outA;
+            eb += outB * outB;
+            ec += outC * outC;
+        }
+        state1[first] = s1a;
+        state2[first] = s2a;
+        state1[second] = s1b;
+        state2[second] = s2b;
+        state1[third] = s1c;
+        state2[third] = s2c;
+        bandEnergy[first] = ea;
+        bandEnergy[second] = eb;
+        bandEnergy[third] = ec;
+    }
+
+    /**
+     * Records the frame level and checks whether the level has stayed within
+     * {@link #STATIONARY_SPREAD_DB} for the last {@link #STATIONARY_MS}
+     */
+    private boolean isStationary(double level, long frameMs) {
+        levelHistory[levelCount % LEVEL_HISTORY] = level;
+        levelCount++;
+        int window = (int) Math.min(LEVEL_HISTORY, Math.max(1, STATIONARY_MS / frameMs));
+        if (levelCount < window) {
+            return false;
+        }
+        double min = level;
+        double max = level;
+        for (int i = 1; i < window; i++) {
+            double previous = levelHistory[(levelCount - 1 - i) % LEVEL_HISTORY];
+            min = Math.min(min, previous);
+            max = Math.max(max, previous);
+        }
+        return max - min < STATIONARY_SPREAD_DB;
+    }
+}
@@ -0,0 +1,283 @@
+package com.example.twilio.websocket;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hashed timing wheel for per-session conversation timers (endpointing, playback release).
+ *
+ * A single worker thread advances one bucket per tick (10 ms by default). Scheduling and
+ * cancelling are O(1): new timers are handed to the worker through a lock-free queue and
+ * live in a doubly-linked bucket list, so an idle call costs nothing between ticks and the
+ * cost of a tick does not grow with the number of calls that have no timer due.
+ *
+ * Timers can be pushed later with {@link Timeout#extend(long)}, which only writes a volatile
+ * deadline. The worker notices the new deadline when the old bucket comes around and moves
+ * the timer, so re-arming on every voiced frame costs no allocation and no queue traffic.
+ *
+ * Tasks run on the worker thread and must not block - hand real work to an executor.
+ */
+final class TimingWheel {
+
+    private static final Logger logger = LoggerFactory.getLogger(TimingWheel.class);
+
+    private static final int ACTIVE = 0;
+    private static final int CANCELLED = 1;
+    private static final int EXPIRED = 2;
+
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final long startTime = System.nanoTime();
+
+    private final Queue<WheelTimeout> newTimeouts = new ConcurrentLinkedQueue<>();
+    private final Queue<WheelTimeout> cancelledTimeouts = new ConcurrentLinkedQueue<>();
+    private final AtomicLong pendingTimeouts = new AtomicLong();
+    private final Thread worker;
+    private volatile boolean running = true;
+
+    // Worker thread only
+    private long tick;
+    private final ArrayDeque<WheelTimeout> rearmed = new ArrayDeque<>();
+
+    /**
+     * @param name          worker thread name
+     * @param tickMs        timer precision in milliseconds
+     * @param ticksPerWheel number of buckets, rounded up to a power of two
+     */
+    TimingWheel(String name, long tickMs, int ticksPerWheel) {
+        if (tickMs <= 0) {
+            throw new IllegalArgumentException("tickMs must be positive: " + tickMs);
+        }
+        int size = Integer.highestOneBit(Math.max(1, ticksPerWheel - 1)) << 1;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMs);
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = size - 1;
+        this.worker = new Thread(this::run, name);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Schedules a one-shot task.
+     *
+     * @param task    non-blocking task, run on the wheel's worker thread
+     * @param delayMs delay in milliseconds
+     */
+    Timeout schedule(Runnable task, long delayMs) {
+        if (!running) {
+            throw new IllegalStateException("Timing wheel has been stopped");
+        }
+        WheelTimeout timeout = new WheelTimeout(task, now() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMs)));
+        pendingTimeouts.incrementAndGet();
+        newTimeouts.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Number of timers scheduled and not yet expired or cancelled
+     */
+    long pendingTimeouts() {
+        return pendingTimeouts.get();
+    }
+
+    void stop() {
+        running = false;
+        LockSupport.unpark(worker);
+    }
+
+    private long now() {
+        return System.nanoTime() - startTime;
+    }
+
+    private void run() {
+        while (running) {
+            long tickDeadline = tickNanos * (tick + 1);
+            long sleepNanos = tickDeadline - now();
+            if (sleepNanos > 0) {
+                LockSupport.parkNanos(this, sleepNanos);
+                continue;
+            }
+            removeCancelled();
+            transferNewTimeouts();
+            wheel[(int) (tick & mask)].expire(tickDeadline);
+            tick++;
+            // Placed relative to the next tick - the current bucket has already been processed
+            while (!rearmed.isEmpty()) {
+                place(rearmed.poll());
+            }
+        }
+        logger.info("Timing wheel stopped with {} pending timers", pendingTimeouts.get());
+    }
+
+    private void removeCancelled() {
+        WheelTimeout timeout;
+        while ((timeout = cancelledTimeouts.poll()) != null) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    private void transferNewTimeouts() {
+        WheelTimeout timeout;
+        while ((timeout = newTimeouts.poll()) != null) {
+            if (timeout.state.get() == ACTIVE) {
+                place(timeout);
+            }
+        }
+    }
+
+    private void place(WheelTimeout timeout) {
+        long calculated = timeout.deadline / tickNanos;
+        timeout.remainingRounds = (calculated - tick) / wheel.length;
+        // Deadlines already in the past go into the current bucket
+        long ticks = Math.max(calculated, tick);
+        wheel[(int) (ticks & mask)].add(timeout);
+    }
+
+    /**
+     * Handle for a scheduled timer
+     */
+    interface Timeout {
+
+        /**
+         * @return true if this call cancelled the timer
+         */
+        boolean cancel();
+
+        /**
+         * Moves the deadline to {@code delayMs} from now if that is later than the current one.
+         *
+         * @return false if the timer already fired or was cancelled - schedule a new one instead
+         */
+        boolean extend(long delayMs);
+
+        boolean isDone();
+    }
+
+    private final class WheelTimeout implements Timeout {
+        private final Runnable task;
+        private final AtomicInteger state = new AtomicInteger(ACTIVE);
+        // Written by extend(), read by the worker; only ever moves later
+        private volatile long deadline;
+
+        // Worker thread only
+        long remainingRounds;
+        Bucket bucket;
+        WheelTimeout prev;
+        WheelTimeout next;
+
+        WheelTimeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public boolean cancel() {
+            if (!state.compareAndSet(ACTIVE, CANCELLED)) {
+                return false;
+            }
+            pendingTimeouts.decrementAndGet();
+            cancelledTimeouts.add(this);
+            return true;
+        }
+
+        @Override
+        public boolean extend(long delayMs) {
+            long newDeadline = now() + TimeUnit.MILLISECONDS.toNanos(delayMs);
+            if (newDeadline > deadline) {
+                deadline = newDeadline;
+            }
+            // Checked after the write: a concurrent expiry wins and the caller reschedules
+            return state.get() == ACTIVE;
+        }
+
+        @Override
+        public boolean isDone() {
+            return state.get() != ACTIVE;
+        }
+
+        void expire() {
+            if (!state.compareAndSet(ACTIVE, EXPIRED)) {
+                return;
+            }
+            pendingTimeouts.decrementAndGet();
+            try {
+                task.run();
+            } catch (Throwable t) {
+                logger.error("Timer task failed", t);
+            }
+        }
+    }
+
+    /**
+     * Doubly-linked list of timers hashed to one slot of the wheel (worker thread only)
+     */
+    private final class Bucket {
+        private WheelTimeout head;
+        private WheelTimeout tail;
+
+        void add(WheelTimeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        void expire(long tickDeadline) {
+            WheelTimeout timeout = head;
+            while (timeout != null) {
+                WheelTimeout next = timeout.next;
+                if (timeout.isDone()) {
+                    remove(timeout);
+                } else if (timeout.remainingRounds <= 0) {
+                    remove(timeout);
+                    if (timeout.deadline > tickDeadline) {
+                        // Extended since it was placed - re-bucket after this pass
+                        rearmed.add(timeout);
+                    } else {
+                        timeout.expire();
+                    }
+                } else {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+
+        void remove(WheelTimeout timeout) {
+            if (timeout.bucket != this) {
+                return;
+            }
+            if (timeout.prev != null) {
+                timeout.prev.next = timeout.next;
+            } else {
+                head = timeout.next;
+            }
+            if (timeout.next != null) {
+                timeout.next.prev = timeout.prev;
+            } else {
+                tail = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.example.twilio.websocket;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded executor for conversation turns (mu-law conversion, speech-to-text, AI response, playback).
+ *
+ * Turns block on network and CPU-heavy recognition, so they must never run on the endpoint
+ * timer thread: one slow Google request would delay end-of-speech detection for every call.
+ * At most {@code maxConcurrent} turns run at once and at most {@code queueCapacity} wait;
+ * anything beyond that is rejected immediately so the caller can be told to try again
+ * instead of waiting behind a backlog.
+ *
+ * On Java 21+ turns run on virtual threads (the concurrency bound still applies),
+ * otherwise on a fixed pool of platform threads.
+ */
+@Component
+public class TurnExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(TurnExecutor.class);
+
+    @Value("${conversation.turn.executor.max.concurrent:16}")
+    private int maxConcurrent;
+
+    @Value("${conversation.turn.executor.queue.capacity:100}")
+    private int queueCapacity;
+
+    @Value("${conversation.turn.executor.virtual.threads:true}")
+    private boolean useVirtualThreads;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    private ExecutorService executor;
+    private Semaphore concurrencyLimit;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicLong rejected = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        ExecutorService virtualExecutor = useVirtualThreads ? createVirtualThreadExecutor() : null;
+        if (virtualExecutor != null) {
+            // Virtual threads are unbounded - admission and concurrency are limited here instead
+            executor = virtualExecutor;
+            concurrencyLimit = new Semaphore(maxConcurrent);
+        } else {
+            executor = new ThreadPoolExecutor(maxConcurrent, maxConcurrent, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(queueCapacity), namedThreadFactory(), new ThreadPoolExecutor.AbortPolicy());
+        }
+
+        if (meterRegistry != null) {
+            Gauge.builder("conversation.turn.queue.depth", queued, AtomicInteger::get)
+                    .description("Turns waiting for a turn-processing slot")
+                    .register(meterRegistry);
+            Gauge.builder("conversation.turn.active", active, AtomicInteger::get)
+                    .description("Turns currently being processed")
+                    .register(meterRegistry);
+            FunctionCounter.builder("conversation.turn.rejected", rejected, AtomicLong::get)
+                    .description("Turns rejected because the turn executor was saturated")
+                    .register(meterRegistry);
+        }
+
+        logger.info("Turn executor started: {} threads, max {} concurrent turns, queue capacity {}",
+                virtualExecutor != null ? "virtual" : "platform", maxConcurrent, queueCapacity);
+    }
+
+    /**
+     * Submits a turn for processing. Never blocks.
+     *
+     * @param sessionId session the turn belongs to (for logging)
+     * @param turn      the turn work
+     * @return false if the turn was rejected because the executor is saturated
+     */
+    public boolean submit(String sessionId, Runnable turn) {
+        if (queued.incrementAndGet() + active.get() > maxConcurrent + queueCapacity) {
+            return reject(sessionId);
+        }
+        try {
+            executor.execute(() -> run(turn));
+            return true;
+        } catch (RejectedExecutionException e) {
+            return reject(sessionId);
+        }
+    }
+
+    private boolean reject(String sessionId) {
+        queued.decrementAndGet();
+        long total = rejected.incrementAndGet();
+        logger.warn(">>> Turn executor saturated ({} active, {} queued) - rejected turn for session {} ({} rejected so far)",
+                active.get(), queued.get(), sessionId, total);
+        return false;
+    }
+
+    private void run(Runnable turn) {
+        boolean acquired = false;
+        try {
+            if (concurrencyLimit != null) {
+                concurrencyLimit.acquire();
+                acquired = true;
+            }
+            queued.decrementAndGet();
+            active.incrementAndGet();
+            try {
+                turn.run();
+            } finally {
+                active.decrementAndGet();
+            }
+        } catch (InterruptedException e) {
+            queued.decrementAndGet();
+            Thread.currentThread().interrupt();
+        } catch (Throwable t) {
+            logger.error("Unhandled error in turn processing", t);
+        } finally {
+            if (acquired) {
+                concurrencyLimit.release();
+            }
+        }
+    }
+
+    /**
+     * Turns waiting for a slot
+     */
+    public int getQueueDepth() {
+        return queued.get();
+    }
+
+    /**
+     * Turns currently running
+     */
+    public int getActiveTurns() {
+        return active.get();
+    }
+
+    public long getRejectedTurns() {
+        return rejected.get();
+    }
+
+    /**
+     * Executors.newVirtualThreadPerTaskExecutor() exists from Java 21 - the project still targets 17
+     */
+    private ExecutorService createVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            logger.debug("Virtual threads not available on Java {} - using platform threads",
+                    System.getProperty("java.specification.version"));
+            return null;
+        }
+    }
+
+    private static ThreadFactory namedThreadFactory() {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "turn-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
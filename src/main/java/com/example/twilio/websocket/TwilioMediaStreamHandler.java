@@ -1,7 +1,19 @@
 package com.example.twilio.websocket;
 
+import com.example.twilio.audio.AudioSegment;
+import com.example.twilio.audio.AutomaticGainControl;
+import com.example.twilio.audio.G711Codec;
+import com.example.twilio.audio.SlabPool;
+import com.example.twilio.audio.SpectralNoiseSuppressor;
+import com.example.twilio.audio.SpeechConditioner;
+import com.example.twilio.dto.CallDiagnostics;
 import com.example.twilio.service.AiAgentService;
+import com.example.twilio.service.StreamingRecognitionListener;
+import com.example.twilio.service.StreamingRecognitionSession;
 import com.example.twilio.service.dto.AiAgentResult;
+import com.example.twilio.service.intent.IntentDetector;
+import com.example.twilio.service.intent.IntentMatch;
+import com.example.twilio.service.TextToSpeechService;
 import com.example.twilio.service.TwilioTwiMLInjectionService;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -13,15 +25,19 @@ import org.springframework.stereotype.Component;
 import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 
 @Component
 public class TwilioMediaStreamHandler extends TextWebSocketHandler {
@@ -29,18 +45,32 @@ public class TwilioMediaStreamHandler extends TextWebSocketHandler {
     private static final Logger logger = LoggerFactory.getLogger(TwilioMediaStreamHandler.class);
     
     private final ObjectMapper objectMapper = new ObjectMapper();
-    private final ConcurrentMap<String, WebSocketSession> sessions = new ConcurrentHashMap<>();
-    // Map to store Call SID for each session
-    private final ConcurrentMap<String, String> sessionToCallSid = new ConcurrentHashMap<>();
-    // Map to store stream URL for each session
-    private final ConcurrentMap<String, String> sessionToStreamUrl = new ConcurrentHashMap<>();
-    // Map to track last response time for each session (for debouncing)
-    private final ConcurrentMap<String, AtomicLong> lastResponseTime = new ConcurrentHashMap<>();
+    // All state of each session, by WebSocket session id - looked up once per message
+    private final ConcurrentMap<String, CallSession> callSessions = new ConcurrentHashMap<>();
+    // Same sessions by Twilio Call SID (set by the "start" event)
+    private final ConcurrentMap<String, CallSession> callSessionsByCallSid = new ConcurrentHashMap<>();
     // Minimum time between responses (in milliseconds) - 3 seconds
     private static final long MIN_RESPONSE_INTERVAL_MS = 3000;
+    // Time to wait after injecting TwiML before accepting new input (Twilio speaks asynchronously)
+    private static final long TWIML_RESPONSE_DELAY_MS = 2000;
+    // Outbound sends may queue behind a slow client; bound both time and buffered bytes
+    private static final int SEND_TIME_LIMIT_MS = 5000;
+    private static final int SEND_BUFFER_SIZE_LIMIT = 512 * 1024;
+    // Extra time to wait for a playback mark acknowledgement before giving up on it
+    private static final long MARK_TIMEOUT_GRACE_MS = 3000;
+    // Returned by sendAiResponse when listening resumes on the playback mark instead of a delay
+    private static final long RELEASED_BY_MARK = -1;
+    // Custom <Stream> parameter naming the speech model for the call (e.g. a vosk.models key)
+    private static final String SPEECH_MODEL_PARAMETER = "speechModel";
+    
+    // Per-frame pipeline stage names (audio.pipeline.stages)
+    static final String STAGE_DECODE = "decode";
+    static final String STAGE_VAD = "vad";
+    static final String STAGE_NOISE_FLOOR = "noise-floor";
+    static final String STAGE_CONDITION = "condition";
+    static final String STAGE_ENDPOINT = "endpoint";
+    static final String STAGE_STT_FEED = "stt-feed";
     
-    // Audio buffers for each session - accumulate audio before processing
-    private final ConcurrentMap<String, AudioBuffer> audioBuffers = new ConcurrentHashMap<>();
     // Silence detection timeout - wait for silence before processing (configurable)
     @Value("${conversation.silence.timeout.ms:2500}")
     private long silenceTimeoutMs;
@@ -49,116 +79,343 @@ public class TwilioMediaStreamHandler extends TextWebSocketHandler {
     @Value("${conversation.min.audio.duration.ms:500}")
     private long minAudioDurationMs;
     
+    // Maximum audio duration - an utterance this long is processed without waiting for silence
+    @Value("${conversation.max.utterance.ms:30000}")
+    private long maxUtteranceMs;
+    
+    // Audio kept from just before speech starts, so the soft onset is not clipped
+    @Value("${conversation.preroll.ms:300}")
+    private long preRollMs;
+    
+    // Longest pause kept inside an utterance (longer pauses are dropped from the audio)
+    @Value("${conversation.max.pause.ms:700}")
+    private long maxPauseMs;
+    
+    // Utterance slabs shared by all sessions (2s slabs doubling up to the maximum utterance)
+    private SlabPool audioSlabs;
+    // Frame-sized copies handed to streaming recognizers (one per 20 ms frame, more at onset)
+    private SlabPool recognitionSlabs;
+    
     // Test mode: buffer all chunks regardless of energy (for debugging)
     @Value("${audio.energy.bypass:false}")
     private boolean bypassEnergyDetection;
     
-    // Executor for periodic silence checking
-    private final ScheduledExecutorService silenceChecker = Executors.newScheduledThreadPool(2);
+    // Precision of the endpointing timers
+    @Value("${conversation.timer.tick.ms:10}")
+    private long timerTickMs;
     
-    // Track if we're currently processing/responding for each session
-    private final ConcurrentMap<String, Boolean> isProcessing = new ConcurrentHashMap<>();
+    // Timing wheel for per-session deadlines (end of speech, playback release)
+    // Each session arms one deadline instead of being polled every 500ms
+    private TimingWheel endpointTimers;
+    
+    private final AtomicLong markCounter = new AtomicLong();
+    
+    // Barge-in: let the caller interrupt AI playback (bidirectional mode only)
+    @Value("${conversation.barge.in.enabled:true}")
+    private boolean bargeInEnabled;
+    
+    // Caller must speak this long over the AI before playback is cleared
+    @Value("${conversation.barge.in.min.speech.ms:200}")
+    private long bargeInMinSpeechMs;
     
     @Autowired
     private AiAgentService aiAgentService;
     
+    // Goodbyes, yes/no and "speak to a human" recognized from partial transcripts
+    @Autowired
+    private IntentDetector intentDetector;
+    
+    // Pause after a partial transcript with an intent before the turn starts on it
+    // (instead of the silence timeout and the final decode)
+    @Value("${conversation.early.intent.hold.ms:300}")
+    private long earlyIntentHoldMs;
+    
     @Autowired
     private TwilioTwiMLInjectionService twilioTwiMLInjectionService;
     
     @Autowired
     private AudioEnergyDetector audioEnergyDetector;
     
+    // Speech/non-speech decision per frame (audio.vad.engine)
+    @Autowired
+    private VoiceActivityDetectorFactory voiceActivityDetectorFactory;
+    
+    // Noise suppression and gain control of inbound frames before they are buffered
+    @Value("${audio.conditioning.enabled:true}")
+    private boolean conditioningEnabled;
+    
+    @Value("${audio.noise.suppression.enabled:true}")
+    private boolean noiseSuppressionEnabled;
+    
+    @Value("${audio.noise.suppression.max.attenuation.db:15.0}")
+    private double noiseSuppressionMaxAttenuationDb;
+    
+    @Value("${audio.agc.enabled:true}")
+    private boolean agcEnabled;
+    
+    @Value("${audio.agc.target.dbfs:-20.0}")
+    private double agcTargetDbfs;
+    
+    @Value("${audio.agc.max.gain.db:20.0}")
+    private double agcMaxGainDb;
+    
+    @Value("${audio.agc.max.cut.db:6.0}")
+    private double agcMaxCutDb;
+    
+    // Order of the per-frame stages; stages can be dropped per deployment
+    @Value("${audio.pipeline.stages:decode,vad,noise-floor,condition,endpoint,stt-feed}")
+    private String pipelineStagesConfig;
+    
+    // Record time and allocation per stage and call (see the call diagnostics endpoint)
+    @Value("${audio.pipeline.metrics.enabled:true}")
+    private boolean pipelineMetricsEnabled;
+    
+    // Resolved from audio.pipeline.stages in init(); shared by all calls
+    private List<String> pipelineStageNames;
+    private List<AudioStage> pipelineStages;
+    
+    @Autowired
+    private TextToSpeechService textToSpeechService;
+    
+    // Runs the speech processing once a deadline fires - timers themselves never block
+    @Autowired
+    private TurnExecutor turnExecutor;
+    
     @Value("${twilio.callback.base.url:}")
     private String callbackBaseUrl;
+    
+    // Bidirectional mode: play AI responses as outbound media frames on this WebSocket
+    // instead of injecting <Say> TwiML and restarting the stream for every turn
+    @Value("${twilio.media.stream.bidirectional:false}")
+    private boolean bidirectionalStream;
 
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
         logger.info("WebSocket connection established: {}", session.getId());
-        sessions.put(session.getId(), session);
-        
-        // Initialize audio buffer for this session
-        audioBuffers.put(session.getId(), new AudioBuffer(silenceTimeoutMs));
-        isProcessing.put(session.getId(), false);
-        
-        // Start silence checker for this session
-        startSilenceChecker(session.getId());
+        // Outbound media frames are sent from worker threads, so serialize sends per session
+        WebSocketSession socket = new ConcurrentWebSocketSessionDecorator(session, SEND_TIME_LIMIT_MS, SEND_BUFFER_SIZE_LIMIT);
+        SpeechConditioner conditioner = createSpeechConditioner();
+        // Conditioned frames lag the speech decisions made on the raw ones
+        int latencySamples = conditioner != null && pipelineStageNames.contains(STAGE_CONDITION)
+                ? conditioner.getLatencySamples() : 0;
+        AudioBuffer audioBuffer = new AudioBuffer(silenceTimeoutMs, maxUtteranceMs, preRollMs, maxPauseMs,
+                latencySamples, audioSlabs);
+        NoiseFloorTracker noiseFloor = voiceActivityDetectorFactory.createNoiseFloorTracker();
+        callSessions.put(session.getId(), new CallSession(session.getId(), socket, audioBuffer, noiseFloor,
+                voiceActivityDetectorFactory.create(noiseFloor), conditioner,
+                new AudioPipeline(pipelineStageNames, pipelineStages, pipelineMetricsEnabled), endpointTimers));
     }
     
     /**
-     * Starts a periodic task to check for silence and process buffered audio
-     * Simple logic: If buffer has speech chunks AND no new speech for timeout period → process
+     * Per-call conditioning chain from the audio.conditioning / audio.noise.suppression /
+     * audio.agc settings, or null when nothing is enabled
      */
-    private void startSilenceChecker(String sessionId) {
-        silenceChecker.scheduleAtFixedRate(() -> {
-            try {
-                AudioBuffer buffer = audioBuffers.get(sessionId);
-                if (buffer == null) {
-                    return;
-                }
-                
-                // Skip if already processing
-                if (isProcessing.getOrDefault(sessionId, false)) {
+    private SpeechConditioner createSpeechConditioner() {
+        if (!conditioningEnabled || (!noiseSuppressionEnabled && !agcEnabled)) {
+            return null;
+        }
+        return new SpeechConditioner(
+                noiseSuppressionEnabled ? new SpectralNoiseSuppressor(noiseSuppressionMaxAttenuationDb) : null,
+                agcEnabled ? new AutomaticGainControl(agcTargetDbfs, agcMaxGainDb, agcMaxCutDb) : null);
+    }
+    
+    @PostConstruct
+    public void init() {
+        // 512 buckets of 10ms cover ~5s per rotation - longer delays just take extra rounds
+        endpointTimers = new TimingWheel("endpoint-timer", timerTickMs, 512);
+        audioSlabs = new SlabPool(2 * G711Codec.SAMPLE_RATE, (int) (maxUtteranceMs * G711Codec.SAMPLE_RATE / 1000), 64);
+        recognitionSlabs = new SlabPool(MediaStreamMessages.FRAME_BYTES, 16 * MediaStreamMessages.FRAME_BYTES, 1024);
+        configurePipeline();
+        logger.info("Endpoint timing wheel started (tick: {}ms, silence timeout: {}ms)", timerTickMs, silenceTimeoutMs);
+    }
+    
+    /**
+     * Resolves audio.pipeline.stages. Unknown and repeated names are ignored; decode always runs
+     * first (the other stages read its frame statistics) and endpoint is always present, since
+     * without it nothing would ever be buffered. stt-feed streams what endpoint buffered, so it
+     * has to come after it. noise-floor and condition adapt on the vad decision and run after
+     * vad; speech is always detected on the raw frame
+     */
+    private void configurePipeline() {
+        List<String> names = new ArrayList<>();
+        for (String configured : pipelineStagesConfig.split(",")) {
+            String name = configured.trim().toLowerCase(Locale.ROOT);
+            if (name.isEmpty()) {
+                continue;
+            }
+            if (stageFor(name) == null) {
+                logger.warn("Unknown audio pipeline stage '{}' in audio.pipeline.stages - ignored", name);
+            } else if (names.contains(name)) {
+                logger.warn("Audio pipeline stage '{}' listed twice in audio.pipeline.stages - ignored", name);
+            } else {
+                names.add(name);
+            }
+        }
+        if (names.indexOf(STAGE_DECODE) != 0) {
+            logger.warn("Audio pipeline stage '{}' must come first - moved to the front", STAGE_DECODE);
+            names.remove(STAGE_DECODE);
+            names.add(0, STAGE_DECODE);
+        }
+        if (!names.contains(STAGE_ENDPOINT)) {
+            logger.warn("Audio pipeline stage '{}' is required - appended", STAGE_ENDPOINT);
+            names.add(STAGE_ENDPOINT);
+        }
+        if (names.contains(STAGE_STT_FEED) && names.indexOf(STAGE_STT_FEED) < names.indexOf(STAGE_ENDPOINT)) {
+            logger.warn("Audio pipeline stage '{}' must follow '{}' - moved after it", STAGE_STT_FEED, STAGE_ENDPOINT);
+            names.remove(STAGE_STT_FEED);
+            names.add(names.indexOf(STAGE_ENDPOINT) + 1, STAGE_STT_FEED);
+        }
+        for (String afterVad : List.of(STAGE_NOISE_FLOOR, STAGE_CONDITION)) {
+            if (names.contains(STAGE_VAD) && names.contains(afterVad) && names.indexOf(afterVad) < names.indexOf(STAGE_VAD)) {
+                logger.warn("Audio pipeline stage '{}' must follow '{}' - moved after it", afterVad, STAGE_VAD);
+                names.remove(afterVad);
+                names.add(names.indexOf(STAGE_VAD) + 1, afterVad);
+            }
+        }
+        if (!names.contains(STAGE_VAD)) {
+            logger.warn("Audio pipeline has no '{}' stage - no frame will count as speech unless audio.energy.bypass is set", STAGE_VAD);
+        }
+        List<AudioStage> stages = new ArrayList<>();
+        for (String name : names) {
+            stages.add(stageFor(name));
+        }
+        pipelineStageNames = List.copyOf(names);
+        pipelineStages = List.copyOf(stages);
+        logger.info("Audio pipeline: {} (metrics {})", String.join(" -> ", names), pipelineMetricsEnabled ? "on" : "off");
+    }
+    
+    private AudioStage stageFor(String name) {
+        switch (name) {
+            case STAGE_DECODE:
+                return this::decodeFrame;
+            case STAGE_VAD:
+                return this::detectSpeech;
+            case STAGE_NOISE_FLOOR:
+                return this::trackNoiseFloor;
+            case STAGE_CONDITION:
+                return this::conditionFrame;
+            case STAGE_ENDPOINT:
+                return this::endpointFrame;
+            case STAGE_STT_FEED:
+                return this::feedRecognizer;
+            default:
+                return null;
+        }
+    }
+    
+    /**
+     * Schedules a one-shot task owned by the session, so it is cancelled if the session ends first
+     */
+    private void scheduleForSession(CallSession callSession, Runnable task, long delayMs) {
+        if (callSession.schedule(task, delayMs) == null) {
+            logger.debug("Session {} already closed - timer not scheduled", callSession.getSessionId());
+        }
+    }
+    
+    /**
+     * Re-arms the session's end-of-speech deadline (last speech + silence timeout).
+     * Called for every voiced frame
+     */
+    private void armEndpoint(CallSession callSession) {
+        callSession.armEndpointTimer(() -> onEndpoint(callSession), silenceTimeoutMs);
+    }
+    
+    /**
+     * Adds a frame without speech: pre-roll between utterances, a pause inside one
+     */
+    private void addSilence(CallSession callSession, byte[] audioData, int length) {
+        AudioBuffer buffer = callSession.getAudioBuffer();
+        if (buffer.addSilence(audioData, 0, length) && buffer.isFull()) {
+            endpointNow(callSession);
+        }
+    }
+    
+    /**
+     * Ends the utterance now because it reached the maximum length
+     */
+    private void endpointNow(CallSession callSession) {
+        logger.info(">>> Utterance reached {}ms - processing without waiting for silence - Session: {}", 
+                   maxUtteranceMs, callSession.getSessionId());
+        scheduleForSession(callSession, () -> onEndpoint(callSession), 0);
+    }
+    
+    /**
+     * Fired by the timing wheel when no speech has been captured for the silence timeout
+     * Simple logic: If buffer has speech chunks AND user spoke long enough → process
+     */
+    private void onEndpoint(CallSession callSession) {
+        onEndpoint(callSession, false);
+    }
+    
+    /**
+     * @param recognizerEndpoint The streaming recognizer heard the end of the utterance - no
+     *                           need to wait out the rest of the silence timeout
+     */
+    private void onEndpoint(CallSession callSession, boolean recognizerEndpoint) {
+        String sessionId = callSession.getSessionId();
+        try {
+            AudioBuffer buffer = callSession.getAudioBuffer();
+            if (buffer.isEmpty()) {
+                return;
+            }
+            
+            // Skip if already processing - anything buffered meanwhile is handled by the playback logic
+            if (callSession.isProcessing()) {
+                return;
+            }
+            
+            // A voiced frame may have raced with the expiry - wait for the rest of the timeout
+            // (a full buffer is processed immediately)
+            long timeSinceLastSpeech = buffer.getTimeSinceLastAudio();
+            if (!recognizerEndpoint && timeSinceLastSpeech + timerTickMs < silenceTimeoutMs && !buffer.isFull()) {
+                armEndpoint(callSession);
+                return;
+            }
+            
+            long audioDuration = buffer.getAudioDuration();
+            int chunkCount = buffer.getChunkCount();
+            long totalBytes = buffer.getTotalBytes();
+            
+            // User spoke for minimum duration (not just a short burst)
+            if (audioDuration >= minAudioDurationMs) {
+                // Claim the turn here so a second deadline cannot queue the same speech twice
+                if (!callSession.startTurn()) {
                     return;
                 }
+                logger.info(">>> ===== {} - PROCESSING USER SPEECH ===== Session: {}, {}ms since last speech, {}ms audio duration, {} chunks, {} bytes", 
+                           recognizerEndpoint ? "END OF UTTERANCE" : "SILENCE DETECTED",
+                           sessionId, timeSinceLastSpeech, audioDuration, chunkCount, totalBytes);
                 
-                // Check if buffer has speech chunks
-                if (buffer.isEmpty()) {
-                    // Log occasionally to show we're waiting for speech
-                    long timeSinceLastCheck = System.currentTimeMillis() % 5000; // Log every 5 seconds
-                    if (timeSinceLastCheck < 500) {
-                        logger.debug(">>> Waiting for user speech... Buffer is empty - Session: {}", sessionId);
-                    }
-                    return; // No speech captured yet
-                }
-                
-                // Check time since last speech was captured
-                long timeSinceLastSpeech = buffer.getTimeSinceLastAudio();
-                long audioDuration = buffer.getAudioDuration();
-                int chunkCount = buffer.getChunkCount();
-                long totalBytes = buffer.getTotalBytes();
-                
-                // Log buffer status periodically
-                if (timeSinceLastSpeech % 1000 == 0 && timeSinceLastSpeech > 0) {
-                    logger.info(">>> Buffer status: {} chunks, {} bytes, {}ms since last speech (need {}ms), audio duration: {}ms (need {}ms) - Session: {}", 
-                               chunkCount, totalBytes, timeSinceLastSpeech, silenceTimeoutMs, audioDuration, minAudioDurationMs, sessionId);
-                }
-                
-                // Check if we meet both conditions:
-                // 1. User has stopped speaking (silence timeout reached)
-                // 2. User spoke for minimum duration (not just a short burst)
-                boolean silenceReached = timeSinceLastSpeech >= silenceTimeoutMs;
-                boolean minDurationMet = audioDuration >= minAudioDurationMs;
-                
-                if (silenceReached && minDurationMet) {
-                    logger.info(">>> ===== SILENCE DETECTED - PROCESSING USER SPEECH ===== Session: {}, {}ms since last speech, {}ms audio duration, {} chunks, {} bytes", 
-                               sessionId, timeSinceLastSpeech, audioDuration, chunkCount, totalBytes);
-                    
-                    // Process the buffered speech
-                    processBufferedAudio(sessionId);
-                } else if (silenceReached && !minDurationMet) {
-                    // Silence reached but audio too short - likely noise, clear buffer
-                    logger.debug(">>> Silence detected but audio too short ({}ms < {}ms) - clearing buffer - Session: {}", 
-                                audioDuration, minAudioDurationMs, sessionId);
+                // Process the buffered speech off the timer thread
+                if (!turnExecutor.submit(sessionId, () -> processBufferedAudio(callSession, null))) {
+                    // Overloaded - drop this utterance rather than queue it behind minutes of work
                     buffer.clear();
-                } else {
-                    // Log progress every 500ms
-                    if (timeSinceLastSpeech % 500 == 0 && timeSinceLastSpeech > 0) {
-                        int progress = (int) ((timeSinceLastSpeech * 100) / silenceTimeoutMs);
-                        String status = minDurationMet ? "Duration OK" : String.format("Need %dms more", minAudioDurationMs - audioDuration);
-                        logger.info(">>> Waiting for silence... {}ms / {}ms ({}%) - {} chunks, {}ms duration ({}) - Session: {}", 
-                                   timeSinceLastSpeech, silenceTimeoutMs, progress, chunkCount, audioDuration, status, sessionId);
-                    }
+                    cancelRecognition(callSession);
+                    callSession.endTurn();
                 }
-            } catch (Exception e) {
-                logger.error("Error in silence checker for session {}", sessionId, e);
+            } else {
+                // Silence reached but audio too short - likely noise, clear buffer
+                logger.debug(">>> Silence detected but audio too short ({}ms < {}ms) - clearing buffer - Session: {}", 
+                            audioDuration, minAudioDurationMs, sessionId);
+                buffer.clear();
+                cancelRecognition(callSession);
             }
-        }, 500, 500, TimeUnit.MILLISECONDS); // Check every 500ms
+        } catch (Exception e) {
+            logger.error("Error in endpoint timer for session {}", sessionId, e);
+        }
     }
 
     @Override
     protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
         try {
             String payload = message.getPayload();
+            
+            // Fast path for the 50 media frames per second: no JsonNode tree, no per-frame byte[]
+            CallSession callSession = callSessions.get(session.getId());
+            if (callSession != null && handleMediaFrame(callSession, payload)) {
+                return;
+            }
+            
             JsonNode jsonNode = objectMapper.readTree(payload);
             
             String event = jsonNode.has("event") ? jsonNode.get("event").asText() : "";
@@ -179,10 +436,13 @@ public class TwilioMediaStreamHandler extends TextWebSocketHandler {
                     handleConnectedEvent(session, jsonNode);
                     break;
                 case "start":
-                    handleStartEvent(session, jsonNode);
+                    handleStartEvent(session, callSession, jsonNode);
                     break;
                 case "media":
-                    handleMediaEvent(session, jsonNode);
+                    handleMediaEvent(session, callSession, jsonNode);
+                    break;
+                case "mark":
+                    handleMarkEvent(callSession, jsonNode);
                     break;
                 case "stop":
                     handleStopEvent(session, jsonNode);
@@ -203,25 +463,40 @@ public class TwilioMediaStreamHandler extends TextWebSocketHandler {
         }
     }
 
-    private void handleStartEvent(WebSocketSession session, JsonNode jsonNode) {
+    private void handleStartEvent(WebSocketSession session, CallSession callSession, JsonNode jsonNode) {
         logger.info("Start event received for session: {}", session.getId());
+        if (callSession == null) {
+            logger.warn("Start event for unknown or closed session {} - ignored", session.getId());
+            return;
+        }
         if (jsonNode.has("start")) {
             JsonNode startNode = jsonNode.get("start");
             String callSid = startNode.has("callSid") ? startNode.get("callSid").asText() : null;
             String streamSid = startNode.has("streamSid") ? startNode.get("streamSid").asText() : null;
             
             if (callSid != null && !callSid.equals("unknown")) {
-                sessionToCallSid.put(session.getId(), callSid);
+                callSession.setCallSid(callSid);
+                callSessionsByCallSid.put(callSid, callSession);
                 logger.info("Stored Call SID {} for session {}", callSid, session.getId());
                 logger.info(">>> Conversation started - Call SID: {}, Session: {}", callSid, session.getId());
             }
             
             if (streamSid != null) {
+                callSession.setStreamSid(streamSid);
+                
                 // Build stream URL for this session
-                String streamUrl = buildStreamUrl();
-                sessionToStreamUrl.put(session.getId(), streamUrl);
+                callSession.setStreamUrl(buildStreamUrl());
                 logger.info("Stored Stream URL for session {}", session.getId());
             }
+            
+            // <Stream><Parameter name="speechModel" value="..."/></Stream> picks the recognition
+            // model (e.g. the caller's language) for this call
+            JsonNode speechModel = startNode.path("customParameters").path(SPEECH_MODEL_PARAMETER);
+            if (speechModel.isTextual() && !speechModel.asText().trim().isEmpty()) {
+                callSession.setSpeechModel(speechModel.asText().trim());
+                aiAgentService.prepareSpeechModel(callSession.getSpeechModel());
+                logger.info("Speech model {} requested for session {}", callSession.getSpeechModel(), session.getId());
+            }
         }
     }
     
@@ -237,7 +512,39 @@ public class TwilioMediaStreamHandler extends TextWebSocketHandler {
         return "wss://synodically-spongioblastic-guadalupe.ngrok-free.dev/twilio/media-stream";
     }
 
-    private void handleMediaEvent(WebSocketSession session, JsonNode jsonNode) {
+    /**
+     * Parses a media message straight into the session's reusable frame.
+     *
+     * @return false if the message is not a plain media event - handled by the generic path instead
+     */
+    private boolean handleMediaFrame(CallSession callSession, String payload) {
+        MediaFrame frame = callSession.getMediaFrame();
+        try {
+            if (!MediaFrameParser.parseMedia(payload, frame)) {
+                return false;
+            }
+        } catch (IllegalArgumentException e) {
+            logger.error(">>> Failed to decode base64 audio payload for session {}: {}", 
+                       callSession.getSessionId(), e.getMessage());
+            return true;
+        }
+        
+        long missing = frame.advanceSequence();
+        if (missing > 0) {
+            logger.debug(">>> {} media frames missing before sequence {} (timestamp {}ms) - Session: {}", 
+                        missing, frame.sequenceNumber, frame.timestamp, callSession.getSessionId());
+        }
+        if (frame.length > 0) {
+            processInboundAudio(callSession, frame.audio, frame.length);
+        }
+        return true;
+    }
+
+    private void handleMediaEvent(WebSocketSession session, CallSession callSession, JsonNode jsonNode) {
+        if (callSession == null) {
+            logger.error(">>> CRITICAL: No audio buffer found for session {} - audio chunk dropped!", session.getId());
+            return;
+        }
         if (jsonNode.has("media")) {
             JsonNode mediaNode = jsonNode.get("media");
             String payload = mediaNode.has("payload") ? mediaNode.get("payload").asText() : "";
@@ -246,165 +553,473 @@ public class TwilioMediaStreamHandler extends TextWebSocketHandler {
                 try {
                     // Decode base64 audio payload
                     byte[] audioData = Base64.getDecoder().decode(payload);
-                    
-                    // Check if we're currently processing (AI is responding)
-                    boolean currentlyProcessing = isProcessing.getOrDefault(session.getId(), false);
-                    
-                    // Skip processing if AI is currently responding
-                    if (currentlyProcessing) {
-                        return; // Ignore audio while AI is speaking
-                    }
-                    
-                    // Detect if this chunk has actual speech (not silence/noise)
-                    double energy = audioEnergyDetector.calculateEnergy(audioData);
-                    double nonSilencePercent = audioEnergyDetector.getNonSilencePercentage(audioData);
-                    boolean hasEnergy = audioEnergyDetector.hasAudioEnergy(audioData);
-                    
-                    // Get buffer for this session
-                    AudioBuffer buffer = audioBuffers.get(session.getId());
-                    if (buffer == null) {
-                        logger.error(">>> CRITICAL: No audio buffer found for session {} - audio chunk dropped!", session.getId());
-                        return;
-                    }
-                    
-                    // Track chunk count for diagnostic logging
-                    int currentChunkCount = buffer.getChunkCount();
-                    
-                    // Log energy details for first few chunks or when energy is detected to help diagnose
-                    if (currentChunkCount < 5 || hasEnergy || (energy > 20 && energy < audioEnergyDetector.getMinEnergyThreshold())) {
-                        logger.info(">>> Audio chunk [Session: {}] - Energy: {}, NonSilence: {}%, HasEnergy: {}, Threshold: {}, MinPercent: {}%, Bypass: {}", 
-                                   session.getId(),
-                                   String.format("%.2f", energy),
-                                   String.format("%.1f", nonSilencePercent),
-                                   hasEnergy,
-                                   String.format("%.2f", audioEnergyDetector.getMinEnergyThreshold()),
-                                   String.format("%.1f", audioEnergyDetector.getMinNonSilencePercent()),
-                                   bypassEnergyDetection);
-                    }
-                    
-                    // Buffer chunks: either has energy OR bypass mode is enabled
-                    boolean shouldBuffer = hasEnergy || bypassEnergyDetection;
-                    
-                    if (shouldBuffer) {
-                        if (bypassEnergyDetection && !hasEnergy) {
-                            // In bypass mode, still mark as no energy for timestamp tracking
-                            buffer.addChunk(audioData, false);
-                        } else if (hasEnergy) {
-                            // Additional check: If energy is suspiciously constant (around 127-128), it might be noise/feedback
-                            // Real speech has varying energy levels, not constant values
-                            // Check for constant energy around the mu-law zero point (127) or slightly above (128)
-                            boolean suspiciousConstantEnergy = (Math.abs(energy - 127.0) < 2.0 || Math.abs(energy - 128.0) < 2.0) 
-                                                                && nonSilencePercent >= 99.0;
-                            
-                            if (suspiciousConstantEnergy) {
-                                // This looks like constant noise/feedback, not real speech
-                                // Real speech has varying energy levels, not constant values around 127-128
-                                // Only log this warning occasionally to avoid spam
-                                if (currentChunkCount % 500 == 0) {
-                                    logger.warn(">>> SUSPICIOUS: Constant energy detected (Energy: {}, NonSilence: {}%) - likely noise/feedback loop, NOT buffering - Session: {}", 
-                                               String.format("%.2f", energy), String.format("%.1f", nonSilencePercent), session.getId());
-                                    logger.warn(">>> Real speech has varying energy levels. Constant energy around 127-128 suggests audio feedback or constant tone.");
-                                }
-                                return; // Don't buffer constant noise
-                            }
-                            
-                            // This is real speech - add to buffer and update timestamp
-                            buffer.addChunk(audioData, true);
-                            
-                            // Log user speech detection prominently (but less frequently to avoid spam)
-                            // Log every 100 chunks or for the first 10 chunks, or when buffer reaches significant size
-                            int chunkCount = buffer.getChunkCount();
-                            if (chunkCount % 100 == 0 || (chunkCount <= 10 && chunkCount % 5 == 0) || chunkCount == 1) {
-                                logger.info(">>> ===== USER SPEECH CAPTURED ===== Session: {}, Energy: {}, NonSilence: {}%, Chunks: {}, Total: {} bytes", 
-                                           session.getId(), String.format("%.2f", energy), 
-                                           String.format("%.1f", nonSilencePercent), 
-                                           chunkCount, buffer.getTotalBytes());
-                            }
-                        }
-                    } else {
-                        // Log when chunks are close to threshold to help diagnose why speech isn't detected
-                        if (energy > 80.0 && energy < audioEnergyDetector.getMinEnergyThreshold()) {
-                            // Close but below threshold - log occasionally
-                            if (currentChunkCount % 500 == 0) {
-                                logger.debug(">>> Audio close to threshold but rejected - Energy: {} (need >{}), NonSilence: {}% (need >{}%) - Session: {}", 
-                                           String.format("%.2f", energy),
-                                           String.format("%.2f", audioEnergyDetector.getMinEnergyThreshold()),
-                                           String.format("%.1f", nonSilencePercent),
-                                           String.format("%.1f", audioEnergyDetector.getMinNonSilencePercent()),
-                                           session.getId());
-                            }
-                        }
-                    }
-                    
-                    // Log energy analysis only occasionally for diagnostics (not every chunk)
-                    if (hasEnergy && currentChunkCount % 200 == 0) {
-                        logger.debug(">>> Audio Analysis [Session: {}] - Energy: {}, NonSilence: {}%, HasEnergy: true, Threshold: {}, MinPercent: {}%", 
-                                   session.getId(), String.format("%.2f", energy), 
-                                   String.format("%.1f", nonSilencePercent),
-                                   String.format("%.2f", audioEnergyDetector.getMinEnergyThreshold()),
-                                   String.format("%.1f", audioEnergyDetector.getMinNonSilencePercent()));
-                    } else if (!hasEnergy && currentChunkCount % 1000 == 0) {
-                        logger.debug(">>> Audio Analysis [Session: {}] - Energy: {}, NonSilence: {}%, HasEnergy: false (filtered) - Threshold: {}, MinPercent: {}%", 
-                                   session.getId(), String.format("%.2f", energy), 
-                                   String.format("%.1f", nonSilencePercent),
-                                   String.format("%.2f", audioEnergyDetector.getMinEnergyThreshold()),
-                                   String.format("%.1f", audioEnergyDetector.getMinNonSilencePercent()));
-                    }
-                    // Silence/noise chunks are completely ignored - not added to buffer
-                    
+                    processInboundAudio(callSession, audioData, audioData.length);
                 } catch (IllegalArgumentException e) {
                     logger.error(">>> Failed to decode base64 audio payload for session {}: {}", 
                                session.getId(), e.getMessage());
-                } catch (Exception e) {
-                    logger.error(">>> Error processing media event for session {}", session.getId(), e);
                 }
             }
         }
     }
     
     /**
-     * Processes buffered audio when silence is detected
-     * Simple flow: Get buffered speech → Process → Generate response → Send → Reset
+     * Runs one inbound frame through the call's audio pipeline.
+     * {@code audioData} may be a reused buffer - anything kept beyond this call is copied
+     */
+    private void processInboundAudio(CallSession callSession, byte[] audioData, int length) {
+        try {
+            // Check if we're currently processing (AI is responding)
+            boolean currentlyProcessing = callSession.isProcessing();
+            
+            // While the AI response is being generated, caller audio is ignored.
+            // While it is being played back over a bidirectional stream, keep running
+            // speech detection so the caller can barge in.
+            boolean playingBack = currentlyProcessing && bargeInEnabled && callSession.isPlayingBack();
+            if (currentlyProcessing && !playingBack) {
+                return; // Ignore audio while AI is responding
+            }
+            
+            AudioFrame frame = callSession.getAudioFrame();
+            frame.reset(audioData, length);
+            callSession.getPipeline().process(callSession, frame);
+        } catch (Exception e) {
+            logger.error(">>> Error processing media event for callSession {}", callSession.getSessionId(), e);
+        }
+    }
+    
+    /**
+     * Pipeline stage: one pass over the frame for all the metrics the other stages use
+     */
+    private void decodeFrame(CallSession callSession, AudioFrame frame) {
+        audioEnergyDetector.analyze(frame.audio, 0, frame.length, frame.stats);
+    }
+    
+    /**
+     * Pipeline stage: the session's VAD decides whether the frame is speech
+     */
+    private void detectSpeech(CallSession callSession, AudioFrame frame) {
+        frame.speech = callSession.getVoiceActivityDetector().isSpeech(frame.audio, 0, frame.length, frame.stats);
+    }
+    
+    private void trackNoiseFloor(CallSession callSession, AudioFrame frame) {
+        callSession.getNoiseFloor().update(frame.stats, frame.speech);
+    }
+    
+    /**
+     * Pipeline stage: noise suppression and gain control in place. After the decisions, so they
+     * see the raw audio; everything buffered is denoised and level-adjusted.
+     * Once an utterance has been taken or discarded the audio the suppressor still holds back
+     * is flushed, unless the caller is still speaking (an utterance cut at its maximum length
+     * goes on in the next one)
+     */
+    private void conditionFrame(CallSession callSession, AudioFrame frame) {
+        SpeechConditioner conditioner = callSession.getSpeechConditioner();
+        if (conditioner == null) {
+            return;
+        }
+        int generation = callSession.getAudioBuffer().getGeneration();
+        if (callSession.getConditionedGeneration() != generation) {
+            if (!frame.speech) {
+                conditioner.flush();
+            }
+            callSession.setConditionedGeneration(generation);
+        }
+        conditioner.process(frame.audio, 0, frame.length, frame.speech);
+    }
+    
+    /**
+     * Pipeline stage: buffering and endpointing of the frame, or barge-in detection while the
+     * AI response is playing
+     */
+    private void endpointFrame(CallSession callSession, AudioFrame frame) {
+        String sessionId = callSession.getSessionId();
+        byte[] audioData = frame.audio;
+        int length = frame.length;
+        FrameStats stats = frame.stats;
+        double energy = stats.getEnergy();
+        double nonSilencePercent = stats.getNonSilencePercent();
+        boolean hasEnergy = frame.speech;
+        
+        // Get buffer for this session
+        AudioBuffer buffer = callSession.getAudioBuffer();
+        
+        // Frames only get here during a turn while the response is playing back
+        if (callSession.isProcessing()) {
+            detectBargeIn(callSession, audioData, length, hasEnergy);
+            return;
+        }
+        
+        // Track chunk count for diagnostic logging
+        int currentChunkCount = buffer.getChunkCount();
+        
+        // Log energy details for first few chunks or when energy is detected to help diagnose
+        if (currentChunkCount < 5 || hasEnergy || (energy > 20 && energy < audioEnergyDetector.getMinEnergyThreshold())) {
+            logger.info(">>> Audio chunk [Session: {}] - Energy: {}, NonSilence: {}%, HasEnergy: {}, Threshold: {}, MinPercent: {}%, Bypass: {}", 
+                       sessionId,
+                       String.format("%.2f", energy),
+                       String.format("%.1f", nonSilencePercent),
+                       hasEnergy,
+                       String.format("%.2f", audioEnergyDetector.getMinEnergyThreshold()),
+                       String.format("%.1f", audioEnergyDetector.getMinNonSilencePercent()),
+                       bypassEnergyDetection);
+        }
+        
+        // Buffer chunks: either has energy OR bypass mode is enabled
+        boolean shouldBuffer = hasEnergy || bypassEnergyDetection;
+        
+        if (shouldBuffer) {
+            if (bypassEnergyDetection && !hasEnergy) {
+                // In bypass mode, still mark as no energy for timestamp tracking
+                if (buffer.addChunk(audioData, 0, length, false) && buffer.isFull()) {
+                    endpointNow(callSession);
+                }
+                // Make sure a deadline exists without pushing it back
+                callSession.ensureEndpointTimer(() -> onEndpoint(callSession), silenceTimeoutMs);
+            } else if (hasEnergy) {
+                // This is real speech - add to buffer and update timestamp
+                if (buffer.addChunk(audioData, 0, length, true)) {
+                    if (buffer.isFull()) {
+                        endpointNow(callSession);
+                    } else {
+                        armEndpoint(callSession);
+                    }
+                }
+                
+                // Log user speech detection prominently (but less frequently to avoid spam)
+                // Log every 100 chunks or for the first 10 chunks, or when buffer reaches significant size
+                int chunkCount = buffer.getChunkCount();
+                if (chunkCount % 100 == 0 || (chunkCount <= 10 && chunkCount % 5 == 0) || chunkCount == 1) {
+                    logger.info(">>> ===== USER SPEECH CAPTURED ===== Session: {}, Energy: {}, NonSilence: {}%, Chunks: {}, Total: {} bytes", 
+                               sessionId, String.format("%.2f", energy), 
+                               String.format("%.1f", nonSilencePercent), 
+                               chunkCount, buffer.getTotalBytes());
+                }
+            }
+        } else {
+            // Pre-roll before speech, or a short pause inside it
+            addSilence(callSession, audioData, length);
+            
+            if (stats.hasEnergy() && EnergyVoiceActivityDetector.isSuspiciousConstantEnergy(stats)) {
+                // This looks like constant noise/feedback, not real speech
+                // Real speech has varying energy levels, not constant values around 127-128
+                // Only log this warning occasionally to avoid spam
+                if (currentChunkCount % 500 == 0) {
+                    logger.warn(">>> SUSPICIOUS: Constant energy detected (Energy: {}, NonSilence: {}%) - likely noise/feedback loop, NOT buffering - Session: {}", 
+                               String.format("%.2f", energy), String.format("%.1f", nonSilencePercent), sessionId);
+                    logger.warn(">>> Real speech has varying energy levels. Constant energy around 127-128 suggests audio feedback or constant tone.");
+                }
+            }
+            
+            // Log when chunks are close to threshold to help diagnose why speech isn't detected
+            if (energy > 80.0 && energy < audioEnergyDetector.getMinEnergyThreshold()) {
+                // Close but below threshold - log occasionally
+                if (currentChunkCount % 500 == 0) {
+                    logger.debug(">>> Audio close to threshold but rejected - Energy: {} (need >{}), NonSilence: {}% (need >{}%) - Session: {}", 
+                               String.format("%.2f", energy),
+                               String.format("%.2f", audioEnergyDetector.getMinEnergyThreshold()),
+                               String.format("%.1f", nonSilencePercent),
+                               String.format("%.1f", audioEnergyDetector.getMinNonSilencePercent()),
+                               sessionId);
+                }
+            }
+        }
+        
+        // Log energy analysis only occasionally for diagnostics (not every chunk)
+        if (hasEnergy && currentChunkCount % 200 == 0) {
+            logger.debug(">>> Audio Analysis [Session: {}] - Energy: {}, NonSilence: {}%, HasEnergy: true, Threshold: {}, MinPercent: {}%", 
+                       sessionId, String.format("%.2f", energy), 
+                       String.format("%.1f", nonSilencePercent),
+                       String.format("%.2f", audioEnergyDetector.getMinEnergyThreshold()),
+                       String.format("%.1f", audioEnergyDetector.getMinNonSilencePercent()));
+        } else if (!hasEnergy && currentChunkCount % 1000 == 0) {
+            logger.debug(">>> Audio Analysis [Session: {}] - Energy: {}, NonSilence: {}%, HasEnergy: false (filtered) - Threshold: {}, MinPercent: {}%", 
+                       sessionId, String.format("%.2f", energy), 
+                       String.format("%.1f", nonSilencePercent),
+                       String.format("%.2f", audioEnergyDetector.getMinEnergyThreshold()),
+                       String.format("%.1f", audioEnergyDetector.getMinNonSilencePercent()));
+        }
+        // Silence/noise chunks are completely ignored - not added to buffer
+    }
+    
+    /**
+     * Pipeline stage: streams the utterance to the speech-to-text engine while the caller is
+     * still speaking, so the transcript is ready at endpoint time. Opened on the first frame of
+     * an utterance (pre-roll included) and cancelled if the utterance is discarded.
+     * Nothing is streamed during a turn; an interruption is streamed once barge-in hands the
+     * turn back.
      */
-    private void processBufferedAudio(String sessionId) {
-        AudioBuffer buffer = audioBuffers.get(sessionId);
-        if (buffer == null || buffer.isEmpty()) {
-            logger.warn(">>> Cannot process: Buffer is NULL or EMPTY for session {}", sessionId);
+    private void feedRecognizer(CallSession callSession, AudioFrame frame) {
+        if (callSession.isProcessing()) {
+            return;
+        }
+        AudioBuffer buffer = callSession.getAudioBuffer();
+        int generation = buffer.getGeneration();
+        if (callSession.getRecognitionGeneration() != generation) {
+            // The last utterance was taken or discarded - drop its recognition unless a turn took it
+            cancelRecognition(callSession);
+            callSession.resetRecognition(generation);
+        }
+        if (buffer.isEmpty()) {
+            return;
+        }
+        StreamingRecognitionSession recognition = callSession.getRecognition();
+        if (recognition == null) {
+            if (callSession.isRecognitionUnavailable()) {
+                return;
+            }
+            recognition = aiAgentService.openStreamingRecognition(callSession.getSessionId(), callSession.getSpeechModel(),
+                                                                  callSession.getExpectedGrammar(),
+                                                                  recognitionListener(callSession));
+            if (recognition == null) {
+                // Not again for this utterance - the turn falls back to batch transcription
+                callSession.setRecognitionUnavailable(true);
+                return;
+            }
+            callSession.setRecognition(recognition);
+        }
+        callSession.setRecognitionBytes(buffer.streamTo(recognition, callSession.getRecognitionBytes(), recognitionSlabs));
+    }
+    
+    private StreamingRecognitionListener recognitionListener(CallSession callSession) {
+        String sessionId = callSession.getSessionId();
+        return new StreamingRecognitionListener() {
+            @Override
+            public void onPartialTranscript(String transcript) {
+                logger.debug(">>> Partial transcript [Session: {}]: {}", sessionId, transcript);
+                IntentMatch match = intentDetector.detect(transcript);
+                // A partial without an intent withdraws the previous one ("yes" -> "yes but")
+                callSession.setIntentCandidate(match);
+                if (match != null) {
+                    scheduleForSession(callSession, () -> onIntentEndpoint(callSession, match), earlyIntentHoldMs);
+                }
+            }
+            
+            @Override
+            public void onEndOfUtterance() {
+                logger.info(">>> Recognizer detected end of utterance - Session: {}", sessionId);
+                scheduleForSession(callSession, () -> onEndpoint(callSession, true), 0);
+            }
+            
+            @Override
+            public void onError(Throwable error) {
+                logger.warn(">>> Streaming recognition failed for session {} - the turn falls back to batch transcription: {}", 
+                           sessionId, error.getMessage());
+            }
+        };
+    }
+    
+    private void cancelRecognition(CallSession callSession) {
+        StreamingRecognitionSession recognition = callSession.takeRecognition();
+        if (recognition != null) {
+            recognition.cancel();
+        }
+        callSession.clearIntentCandidate();
+    }
+    
+    /**
+     * Fired {@code conversation.early.intent.hold.ms} after a partial transcript expressed an
+     * intent. If that is still the latest hypothesis and the caller has paused since, the turn
+     * starts on it right away: no silence timeout, no final decode.
+     */
+    private void onIntentEndpoint(CallSession callSession, IntentMatch match) {
+        String sessionId = callSession.getSessionId();
+        try {
+            AudioBuffer buffer = callSession.getAudioBuffer();
+            if (callSession.getIntentCandidate() != match || callSession.isProcessing() || buffer.isEmpty()) {
+                return;
+            }
+            // Still speaking - the next partial either confirms the intent or withdraws it
+            long timeSinceLastSpeech = buffer.getTimeSinceLastAudio();
+            if (timeSinceLastSpeech + timerTickMs < earlyIntentHoldMs) {
+                scheduleForSession(callSession, () -> onIntentEndpoint(callSession, match), earlyIntentHoldMs - timeSinceLastSpeech);
+                return;
+            }
+            if (!callSession.takeIntentCandidate(match)) {
+                return;
+            }
+            if (!callSession.startTurn()) {
+                return;
+            }
+            logger.info(">>> ===== EARLY INTENT {} - PROCESSING USER SPEECH ===== Session: {}, {}ms since last speech, {}ms audio duration", 
+                       match.getIntent(), sessionId, timeSinceLastSpeech, buffer.getAudioDuration());
+            
+            if (!turnExecutor.submit(sessionId, () -> processBufferedAudio(callSession, match))) {
+                buffer.clear();
+                cancelRecognition(callSession);
+                callSession.endTurn();
+            }
+        } catch (Exception e) {
+            logger.error("Error in early intent timer for session {}", sessionId, e);
+        }
+    }
+    
+    /**
+     * Barge-in detection while the AI response is playing.
+     * Voiced frames are buffered so the start of the interruption is not lost; once the caller
+     * has spoken for the configured time, outbound audio is cleared and the turn is handed
+     * back to the caller. A single unvoiced frame resets the run and discards the blip.
+     */
+    private void detectBargeIn(CallSession callSession, byte[] audioData, int length, boolean voiced) {
+        AudioBuffer buffer = callSession.getAudioBuffer();
+        if (!voiced) {
+            if (callSession.resetBargeInFrames() > 0) {
+                buffer.clear();
+            }
+            // Keep the pre-roll so an interruption keeps its onset too
+            buffer.addSilence(audioData, 0, length);
             return;
         }
         
-        // Mark as processing to prevent new processing
-        if (isProcessing.put(sessionId, true)) {
-            logger.warn(">>> Already processing for session {} - skipping", sessionId);
+        buffer.addChunk(audioData, 0, length, true);
+        armEndpoint(callSession);
+        long minFrames = Math.max(1, bargeInMinSpeechMs / 20);
+        if (callSession.incrementBargeInFrames() < minFrames) {
+            return;
+        }
+        
+        String pendingMark = callSession.stopPlayback();
+        if (pendingMark == null) {
+            return; // Playback finished in the meantime
+        }
+        callSession.resetBargeInFrames();
+        
+        String sessionId = callSession.getSessionId();
+        String streamSid = callSession.getStreamSid();
+        if (streamSid != null) {
+            try {
+                callSession.getSocket().sendMessage(new TextMessage(MediaStreamMessages.clear(streamSid)));
+            } catch (Exception e) {
+                logger.error(">>> Failed to send clear event for session {}", sessionId, e);
+            }
+        }
+        logger.info(">>> ===== BARGE-IN ===== Caller interrupted AI playback ({}), listening - Session: {}", pendingMark, sessionId);
+        // The debounce guards against answering the same speech twice; an interruption is new
+        // speech, so its answer must not be dropped for following the last response too soon
+        callSession.setLastResponseTime(0);
+        callSession.endTurn();
+    }
+    
+    /**
+     * Twilio echoes a mark once all audio sent before it has been played (or cleared).
+     * The mark sent after a response therefore tells us exactly when the AI stopped speaking.
+     */
+    private void handleMarkEvent(CallSession callSession, JsonNode jsonNode) {
+        String name = jsonNode.has("mark") && jsonNode.get("mark").has("name")
+                ? jsonNode.get("mark").get("name").asText()
+                : null;
+        if (callSession != null && name != null && callSession.finishPlayback(name)) {
+            logger.info(">>> AI playback finished ({}) - Session: {}", name, callSession.getSessionId());
+            finishPlayback(callSession);
+        }
+    }
+    
+    /**
+     * Returns the session to listening once playback ended without a barge-in.
+     */
+    private void finishPlayback(CallSession callSession) {
+        callSession.resetBargeInFrames();
+        // Anything buffered during playback was shorter than a barge-in
+        callSession.getAudioBuffer().clear();
+        callSession.cancelEndpointTimer();
+        if (callSession.endTurn()) {
+            logger.info(">>> Ready for next user speech - Session: {}", callSession.getSessionId());
+        }
+    }
+    
+    /**
+     * Processes buffered audio when silence is detected
+     * Simple flow: Get buffered speech → Process → Generate response → Send → Reset
+     * Runs on the turn executor; the caller has already set isProcessing for the session
+     *
+     * @param earlyIntent Intent the turn was started on before endpointing, or null
+     */
+    private void processBufferedAudio(CallSession callSession, IntentMatch earlyIntent) {
+        String sessionId = callSession.getSessionId();
+        AudioBuffer buffer = callSession.getAudioBuffer();
+        if (buffer.isEmpty()) {
+            logger.warn(">>> Cannot process: Buffer is EMPTY for session {}", sessionId);
+            cancelRecognition(callSession);
+            callSession.endTurn();
             return;
         }
         
         logger.info(">>> Processing user speech for session {}", sessionId);
         
         try {
-            // Get all buffered speech (this clears the buffer)
-            byte[] bufferedAudio = buffer.getBufferedAudio();
+            // Take all buffered speech without copying (this clears the buffer)
+            AudioSegment utterance = buffer.takeSegment();
             
-            if (bufferedAudio == null || bufferedAudio.length == 0) {
+            if (utterance == null) {
                 logger.warn(">>> No audio data to process for session {}", sessionId);
-                isProcessing.put(sessionId, false);
+                cancelRecognition(callSession);
+                callSession.endTurn();
                 return;
             }
             
-            logger.info(">>> Processing {} bytes of user speech for session {}", bufferedAudio.length, sessionId);
+            logger.info(">>> Processing {} bytes ({}ms) of user speech for session {}", 
+                       utterance.length(), utterance.durationMs(), sessionId);
+            
+            String callSid = callSession.getCallSid();
+            AudioPipeline pipeline = callSession.getPipeline();
+            long turnBytes = pipeline.isTimed() ? AudioPipeline.allocatedBytes() : 0;
+            long turnStart = System.nanoTime();
+            AiAgentResult aiResult;
+            try {
+                // The streaming recognizer has usually finished by now; batch transcription is
+                // the fallback when it is off, failed or heard nothing. A turn started on an
+                // early intent skips the final decode - the partial transcript already said it all
+                StreamingRecognitionSession recognition = callSession.takeRecognition();
+                String transcript = null;
+                if (recognition != null) {
+                    if (earlyIntent != null) {
+                        recognition.cancel();
+                    } else {
+                        transcript = recognition.finish();
+                    }
+                }
+                callSession.clearIntentCandidate();
+                if (earlyIntent != null) {
+                    aiResult = aiAgentService.processIntent(earlyIntent, sessionId, callSid);
+                } else if (transcript != null && !transcript.trim().isEmpty()) {
+                    logger.info(">>> Streaming transcript ready after {}ms wait - Session: {}", 
+                               (System.nanoTime() - turnStart) / 1_000_000, sessionId);
+                    aiResult = aiAgentService.processTranscript(transcript, sessionId, callSid);
+                } else {
+                    // A streaming recognizer that heard nothing in the expected grammar leaves the
+                    // batch pass to the full vocabulary
+                    aiResult = aiAgentService.processAudio(utterance.array(), utterance.offset(), utterance.length(), sessionId, callSid,
+                                                           callSession.getSpeechModel(),
+                                                           recognition == null ? callSession.getExpectedGrammar() : null);
+                }
+            } finally {
+                utterance.release();
+                if (pipeline.isTimed()) {
+                    pipeline.getTurnMetrics().record(System.nanoTime() - turnStart, AudioPipeline.allocatedBytes() - turnBytes);
+                }
+            }
             
-            String callSid = sessionToCallSid.get(sessionId);
-            AiAgentResult aiResult = aiAgentService.processAudio(bufferedAudio, sessionId, callSid);
+            if (callSession.isClosed()) {
+                // The call ended during the turn, after cleanupSession already forgot it
+                aiAgentService.endConversation(sessionId);
+            }
             
             if (aiResult == null) {
                 logger.warn(">>> AI agent returned null result for session {}", sessionId);
-                isProcessing.put(sessionId, false);
+                callSession.endTurn();
                 return;
             }
             
+            // The next utterance answers this response
+            callSession.setExpectedGrammar(aiResult.getExpectedGrammar());
+            
             if (aiResult.isEndCall()) {
                 logger.info(">>> User requested to end the call. Session: {}", sessionId);
-                endCall(sessionId, aiResult.getAiResponse());
+                endCall(callSession, aiResult.getAiResponse());
+                return;
+            }
+            
+            if (aiResult.getTransferNumber() != null) {
+                transferCall(callSession, aiResult.getAiResponse(), aiResult.getTransferNumber());
                 return;
             }
             
@@ -413,60 +1028,84 @@ public class TwilioMediaStreamHandler extends TextWebSocketHandler {
             // Send AI response
             if (response != null && !response.isEmpty()) {
                 logger.info(">>> Sending AI response for session {}", sessionId);
-                sendAiResponse(sessionId, response);
+                long speakingTimeMs = sendAiResponse(callSession, response);
                 
-                // Reset processing flag after delay to allow AI to speak
-                // Increased delay to ensure AI has time to finish speaking before accepting new input
-                silenceChecker.schedule(() -> {
-                    isProcessing.put(sessionId, false);
+                // Bidirectional playback is released by its mark acknowledgement (or a barge-in)
+                if (speakingTimeMs == RELEASED_BY_MARK) {
+                    return;
+                }
+                
+                // Reset processing flag once the AI has finished speaking
+                scheduleForSession(callSession, () -> {
+                    callSession.endTurn();
                     logger.info(">>> Ready for next user speech - Session: {}", sessionId);
-                }, 2, TimeUnit.SECONDS);
+                }, speakingTimeMs);
             } else {
                 logger.warn(">>> No AI response generated for session {}", sessionId);
-                isProcessing.put(sessionId, false);
+                callSession.endTurn();
             }
         } catch (Exception e) {
             logger.error(">>> Error processing audio for session {}", sessionId, e);
-            isProcessing.put(sessionId, false);
+            callSession.endTurn();
         }
     }
     
     /**
-     * Sends AI response to the caller by injecting TwiML into the active call
+     * Sends AI response to the caller, either as outbound media frames on the
+     * bidirectional stream or by injecting TwiML into the active call
      * Includes debouncing to prevent too many rapid responses
+     *
+     * @return milliseconds to wait before accepting new caller input, or RELEASED_BY_MARK
+     *         when the response is playing on the stream and its mark will resume listening
      */
-    public void sendAiResponse(String sessionId, String textResponse) {
-        WebSocketSession session = sessions.get(sessionId);
-        if (session == null) {
+    public long sendAiResponse(String sessionId, String textResponse) {
+        CallSession callSession = callSessions.get(sessionId);
+        if (callSession == null) {
             logger.warn("Session not found for session ID: {}", sessionId);
-            return;
+            return 0;
         }
-        
-        String callSid = sessionToCallSid.get(sessionId);
-        String streamUrl = sessionToStreamUrl.get(sessionId);
+        return sendAiResponse(callSession, textResponse);
+    }
+    
+    private long sendAiResponse(CallSession callSession, String textResponse) {
+        String sessionId = callSession.getSessionId();
+        String callSid = callSession.getCallSid();
+        String streamUrl = callSession.getStreamUrl();
         
         if (callSid == null || callSid.isEmpty()) {
             logger.warn("Cannot send AI response: Call SID not found for session {}", sessionId);
-            return;
+            return 0;
         }
         
         // Debouncing: Check if enough time has passed since last response
-        AtomicLong lastTime = lastResponseTime.computeIfAbsent(sessionId, k -> new AtomicLong(0));
         long currentTime = System.currentTimeMillis();
-        long timeSinceLastResponse = currentTime - lastTime.get();
+        long timeSinceLastResponse = currentTime - callSession.getLastResponseTime();
         
         if (timeSinceLastResponse < MIN_RESPONSE_INTERVAL_MS) {
             logger.debug("Skipping response - too soon since last response ({} ms ago)", timeSinceLastResponse);
-            return;
+            return 0;
         }
         
         // Update last response time
-        lastTime.set(currentTime);
+        callSession.setLastResponseTime(currentTime);
         
         String timestamp = java.time.LocalDateTime.now().format(
             java.time.format.DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
         logger.info("[{}] Sending AI response to call {}: {}", timestamp, callSid, textResponse);
         
+        if (bidirectionalStream) {
+            if (streamAudioResponse(callSession, textResponse) >= 0) {
+                return RELEASED_BY_MARK;
+            }
+            // Could not play over the socket - let Twilio speak it and reconnect the stream
+            logger.warn(">>> Falling back to TwiML injection for call {}", callSid);
+            if (twilioTwiMLInjectionService.injectSayAndConnectStream(callSid, textResponse, streamUrl != null ? streamUrl : buildStreamUrl())) {
+                return TWIML_RESPONSE_DELAY_MS;
+            }
+            logger.error(">>> FAILED to inject TwiML response into call {}", callSid);
+            return 0;
+        }
+        
         // Always inject Say and continue streaming to maintain bidirectional conversation
         boolean success;
         if (streamUrl != null && !streamUrl.isEmpty()) {
@@ -481,9 +1120,62 @@ public class TwilioMediaStreamHandler extends TextWebSocketHandler {
         
         if (!success) {
             logger.error(">>> FAILED to inject TwiML response into call {}", callSid);
-        } else {
-            logger.info(">>> Successfully sent AI response. Stream will continue after speaking.");
-            logger.info(">>> Waiting for user to speak again...");
+            return 0;
+        }
+        logger.info(">>> Successfully sent AI response. Stream will continue after speaking.");
+        logger.info(">>> Waiting for user to speak again...");
+        return TWIML_RESPONSE_DELAY_MS;
+    }
+    
+    /**
+     * Synthesizes the response and writes it back over the bidirectional stream
+     * as 20 ms outbound media frames. Twilio queues the frames and plays them in order.
+     *
+     * @return playback duration in milliseconds, or -1 if the audio could not be sent
+     */
+    private long streamAudioResponse(CallSession callSession, String textResponse) {
+        String sessionId = callSession.getSessionId();
+        String streamSid = callSession.getStreamSid();
+        if (streamSid == null) {
+            logger.warn(">>> Cannot stream AI response: Stream SID not found for session {}", sessionId);
+            return -1;
+        }
+        WebSocketSession session = callSession.getSocket();
+        
+        byte[] muLawAudio = textToSpeechService.synthesizeMuLaw(textResponse);
+        if (muLawAudio == null || muLawAudio.length == 0) {
+            return -1;
+        }
+        
+        try {
+            int frames = 0;
+            for (int offset = 0; offset < muLawAudio.length; offset += MediaStreamMessages.FRAME_BYTES) {
+                int length = Math.min(MediaStreamMessages.FRAME_BYTES, muLawAudio.length - offset);
+                session.sendMessage(new TextMessage(MediaStreamMessages.media(streamSid, muLawAudio, offset, length)));
+                frames++;
+            }
+            // 8000 samples/second, one byte per sample
+            long playbackMs = muLawAudio.length / 8;
+            
+            // Mark the end of this response so we know when Twilio has finished playing it
+            String markName = "response-" + markCounter.incrementAndGet();
+            callSession.startPlayback(markName);
+            session.sendMessage(new TextMessage(MediaStreamMessages.mark(streamSid, markName)));
+            
+            // Safety net in case the mark acknowledgement never arrives
+            scheduleForSession(callSession, () -> {
+                if (callSession.finishPlayback(markName)) {
+                    logger.warn(">>> No mark acknowledgement for {} - resuming listening - Session: {}", markName, sessionId);
+                    finishPlayback(callSession);
+                }
+            }, playbackMs + MARK_TIMEOUT_GRACE_MS);
+            
+            logger.info(">>> Streamed {} media frames ({} ms of audio) to session {}", frames, playbackMs, sessionId);
+            return playbackMs;
+        } catch (Exception e) {
+            logger.error(">>> Failed to stream AI response audio to session {}", sessionId, e);
+            callSession.stopPlayback();
+            return -1;
         }
     }
 
@@ -494,21 +1186,68 @@ public class TwilioMediaStreamHandler extends TextWebSocketHandler {
     
     /**
      * Cleans up resources for a session
+     * Called on stop, hangup, close and transport error - the first call cancels the session's timers
      */
     private void cleanupSession(String sessionId) {
-        sessions.remove(sessionId);
-        sessionToCallSid.remove(sessionId);
-        sessionToStreamUrl.remove(sessionId);
-        lastResponseTime.remove(sessionId);
-        audioBuffers.remove(sessionId);
-        isProcessing.remove(sessionId);
+        CallSession callSession = callSessions.remove(sessionId);
+        if (callSession == null) {
+            return;
+        }
+        String callSid = callSession.getCallSid();
+        if (callSid != null) {
+            callSessionsByCallSid.remove(callSid, callSession);
+        }
+        int cancelled = callSession.close();
+        cancelRecognition(callSession);
+        callSession.getAudioBuffer().release();
+        aiAgentService.endConversation(sessionId);
+        logger.info("Session {} closed - cancelled {} timers, {} timers pending on the wheel", 
+                   sessionId, cancelled, endpointTimers.pendingTimeouts());
+        logPipelineMetrics(callSession);
+    }
+    
+    /**
+     * One summary line per call: mean time and allocation per frame of each stage, per turn
+     */
+    private void logPipelineMetrics(CallSession callSession) {
+        AudioPipeline pipeline = callSession.getPipeline();
+        if (!pipeline.isTimed()) {
+            return;
+        }
+        StringBuilder summary = new StringBuilder();
+        for (StageMetrics stage : pipeline.getStageMetrics()) {
+            appendStageMetrics(summary, stage, "frame");
+        }
+        appendStageMetrics(summary, pipeline.getTurnMetrics(), "turn");
+        logger.info("Audio pipeline for session {}:{}", callSession.getSessionId(), summary);
+    }
+    
+    private static void appendStageMetrics(StringBuilder summary, StageMetrics stage, String unit) {
+        long count = stage.getCount();
+        summary.append(' ').append(stage.getName()).append('=')
+               .append(String.format(Locale.ROOT, "%.1fus", stage.getMeanNanos() / 1000.0))
+               .append('/').append(count > 0 ? stage.getAllocatedBytes() / count : 0).append("B per ").append(unit)
+               .append(" (").append(count).append(')');
+    }
+    
+    /**
+     * Releases the session of a call that Twilio reports as finished, in case its
+     * WebSocket was never closed cleanly
+     */
+    public void closeCallSession(String callSid) {
+        CallSession callSession = callSid != null ? callSessionsByCallSid.get(callSid) : null;
+        if (callSession != null) {
+            logger.info("Call {} ended - releasing session {}", callSid, callSession.getSessionId());
+            cleanupSession(callSession.getSessionId());
+        }
     }
 
-    private void endCall(String sessionId, String finalMessage) {
-        String callSid = sessionToCallSid.get(sessionId);
+    private void endCall(CallSession callSession, String finalMessage) {
+        String sessionId = callSession.getSessionId();
+        String callSid = callSession.getCallSid();
         if (callSid == null || callSid.isEmpty()) {
             logger.warn(">>> Cannot end call - Call SID missing for session {}", sessionId);
-            isProcessing.put(sessionId, false);
+            callSession.endTurn();
             return;
         }
         
@@ -529,6 +1268,30 @@ public class TwilioMediaStreamHandler extends TextWebSocketHandler {
     }
 
 
+    /**
+     * Hands the call over to another number (e.g. a human agent); this stream ends with it
+     */
+    private void transferCall(CallSession callSession, String message, String number) {
+        String sessionId = callSession.getSessionId();
+        String callSid = callSession.getCallSid();
+        if (callSid == null || callSid.isEmpty()) {
+            logger.warn(">>> Cannot transfer call - Call SID missing for session {}", sessionId);
+            callSession.endTurn();
+            return;
+        }
+        
+        logger.info(">>> Transferring call {} for session {} to {}", callSid, sessionId, number);
+        
+        if (twilioTwiMLInjectionService.injectSayAndDial(callSid, message, number)) {
+            logger.info(">>> Transfer TwiML injected successfully for call {}", callSid);
+            cleanupSession(sessionId);
+        } else {
+            // The caller is still connected to this stream - keep the conversation going
+            logger.warn(">>> Failed to inject transfer TwiML for call {}", callSid);
+            callSession.endTurn();
+        }
+    }
+
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
         logger.info("WebSocket connection closed: {} with status: {}", session.getId(), status);
@@ -539,6 +1302,71 @@ public class TwilioMediaStreamHandler extends TextWebSocketHandler {
         logger.error("WebSocket transport error for session: {}", session.getId(), exception);
         cleanupSession(session.getId());
     }
+    
+    /**
+     * Number of timers currently pending on the timing wheel (for diagnostics)
+     */
+    public long getScheduledTimerCount() {
+        return endpointTimers.pendingTimeouts();
+    }
+    
+    /**
+     * Live audio state of a call (noise floor, speech threshold, frame counts)
+     *
+     * @return null if the call has no active media stream
+     */
+    public CallDiagnostics getCallDiagnostics(String callSid) {
+        CallSession callSession = callSid != null ? callSessionsByCallSid.get(callSid) : null;
+        if (callSession == null) {
+            return null;
+        }
+        NoiseFloorTracker noiseFloor = callSession.getNoiseFloor();
+        CallDiagnostics diagnostics = new CallDiagnostics();
+        diagnostics.setCallSid(callSid);
+        diagnostics.setSessionId(callSession.getSessionId());
+        diagnostics.setVadEngine(voiceActivityDetectorFactory.getEngine());
+        diagnostics.setNoiseFloorRms(noiseFloor.getNoiseFloorRms());
+        diagnostics.setSpeechThresholdRms(noiseFloor.getThresholdRms());
+        diagnostics.setLastFrameRms(noiseFloor.getLastFrameRms());
+        diagnostics.setSpeechFrames(noiseFloor.getSpeechFrames());
+        diagnostics.setNoiseFrames(noiseFloor.getNoiseFrames());
+        diagnostics.setBufferedAudioMs(callSession.getAudioBuffer().getSampleCount() * 1000 / G711Codec.SAMPLE_RATE);
+        diagnostics.setProcessing(callSession.isProcessing());
+        AudioPipeline pipeline = callSession.getPipeline();
+        if (pipeline.isTimed()) {
+            List<CallDiagnostics.StageTiming> stages = new ArrayList<>();
+            for (StageMetrics stage : pipeline.getStageMetrics()) {
+                stages.add(toStageTiming(stage));
+            }
+            stages.add(toStageTiming(pipeline.getTurnMetrics()));
+            diagnostics.setPipeline(stages);
+        }
+        return diagnostics;
+    }
+    
+    private static CallDiagnostics.StageTiming toStageTiming(StageMetrics stage) {
+        CallDiagnostics.StageTiming timing = new CallDiagnostics.StageTiming();
+        timing.setStage(stage.getName());
+        timing.setCount(stage.getCount());
+        timing.setTotalMicros(stage.getTotalNanos() / 1000);
+        timing.setMeanMicros(stage.getMeanNanos() / 1000.0);
+        timing.setMaxMicros(stage.getMaxNanos() / 1000);
+        timing.setAllocatedBytes(stage.getAllocatedBytes());
+        return timing;
+    }
+    
+    /**
+     * Number of finished utterances waiting for a turn-processing slot (for diagnostics)
+     */
+    public int getPendingTurnCount() {
+        return turnExecutor.getQueueDepth();
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        callSessions.keySet().forEach(this::cleanupSession);
+        endpointTimers.stop();
+    }
 }
 
 
@@ -0,0 +1,25 @@
+package com.example.twilio.websocket;
+
+/**
+ * Decides, frame by frame, whether the caller is speaking.
+ *
+ * The handler first runs {@link AudioEnergyDetector#analyze(byte[], int, int, FrameStats)} on
+ * every inbound frame and then asks the session's detector for the decision, so an engine can
+ * use those statistics, its own analysis of the samples, or both. Engines that keep state
+ * (noise estimates, hangover) get one instance per call from {@link VoiceActivityDetectorFactory};
+ * stateless engines may share a single instance.
+ *
+ * Called on the WebSocket thread for every 10/20 ms frame - implementations must not block
+ * and should not allocate.
+ */
+public interface VoiceActivityDetector {
+
+    /**
+     * @param muLawAudio Frame buffer (mu-law, 8 kHz) - not retained
+     * @param offset     Start of the frame
+     * @param length     Frame length in bytes (one byte per sample)
+     * @param stats      Statistics of this frame from the energy detector
+     * @return true if the frame should be treated as speech
+     */
+    boolean isSpeech(byte[] muLawAudio, int offset, int length, FrameStats stats);
+}
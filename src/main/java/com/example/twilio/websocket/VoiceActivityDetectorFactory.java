@@ -0,0 +1,87 @@
+package com.example.twilio.websocket;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Creates the speech detector for each call, as selected by {@code audio.vad.engine}:
+ * <ul>
+ *   <li>{@code energy} - the {@link AudioEnergyDetector} thresholds ({@link EnergyVoiceActivityDetector}),
+ *       or the call's adaptive threshold when {@code audio.noise.floor.adaptive} is set</li>
+ *   <li>{@code statistical} - the multi-band likelihood detector ({@link StatisticalVoiceActivityDetector})</li>
+ * </ul>
+ * and the call's {@link NoiseFloorTracker}.
+ */
+@Component
+public class VoiceActivityDetectorFactory {
+
+    private static final Logger logger = LoggerFactory.getLogger(VoiceActivityDetectorFactory.class);
+
+    public static final String ENGINE_ENERGY = "energy";
+    public static final String ENGINE_STATISTICAL = "statistical";
+
+    @Value("${audio.vad.engine:energy}")
+    private String engine;
+
+    // Statistical engine: 0 (keeps the most speech) to 3 (rejects the most noise)
+    @Value("${audio.vad.aggressiveness:1}")
+    private int aggressiveness;
+
+    // Statistical engine: speech is held this long after the last speech frame
+    @Value("${audio.vad.hangover.ms:100}")
+    private long hangoverMs;
+
+    // Energy engine: use the per-call noise floor instead of the fixed audio.energy.* thresholds
+    @Value("${audio.noise.floor.adaptive:true}")
+    private boolean adaptiveThreshold;
+
+    // Margin between the noise floor and the speech threshold
+    @Value("${audio.noise.floor.snr.db:12.0}")
+    private double snrDb;
+
+    // Floor assumed at the start of a call, and the range of the speech threshold (linear RMS)
+    @Value("${audio.noise.floor.initial:30.0}")
+    private double initialFloorRms;
+
+    @Value("${audio.noise.floor.min.threshold:60.0}")
+    private double minThresholdRms;
+
+    @Value("${audio.noise.floor.max.threshold:2000.0}")
+    private double maxThresholdRms;
+
+    @PostConstruct
+    public void init() {
+        engine = engine == null ? ENGINE_ENERGY : engine.trim().toLowerCase();
+        if (!ENGINE_ENERGY.equals(engine) && !ENGINE_STATISTICAL.equals(engine)) {
+            logger.warn("Unknown audio.vad.engine '{}' - using '{}'", engine, ENGINE_ENERGY);
+            engine = ENGINE_ENERGY;
+        }
+        logger.info("Voice activity detection engine: {} (adaptive threshold: {})", engine, adaptiveThreshold);
+    }
+
+    /**
+     * @return the noise floor tracker for a new call
+     */
+    public NoiseFloorTracker createNoiseFloorTracker() {
+        return new NoiseFloorTracker(initialFloorRms, snrDb, minThresholdRms, maxThresholdRms);
+    }
+
+    /**
+     * @param noiseFloor The call's noise floor tracker
+     * @return the detector for a new call
+     */
+    public VoiceActivityDetector create(NoiseFloorTracker noiseFloor) {
+        if (ENGINE_STATISTICAL.equals(engine)) {
+            return new StatisticalVoiceActivityDetector(aggressiveness, hangoverMs);
+        }
+        return adaptiveThreshold ? new EnergyVoiceActivityDetector(noiseFloor) : EnergyVoiceActivityDetector.INSTANCE;
+    }
+
+    public String getEngine() {
+        return engine;
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.twilio.audio;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * Gain the AGC settles on for quiet, loud and peaky callers, and what it does between words.
+ */
+class AutomaticGainControlTest {
+
+    private static final int FRAME = 160;
+    // -20 dBFS
+    private static final double TARGET_RMS = (Short.MAX_VALUE + 1) * 0.1;
+
+    private static AutomaticGainControl agc() {
+        return new AutomaticGainControl(-20.0, 20.0, 6.0);
+    }
+
+    private static float[] tone(double rms) {
+        float[] frame = new float[FRAME];
+        for (int n = 0; n < FRAME; n++) {
+            frame[n] = (float) (rms * Math.sqrt(2) * Math.sin(2 * Math.PI * 500 * n / G711Codec.SAMPLE_RATE));
+        }
+        return frame;
+    }
+
+    private static double rms(float[] frame) {
+        double sumOfSquares = 0;
+        for (float sample : frame) {
+            sumOfSquares += (double) sample * sample;
+        }
+        return Math.sqrt(sumOfSquares / frame.length);
+    }
+
+    /**
+     * Feeds {@code frames} copies of {@code source} and returns the last one as processed
+     */
+    private static float[] feed(AutomaticGainControl agc, float[] source, int frames, boolean speech) {
+        float[] frame = source.clone();
+        for (int i = 0; i < frames; i++) {
+            frame = source.clone();
+            agc.process(frame, 0, FRAME, speech);
+        }
+        return frame;
+    }
+
+    @Test
+    void quietSpeechIsBroughtToTheTarget() {
+        AutomaticGainControl agc = agc();
+        float[] out = feed(agc, tone(800), 50, true);
+        assertThat(rms(out)).isCloseTo(TARGET_RMS, within(0.02 * TARGET_RMS));
+        assertThat((double) agc.getGain()).isCloseTo(TARGET_RMS / 800, within(0.05));
+    }
+
+    @Test
+    void boostAndCutAreLimited() {
+        AutomaticGainControl quiet = agc();
+        feed(quiet, tone(50), 50, true);
+        assertThat((double) quiet.getGain()).isCloseTo(Math.pow(10.0, 20.0 / 20.0), within(1e-4));
+
+        AutomaticGainControl loud = agc();
+        feed(loud, tone(15000), 50, true);
+        assertThat((double) loud.getGain()).isCloseTo(Math.pow(10.0, -6.0 / 20.0), within(1e-4));
+    }
+
+    @Test
+    void gainIsHeldBetweenWords() {
+        AutomaticGainControl agc = agc();
+        feed(agc, tone(800), 50, true);
+        float gain = agc.getGain();
+
+        // Line noise in the pause must not pull the gain up
+        feed(agc, tone(30), 100, false);
+        assertThat(agc.getGain()).isEqualTo(gain);
+    }
+
+    @Test
+    void peaksAreNotClipped() {
+        AutomaticGainControl agc = agc();
+        feed(agc, tone(100), 50, true);
+        // A click under the full 20 dB boost
+        float[] spike = tone(100);
+        spike[80] = 12000;
+        float[] out = feed(agc, spike, 1, true);
+
+        for (float sample : out) {
+            assertThat(Math.abs(sample)).isLessThanOrEqualTo(32000f);
+        }
+        assertThat((double) agc.getGain()).isCloseTo(32000.0 / 12000, within(1e-3));
+    }
+
+    @Test
+    void gainChangesAreRampedAcrossTheFrame() {
+        AutomaticGainControl agc = agc();
+        float[] in = tone(800);
+        float[] out = in.clone();
+        agc.process(out, 0, FRAME, true);
+        float gain = agc.getGain();
+
+        // From unity at the start of the frame to the new gain at its end, without a jump
+        double previous = 1.0;
+        for (int n = 0; n < FRAME; n++) {
+            if (Math.abs(in[n]) > 100) {
+                double applied = out[n] / in[n];
+                assertThat(applied).isBetween(previous - 1e-4, gain + 1e-4);
+                previous = applied;
+            }
+        }
+        assertThat((double) out[FRAME - 1] / in[FRAME - 1]).isCloseTo(gain, within(1e-3));
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.twilio.audio;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * Checks that feeding the resampler in pieces gives the same stream as one call, and the
+ * filter's response to DC and tones on both sides of the cutoff.
+ */
+class PolyphaseResamplerTest {
+
+    private static final int[][] RATES = {{8000, 16000}, {16000, 8000}, {24000, 8000}, {8000, 22050}};
+
+    private final Random random = new Random(17);
+
+    private static short[] tone(double hz, int rate, int samples, double amplitude) {
+        short[] signal = new short[samples];
+        for (int n = 0; n < samples; n++) {
+            signal[n] = (short) Math.round(amplitude * Math.sin(2 * Math.PI * hz * n / rate));
+        }
+        return signal;
+    }
+
+    private static short[] resample(PolyphaseResampler resampler, short[] in) {
+        short[] out = new short[resampler.maxOutputSamples(in.length)];
+        return Arrays.copyOf(out, resampler.process(in, 0, in.length, out, 0));
+    }
+
+    private static double rms(short[] signal, int from, int to) {
+        double sumOfSquares = 0;
+        for (int n = from; n < to; n++) {
+            sumOfSquares += (double) signal[n] * signal[n];
+        }
+        return Math.sqrt(sumOfSquares / (to - from));
+    }
+
+    private static byte[] toLinear16(short[] samples) {
+        byte[] bytes = new byte[2 * samples.length];
+        for (int n = 0; n < samples.length; n++) {
+            bytes[2 * n] = (byte) samples[n];
+            bytes[2 * n + 1] = (byte) (samples[n] >> 8);
+        }
+        return bytes;
+    }
+
+    @Test
+    void piecesGiveTheSameStreamAsOneCall() {
+        for (int[] rates : RATES) {
+            short[] in = new short[4000];
+            for (int n = 0; n < in.length; n++) {
+                in[n] = (short) (random.nextGaussian() * 6000);
+            }
+            short[] whole = resample(new PolyphaseResampler(rates[0], rates[1]), in);
+
+            PolyphaseResampler streaming = new PolyphaseResampler(rates[0], rates[1]);
+            short[] pieces = new short[whole.length + 8];
+            int written = 0;
+            for (int done = 0; done < in.length; ) {
+                // Frame sizes that do not line up with the block size or the rate ratio
+                int count = Math.min(in.length - done, 1 + random.nextInt(500));
+                assertThat(streaming.maxOutputSamples(count)).isGreaterThanOrEqualTo(
+                        (int) ((long) count * rates[1] / rates[0]));
+                written += streaming.process(in, done, count, pieces, written);
+                done += count;
+            }
+            assertThat(Arrays.copyOf(pieces, written)).as("%d -> %d Hz", rates[0], rates[1]).isEqualTo(whole);
+            // One output per input, scaled by the rate ratio
+            assertThat((double) whole.length).isCloseTo((double) in.length * rates[1] / rates[0], within(1.0));
+        }
+    }
+
+    @Test
+    void linear16MatchesTheSampleApiAlsoInPlace() {
+        short[] in = tone(440, 16000, 3000, 12000);
+        short[] expected = resample(new PolyphaseResampler(16000, 8000), in);
+
+        byte[] bytes = toLinear16(in);
+        int written = new PolyphaseResampler(16000, 8000).processLinear16(bytes, 0, in.length, bytes, 0);
+        assertThat(written).isEqualTo(expected.length);
+        assertThat(Arrays.copyOf(bytes, 2 * written)).isEqualTo(toLinear16(expected));
+    }
+
+    @Test
+    void constantInputKeepsItsLevel() {
+        for (int[] rates : RATES) {
+            short[] in = new short[2000];
+            Arrays.fill(in, (short) 1000);
+            short[] out = resample(new PolyphaseResampler(rates[0], rates[1]), in);
+            // Past the filter's start-up
+            for (int n = out.length / 2; n < out.length; n++) {
+                assertThat((int) out[n]).isCloseTo(1000, within(3));
+            }
+        }
+    }
+
+    @Test
+    void toneInsideTheBandPassesAndAboveItIsRemoved() {
+        short[] speech = resample(new PolyphaseResampler(8000, 16000), tone(1000, 8000, 4000, 10000));
+        assertThat(rms(speech, 1000, speech.length)).isCloseTo(10000 / Math.sqrt(2), within(150.0));
+
+        // 6 kHz does not exist at 8 kHz - it must not fold back to 2 kHz
+        short[] aliased = resample(new PolyphaseResampler(16000, 8000), tone(6000, 16000, 8000, 10000));
+        assertThat(rms(aliased, 500, aliased.length)).isLessThan(100.0);
+    }
+
+    @Test
+    void resetStartsANewStream() {
+        short[] in = tone(300, 8000, 1000, 8000);
+        PolyphaseResampler resampler = new PolyphaseResampler(8000, 16000);
+        short[] first = resample(resampler, in);
+        resampler.reset();
+        assertThat(resample(resampler, in)).isEqualTo(first);
+    }
+
+    @Test
+    void rejectsRatesThatAreNotPositive() {
+        assertThatThrownBy(() -> new PolyphaseResampler(0, 8000)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new PolyphaseResampler(8000, -16000)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.twilio.audio;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * Checks the packed real FFT against a direct O(N^2) DFT in double precision, and the inverse
+ * against the original signal.
+ */
+class RealFftTest {
+
+    private final Random random = new Random(11);
+
+    private float[] randomSignal(int size) {
+        float[] signal = new float[size];
+        for (int i = 0; i < size; i++) {
+            signal[i] = (float) (random.nextGaussian() * 8000);
+        }
+        return signal;
+    }
+
+    /**
+     * X[k] = sum x[n] e^(-2 pi i k n / N) for k = 0..N/2, as {re, im}
+     */
+    private static double[][] referenceDft(float[] input) {
+        int size = input.length;
+        double[][] bins = new double[size / 2 + 1][2];
+        for (int k = 0; k <= size / 2; k++) {
+            for (int n = 0; n < size; n++) {
+                double angle = -2 * Math.PI * k * n / size;
+                bins[k][0] += input[n] * Math.cos(angle);
+                bins[k][1] += input[n] * Math.sin(angle);
+            }
+        }
+        return bins;
+    }
+
+    private static double magnitude(float[] signal) {
+        double sumOfSquares = 0;
+        for (float sample : signal) {
+            sumOfSquares += (double) sample * sample;
+        }
+        return Math.sqrt(sumOfSquares);
+    }
+
+    @Test
+    void forwardMatchesTheDirectDft() {
+        for (int size = 4; size <= 512; size <<= 1) {
+            RealFft fft = new RealFft(size);
+            float[] re = new float[fft.bins()];
+            float[] im = new float[fft.bins()];
+            float[] power = new float[fft.bins()];
+            for (int trial = 0; trial < 5; trial++) {
+                float[] input = randomSignal(size);
+                float[] copy = input.clone();
+                double[][] expected = referenceDft(input);
+                // Float rounding grows with the signal energy and log2(N) butterfly stages
+                double tolerance = 1e-5 * magnitude(input) * Math.sqrt(size);
+
+                fft.forward(input, re, im);
+                assertThat(input).isEqualTo(copy);
+                for (int k = 0; k < fft.bins(); k++) {
+                    assertThat((double) re[k]).as("N=%d re[%d]", size, k).isCloseTo(expected[k][0], within(tolerance));
+                    assertThat((double) im[k]).as("N=%d im[%d]", size, k).isCloseTo(expected[k][1], within(tolerance));
+                }
+
+                fft.powerSpectrum(input, re, im, power);
+                for (int k = 0; k < fft.bins(); k++) {
+                    double expectedPower = expected[k][0] * expected[k][0] + expected[k][1] * expected[k][1];
+                    assertThat((double) power[k]).isCloseTo(expectedPower, within(2 * tolerance * magnitude(input) * Math.sqrt(size)));
+                }
+            }
+        }
+    }
+
+    @Test
+    void inverseRestoresTheSignal() {
+        for (int size = 4; size <= 512; size <<= 1) {
+            RealFft fft = new RealFft(size);
+            float[] re = new float[fft.bins()];
+            float[] im = new float[fft.bins()];
+            float[] output = new float[size];
+            float[] input = randomSignal(size);
+
+            fft.forward(input, re, im);
+            float[] reCopy = re.clone();
+            fft.inverse(re, im, output);
+            assertThat(re).isEqualTo(reCopy);
+            double tolerance = 1e-5 * magnitude(input);
+            for (int n = 0; n < size; n++) {
+                assertThat((double) output[n]).as("N=%d x[%d]", size, n).isCloseTo(input[n], within(tolerance));
+            }
+        }
+    }
+
+    @Test
+    void rejectsSizesThatAreNotAPowerOfTwo() {
+        for (int size : new int[]{0, 2, 3, 160, 255}) {
+            assertThatThrownBy(() -> new RealFft(size)).isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+
+    @Test
+    void toneLandsInItsBin() {
+        SpectralFeatures features = SpectralFeatures.forTelephony();
+        byte[] frame = new byte[160];
+        for (int n = 0; n < frame.length; n++) {
+            frame[n] = G711Codec.encode((int) (8000 * Math.sin(2 * Math.PI * 1000 * n / G711Codec.SAMPLE_RATE)));
+        }
+        features.analyze(frame, 0, frame.length);
+        assertThat(features.getCentroidHz()).isCloseTo(1000.0, within(features.getBinHz()));
+        assertThat(features.getFlatness()).isLessThan(0.05);
+    }
+}
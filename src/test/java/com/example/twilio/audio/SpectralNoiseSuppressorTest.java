@@ -0,0 +1,140 @@
+package com.example.twilio.audio;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * Delay, transparency and noise reduction of the suppressor on synthetic 8 kHz signals.
+ */
+class SpectralNoiseSuppressorTest {
+
+    private static final int RATE = G711Codec.SAMPLE_RATE;
+    private static final double MAX_ATTENUATION_DB = 15.0;
+
+    private final Random random = new Random(23);
+
+    private float[] noise(int samples, double amplitude) {
+        float[] signal = new float[samples];
+        for (int n = 0; n < samples; n++) {
+            signal[n] = (float) (random.nextGaussian() * amplitude);
+        }
+        return signal;
+    }
+
+    private static void addTone(float[] signal, int from, double hz, double amplitude) {
+        for (int n = from; n < signal.length; n++) {
+            signal[n] += (float) (amplitude * Math.sin(2 * Math.PI * hz * n / RATE));
+        }
+    }
+
+    /**
+     * Runs the signal through in 160-sample frames, like the calls do
+     */
+    private static float[] suppress(SpectralNoiseSuppressor suppressor, float[] in, boolean speech) {
+        float[] out = new float[in.length];
+        for (int done = 0; done < in.length; done += 160) {
+            suppressor.process(in, done, Math.min(160, in.length - done), out, done, speech);
+        }
+        return out;
+    }
+
+    private static double rms(float[] signal, int from, int to) {
+        double sumOfSquares = 0;
+        for (int n = from; n < to; n++) {
+            sumOfSquares += (double) signal[n] * signal[n];
+        }
+        return Math.sqrt(sumOfSquares / (to - from));
+    }
+
+    /**
+     * Amplitude of the {@code hz} component of {@code signal[from, to)}
+     */
+    private static double amplitudeAt(float[] signal, int from, int to, double hz) {
+        double re = 0;
+        double im = 0;
+        for (int n = from; n < to; n++) {
+            re += signal[n] * Math.cos(2 * Math.PI * hz * n / RATE);
+            im += signal[n] * Math.sin(2 * Math.PI * hz * n / RATE);
+        }
+        return 2 * Math.hypot(re, im) / (to - from);
+    }
+
+    @Test
+    void cleanSignalComesOutUnchangedOneFrameLater() {
+        SpectralNoiseSuppressor suppressor = new SpectralNoiseSuppressor(MAX_ATTENUATION_DB);
+        int latency = suppressor.getLatencySamples();
+        float[] in = new float[RATE];
+        addTone(in, RATE / 4, 440, 8000);
+        addTone(in, RATE / 4, 1300, 3000);
+
+        float[] out = suppress(suppressor, in, true);
+        for (int n = 0; n < latency; n++) {
+            assertThat(out[n]).isZero();
+        }
+        for (int n = latency; n < in.length; n++) {
+            assertThat((double) out[n]).as("sample %d", n).isCloseTo(in[n - latency], within(40.0));
+        }
+    }
+
+    @Test
+    void framingDoesNotChangeTheOutput() {
+        float[] in = noise(RATE, 1000);
+        addTone(in, RATE / 2, 700, 6000);
+        float[] expected = suppress(new SpectralNoiseSuppressor(MAX_ATTENUATION_DB), in, false);
+
+        SpectralNoiseSuppressor suppressor = new SpectralNoiseSuppressor(MAX_ATTENUATION_DB);
+        float[] out = new float[in.length];
+        for (int done = 0; done < in.length; ) {
+            int count = Math.min(in.length - done, 1 + random.nextInt(400));
+            suppressor.process(in, done, count, out, done, false);
+            done += count;
+        }
+        assertThat(out).containsExactly(expected);
+    }
+
+    @Test
+    void steadyNoiseIsAttenuatedWithinTheLimit() {
+        float[] in = noise(2 * RATE, 1000);
+        float[] out = suppress(new SpectralNoiseSuppressor(MAX_ATTENUATION_DB), in, false);
+
+        double ratio = rms(out, RATE, 2 * RATE) / rms(in, RATE, 2 * RATE);
+        // At least 6 dB down, but not below the attenuation limit (15 dB = 0.18)
+        assertThat(ratio).isLessThan(0.5).isGreaterThan(0.15);
+    }
+
+    @Test
+    void speechOverTheNoiseKeepsItsLevel() {
+        SpectralNoiseSuppressor suppressor = new SpectralNoiseSuppressor(MAX_ATTENUATION_DB);
+        int latency = suppressor.getLatencySamples();
+        suppress(suppressor, noise(RATE, 500), false);
+
+        float[] in = noise(RATE, 500);
+        addTone(in, 0, 1000, 6000);
+        float[] out = suppress(suppressor, in, true);
+        int from = RATE / 2;
+        // Compare the delayed output with the input it came from
+        float[] aligned = new float[in.length];
+        System.arraycopy(out, latency, aligned, 0, in.length - latency);
+        assertThat(amplitudeAt(aligned, from, in.length - latency, 1000)).isCloseTo(6000.0, within(300.0));
+        // The noise around the tone is still reduced
+        double noiseBefore = rms(in, from, in.length) - 6000 / Math.sqrt(2);
+        double noiseAfter = rms(aligned, from, in.length - latency) - 6000 / Math.sqrt(2);
+        assertThat(noiseAfter).isLessThan(noiseBefore);
+    }
+
+    @Test
+    void resetForgetsTheHistory() {
+        float[] first = noise(RATE / 2, 800);
+        float[] second = noise(RATE / 2, 800);
+        float[] expected = suppress(new SpectralNoiseSuppressor(MAX_ATTENUATION_DB), second, false);
+
+        SpectralNoiseSuppressor suppressor = new SpectralNoiseSuppressor(MAX_ATTENUATION_DB);
+        suppress(suppressor, first, false);
+        suppressor.reset();
+        assertThat(suppress(suppressor, second, false)).containsExactly(expected);
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.twilio.service;
+
+import com.example.twilio.service.dto.AiAgentResult;
+import com.example.twilio.service.dto.ExpectedGrammars;
+import com.example.twilio.service.intent.IntentDetector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Conversation flow of short answers (no speech-to-text involved)
+ */
+class AiAgentServiceTest {
+
+    private static final String SESSION = "session-1";
+
+    private final AiAgentService service = new AiAgentService();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(service, "intentDetector", new IntentDetector());
+    }
+
+    private AiAgentResult say(String transcript) {
+        return service.processTranscript(transcript, SESSION, "CA1");
+    }
+
+    @Test
+    void noToAnythingElseEndsTheCall() {
+        AiAgentResult answer = say("what are your opening hours");
+        assertThat(answer.getAiResponse()).endsWith("Is there anything else I can help you with?");
+        assertThat(answer.isEndCall()).isFalse();
+        // Open question - any answer is possible
+        assertThat(answer.getExpectedGrammar()).isNull();
+
+        assertThat(say("no thanks").isEndCall()).isTrue();
+    }
+
+    @Test
+    void yesToAnythingElseAsksWhatElseOnce() {
+        say("what are your opening hours");
+
+        AiAgentResult yes = say("yes");
+        assertThat(yes.isEndCall()).isFalse();
+        assertThat(yes.getAiResponse()).isEqualTo("Sure, what else can I help you with?");
+
+        // Not an answer to "anything else?" any more - goes to the AI like any other input
+        AiAgentResult no = say("no");
+        assertThat(no.isEndCall()).isFalse();
+        assertThat(no.getAiResponse()).startsWith("I heard you say: no");
+    }
+
+    @Test
+    void yesAndNoWithoutAQuestionGoToTheAi() {
+        assertThat(say("no").getAiResponse()).startsWith("I heard you say: no");
+        service.endConversation(SESSION);
+        assertThat(say("yes").getAiResponse()).startsWith("I heard you say: yes");
+    }
+
+    @Test
+    void endedConversationForgetsTheQuestion() {
+        say("what are your opening hours");
+        service.endConversation(SESSION);
+
+        assertThat(say("no").isEndCall()).isFalse();
+    }
+
+    @Test
+    void reschedulingAsksClosedQuestionsWithTheirGrammars() {
+        AiAgentResult day = say("I need to reschedule my appointment");
+        assertThat(day.getExpectedGrammar()).isEqualTo(ExpectedGrammars.WEEKDAYS);
+
+        AiAgentResult time = say("friday");
+        assertThat(time.getAiResponse()).isEqualTo("What time on friday works for you?");
+        assertThat(time.getExpectedGrammar()).isEqualTo(ExpectedGrammars.TIME_SLOTS);
+
+        AiAgentResult confirm = say("three thirty p m");
+        assertThat(confirm.getAiResponse()).isEqualTo("So that's friday at three thirty p m. Shall I book it?");
+        assertThat(confirm.getExpectedGrammar()).isEqualTo(ExpectedGrammars.YES_NO);
+
+        AiAgentResult booked = say("yes");
+        assertThat(booked.getAiResponse()).startsWith("Done, your appointment is now on friday at three thirty p m.");
+        assertThat(booked.getExpectedGrammar()).isNull();
+
+        assertThat(say("no").isEndCall()).isTrue();
+    }
+
+    @Test
+    void declinedSlotAsksForAnotherDay() {
+        say("can I reschedule");
+        say("tomorrow");
+        say("ten a m");
+
+        AiAgentResult again = say("no");
+        assertThat(again.isEndCall()).isFalse();
+        assertThat(again.getExpectedGrammar()).isEqualTo(ExpectedGrammars.WEEKDAYS);
+    }
+}
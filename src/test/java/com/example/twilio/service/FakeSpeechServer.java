@@ -0,0 +1,115 @@
+package com.example.twilio.service;
+
+import com.google.api.gax.core.NoCredentialsProvider;
+import com.google.api.gax.grpc.GrpcTransportChannel;
+import com.google.api.gax.rpc.FixedTransportChannelProvider;
+import com.google.cloud.speech.v1.RecognizeRequest;
+import com.google.cloud.speech.v1.RecognizeResponse;
+import com.google.cloud.speech.v1.SpeechSettings;
+import com.google.cloud.speech.v1.StreamingRecognizeRequest;
+import com.google.cloud.speech.v1.StreamingRecognizeResponse;
+import io.grpc.ManagedChannel;
+import io.grpc.MethodDescriptor;
+import io.grpc.Server;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.protobuf.ProtoUtils;
+import io.grpc.stub.ServerCalls;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * In-process stand-in for the Cloud Speech-to-Text v1 service, for tests of the real
+ * {@link com.google.cloud.speech.v1.SpeechClient} without network or credentials.
+ *
+ * The generated service stub is not on the classpath, so the methods are registered from
+ * their descriptors.
+ */
+final class FakeSpeechServer implements AutoCloseable {
+
+    private static final String SERVICE = "google.cloud.speech.v1.Speech";
+
+    static final MethodDescriptor<RecognizeRequest, RecognizeResponse> RECOGNIZE =
+        MethodDescriptor.<RecognizeRequest, RecognizeResponse>newBuilder()
+            .setType(MethodDescriptor.MethodType.UNARY)
+            .setFullMethodName(MethodDescriptor.generateFullMethodName(SERVICE, "Recognize"))
+            .setRequestMarshaller(ProtoUtils.marshaller(RecognizeRequest.getDefaultInstance()))
+            .setResponseMarshaller(ProtoUtils.marshaller(RecognizeResponse.getDefaultInstance()))
+            .build();
+
+    static final MethodDescriptor<StreamingRecognizeRequest, StreamingRecognizeResponse> STREAMING_RECOGNIZE =
+        MethodDescriptor.<StreamingRecognizeRequest, StreamingRecognizeResponse>newBuilder()
+            .setType(MethodDescriptor.MethodType.BIDI_STREAMING)
+            .setFullMethodName(MethodDescriptor.generateFullMethodName(SERVICE, "StreamingRecognize"))
+            .setRequestMarshaller(ProtoUtils.marshaller(StreamingRecognizeRequest.getDefaultInstance()))
+            .setResponseMarshaller(ProtoUtils.marshaller(StreamingRecognizeResponse.getDefaultInstance()))
+            .build();
+
+    private final String name = InProcessServerBuilder.generateName();
+    private final Server server;
+    private final List<ManagedChannel> channels = new CopyOnWriteArrayList<>();
+    private final List<RecognizeRequest> recognizeRequests = new CopyOnWriteArrayList<>();
+    private volatile Function<RecognizeRequest, RecognizeResponse> recognizer = request -> RecognizeResponse.getDefaultInstance();
+    private volatile ServerCalls.BidiStreamingMethod<StreamingRecognizeRequest, StreamingRecognizeResponse> streamingRecognizer;
+
+    FakeSpeechServer() throws IOException {
+        ServerServiceDefinition service = ServerServiceDefinition.builder(SERVICE)
+            .addMethod(RECOGNIZE, ServerCalls.asyncUnaryCall((request, response) -> {
+                recognizeRequests.add(request);
+                response.onNext(recognizer.apply(request));
+                response.onCompleted();
+            }))
+            .addMethod(STREAMING_RECOGNIZE, ServerCalls.asyncBidiStreamingCall(
+                responses -> streamingRecognizer.invoke(responses)))
+            .build();
+        server = InProcessServerBuilder.forName(name).directExecutor().addService(service).build().start();
+    }
+
+    /**
+     * Answers Recognize requests with {@code recognizer}
+     */
+    void onRecognize(Function<RecognizeRequest, RecognizeResponse> recognizer) {
+        this.recognizer = recognizer;
+    }
+
+    /**
+     * Serves each StreamingRecognize call with {@code streamingRecognizer}
+     */
+    void onStreamingRecognize(ServerCalls.BidiStreamingMethod<StreamingRecognizeRequest, StreamingRecognizeResponse> streamingRecognizer) {
+        this.streamingRecognizer = streamingRecognizer;
+    }
+
+    List<RecognizeRequest> getRecognizeRequests() {
+        return recognizeRequests;
+    }
+
+    /**
+     * Client settings for a new channel to this server
+     */
+    SpeechSettings clientSettings() throws IOException {
+        ManagedChannel channel = InProcessChannelBuilder.forName(name).directExecutor().build();
+        channels.add(channel);
+        return SpeechSettings.newBuilder()
+            .setCredentialsProvider(NoCredentialsProvider.create())
+            .setTransportChannelProvider(FixedTransportChannelProvider.create(GrpcTransportChannel.create(channel)))
+            .build();
+    }
+
+    @Override
+    public void close() {
+        for (ManagedChannel channel : channels) {
+            channel.shutdownNow();
+        }
+        server.shutdownNow();
+        try {
+            server.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
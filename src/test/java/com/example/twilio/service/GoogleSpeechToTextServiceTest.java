@@ -0,0 +1,248 @@
+package com.example.twilio.service;
+
+import com.example.twilio.audio.AudioFormat;
+import com.google.auth.oauth2.AccessToken;
+import com.google.auth.oauth2.GoogleCredentials;
+import com.google.cloud.speech.v1.RecognizeResponse;
+import com.google.cloud.speech.v1.SpeechClient;
+import com.google.cloud.speech.v1.SpeechRecognitionAlternative;
+import com.google.cloud.speech.v1.SpeechRecognitionResult;
+import com.google.cloud.speech.v1.SpeechSettings;
+import com.google.cloud.speech.v1.StreamingRecognitionResult;
+import com.google.cloud.speech.v1.StreamingRecognizeRequest;
+import com.google.cloud.speech.v1.StreamingRecognizeResponse;
+import io.grpc.stub.StreamObserver;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * The shared Google speech client, exercised against an in-process stand-in server
+ */
+class GoogleSpeechToTextServiceTest {
+
+    private static final int CHANNELS = 2;
+    private static final int UTTERANCES = 30;
+    // One second of mu-law
+    private static final byte[] UTTERANCE = new byte[8000];
+
+    private FakeSpeechServer server;
+    private TestService service;
+
+    /**
+     * The real service with its client pointed at the stand-in server
+     */
+    private final class TestService extends GoogleSpeechToTextService {
+        private final AtomicInteger clientsCreated = new AtomicInteger();
+        private final AtomicInteger credentialLoads = new AtomicInteger();
+        private volatile boolean credentialsMissing;
+
+        @Override
+        GoogleCredentials loadCredentials() throws IOException {
+            credentialLoads.incrementAndGet();
+            if (credentialsMissing) {
+                throw new IOException("The Application Default Credentials are not available");
+            }
+            return GoogleCredentials.create(new AccessToken("test-token", new Date(Long.MAX_VALUE)));
+        }
+
+        @Override
+        SpeechSettings clientSettings(GoogleCredentials loaded) throws IOException {
+            clientsCreated.incrementAndGet();
+            return server.clientSettings();
+        }
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new FakeSpeechServer();
+        server.onRecognize(request -> RecognizeResponse.newBuilder()
+            .addResults(SpeechRecognitionResult.newBuilder()
+                .addAlternatives(SpeechRecognitionAlternative.newBuilder()
+                    .setTranscript("hello world")
+                    .setConfidence(0.9f)))
+            .build());
+        service = new TestService();
+        ReflectionTestUtils.setField(service, "enabled", true);
+        ReflectionTestUtils.setField(service, "audioFormat", "MULAW");
+        ReflectionTestUtils.setField(service, "languageCode", "en-US");
+        ReflectionTestUtils.setField(service, "sampleRateHertz", 8000);
+        ReflectionTestUtils.setField(service, "maxAlternatives", 1);
+        ReflectionTestUtils.setField(service, "channelPoolSize", CHANNELS);
+        ReflectionTestUtils.setField(service, "warmupEnabled", true);
+        ReflectionTestUtils.setField(service, "credentialsRefreshSeconds", 60L);
+        ReflectionTestUtils.setField(service, "clientRetrySeconds", 30L);
+        ReflectionTestUtils.setField(service, "streamingEnabled", true);
+        ReflectionTestUtils.setField(service, "streamingSingleUtterance", true);
+        ReflectionTestUtils.setField(service, "streamingChunkMs", 100);
+        ReflectionTestUtils.setField(service, "streamingFinalTimeoutMs", 1500L);
+        Arrays.fill(UTTERANCE, (byte) 0x55);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        service.shutdown();
+        server.close();
+    }
+
+    private void awaitReady() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!service.isReady() && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertThat(service.isReady()).isTrue();
+    }
+
+    @Test
+    void warmUpCreatesTheClientAndPrimesEveryChannel() throws Exception {
+        service.init();
+        awaitReady();
+
+        assertThat(service.clientsCreated).hasValue(1);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (server.getRecognizeRequests().size() < CHANNELS && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertThat(server.getRecognizeRequests()).hasSize(CHANNELS);
+    }
+
+    @Test
+    void utterancesReuseOneClient() throws Exception {
+        service.init();
+        awaitReady();
+
+        for (int i = 0; i < UTTERANCES; i++) {
+            assertThat(service.transcribe(UTTERANCE, 0, UTTERANCE.length, AudioFormat.MULAW)).isEqualTo("hello world");
+        }
+        assertThat(service.clientsCreated).hasValue(1);
+    }
+
+    @Test
+    void notReadyUntilTheClientExistsAndFailuresBackOff() throws Exception {
+        service.credentialsMissing = true;
+        ReflectionTestUtils.setField(service, "warmupEnabled", false);
+        service.init();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (service.credentialLoads.get() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        // Every readiness check while backing off returns at once, without another attempt
+        for (int i = 0; i < 100; i++) {
+            assertThat(service.isReady()).isFalse();
+            assertThat(service.isStreamingReady()).isFalse();
+        }
+        Thread.sleep(50);
+        assertThat(service.credentialLoads).hasValue(1);
+        assertThatThrownBy(() -> service.startStreaming(AudioFormat.MULAW, new StreamingRecognitionListener() {
+            @Override
+            public void onPartialTranscript(String transcript) {
+            }
+
+            @Override
+            public void onEndOfUtterance() {
+            }
+
+            @Override
+            public void onError(Throwable error) {
+            }
+        })).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    void streamingRecognitionRunsOnTheSharedClient() throws Exception {
+        server.onStreamingRecognize(responses -> new StreamObserver<StreamingRecognizeRequest>() {
+            @Override
+            public void onNext(StreamingRecognizeRequest request) {
+                if (!request.hasStreamingConfig()) {
+                    responses.onNext(StreamingRecognizeResponse.newBuilder()
+                        .addResults(StreamingRecognitionResult.newBuilder()
+                            .addAlternatives(SpeechRecognitionAlternative.newBuilder().setTranscript("hello")))
+                        .build());
+                }
+            }
+
+            @Override
+            public void onError(Throwable t) {
+            }
+
+            @Override
+            public void onCompleted() {
+                responses.onNext(StreamingRecognizeResponse.newBuilder()
+                    .addResults(StreamingRecognitionResult.newBuilder()
+                        .setIsFinal(true)
+                        .addAlternatives(SpeechRecognitionAlternative.newBuilder().setTranscript("hello world")))
+                    .build());
+                responses.onCompleted();
+            }
+        });
+        service.init();
+        awaitReady();
+        assertThat(service.isStreamingReady()).isTrue();
+
+        List<String> partials = new CopyOnWriteArrayList<>();
+        StreamingRecognitionSession recognition = service.startStreaming(AudioFormat.MULAW, new StreamingRecognitionListener() {
+            @Override
+            public void onPartialTranscript(String transcript) {
+                partials.add(transcript);
+            }
+
+            @Override
+            public void onEndOfUtterance() {
+            }
+
+            @Override
+            public void onError(Throwable error) {
+            }
+        });
+        recognition.sendAudio(UTTERANCE, 0, UTTERANCE.length);
+
+        assertThat(recognition.finish()).isEqualTo("hello world");
+        assertThat(partials).isNotEmpty().allMatch("hello"::equals);
+        assertThat(service.clientsCreated).hasValue(1);
+    }
+
+    /**
+     * The latency the shared client removes: the same utterances, once on the warm client and
+     * once on a client created and closed per utterance as before
+     */
+    @Test
+    void sharedClientIsFasterThanAClientPerUtterance() throws Exception {
+        service.init();
+        awaitReady();
+
+        long[] shared = new long[UTTERANCES];
+        long[] perUtterance = new long[UTTERANCES];
+        for (int i = 0; i < UTTERANCES; i++) {
+            long start = System.nanoTime();
+            service.transcribe(UTTERANCE, 0, UTTERANCE.length, AudioFormat.MULAW);
+            shared[i] = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            try (SpeechClient client = SpeechClient.create(server.clientSettings())) {
+                client.recognize(server.getRecognizeRequests().get(server.getRecognizeRequests().size() - 1));
+            }
+            perUtterance[i] = System.nanoTime() - start;
+        }
+
+        assertThat(median(shared)).isLessThan(median(perUtterance));
+    }
+
+    private static long median(long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
@@ -0,0 +1,290 @@
+package com.example.twilio.service;
+
+import com.example.twilio.audio.G711Codec;
+import com.google.cloud.speech.v1.RecognitionConfig;
+import com.google.cloud.speech.v1.SpeechClient;
+import com.google.cloud.speech.v1.SpeechRecognitionAlternative;
+import com.google.cloud.speech.v1.StreamingRecognitionConfig;
+import com.google.cloud.speech.v1.StreamingRecognitionResult;
+import com.google.cloud.speech.v1.StreamingRecognizeRequest;
+import com.google.cloud.speech.v1.StreamingRecognizeResponse;
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * A StreamingRecognize call driven end to end: the real client against an in-process server
+ * that answers with scripted interim results, final results and speech events
+ */
+class GoogleStreamingRecognitionSessionTest {
+
+    // 100 ms of mu-law per request
+    private static final int CHUNK_BYTES = 800;
+    private static final long FINAL_TIMEOUT_MS = 2000;
+
+    private FakeSpeechServer server;
+    private SpeechClient client;
+    private final List<StreamingRecognizeRequest> requests = new CopyOnWriteArrayList<>();
+    private final RecordingListener listener = new RecordingListener();
+
+    // Scripted server: reacts to the n-th audio request (1-based) and to the end of the audio
+    private volatile BiConsumer<Integer, StreamObserver<StreamingRecognizeResponse>> onAudio = (n, responses) -> { };
+    private volatile Consumer<StreamObserver<StreamingRecognizeResponse>> onAudioEnd = StreamObserver::onCompleted;
+
+    private static final class RecordingListener implements StreamingRecognitionListener {
+        final List<String> partials = new CopyOnWriteArrayList<>();
+        final List<Throwable> errors = new CopyOnWriteArrayList<>();
+        final CountDownLatch endOfUtterance = new CountDownLatch(1);
+        volatile int endsOfUtterance;
+
+        @Override
+        public void onPartialTranscript(String transcript) {
+            partials.add(transcript);
+        }
+
+        @Override
+        public void onEndOfUtterance() {
+            endsOfUtterance++;
+            endOfUtterance.countDown();
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            errors.add(error);
+        }
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new FakeSpeechServer();
+        server.onStreamingRecognize(responses -> new StreamObserver<StreamingRecognizeRequest>() {
+            private int audioRequests;
+
+            @Override
+            public void onNext(StreamingRecognizeRequest request) {
+                requests.add(request);
+                if (request.hasStreamingConfig()) {
+                    return;
+                }
+                onAudio.accept(++audioRequests, responses);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+            }
+
+            @Override
+            public void onCompleted() {
+                onAudioEnd.accept(responses);
+            }
+        });
+        client = SpeechClient.create(server.clientSettings());
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        client.close();
+        server.close();
+    }
+
+    private GoogleStreamingRecognitionSession open(boolean singleUtterance, boolean expandToLinear16) {
+        StreamingRecognitionConfig config = StreamingRecognitionConfig.newBuilder()
+            .setConfig(RecognitionConfig.newBuilder()
+                .setEncoding(expandToLinear16 ? RecognitionConfig.AudioEncoding.LINEAR16 : RecognitionConfig.AudioEncoding.MULAW)
+                .setSampleRateHertz(8000)
+                .setLanguageCode("en-US"))
+            .setInterimResults(true)
+            .setSingleUtterance(singleUtterance)
+            .build();
+        return GoogleStreamingRecognitionSession.open(client.streamingRecognizeCallable(), config, expandToLinear16,
+                expandToLinear16 ? 2 * CHUNK_BYTES : CHUNK_BYTES, FINAL_TIMEOUT_MS, listener);
+    }
+
+    /**
+     * Sends {@code frames} 20 ms frames of mu-law, as the media stream handler does
+     */
+    private static void speak(GoogleStreamingRecognitionSession session, int frames) {
+        byte[] frame = new byte[160];
+        for (int i = 0; i < frames; i++) {
+            for (int j = 0; j < frame.length; j++) {
+                frame[j] = (byte) (i * 7 + j);
+            }
+            session.sendAudio(frame, 0, frame.length);
+        }
+    }
+
+    private static StreamingRecognizeResponse result(String transcript, boolean isFinal) {
+        return StreamingRecognizeResponse.newBuilder()
+            .addResults(StreamingRecognitionResult.newBuilder()
+                .setIsFinal(isFinal)
+                .addAlternatives(SpeechRecognitionAlternative.newBuilder().setTranscript(transcript)))
+            .build();
+    }
+
+    private static StreamingRecognizeResponse endOfSingleUtterance() {
+        return StreamingRecognizeResponse.newBuilder()
+            .setSpeechEventType(StreamingRecognizeResponse.SpeechEventType.END_OF_SINGLE_UTTERANCE)
+            .build();
+    }
+
+    private int audioBytesSent() {
+        int bytes = 0;
+        for (StreamingRecognizeRequest request : requests) {
+            bytes += request.getAudioContent().size();
+        }
+        return bytes;
+    }
+
+    @Test
+    void configGoesFirstAndAudioIsSentInChunks() {
+        GoogleStreamingRecognitionSession session = open(true, false);
+        // 25 frames = 4000 bytes = 5 chunks of 800
+        speak(session, 25);
+        session.finish();
+
+        assertThat(requests.get(0).hasStreamingConfig()).isTrue();
+        assertThat(requests.get(0).getStreamingConfig().getSingleUtterance()).isTrue();
+        assertThat(requests.subList(1, requests.size()))
+            .hasSize(5)
+            .allSatisfy(request -> assertThat(request.getAudioContent().size()).isEqualTo(CHUNK_BYTES));
+    }
+
+    @Test
+    void partialChunkIsFlushedByFinish() {
+        GoogleStreamingRecognitionSession session = open(true, false);
+        speak(session, 7);
+        session.finish();
+
+        assertThat(audioBytesSent()).isEqualTo(7 * 160);
+        assertThat(requests.get(requests.size() - 1).getAudioContent().size()).isEqualTo(7 * 160 - CHUNK_BYTES);
+    }
+
+    @Test
+    void muLawIsExpandedWhenLinear16IsUploaded() {
+        GoogleStreamingRecognitionSession session = open(true, true);
+        speak(session, 10);
+        session.finish();
+
+        assertThat(audioBytesSent()).isEqualTo(2 * 10 * 160);
+        byte[] first = requests.get(1).getAudioContent().toByteArray();
+        short sample = (short) ((first[0] & 0xFF) | (first[1] << 8));
+        assertThat(sample).isEqualTo(G711Codec.decode((byte) 0));
+    }
+
+    @Test
+    void interimResultsReachTheListenerAndFinalResultsMakeTheTranscript() {
+        onAudio = (n, responses) -> {
+            if (n == 1) {
+                responses.onNext(result("book a", false));
+            } else if (n == 2) {
+                responses.onNext(result("book a table", true));
+            } else if (n == 3) {
+                responses.onNext(result("for", false));
+            } else if (n == 4) {
+                responses.onNext(result("for two", false));
+            }
+        };
+        onAudioEnd = responses -> {
+            responses.onNext(result("for two", true));
+            responses.onCompleted();
+        };
+        GoogleStreamingRecognitionSession session = open(true, false);
+        speak(session, 20);
+
+        assertThat(session.finish()).isEqualTo("book a table for two");
+        // Interim results are reported on top of the finals so far
+        assertThat(listener.partials).containsExactly("book a", "book a table for", "book a table for two");
+        assertThat(listener.endsOfUtterance).isZero();
+        assertThat(listener.errors).isEmpty();
+    }
+
+    @Test
+    void endOfSingleUtteranceEndsTheUtterance() throws Exception {
+        onAudio = (n, responses) -> {
+            if (n == 1) {
+                responses.onNext(result("yes", false));
+            } else if (n == 2) {
+                responses.onNext(endOfSingleUtterance());
+            }
+        };
+        onAudioEnd = responses -> {
+            responses.onNext(result("yes please", true));
+            responses.onCompleted();
+        };
+        GoogleStreamingRecognitionSession session = open(true, false);
+        speak(session, 10);
+
+        assertThat(listener.endOfUtterance.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(listener.endsOfUtterance).isEqualTo(1);
+        assertThat(session.finish()).isEqualTo("yes please");
+    }
+
+    @Test
+    void finalResultEndsTheUtteranceWithoutSingleUtteranceMode() throws Exception {
+        onAudio = (n, responses) -> {
+            if (n == 1) {
+                responses.onNext(result("no", true));
+            }
+        };
+        GoogleStreamingRecognitionSession session = open(false, false);
+        speak(session, 5);
+
+        assertThat(listener.endOfUtterance.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(session.finish()).isEqualTo("no");
+    }
+
+    @Test
+    void finishReturnsTheResultsSoFarWhenTheFinalResultIsLate() {
+        onAudio = (n, responses) -> {
+            if (n == 1) {
+                responses.onNext(result("hello", true));
+            }
+        };
+        // The server never answers the end of the audio
+        onAudioEnd = responses -> { };
+        GoogleStreamingRecognitionSession session = open(true, false);
+        speak(session, 5);
+
+        long start = System.nanoTime();
+        assertThat(session.finish()).isEqualTo("hello");
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(FINAL_TIMEOUT_MS + 1000);
+    }
+
+    @Test
+    void serverErrorIsReportedAndFinishReturnsWhatWasRecognized() {
+        onAudio = (n, responses) -> {
+            if (n == 1) {
+                responses.onNext(result("hello", true));
+            } else if (n == 2) {
+                responses.onError(Status.UNAVAILABLE.withDescription("backend gone").asRuntimeException());
+            }
+        };
+        GoogleStreamingRecognitionSession session = open(true, false);
+        speak(session, 10);
+
+        assertThat(session.finish()).isEqualTo("hello");
+        assertThat(listener.errors).hasSize(1);
+    }
+
+    @Test
+    void cancelledSessionReportsNothingMore() {
+        onAudio = (n, responses) -> responses.onNext(result("ignored", false));
+        GoogleStreamingRecognitionSession session = open(true, false);
+        session.cancel();
+        speak(session, 10);
+
+        assertThat(listener.partials).isEmpty();
+        assertThat(session.finish()).isNull();
+    }
+}
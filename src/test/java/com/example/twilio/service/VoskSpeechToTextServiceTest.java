@@ -0,0 +1,43 @@
+package com.example.twilio.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Result handling for grammar-restricted Vosk recognizers (no model needed)
+ */
+class VoskSpeechToTextServiceTest {
+
+    @Test
+    void grammarIncludesTheUnknownWord() {
+        assertThat(VoskSpeechToTextService.grammarJson(List.of("Yes", " no ", "yes")))
+                .isEqualTo("[\"no\", \"yes\", \"[unk]\"]");
+    }
+
+    @Test
+    void answerWithWordsOutsideTheGrammarIsNotAClosedAnswer() {
+        String text = VoskSpeechToTextService.extractTextFromResult("{\"text\" : \"no [unk] [unk] [unk] friday\"}");
+
+        assertThat(text).isEqualTo("no [unk] [unk] [unk] friday");
+        assertThat(VoskSpeechToTextService.isOutOfGrammar(text)).isTrue();
+    }
+
+    @Test
+    void answerInsideTheGrammarIsKept() {
+        String text = VoskSpeechToTextService.extractTextFromResult("{\"text\" : \"no\"}");
+
+        assertThat(text).isEqualTo("no");
+        assertThat(VoskSpeechToTextService.isOutOfGrammar(text)).isFalse();
+    }
+
+    @Test
+    void strayUnknownWordsAreDroppedFromFullVocabularyResults() {
+        assertThat(VoskSpeechToTextService.withoutUnknown("[unk] reschedule  [unk] for friday"))
+                .isEqualTo("reschedule for friday");
+        assertThat(VoskSpeechToTextService.withoutUnknown("[unk] [unk]")).isNull();
+        assertThat(VoskSpeechToTextService.withoutUnknown(null)).isNull();
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.twilio.service.intent;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IntentDetectorTest {
+
+    private final IntentDetector detector = new IntentDetector();
+
+    private Intent intentOf(String transcript) {
+        IntentMatch match = detector.classify(transcript);
+        return match != null ? match.getIntent() : null;
+    }
+
+    @Test
+    void fillerThatIsAlsoTheAnswerIsKept() {
+        assertThat(intentOf("ok thanks")).isEqualTo(Intent.YES);
+        assertThat(intentOf("okay thank you")).isEqualTo(Intent.YES);
+        assertThat(intentOf("Okay.")).isEqualTo(Intent.YES);
+    }
+
+    @Test
+    void fillersAndPolitenessAroundThePhraseAreIgnored() {
+        assertThat(intentOf("Um, yes please")).isEqualTo(Intent.YES);
+        assertThat(intentOf("well no thank you")).isEqualTo(Intent.NO);
+        assertThat(intentOf("oh okay bye now")).isEqualTo(Intent.GOODBYE);
+        assertThat(intentOf("thanks, goodbye")).isEqualTo(Intent.GOODBYE);
+    }
+
+    @Test
+    void onlyWholeUtterancesMatchUnlessThePhraseStandsAlone() {
+        assertThat(intentOf("yes but first tell me the price")).isNull();
+        assertThat(intentOf("right now")).isNull();
+        assertThat(intentOf("thanks")).isNull();
+        assertThat(intentOf("could I speak to a human please")).isEqualTo(Intent.HUMAN_AGENT);
+        assertThat(intentOf("operator")).isEqualTo(Intent.HUMAN_AGENT);
+    }
+}
@@ -0,0 +1,218 @@
+package com.example.twilio.websocket;
+
+import com.example.twilio.audio.AudioSegment;
+import com.example.twilio.audio.G711Codec;
+import com.example.twilio.audio.SlabPool;
+import com.example.twilio.audio.SpectralNoiseSuppressor;
+import com.example.twilio.audio.SpeechConditioner;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Utterance boundaries of the buffer: where an utterance starts and ends and which pauses it
+ * keeps, counted in bytes of 8 kHz mu-law.
+ */
+class AudioBufferTest {
+
+    private static final int FRAME = MediaStreamMessages.FRAME_BYTES;
+
+    private final Random random = new Random(5);
+    private final SlabPool pool = new SlabPool(2 * G711Codec.SAMPLE_RATE, 10 * G711Codec.SAMPLE_RATE, 4);
+
+    private static byte[] tone(int amplitude) {
+        byte[] frame = new byte[FRAME];
+        for (int n = 0; n < FRAME; n++) {
+            frame[n] = G711Codec.encode((int) (amplitude * Math.sin(2 * Math.PI * 400 * n / G711Codec.SAMPLE_RATE)));
+        }
+        return frame;
+    }
+
+    private static byte[] silence() {
+        byte[] frame = new byte[FRAME];
+        Arrays.fill(frame, G711Codec.SILENCE);
+        return frame;
+    }
+
+    private static byte[] filled(int value) {
+        byte[] frame = new byte[FRAME];
+        Arrays.fill(frame, (byte) value);
+        return frame;
+    }
+
+    private static double rms(byte[] audio, int offset, int length) {
+        double sumOfSquares = 0;
+        for (int i = offset; i < offset + length; i++) {
+            double sample = G711Codec.decode(audio[i]);
+            sumOfSquares += sample * sample;
+        }
+        return Math.sqrt(sumOfSquares / length);
+    }
+
+    /**
+     * Conditions each frame, then buffers it as speech or silence - the order of the pipeline
+     */
+    private static void feed(AudioBuffer buffer, SpeechConditioner conditioner, byte[] source, int frames, boolean speech) {
+        byte[] frame = new byte[FRAME];
+        for (int i = 0; i < frames; i++) {
+            System.arraycopy(source, 0, frame, 0, FRAME);
+            conditioner.process(frame, 0, FRAME, speech);
+            if (speech) {
+                buffer.addChunk(frame, 0, FRAME, true);
+            } else {
+                buffer.addSilence(frame, 0, FRAME);
+            }
+        }
+    }
+
+    @Test
+    void lastVoicedFrameSurvivesTheConditioningDelay() {
+        SpeechConditioner conditioner = new SpeechConditioner(new SpectralNoiseSuppressor(15.0), null);
+        int latency = conditioner.getLatencySamples();
+        AudioBuffer buffer = new AudioBuffer(800, 10_000, 0, 700, latency, pool);
+
+        feed(buffer, conditioner, silence(), 10, false);
+        feed(buffer, conditioner, tone(8000), 20, true);
+        feed(buffer, conditioner, silence(), 20, false);
+
+        AudioSegment segment = buffer.takeSegment();
+        assertThat(segment.length()).isEqualTo(20 * FRAME + latency);
+        byte[] audio = segment.toByteArray();
+        // The last voiced frame comes out of the suppressor at the very end of the segment
+        double toneRms = rms(tone(8000), 0, FRAME);
+        assertThat(rms(audio, audio.length - FRAME, FRAME)).isGreaterThan(0.8 * toneRms);
+        segment.release();
+    }
+
+    @Test
+    void utteranceTakenBeforeItsTailArrivedEndsWithTheBufferedAudio() {
+        AudioBuffer buffer = new AudioBuffer(800, 10_000, 0, 700, 256, pool);
+        buffer.addChunk(tone(8000), 0, FRAME, true);
+        buffer.addSilence(silence(), 0, FRAME / 2);
+
+        AudioSegment segment = buffer.takeSegment();
+        assertThat(segment.length()).isEqualTo(FRAME + FRAME / 2);
+        segment.release();
+    }
+
+    @Test
+    void flushedConditionerStartsTheNextUtteranceOnItsOwnAudio() {
+        SpeechConditioner conditioner = new SpeechConditioner(new SpectralNoiseSuppressor(15.0), null);
+        byte[] frame = tone(8000);
+        conditioner.process(frame, 0, FRAME, true);
+        conditioner.flush();
+
+        byte[] next = silence();
+        conditioner.process(next, 0, FRAME, false);
+        // Nothing of the tone is left to come out
+        assertThat(rms(next, 0, FRAME)).isZero();
+    }
+
+    @Test
+    void chunksAreKeptInOrderWhileTheSlabGrows() {
+        AudioBuffer buffer = new AudioBuffer(800, 10_000, pool);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        // 5 s of audio outgrows the 16 KB starting slab twice
+        for (int i = 0; i < 250; i++) {
+            byte[] chunk = new byte[FRAME];
+            random.nextBytes(chunk);
+            // Only part of a reused frame buffer is copied
+            int offset = random.nextInt(FRAME / 4);
+            int length = FRAME - offset;
+            assertThat(buffer.addChunk(chunk, offset, length, true)).isTrue();
+            expected.write(chunk, offset, length);
+        }
+        assertThat(buffer.getChunkCount()).isEqualTo(250);
+        assertThat(buffer.getTotalBytes()).isEqualTo(expected.size());
+
+        AudioSegment segment = buffer.takeSegment();
+        assertThat(segment.toByteArray()).isEqualTo(expected.toByteArray());
+        segment.release();
+        assertThat(buffer.isEmpty()).isTrue();
+        assertThat(buffer.takeSegment()).isNull();
+    }
+
+    @Test
+    void durationIsCountedInSamplesReceived() {
+        AudioBuffer buffer = new AudioBuffer(800, 10_000, pool);
+        for (int i = 0; i < 50; i++) {
+            buffer.addChunk(tone(8000), 0, FRAME, true);
+        }
+        // 50 frames of 20 ms, however fast they arrived
+        assertThat(buffer.getSampleCount()).isEqualTo(50L * FRAME);
+        assertThat(buffer.getAudioDuration()).isEqualTo(1000);
+    }
+
+    @Test
+    void utteranceStopsGrowingAtItsMaximumLength() {
+        AudioBuffer buffer = new AudioBuffer(800, 1_000, pool);
+        for (int i = 0; i < 49; i++) {
+            assertThat(buffer.addChunk(tone(8000), 0, FRAME, true)).isTrue();
+        }
+        assertThat(buffer.isFull()).isFalse();
+        assertThat(buffer.addChunk(tone(8000), 0, FRAME, true)).isTrue();
+        // 1 s of audio: another frame would not fit
+        assertThat(buffer.isFull()).isTrue();
+        assertThat(buffer.addChunk(tone(8000), 0, FRAME, true)).isFalse();
+        assertThat(buffer.getTotalBytes()).isEqualTo(G711Codec.SAMPLE_RATE);
+    }
+
+    @Test
+    void utteranceStartsWithThePreRoll() {
+        // 100 ms = 5 frames of pre-roll
+        AudioBuffer buffer = new AudioBuffer(800, 10_000, 100, 700, pool);
+        // Long enough for the window to slide and be compacted several times
+        for (int i = 1; i <= 20; i++) {
+            assertThat(buffer.addSilence(filled(i), 0, FRAME)).isFalse();
+        }
+        assertThat(buffer.isEmpty()).isTrue();
+        assertThat(buffer.getTotalBytes()).isZero();
+
+        buffer.addChunk(filled(100), 0, FRAME, true);
+        assertThat(buffer.getTotalBytes()).isEqualTo(6 * FRAME);
+        // Only the voiced frame counts towards the duration
+        assertThat(buffer.getAudioDuration()).isEqualTo(20);
+
+        byte[] audio = buffer.getBufferedAudio();
+        for (int frame = 0; frame < 6; frame++) {
+            byte expected = (byte) (frame < 5 ? 16 + frame : 100);
+            assertThat(Arrays.copyOfRange(audio, frame * FRAME, (frame + 1) * FRAME)).containsOnly(expected);
+        }
+    }
+
+    @Test
+    void clearedBufferDropsThePreRoll() {
+        AudioBuffer buffer = new AudioBuffer(800, 10_000, 100, 700, pool);
+        buffer.addSilence(filled(1), 0, FRAME);
+        buffer.clear();
+        buffer.addChunk(filled(100), 0, FRAME, true);
+
+        assertThat(buffer.getBufferedAudio()).hasSize(FRAME).containsOnly((byte) 100);
+    }
+
+    @Test
+    void shortPausesAreKeptAndTheTrailingOneIsTrimmed() {
+        // 100 ms = 5 frames of pause at most
+        AudioBuffer buffer = new AudioBuffer(800, 10_000, 0, 100, pool);
+        buffer.addChunk(filled(100), 0, FRAME, true);
+        for (int i = 0; i < 3; i++) {
+            assertThat(buffer.addSilence(filled(1), 0, FRAME)).isTrue();
+        }
+        buffer.addChunk(filled(101), 0, FRAME, true);
+        // A long pause is only kept up to its maximum
+        for (int i = 0; i < 10; i++) {
+            assertThat(buffer.addSilence(filled(2), 0, FRAME)).isEqualTo(i < 5);
+        }
+        assertThat(buffer.getTotalBytes()).isEqualTo(10 * FRAME);
+
+        byte[] audio = buffer.getBufferedAudio();
+        // Voiced, the short pause, voiced - and nothing of the trailing pause
+        assertThat(audio).hasSize(5 * FRAME);
+        assertThat(Arrays.copyOfRange(audio, FRAME, 4 * FRAME)).containsOnly((byte) 1);
+        assertThat(Arrays.copyOfRange(audio, 4 * FRAME, 5 * FRAME)).containsOnly((byte) 101);
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.twilio.websocket;
+
+import com.example.twilio.audio.G711Codec;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * Checks the single-pass table-driven analysis against the three separate scans it replaced,
+ * and the linear statistics against a direct G.711 decode.
+ */
+class AudioEnergyDetectorTest {
+
+    private static final int SILENCE_THRESHOLD = 10;
+    private static final int FRAMES = 2000;
+
+    private final Random random = new Random(7);
+
+    private static AudioEnergyDetector detector(double energyThreshold, double nonSilencePercent) {
+        AudioEnergyDetector detector = new AudioEnergyDetector();
+        ReflectionTestUtils.setField(detector, "minEnergyThreshold", energyThreshold);
+        ReflectionTestUtils.setField(detector, "minNonSilencePercent", nonSilencePercent);
+        return detector;
+    }
+
+    // The detector before the single pass: each metric scanned the frame on its own
+
+    private static double referenceEnergy(byte[] audio, int offset, int length) {
+        long sumOfSquares = 0;
+        int nonSilenceSamples = 0;
+        for (int i = offset; i < offset + length; i++) {
+            int deviation = Math.abs((audio[i] & 0xFF) - 127);
+            if (deviation > SILENCE_THRESHOLD) {
+                sumOfSquares += (long) deviation * deviation;
+                nonSilenceSamples++;
+            }
+        }
+        return nonSilenceSamples == 0 ? 0.0 : Math.sqrt((double) sumOfSquares / nonSilenceSamples);
+    }
+
+    private static double referenceNonSilencePercent(byte[] audio, int offset, int length) {
+        int nonSilenceCount = 0;
+        for (int i = offset; i < offset + length; i++) {
+            if (Math.abs((audio[i] & 0xFF) - 127) > SILENCE_THRESHOLD) {
+                nonSilenceCount++;
+            }
+        }
+        return (double) nonSilenceCount / length * 100.0;
+    }
+
+    private static boolean referenceHasEnergy(byte[] audio, int offset, int length,
+                                              double energyThreshold, double minNonSilencePercent) {
+        double nonSilencePercent = referenceNonSilencePercent(audio, offset, length);
+        if (nonSilencePercent == 0.0 || nonSilencePercent < minNonSilencePercent) {
+            return false;
+        }
+        return referenceEnergy(audio, offset, length) > energyThreshold;
+    }
+
+    /**
+     * A frame that is silent, noisy, loud or a mix, so every branch of the old decision is taken
+     */
+    private byte[] randomFrame(int length) {
+        byte[] frame = new byte[length];
+        int spread = new int[]{0, 5, 15, 40, 128}[random.nextInt(5)];
+        double voicedShare = random.nextDouble();
+        for (int i = 0; i < length; i++) {
+            int code = random.nextDouble() < voicedShare
+                    ? 127 + random.nextInt(2 * spread + 1) - spread
+                    : 127 + random.nextInt(7) - 3;
+            frame[i] = (byte) Math.max(0, Math.min(255, code));
+        }
+        return frame;
+    }
+
+    @Test
+    void singlePassMatchesTheSeparateScans() {
+        // The legacy metric tops out at 128, so thresholds above that would never see speech
+        double[][] thresholds = {{100.0, 25.0}, {60.0, 10.0}, {20.0, 50.0}, {0.0, 0.0}};
+        FrameStats stats = new FrameStats();
+        for (double[] threshold : thresholds) {
+            AudioEnergyDetector detector = detector(threshold[0], threshold[1]);
+            int speech = 0;
+            for (int n = 0; n < FRAMES; n++) {
+                byte[] buffer = randomFrame(200);
+                int offset = random.nextInt(40);
+                int length = 1 + random.nextInt(160);
+
+                detector.analyze(buffer, offset, length, stats);
+                assertThat(stats.getEnergy()).isEqualTo(referenceEnergy(buffer, offset, length));
+                assertThat(stats.getNonSilencePercent()).isEqualTo(referenceNonSilencePercent(buffer, offset, length));
+                boolean expected = referenceHasEnergy(buffer, offset, length, threshold[0], threshold[1]);
+                assertThat(stats.hasEnergy()).isEqualTo(expected);
+                assertThat(detector.hasAudioEnergy(buffer, offset, length)).isEqualTo(expected);
+                speech += expected ? 1 : 0;
+            }
+            // Both decisions were exercised
+            assertThat(speech).isBetween(1, FRAMES - 1);
+        }
+    }
+
+    @Test
+    void linearStatisticsMatchTheG711Decode() {
+        AudioEnergyDetector detector = detector(150.0, 25.0);
+        for (int n = 0; n < FRAMES; n++) {
+            byte[] frame = new byte[160];
+            random.nextBytes(frame);
+
+            long sumOfSquares = 0;
+            int peak = 0;
+            int zeroCrossings = 0;
+            for (int i = 0; i < frame.length; i++) {
+                int sample = G711Codec.decode(frame[i]);
+                sumOfSquares += (long) sample * sample;
+                peak = Math.max(peak, Math.abs(sample));
+                // Codes 0x7F and 0xFF both decode to 0; the code's sign bit tells them apart
+                if (i > 0 && (frame[i] & 0x80) != (frame[i - 1] & 0x80)) {
+                    zeroCrossings++;
+                }
+            }
+
+            FrameStats stats = detector.analyze(frame, 0, frame.length);
+            assertThat(stats.getRms()).isCloseTo(Math.sqrt((double) sumOfSquares / frame.length), within(1e-9));
+            assertThat(stats.getPeak()).isEqualTo(peak);
+            assertThat(stats.getZeroCrossings()).isEqualTo(zeroCrossings);
+            assertThat(stats.getSamples()).isEqualTo(frame.length);
+        }
+    }
+
+    @Test
+    void emptyAndMissingFramesAreSilence() {
+        AudioEnergyDetector detector = detector(0.0, 0.0);
+        assertThat(detector.analyze(new byte[160], 10, 0).hasEnergy()).isFalse();
+        assertThat(detector.analyze(null, 0, 160).getEnergy()).isZero();
+        assertThat(detector.hasAudioEnergy(null)).isFalse();
+        assertThat(detector.calculateEnergy(null)).isZero();
+        assertThat(detector.getNonSilencePercentage(null)).isZero();
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.twilio.websocket;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Soak test for the per-session timers: after many calls have come and gone, none of their
+ * timers may be left on the wheel.
+ */
+class CallSessionTimersTest {
+
+    private static final int CYCLES = 20_000;
+    private static final long LONG_DELAY_MS = 60_000;
+
+    private final TimingWheel timers = new TimingWheel("test-timer", 1, 512);
+    private final AtomicInteger longTimersFired = new AtomicInteger();
+
+    @AfterEach
+    void stopWheel() {
+        timers.stop();
+    }
+
+    private CallSession newSession(int id) {
+        return new CallSession("session-" + id, null, null, null, null, null, null, timers);
+    }
+
+    /**
+     * The timers of one call: endpointing re-armed on every voiced frame, a playback release
+     * and a timer that fires during the call
+     */
+    private void simulateCall(CallSession session, CountDownLatch shortTimers) {
+        Runnable longTask = longTimersFired::incrementAndGet;
+        for (int frame = 0; frame < 5; frame++) {
+            session.armEndpointTimer(longTask, LONG_DELAY_MS);
+        }
+        session.ensureEndpointTimer(longTask, LONG_DELAY_MS);
+        session.schedule(longTask, LONG_DELAY_MS);
+        if (shortTimers != null) {
+            session.schedule(shortTimers::countDown, 1);
+        }
+    }
+
+    @Test
+    void pendingTimeoutsReturnToZeroAfterManyCalls() throws Exception {
+        for (int i = 0; i < CYCLES; i++) {
+            CallSession session = newSession(i);
+            if (i < 200) {
+                // Some calls see a timer fire before they end
+                CountDownLatch fired = new CountDownLatch(1);
+                simulateCall(session, fired);
+                assertThat(fired.await(5, TimeUnit.SECONDS)).isTrue();
+            } else {
+                simulateCall(session, null);
+            }
+            session.close();
+        }
+
+        assertThat(timers.pendingTimeouts()).isZero();
+        assertThat(longTimersFired).hasValue(0);
+    }
+
+    @Test
+    void closeCancelsEveryTimerItOwns() {
+        CallSession session = newSession(0);
+        simulateCall(session, null);
+
+        // Endpoint timer plus the playback timer - re-arming did not add more
+        assertThat(timers.pendingTimeouts()).isEqualTo(2);
+        assertThat(session.close()).isEqualTo(2);
+        assertThat(timers.pendingTimeouts()).isZero();
+        assertThat(session.close()).isZero();
+    }
+
+    @Test
+    void timersScheduledAfterCloseAreRefused() {
+        CallSession session = newSession(0);
+        session.close();
+
+        assertThat(session.schedule(longTimersFired::incrementAndGet, LONG_DELAY_MS)).isNull();
+        session.armEndpointTimer(longTimersFired::incrementAndGet, LONG_DELAY_MS);
+        assertThat(timers.pendingTimeouts()).isZero();
+    }
+
+    @Test
+    void closeRacingWithSchedulingLeavesNothingPending() throws Exception {
+        ExecutorService threads = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> calls = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                int offset = t * CYCLES;
+                calls.add(threads.submit(() -> {
+                    for (int i = 0; i < CYCLES / 4; i++) {
+                        CallSession session = newSession(offset + i);
+                        // The socket closes while the message thread is still arming timers
+                        Thread closer = new Thread(session::close);
+                        closer.start();
+                        simulateCall(session, null);
+                        closer.join();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> call : calls) {
+                call.get(2, TimeUnit.MINUTES);
+            }
+        } finally {
+            threads.shutdownNow();
+        }
+
+        assertThat(timers.pendingTimeouts()).isZero();
+        assertThat(longTimersFired).hasValue(0);
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.twilio.websocket;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Checks the media fast path against the ObjectMapper parsing it replaced: same audio bytes,
+ * same sequence number and timestamp, and a fallback for anything it does not handle.
+ */
+class MediaFrameParserTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Random random = new Random(42);
+
+    /**
+     * The old handler: tree parse, payload String, Base64 decoder
+     */
+    private byte[] referenceAudio(String json) throws Exception {
+        JsonNode mediaNode = objectMapper.readTree(json).get("media");
+        String payload = mediaNode.has("payload") ? mediaNode.get("payload").asText() : "";
+        return Base64.getDecoder().decode(payload);
+    }
+
+    private long referenceLong(JsonNode node) {
+        return node == null ? -1 : node.asLong();
+    }
+
+    private static String mediaMessage(long sequence, long timestamp, String payload) {
+        return "{\"event\":\"media\",\"sequenceNumber\":\"" + sequence + "\",\"media\":{\"track\":\"inbound\","
+                + "\"chunk\":\"" + sequence + "\",\"timestamp\":\"" + timestamp + "\",\"payload\":\"" + payload
+                + "\"},\"streamSid\":\"MZ18ad3ab5a668481ce02b83e7395059f0\"}";
+    }
+
+    private void assertMatchesReference(String json, MediaFrame frame) throws Exception {
+        assertThat(MediaFrameParser.parseMedia(json, frame)).as(json).isTrue();
+        JsonNode root = objectMapper.readTree(json);
+        assertThat(Arrays.copyOf(frame.audio, frame.length)).isEqualTo(referenceAudio(json));
+        assertThat(frame.sequenceNumber).isEqualTo(referenceLong(root.get("sequenceNumber")));
+        assertThat(frame.timestamp).isEqualTo(referenceLong(root.get("media").get("timestamp")));
+    }
+
+    @Test
+    void decodesTwilioMediaMessagesLikeTheObjectMapper() throws Exception {
+        MediaFrame frame = new MediaFrame();
+        // Every padding case, the usual 160-byte frame and frames larger than the initial buffer
+        for (int length = 0; length <= 400; length++) {
+            byte[] audio = new byte[length];
+            random.nextBytes(audio);
+            String payload = Base64.getEncoder().encodeToString(audio);
+            assertMatchesReference(mediaMessage(length + 1, length * 20L, payload), frame);
+        }
+    }
+
+    @Test
+    void toleratesWhitespaceKeyOrderAndBareNumbers() throws Exception {
+        byte[] audio = new byte[160];
+        random.nextBytes(audio);
+        String payload = Base64.getEncoder().encodeToString(audio);
+        String[] messages = {
+                "{ \"event\" : \"media\" ,\n \"sequenceNumber\" : \"7\" , \"media\" : {\n \"timestamp\" : \"140\" , \"payload\" : \"" + payload + "\" } }",
+                "{\"streamSid\":\"MZ1\",\"event\":\"media\",\"media\":{\"payload\":\"" + payload + "\",\"timestamp\":\"60\"},\"sequenceNumber\":\"3\"}",
+                "{\"event\":\"media\",\"sequenceNumber\":12,\"media\":{\"timestamp\":240,\"payload\":\"" + payload + "\"}}",
+                // Field values that look like keys must not be mistaken for them
+                "{\"event\":\"media\",\"sequenceNumber\":\"5\",\"media\":{\"track\":\"timestamp\",\"timestamp\":\"100\",\"payload\":\"" + payload + "\"}}",
+                "{\"event\":\"media\",\"media\":{\"payload\":\"" + payload + "\"}}"
+        };
+        for (String json : messages) {
+            assertMatchesReference(json, new MediaFrame());
+        }
+    }
+
+    @Test
+    void leavesOtherMessagesToTheObjectMapper() {
+        MediaFrame frame = new MediaFrame();
+        String[] messages = {
+                "{\"event\":\"connected\",\"protocol\":\"Call\",\"version\":\"1.0.0\"}",
+                "{\"event\":\"start\",\"sequenceNumber\":\"1\",\"start\":{\"mediaFormat\":{\"encoding\":\"audio/x-mulaw\"}}}",
+                "{\"event\":\"mark\",\"sequenceNumber\":\"9\",\"mark\":{\"name\":\"media\"}}",
+                "{\"event\":\"stop\",\"sequenceNumber\":\"10\",\"stop\":{}}",
+                // Escaped payloads are valid JSON but not handled by the scanner
+                "{\"event\":\"media\",\"media\":{\"payload\":\"AAEC\\/w==\"}}",
+                "{\"event\":\"media\",\"media\":{\"timestamp\":\"5\"}}"
+        };
+        for (String json : messages) {
+            assertThat(MediaFrameParser.parseMedia(json, frame)).as(json).isFalse();
+        }
+    }
+
+    @Test
+    void rejectsInvalidBase64LikeTheDecoder() {
+        String json = mediaMessage(1, 0, "AAE*AA==");
+        assertThatThrownBy(() -> referenceAudio(json)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> MediaFrameParser.parseMedia(json, new MediaFrame()))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.twilio.websocket;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * Minimum-statistics floor of the tracker on frame levels fed directly (linear RMS).
+ */
+class NoiseFloorTrackerTest {
+
+    private static final double SNR_DB = 12.0;
+    // The floor settles this far above the quietest frames
+    private static final double BIAS = Math.pow(10.0, 1.5 / 20.0);
+
+    private final FrameStats stats = new FrameStats();
+
+    private static NoiseFloorTracker tracker() {
+        return new NoiseFloorTracker(200.0, SNR_DB, 50.0, 5000.0);
+    }
+
+    private void feed(NoiseFloorTracker tracker, double rms, boolean speech, int frames) {
+        stats.set(rms, 50.0, speech, rms, rms == 0 ? 0 : (int) (3 * rms), 10, 160);
+        for (int i = 0; i < frames; i++) {
+            tracker.update(stats, speech);
+        }
+    }
+
+    @Test
+    void thresholdIsTheFloorPlusTheMargin() {
+        NoiseFloorTracker tracker = tracker();
+        assertThat(tracker.getNoiseFloorRms()).isCloseTo(200.0, within(1e-6));
+        assertThat(tracker.getThresholdRms()).isCloseTo(200.0 * Math.pow(10.0, SNR_DB / 20.0), within(1e-6));
+
+        feed(tracker, 100.0, false, 200);
+        assertThat(tracker.getNoiseFloorRms()).isCloseTo(100.0 * BIAS, within(1.0));
+        assertThat(tracker.getThresholdRms()).isCloseTo(tracker.getNoiseFloorRms() * Math.pow(10.0, SNR_DB / 20.0), within(1e-6));
+    }
+
+    @Test
+    void gapsBetweenSyllablesKeepTheFloorDown() {
+        NoiseFloorTracker tracker = tracker();
+        feed(tracker, 100.0, false, 50);
+        for (int i = 0; i < 100; i++) {
+            // A syllable of 80 ms, then a 20 ms gap back at the line noise
+            feed(tracker, 3000.0, true, 4);
+            feed(tracker, 100.0, true, 1);
+        }
+        assertThat(tracker.getNoiseFloorRms()).isCloseTo(100.0 * BIAS, within(1.0));
+        assertThat(tracker.getSpeechFrames()).isEqualTo(500);
+        assertThat(tracker.getNoiseFrames()).isEqualTo(50);
+    }
+
+    @Test
+    void noiseSwitchingOnRaisesTheFloorWithinTheWindow() {
+        NoiseFloorTracker tracker = tracker();
+        feed(tracker, 100.0, false, 200);
+        // Called speech by the detector the whole time - the floor follows it anyway
+        feed(tracker, 1000.0, true, NoiseFloorTracker.BLOCKS * NoiseFloorTracker.BLOCK_FRAMES + 75);
+        assertThat(tracker.getNoiseFloorRms()).isCloseTo(1000.0 * BIAS, within(10.0));
+    }
+
+    @Test
+    void digitalSilenceLeavesTheFloorAlone() {
+        NoiseFloorTracker tracker = tracker();
+        feed(tracker, 100.0, false, 200);
+        double floor = tracker.getNoiseFloorRms();
+
+        feed(tracker, 0.0, false, 500);
+        assertThat(tracker.getNoiseFloorRms()).isEqualTo(floor);
+        assertThat(tracker.getLastFrameRms()).isZero();
+        assertThat(tracker.getNoiseFrames()).isEqualTo(700);
+    }
+
+    @Test
+    void thresholdIsClampedToItsRange() {
+        NoiseFloorTracker tracker = tracker();
+        feed(tracker, 2.0, false, 200);
+        assertThat(tracker.getThresholdRms()).isEqualTo(50.0);
+
+        feed(tracker, 4000.0, false, 300);
+        assertThat(tracker.getThresholdRms()).isEqualTo(5000.0);
+    }
+}
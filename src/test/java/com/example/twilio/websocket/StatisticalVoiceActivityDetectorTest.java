@@ -0,0 +1,99 @@
+package com.example.twilio.websocket;
+
+import com.example.twilio.audio.G711Codec;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Decisions of the band-energy detector on synthetic calls: quiet line noise, syllable-like
+ * tones rising and falling over it, and a loud steady noise switching on mid-call.
+ */
+class StatisticalVoiceActivityDetectorTest {
+
+    private static final int FRAME = MediaStreamMessages.FRAME_BYTES;
+    private static final long FRAME_MS = 20;
+    private static final long HANGOVER_MS = 200;
+
+    private final Random random = new Random(3);
+    private final AudioEnergyDetector energyDetector = new AudioEnergyDetector();
+    private final StatisticalVoiceActivityDetector detector = new StatisticalVoiceActivityDetector(2, HANGOVER_MS);
+    // Samples generated so far, so tones and envelopes run on across frames
+    private long time;
+
+    private double noise(double amplitude) {
+        return random.nextGaussian() * amplitude;
+    }
+
+    /**
+     * Line noise, plus three formant-like tones under a 4 Hz syllable envelope if {@code speech}
+     */
+    private byte[] frame(double noiseAmplitude, double speechAmplitude) {
+        byte[] frame = new byte[FRAME];
+        for (int n = 0; n < FRAME; n++, time++) {
+            double t = (double) time / G711Codec.SAMPLE_RATE;
+            double envelope = Math.abs(Math.sin(2 * Math.PI * 4 * t));
+            double voice = Math.sin(2 * Math.PI * 300 * t) + 0.7 * Math.sin(2 * Math.PI * 700 * t)
+                    + 0.5 * Math.sin(2 * Math.PI * 1500 * t);
+            frame[n] = G711Codec.encode((int) (noise(noiseAmplitude) + speechAmplitude * envelope * voice));
+        }
+        return frame;
+    }
+
+    private boolean isSpeech(byte[] frame) {
+        return detector.isSpeech(frame, 0, frame.length, energyDetector.analyze(frame, 0, frame.length));
+    }
+
+    /**
+     * Feeds {@code frames} frames and counts those detected as speech
+     */
+    private int speechFrames(int frames, double noiseAmplitude, double speechAmplitude) {
+        int speech = 0;
+        for (int i = 0; i < frames; i++) {
+            speech += isSpeech(frame(noiseAmplitude, speechAmplitude)) ? 1 : 0;
+        }
+        return speech;
+    }
+
+    @Test
+    void quietLineIsNotSpeech() {
+        assertThat(speechFrames(250, 30, 0)).isZero();
+    }
+
+    @Test
+    void syllablesOverLineNoiseAreSpeech() {
+        speechFrames(50, 30, 0);
+        // 2 s of syllables: nearly every frame, the envelope dips bridged by the hangover
+        assertThat(speechFrames(100, 30, 6000)).isGreaterThan(90);
+    }
+
+    @Test
+    void speechIsHeldForTheHangover() {
+        speechFrames(50, 30, 0);
+        speechFrames(25, 30, 6000);
+        boolean[] afterSpeech = new boolean[20];
+        for (int i = 0; i < afterSpeech.length; i++) {
+            afterSpeech[i] = isSpeech(frame(30, 0));
+        }
+        int held = 0;
+        while (held < afterSpeech.length && afterSpeech[held]) {
+            held++;
+        }
+        assertThat((long) held * FRAME_MS).isBetween(HANGOVER_MS - 2 * FRAME_MS, HANGOVER_MS + 2 * FRAME_MS);
+        for (int i = held; i < afterSpeech.length; i++) {
+            assertThat(afterSpeech[i]).isFalse();
+        }
+    }
+
+    @Test
+    void steadyNoiseSwitchingOnIsAbsorbed() {
+        speechFrames(50, 30, 0);
+        // A loud hiss that never changes level: speech at first, then recognized as stationary
+        speechFrames(50, 2000, 0);
+        assertThat(speechFrames(50, 2000, 0)).isZero();
+        // Speech over the hiss is still heard
+        assertThat(speechFrames(50, 2000, 12000)).isGreaterThan(25);
+    }
+}